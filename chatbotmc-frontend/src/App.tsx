@@ -10,6 +10,7 @@ import {
   Snackbar,
   Alert,
   Tooltip,
+  Button,
 } from '@mui/material'
 import SendIcon from '@mui/icons-material/Send'
 import MenuIcon from '@mui/icons-material/Menu'
@@ -18,7 +19,7 @@ import LoginDialog from './components/LoginDialog'
 import RegisterDialog from './components/RegisterDialog'
 import ConversationSidebar from './components/ConversationSidebar'
 import { logout, isAuthenticated } from './services/authService'
-import { conversationService, type Conversation } from './services/conversationService'
+import { conversationService, type Conversation, type ChatMessage } from './services/conversationService'
 import { getRemainingQueries } from './services/queryLimitService'
 import './App.css'
 
@@ -109,7 +110,9 @@ function App() {
   const [snackbarMessage, setSnackbarMessage] = useState('')
   const [snackbarSeverity, setSnackbarSeverity] = useState<'success' | 'error' | 'warning' | 'info'>('success')
   const [conversations, setConversations] = useState<Conversation[]>([])
+  const [conversationsCursor, setConversationsCursor] = useState<string | null>(null)
   const [currentConversationId, setCurrentConversationId] = useState<number | null>(null)
+  const [messagesCursor, setMessagesCursor] = useState<string | null>(null)
   const [remainingQueries, setRemainingQueries] = useState<number | null>(null)
   const [mobileOpen, setMobileOpen] = useState(false)
   const messagesEndRef = useRef<HTMLDivElement>(null)
@@ -140,23 +143,38 @@ function App() {
 
   const loadConversations = async () => {
     try {
-      const convs = await conversationService.getAllConversations()
-      setConversations(convs)
+      const page = await conversationService.getConversations()
+      setConversations(page.items)
+      setConversationsCursor(page.nextCursor)
     } catch (error) {
       console.error('Error loading conversations:', error)
     }
   }
 
+  const loadMoreConversations = async () => {
+    if (!conversationsCursor) return
+    try {
+      const page = await conversationService.getConversations(conversationsCursor)
+      setConversations((prev) => [...prev, ...page.items])
+      setConversationsCursor(page.nextCursor)
+    } catch (error) {
+      console.error('Error loading conversations:', error)
+    }
+  }
+
+  const toMessages = (msgs: ChatMessage[]): Message[] =>
+    msgs.map((msg) => ({
+      id: msg.id,
+      text: msg.content,
+      sender: msg.role === 'USER' ? 'user' : 'bot',
+      timestamp: new Date(msg.createdAt),
+    }))
+
   const loadConversationMessages = async (conversationId: number) => {
     try {
-      const msgs = await conversationService.getConversationMessages(conversationId)
-      const formattedMessages: Message[] = msgs.map((msg) => ({
-        id: msg.id,
-        text: msg.content,
-        sender: msg.role === 'USER' ? 'user' : 'bot',
-        timestamp: new Date(msg.createdAt),
-      }))
-      setMessages(formattedMessages)
+      const page = await conversationService.getConversationMessages(conversationId)
+      setMessages(toMessages(page.items))
+      setMessagesCursor(page.nextCursor)
       setCurrentConversationId(conversationId)
     } catch (error) {
       console.error('Error loading messages:', error)
@@ -166,9 +184,21 @@ function App() {
     }
   }
 
+  const loadOlderMessages = async () => {
+    if (currentConversationId === null || !messagesCursor) return
+    try {
+      const page = await conversationService.getConversationMessages(currentConversationId, messagesCursor)
+      setMessages((prev) => [...toMessages(page.items), ...prev])
+      setMessagesCursor(page.nextCursor)
+    } catch (error) {
+      console.error('Error loading messages:', error)
+    }
+  }
+
   const handleNewConversation = () => {
     setCurrentConversationId(null)
     setMessages([])
+    setMessagesCursor(null)
   }
 
   const handleDeleteConversation = async (conversationId: number) => {
@@ -367,6 +397,8 @@ function App() {
           onDeleteConversation={handleDeleteConversation}
           onRenameConversation={handleRenameConversation}
           onNewConversation={handleNewConversation}
+          hasMoreConversations={conversationsCursor !== null}
+          onLoadMoreConversations={loadMoreConversations}
           authenticated={authenticated}
           username={username}
           remainingQueries={remainingQueries}
@@ -486,7 +518,15 @@ function App() {
                   </Typography>
                 </Box>
               ) : (
-                messages.map((message) => (
+                <>
+                {messagesCursor && (
+                  <Box sx={{ display: 'flex', justifyContent: 'center', pt: 2 }}>
+                    <Button size="small" onClick={loadOlderMessages} sx={{ color: '#8e8ea0' }}>
+                      Load earlier messages
+                    </Button>
+                  </Box>
+                )}
+                {messages.map((message) => (
                   <Box
                     key={message.id}
                     sx={{
@@ -549,7 +589,8 @@ function App() {
                       </Box>
                     </Box>
                   </Box>
-                ))
+                ))}
+                </>
               )}
               
               {/* Loading indicator */}
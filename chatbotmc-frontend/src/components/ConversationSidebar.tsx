@@ -36,6 +36,8 @@ interface ConversationSidebarProps {
   onDeleteConversation: (id: number) => void
   onRenameConversation: (id: number, newTitle: string) => void
   onNewConversation: () => void
+  hasMoreConversations: boolean
+  onLoadMoreConversations: () => void
   authenticated: boolean
   username: string
   remainingQueries: number | null
@@ -52,6 +54,8 @@ export default function ConversationSidebar({
   onDeleteConversation,
   onRenameConversation,
   onNewConversation,
+  hasMoreConversations,
+  onLoadMoreConversations,
   authenticated,
   username,
   remainingQueries,
@@ -305,6 +309,13 @@ export default function ConversationSidebar({
                   </ListItem>
                 ))}
               </List>
+              {hasMoreConversations && (
+                <Box sx={{ display: 'flex', justifyContent: 'center', py: 1 }}>
+                  <Button size="small" onClick={onLoadMoreConversations} sx={{ color: '#8e8ea0' }}>
+                    Show more
+                  </Button>
+                </Box>
+              )}
             </>
           )}
         </Box>
@@ -8,6 +8,7 @@ export interface Conversation {
   createdAt: string;
   updatedAt: string;
   messageCount: number;
+  lastMessagePreview?: string | null;
 }
 
 export interface ChatMessage {
@@ -17,10 +18,21 @@ export interface ChatMessage {
   createdAt: string;
 }
 
+// One keyset page; nextCursor is null on the last page
+export interface Page<T> {
+  items: T[];
+  nextCursor: string | null;
+}
+
+const NEXT_CURSOR_HEADER = 'X-Next-Cursor';
+
+const pageQuery = (cursor?: string | null): string =>
+  cursor ? `?cursor=${encodeURIComponent(cursor)}` : '';
+
 export const conversationService = {
-  async getAllConversations(): Promise<Conversation[]> {
+  async getConversations(cursor?: string | null): Promise<Page<Conversation>> {
     const token = localStorage.getItem('token');
-    const response = await fetch(`${API_URL}/conversations`, {
+    const response = await fetch(`${API_URL}/conversations${pageQuery(cursor)}`, {
       headers: { 
         'Authorization': `Bearer ${token}`,
         'Content-Type': 'application/json'
@@ -31,13 +43,17 @@ export const conversationService = {
       throw new Error('Failed to fetch conversations');
     }
     
-    return await response.json();
+    return {
+      items: await response.json(),
+      nextCursor: response.headers.get(NEXT_CURSOR_HEADER),
+    };
   },
 
-  async getConversationMessages(conversationId: number): Promise<ChatMessage[]> {
+  // Newest page first; pass nextCursor to load the page of older messages
+  async getConversationMessages(conversationId: number, cursor?: string | null): Promise<Page<ChatMessage>> {
     const token = localStorage.getItem('token');
     const response = await fetch(
-      `${API_URL}/conversations/${conversationId}/messages`,
+      `${API_URL}/conversations/${conversationId}/messages${pageQuery(cursor)}`,
       { 
         headers: { 
           'Authorization': `Bearer ${token}`,
@@ -50,7 +66,10 @@ export const conversationService = {
       throw new Error('Failed to fetch conversation messages');
     }
     
-    return await response.json();
+    return {
+      items: await response.json(),
+      nextCursor: response.headers.get(NEXT_CURSOR_HEADER),
+    };
   },
 
   async createConversation(title: string): Promise<Conversation> {
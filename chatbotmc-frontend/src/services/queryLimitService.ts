@@ -2,10 +2,11 @@
 const API_BASE_URL = import.meta.env.VITE_API_BASE_URL || 'http://localhost:8080';
 
 interface RemainingQueriesResponse {
-  remainingQueries: number;
+  // null when the user's role has no query limit
+  remainingQueries: number | null;
 }
 
-export const getRemainingQueries = async (): Promise<number> => {
+export const getRemainingQueries = async (): Promise<number | null> => {
   const token = localStorage.getItem('token');
   
   if (!token) {
@@ -0,0 +1,59 @@
+package com.example.chatbotmc.benchmark;
+
+import com.example.chatbotmc.entity.RagChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic inputs shared by the benchmarks
+ */
+final class BenchmarkData {
+
+    // Chunks shipped in src/main/resources/data.json
+    static final int DATA_JSON_CHUNKS = 91;
+
+    static final int DIMENSIONS = 768;
+
+    private BenchmarkData() {
+    }
+
+    static List<Double> embedding(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Double> embedding = new ArrayList<>(DIMENSIONS);
+        for (int i = 0; i < DIMENSIONS; i++) {
+            embedding.add(random.nextDouble(-0.1, 0.1));
+        }
+        return embedding;
+    }
+
+    static float[][] vectors(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        float[][] vectors = new float[count][DIMENSIONS];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] = (float) random.nextDouble(-0.1, 0.1);
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Chunks shaped like data.json entries: metadata plus a few hundred words of text
+     */
+    static List<RagChunk> chunks(int count) {
+        List<RagChunk> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RagChunk chunk = new RagChunk();
+            chunk.setChunkId("chunk-" + i);
+            chunk.setModpack("All the Mods 9");
+            chunk.setModName("Mekanism");
+            chunk.setCategory("machines");
+            chunk.setText(("The Digital Miner scans a configurable radius and pulls matching ores into "
+                + "its internal buffer, using energy per block mined. ").repeat(12));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
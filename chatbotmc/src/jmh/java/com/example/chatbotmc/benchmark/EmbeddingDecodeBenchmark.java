@@ -0,0 +1,44 @@
+package com.example.chatbotmc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a Gemini embedContent response the way GeminiEmbeddingClient receives it:
+ * WebClient's JSON codec reads the body into a Map and the values list is taken out
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingDecodeBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP = new TypeReference<>() {};
+
+    private JsonMapper jsonMapper;
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        jsonMapper = JsonMapper.builder().build();
+        response = jsonMapper.writeValueAsString(Map.of(
+            "embedding", Map.of("values", BenchmarkData.embedding(7))
+        )).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<Double> decodeEmbedding() {
+        Map<String, Object> body = jsonMapper.readValue(response, MAP);
+        Map<String, Object> embedding = (Map<String, Object>) body.get("embedding");
+        return (List<Double>) embedding.get("values");
+    }
+}
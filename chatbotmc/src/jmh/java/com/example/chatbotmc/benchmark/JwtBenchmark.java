@@ -0,0 +1,51 @@
+package com.example.chatbotmc.benchmark;
+
+import com.example.chatbotmc.dto.AuthenticatedUser;
+import com.example.chatbotmc.entity.Role;
+import com.example.chatbotmc.entity.User;
+import com.example.chatbotmc.service.JwtService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticating a bearer token, as JwtAuthenticationFilter does on every request
+ * cached: the token was verified before; uncached: full signature check and claim parsing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private JwtService cachingService;
+    private JwtService uncachedService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cachingService = new JwtService(SECRET, 86_400_000L, 10_000);
+        uncachedService = new JwtService(SECRET, 86_400_000L, 0);
+
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("benchmark");
+        user.setRole(Role.USER);
+        token = cachingService.generateToken(user);
+        cachingService.authenticate(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser authenticateCached() {
+        return cachingService.authenticate(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser authenticateUncached() {
+        return uncachedService.authenticate(token);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.chatbotmc.benchmark;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.service.RagService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembling the RAG context and the augmented prompt from the retrieved chunks
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptBuildBenchmark {
+
+    // rag.top-k default and a larger retrieval
+    @Param({"5", "20"})
+    public int chunkCount;
+
+    private RagService ragService;
+    private List<RagChunk> chunks;
+
+    @Setup
+    public void setUp() {
+        ragService = new RagService(null, null, null, new ChatMetrics(new SimpleMeterRegistry(), null), null, null, null, null);
+        chunks = BenchmarkData.chunks(chunkCount);
+    }
+
+    @Benchmark
+    public String buildContextString() {
+        return ragService.buildContextString(chunks);
+    }
+
+    @Benchmark
+    public String buildAugmentedPrompt() {
+        return ragService.buildAugmentedPrompt("How do I set up a Digital Miner?", chunks);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.chatbotmc.benchmark;
+
+import com.example.chatbotmc.config.RateLimitInterceptor;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimitInterceptor.preHandle with local buckets
+ * singleClient: one IP, so after the first 100 requests the bucket is empty and requests are rejected
+ * manyClients: requests spread over 50,000 IPs, mostly allowed, exercising the bucket cache
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitBenchmark {
+
+    private static final int CLIENTS = 50_000;
+
+    private RateLimitInterceptor interceptor;
+    private MockHttpServletRequest[] requests;
+
+    @Setup
+    public void setUp() {
+        interceptor = new RateLimitInterceptor(new CaffeineCacheManager(), 100_000, 120, Optional.empty(), 5, 500);
+        requests = new MockHttpServletRequest[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            requests[i] = new MockHttpServletRequest("POST", "/api/llm/chat");
+            requests[i].addHeader("X-Real-IP", "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public boolean singleClient() throws Exception {
+        return interceptor.preHandle(requests[0], new MockHttpServletResponse(), null);
+    }
+
+    @Benchmark
+    public boolean manyClients(Cursor cursor) throws Exception {
+        cursor.next = (cursor.next + 1) % CLIENTS;
+        return interceptor.preHandle(requests[cursor.next], new MockHttpServletResponse(), null);
+    }
+}
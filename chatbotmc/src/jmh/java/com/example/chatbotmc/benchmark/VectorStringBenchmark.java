@@ -0,0 +1,34 @@
+package com.example.chatbotmc.benchmark;
+
+import com.example.chatbotmc.service.EmbeddingService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting a query embedding as a pgvector literal, done once per retrieval
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorStringBenchmark {
+
+    private EmbeddingService embeddingService;
+    private List<Double> embedding;
+
+    @Setup
+    public void setUp() {
+        // embeddingToVectorString uses no collaborators
+        embeddingService = new EmbeddingService(null, null);
+        embedding = BenchmarkData.embedding(42);
+    }
+
+    @Benchmark
+    public String embeddingToVectorString() {
+        return embeddingService.embeddingToVectorString(embedding);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.chatbotmc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Backend API as seen by one virtual user
+ * Each user presents its own X-Real-IP, so the per-IP rate limits apply per user as they
+ * would for real clients instead of throttling the whole run.
+ */
+final class ApiClient {
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final LatencyStats stats;
+    private final String baseUrl;
+    private final String clientIP;
+    private final Duration timeout;
+    private String token;
+
+    ApiClient(HttpClient httpClient, ObjectMapper objectMapper, LatencyStats stats, String baseUrl,
+              String clientIP, Duration timeout) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.stats = stats;
+        this.baseUrl = baseUrl;
+        this.clientIP = clientIP;
+        this.timeout = timeout;
+    }
+
+    boolean register(String username, String password) throws InterruptedException {
+        Response response = send("POST /api/auth/register", "POST", "/api/auth/register",
+            Map.of("username", username, "email", username + "@loadtest.invalid", "password", password));
+        return response.ok();
+    }
+
+    boolean login(String username, String password) throws InterruptedException {
+        Response response = send("POST /api/auth/login", "POST", "/api/auth/login",
+            Map.of("username", username, "password", password));
+        if (response.ok()) {
+            token = response.body().path("token").asText(null);
+        }
+        return token != null;
+    }
+
+    /**
+     * @return id of the conversation the chat went to, or null if the request failed
+     */
+    Long chat(String prompt, Long conversationId) throws InterruptedException {
+        Map<String, Object> body = conversationId == null
+            ? Map.of("prompt", prompt)
+            : Map.of("prompt", prompt, "conversationId", conversationId);
+        Response response = send("POST /api/llm/chat", "POST", "/api/llm/chat", body);
+        return response.ok() && response.body().hasNonNull("conversationId")
+            ? response.body().path("conversationId").asLong()
+            : null;
+    }
+
+    void listConversations() throws InterruptedException {
+        send("GET /api/conversations", "GET", "/api/conversations", null);
+    }
+
+    void messages(long conversationId) throws InterruptedException {
+        send("GET /api/conversations/{id}/messages", "GET", "/api/conversations/" + conversationId + "/messages", null);
+    }
+
+    private Response send(String endpoint, String method, String path, Object body) throws InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(timeout)
+            .header("X-Real-IP", clientIP)
+            .header("Accept", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        try {
+            if (body != null) {
+                request.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+            } else {
+                request.method(method, HttpRequest.BodyPublishers.noBody());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            stats.record(endpoint, response.statusCode(), System.nanoTime() - start);
+            boolean ok = response.statusCode() < 400;
+            JsonNode json = ok && response.body().length > 0 ? readJson(response.body()) : objectMapper.nullNode();
+            return new Response(ok, json);
+        } catch (IOException e) {
+            stats.record(endpoint, 0, System.nanoTime() - start);
+            return new Response(false, objectMapper.nullNode());
+        }
+    }
+
+    private JsonNode readJson(byte[] body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            return objectMapper.nullNode();
+        }
+    }
+
+    private record Response(boolean ok, JsonNode body) {}
+}
@@ -0,0 +1,80 @@
+package com.example.chatbotmc.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latencies and status codes per endpoint
+ * Every sample is kept; a laptop-sized run produces at most a few million of them.
+ */
+final class LatencyStats {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void record(String endpoint, int status, long latencyNanos) {
+        endpoints.computeIfAbsent(endpoint, key -> new Endpoint()).record(status, latencyNanos);
+    }
+
+    /**
+     * Summary per endpoint in insertion-independent (alphabetical) order
+     * Throughput is computed over the measured wall-clock time.
+     */
+    Map<String, Map<String, Object>> summarize(double elapsedSeconds) {
+        Map<String, Map<String, Object>> summary = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> summary.put(name, endpoint.summarize(elapsedSeconds)));
+        return summary;
+    }
+
+    private static final class Endpoint {
+
+        private final List<Long> latencies = new ArrayList<>();
+        private final Map<Integer, Integer> statuses = new TreeMap<>();
+        private int errors;
+
+        synchronized void record(int status, long latencyNanos) {
+            latencies.add(latencyNanos);
+            statuses.merge(status, 1, Integer::sum);
+            if (status == 0 || status >= 400) {
+                errors++;
+            }
+        }
+
+        synchronized Map<String, Object> summarize(double elapsedSeconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", sorted.length);
+            summary.put("errors", errors);
+            summary.put("throughputPerSecond", round(sorted.length / elapsedSeconds));
+            summary.put("p50Ms", percentileMs(sorted, 0.50));
+            summary.put("p90Ms", percentileMs(sorted, 0.90));
+            summary.put("p95Ms", percentileMs(sorted, 0.95));
+            summary.put("p99Ms", percentileMs(sorted, 0.99));
+            summary.put("maxMs", sorted.length == 0 ? 0.0 : round(sorted[sorted.length - 1] / 1e6));
+            // Status 0 counts requests that failed without a response (timeouts, refused connections)
+            Map<String, Integer> statusCounts = new LinkedHashMap<>();
+            statuses.forEach((status, count) -> statusCounts.put(String.valueOf(status), count));
+            summary.put("statuses", statusCounts);
+            return summary;
+        }
+
+        // Nearest-rank percentile
+        private static double percentileMs(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return round(sorted[Math.max(rank - 1, 0)] / 1e6);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 10) / 10.0;
+        }
+    }
+}
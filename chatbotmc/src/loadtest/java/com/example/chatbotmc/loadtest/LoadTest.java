@@ -0,0 +1,243 @@
+package com.example.chatbotmc.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed-loop load test of the chat API
+ *
+ * Each virtual user logs in and plays sessions back to back until the run ends: either
+ * sessions replayed from a query capture (--replay) or synthetic ones built from the RAG
+ * topics. Users are registered at the start and approved directly in the database, since
+ * the approval e-mail flow cannot be driven from here.
+ *
+ * Run against a backend started with SPRING_PROFILES_ACTIVE=loadtest; see the README.
+ */
+public final class LoadTest {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final String PASSWORD = "LoadTest-Password-1";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        String baseUrl = options.getOrDefault("base-url", "http://localhost:8080");
+        int users = Integer.parseInt(options.getOrDefault("users", "20"));
+        Duration duration = parseDuration(options.getOrDefault("duration", "2m"));
+        Duration rampUp = parseDuration(options.getOrDefault("ramp-up", "30s"));
+        long thinkTimeMs = Long.parseLong(options.getOrDefault("think-time-ms", "8000"));
+        long maxThinkMs = Long.parseLong(options.getOrDefault("max-think-ms", "60000"));
+        Path output = Path.of(options.getOrDefault("output", "target/loadtest-result.json"));
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        List<List<Step>> replay = options.containsKey("replay")
+            ? Sessions.fromCapture(Path.of(options.get("replay")), objectMapper, maxThinkMs)
+            : List.of();
+        if (options.containsKey("replay") && replay.isEmpty()) {
+            throw new IllegalArgumentException("No sessions in " + options.get("replay"));
+        }
+        List<String[]> topics = Sessions.topics(objectMapper);
+
+        // Run id keeps usernames unique and moves client addresses off those of the previous run,
+        // whose auth buckets may not have refilled yet
+        String runId = Long.toString(System.currentTimeMillis() % 1_000_000_000L, 36);
+        int addressOffset = new SplittableRandom().nextInt(1 << 16);
+
+        LatencyStats setupStats = new LatencyStats();
+        LatencyStats stats = new LatencyStats();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient httpClient = HttpClient.newBuilder()
+                 .executor(executor)
+                 // Browsers reach the backend over HTTP/1.1 or TLS; skip the h2c upgrade attempt
+                 .version(HttpClient.Version.HTTP_1_1)
+                 .connectTimeout(Duration.ofSeconds(10))
+                 .build()) {
+
+            System.out.printf("Registering %d users (run %s)%n", users, runId);
+            AtomicInteger registered = new AtomicInteger();
+            Instant setupStart = Instant.now();
+            try (ExecutorService setup = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < users; i++) {
+                    int user = i;
+                    setup.submit(() -> {
+                        // Register from a separate address: auth endpoints allow one request per minute per IP
+                        ApiClient client = new ApiClient(httpClient, objectMapper, setupStats, baseUrl,
+                            clientIP(19, addressOffset + user), REQUEST_TIMEOUT);
+                        if (client.register(username(runId, user), PASSWORD)) {
+                            registered.incrementAndGet();
+                        }
+                        return null;
+                    });
+                }
+            }
+            if (registered.get() == 0) {
+                throw new IllegalStateException("No user could be registered at " + baseUrl);
+            }
+            double setupSeconds = Duration.between(setupStart, Instant.now()).toMillis() / 1000.0;
+            approveUsers(options, runId);
+
+            System.out.printf("Running %d users for %s (ramp-up %s, %s sessions)%n",
+                users, duration, rampUp, replay.isEmpty() ? "synthetic" : replay.size() + " replayed");
+            Instant start = Instant.now();
+            Instant deadline = start.plus(duration);
+            try (ExecutorService runners = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < users; i++) {
+                    int user = i;
+                    long delayMs = users == 1 ? 0 : rampUp.toMillis() * user / (users - 1);
+                    ApiClient client = new ApiClient(httpClient, objectMapper, stats, baseUrl,
+                        clientIP(18, addressOffset + user), REQUEST_TIMEOUT);
+                    runners.submit(() -> {
+                        runUser(client, username(runId, user), delayMs, deadline,
+                            new SplittableRandom(user), replay, topics, thinkTimeMs, maxThinkMs);
+                        return null;
+                    });
+                }
+            }
+            double elapsedSeconds = Duration.between(start, Instant.now()).toMillis() / 1000.0;
+
+            Map<String, Map<String, Object>> summary = stats.summarize(elapsedSeconds);
+            printSummary(summary, elapsedSeconds);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("baseUrl", baseUrl);
+            result.put("users", users);
+            result.put("elapsedSeconds", elapsedSeconds);
+            result.put("sessions", replay.isEmpty() ? "synthetic" : options.get("replay"));
+            result.put("setup", setupStats.summarize(setupSeconds));
+            result.put("endpoints", summary);
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            objectMapper.writeValue(output.toFile(), result);
+            System.out.println("Results written to " + output);
+        }
+    }
+
+    private static void runUser(ApiClient client, String username, long delayMs, Instant deadline,
+                                SplittableRandom random, List<List<Step>> replay, List<String[]> topics,
+                                long thinkTimeMs, long maxThinkMs) throws InterruptedException {
+        Thread.sleep(delayMs);
+        if (!client.login(username, PASSWORD)) {
+            return;
+        }
+        while (Instant.now().isBefore(deadline)) {
+            List<Step> session = replay.isEmpty()
+                ? Sessions.synthetic(random, topics, thinkTimeMs, maxThinkMs)
+                : replay.get(random.nextInt(replay.size()));
+            // Conversation keys of the session mapped to the ids the backend assigned
+            Map<String, Long> conversations = new HashMap<>();
+            for (Step step : session) {
+                long remainingMs = Duration.between(Instant.now(), deadline).toMillis();
+                if (remainingMs <= 0) {
+                    return;
+                }
+                if (step.thinkMs() > 0) {
+                    Thread.sleep(Math.min(step.thinkMs(), remainingMs));
+                }
+                play(client, step, conversations);
+            }
+        }
+    }
+
+    private static void play(ApiClient client, Step step, Map<String, Long> conversations) throws InterruptedException {
+        Long conversationId = step.conversation() == null ? null : conversations.get(step.conversation());
+        switch (step.endpoint()) {
+            case "chat" -> {
+                // A follow-up whose first turn failed continues in a new conversation
+                Long id = client.chat(step.prompt(), step.newConversation() ? null : conversationId);
+                if (id != null && step.conversation() != null) {
+                    conversations.put(step.conversation(), id);
+                }
+            }
+            case "conversations" -> client.listConversations();
+            case "messages" -> {
+                // Conversations started before the captured session have no id here
+                if (conversationId != null) {
+                    client.messages(conversationId);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Approve this run's users the way AuthService.approveUser does
+     */
+    private static void approveUsers(Map<String, String> options, String runId) throws SQLException {
+        String url = options.getOrDefault("jdbc-url",
+            System.getenv().getOrDefault("DATABASE_URL", "jdbc:postgresql://localhost:5432/chatbot_db"));
+        String user = options.getOrDefault("jdbc-user", System.getenv().getOrDefault("DATABASE_USERNAME", "postgres"));
+        String password = options.getOrDefault("jdbc-password", System.getenv().getOrDefault("DATABASE_PASSWORD", ""));
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             PreparedStatement statement = connection.prepareStatement(
+                 "UPDATE users SET approved_by_admin = true, approval_token = NULL WHERE username LIKE ?")) {
+            statement.setString(1, "lt" + runId + "\\_%");
+            System.out.printf("Approved %d users%n", statement.executeUpdate());
+        }
+    }
+
+    private static String username(String runId, int user) {
+        return "lt" + runId + "_" + user;
+    }
+
+    // Addresses from 198.18.0.0/15, reserved for benchmarking (RFC 2544)
+    private static String clientIP(int secondOctet, int index) {
+        int host = index & 0xffff;
+        return "198." + secondOctet + "." + (host >>> 8) + "." + (host & 0xff);
+    }
+
+    private static void printSummary(Map<String, Map<String, Object>> summary, double elapsedSeconds) {
+        System.out.printf("%nCompleted in %.1f s%n", elapsedSeconds);
+        System.out.printf("%-38s %8s %7s %8s %8s %8s %8s %8s %8s%n",
+            "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p95 ms", "p99 ms", "max ms");
+        summary.forEach((endpoint, row) -> System.out.printf("%-38s %8s %7s %8s %8s %8s %8s %8s %8s%n",
+            endpoint, row.get("requests"), row.get("errors"), row.get("throughputPerSecond"),
+            row.get("p50Ms"), row.get("p90Ms"), row.get("p95Ms"), row.get("p99Ms"), row.get("maxMs")));
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    // 90s, 5m, 1h or ISO-8601 (PT5M)
+    private static Duration parseDuration(String value) {
+        if (value.startsWith("P") || value.startsWith("p")) {
+            return Duration.parse(value);
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            default -> throw new IllegalArgumentException("Unknown duration " + value);
+        };
+    }
+}
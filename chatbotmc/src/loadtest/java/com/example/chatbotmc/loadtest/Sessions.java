@@ -0,0 +1,140 @@
+package com.example.chatbotmc.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Sources of sessions to replay: files written by the app's query capture, or synthetic ones
+ */
+final class Sessions {
+
+    // A pause longer than this starts a new session for the same user
+    private static final long SESSION_GAP_MS = 30 * 60 * 1000L;
+
+    private static final String[] QUESTIONS = {
+        "How do I get started with %s in %s?",
+        "What is the best way to automate %s?",
+        "Which machines from %s need power and how much?",
+        "How do I craft the first tier items of %s?",
+        "Why is my %s setup not working?",
+        "Can you explain how %s interacts with other mods in %s?",
+    };
+
+    private static final String[] FOLLOW_UPS = {
+        "Can you give me the exact recipe?",
+        "What should I do after that?",
+        "Is there a cheaper alternative?",
+        "How does that scale in the late game?",
+    };
+
+    private Sessions() {
+    }
+
+    /**
+     * Sessions from a capture file, one per user and uninterrupted stretch of activity
+     * Think times are the recorded gaps, capped at maxThinkMs.
+     */
+    static List<List<Step>> fromCapture(Path file, ObjectMapper objectMapper, long maxThinkMs) throws IOException {
+        Map<String, List<JsonNode>> byUser = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode record = objectMapper.readTree(line);
+                byUser.computeIfAbsent(record.path("session").asText(), key -> new ArrayList<>()).add(record);
+            }
+        }
+
+        List<List<Step>> sessions = new ArrayList<>();
+        for (List<JsonNode> records : byUser.values()) {
+            List<Step> session = new ArrayList<>();
+            long previousAt = -1;
+            for (JsonNode record : records) {
+                long at = record.path("at").asLong();
+                long gap = previousAt < 0 ? 0 : at - previousAt;
+                if (gap > SESSION_GAP_MS && !session.isEmpty()) {
+                    sessions.add(session);
+                    session = new ArrayList<>();
+                    gap = 0;
+                }
+                previousAt = at;
+                session.add(new Step(
+                    record.path("endpoint").asText(),
+                    record.hasNonNull("conversation") ? record.path("conversation").asText() : null,
+                    record.path("newConversation").asBoolean(false),
+                    record.hasNonNull("prompt") ? record.path("prompt").asText() : null,
+                    Math.min(gap, maxThinkMs)
+                ));
+            }
+            if (!session.isEmpty()) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Topics (mod, modpack) taken from the RAG source data so prompts retrieve real chunks
+     */
+    static List<String[]> topics(ObjectMapper objectMapper) throws IOException {
+        Set<List<String>> topics = new LinkedHashSet<>();
+        try (InputStream data = Sessions.class.getResourceAsStream("/data.json")) {
+            if (data != null) {
+                for (JsonNode chunk : objectMapper.readTree(data)) {
+                    JsonNode metadata = chunk.path("metadata");
+                    String mod = metadata.path("mod_name").asText("");
+                    String modpack = metadata.path("modpack").asText("");
+                    if (!mod.isEmpty() && !modpack.isEmpty()) {
+                        topics.add(List.of(mod, modpack));
+                    }
+                }
+            }
+        }
+        if (topics.isEmpty()) {
+            topics.add(List.of("Dragon Mount Legacy", "BetterMC"));
+        }
+        return topics.stream().map(topic -> topic.toArray(String[]::new)).toList();
+    }
+
+    /**
+     * A user opening the app: list conversations, chat for a few turns in a new conversation,
+     * then reread it. Think times are log-normal around medianThinkMs.
+     */
+    static List<Step> synthetic(SplittableRandom random, List<String[]> topics, long medianThinkMs, long maxThinkMs) {
+        String[] topic = topics.get(random.nextInt(topics.size()));
+        String conversation = "c" + random.nextInt(Integer.MAX_VALUE);
+        int turns = 1 + random.nextInt(4);
+
+        List<Step> session = new ArrayList<>();
+        session.add(new Step("conversations", null, false, null, 0));
+        for (int turn = 0; turn < turns; turn++) {
+            String prompt = turn == 0
+                ? QUESTIONS[random.nextInt(QUESTIONS.length)].formatted(topic[0], topic[1])
+                : FOLLOW_UPS[random.nextInt(FOLLOW_UPS.length)];
+            session.add(new Step("chat", conversation, turn == 0, prompt, think(random, medianThinkMs, maxThinkMs)));
+        }
+        session.add(new Step("messages", conversation, false, null, think(random, medianThinkMs / 4, maxThinkMs)));
+        return session;
+    }
+
+    private static long think(SplittableRandom random, long medianMs, long maxMs) {
+        // Log-normal with sigma 0.6: most pauses within 0.4x to 2.5x of the median
+        double sample = medianMs * Math.exp(0.6 * random.nextGaussian());
+        return Math.min(Math.round(sample), maxMs);
+    }
+}
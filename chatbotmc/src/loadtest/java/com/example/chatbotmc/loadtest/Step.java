@@ -0,0 +1,18 @@
+package com.example.chatbotmc.loadtest;
+
+/**
+ * One request of a session, preceded by a think time
+ *
+ * @param endpoint        QueryCapture endpoint name: chat, conversations or messages
+ * @param conversation    conversation key within the session, null when not tied to one
+ * @param newConversation whether a chat starts a new conversation
+ * @param prompt          chat prompt, null for other endpoints
+ * @param thinkMs         pause before the request
+ */
+record Step(
+    String endpoint,
+    String conversation,
+    boolean newConversation,
+    String prompt,
+    long thinkMs
+) {}
@@ -0,0 +1,47 @@
+package com.example.chatbotmc.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Application caches
+ * Entity caching (User, Conversation) is Hibernate's second-level cache, configured in
+ * application.properties and sized in application.conf. This manager holds the caches
+ * of query results that Hibernate does not cover.
+ */
+@Configuration
+public class CacheConfig {
+
+    // Spring cache of each user's first page of conversations
+    public static final String CONVERSATION_LISTS = "conversationLists";
+
+    // Rate limit buckets per client IP, registered by RateLimitInterceptor for statistics
+    public static final String RATE_LIMIT_BUCKETS = "rateLimitBuckets";
+    public static final String AUTH_RATE_LIMIT_BUCKETS = "authRateLimitBuckets";
+
+    // Hibernate second-level cache regions
+    public static final String USERS_REGION = "users";
+    public static final String CONVERSATIONS_REGION = "conversations";
+
+    @Bean
+    public CaffeineCacheManager cacheManager(
+            @Value("${cache.conversation-lists.max-size:10000}") long maxSize,
+            @Value("${cache.conversation-lists.ttl-seconds:300}") long ttlSeconds
+    ) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats());
+        // Fixed set of caches; an unknown cache name returns null instead of creating a new cache
+        cacheManager.setCacheNames(List.of(CONVERSATION_LISTS));
+        cacheManager.setAllowNullValues(false);
+        return cacheManager;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.chatbotmc.config;
+
+import io.github.bucket4j.distributed.jdbc.BucketTableSettings;
+import io.github.bucket4j.distributed.jdbc.PrimaryKeyMapper;
+import io.github.bucket4j.distributed.jdbc.SQLProxyConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.postgresql.PostgreSQLSelectForUpdateBasedProxyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Cluster-wide rate limiting (rate-limit.store=postgres)
+ * Bucket state is kept in the rate_limit_buckets table and updated with
+ * SELECT ... FOR UPDATE, so every backend instance draws from the same buckets.
+ * RateLimitInterceptor still caches the bucket proxies locally and lets general
+ * buckets consume a few tokens between database round-trips.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rate-limit.store", havingValue = "postgres")
+public class DistributedRateLimitConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimitConfig.class);
+
+    static final String TABLE = "rate_limit_buckets";
+    // Advisory lock key shared by every instance; "ratelim" in ASCII
+    static final long SCHEMA_LOCK_KEY = 0x72617465_6c696dL;
+
+    private static final List<String> SCHEMA = List.of(
+        """
+        CREATE TABLE IF NOT EXISTS rate_limit_buckets (
+            id VARCHAR(255) PRIMARY KEY,
+            state BYTEA,
+            updated_at TIMESTAMP NOT NULL DEFAULT now()
+        )
+        """,
+        """
+        CREATE OR REPLACE FUNCTION touch_rate_limit_bucket() RETURNS trigger AS $$
+        BEGIN
+            NEW.updated_at = now();
+            RETURN NEW;
+        END
+        $$ LANGUAGE plpgsql
+        """,
+        """
+        CREATE OR REPLACE TRIGGER rate_limit_buckets_touch
+        BEFORE UPDATE ON rate_limit_buckets
+        FOR EACH ROW EXECUTE FUNCTION touch_rate_limit_bucket()
+        """,
+        "CREATE INDEX IF NOT EXISTS idx_rate_limit_buckets_updated ON rate_limit_buckets (updated_at)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${rate-limit.postgres.retention-minutes:10}")
+    private int retentionMinutes;
+
+    public DistributedRateLimitConfig(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Bean
+    public ProxyManager<String> rateLimitProxyManager(DataSource dataSource) {
+        createTable(jdbcTemplate);
+        return createProxyManager(dataSource);
+    }
+
+    /**
+     * Delete buckets nobody has touched for rate-limit.postgres.retention-minutes.
+     * They have refilled long ago, so a new bucket in their place behaves the same.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.postgres.cleanup-interval-ms:60000}")
+    public void deleteIdleBuckets() {
+        int deleted = jdbcTemplate.update(
+            "DELETE FROM " + TABLE + " WHERE updated_at < now() - make_interval(mins => ?)",
+            Math.max(retentionMinutes, 1)
+        );
+        if (deleted > 0) {
+            logger.debug("Deleted {} idle rate limit buckets", deleted);
+        }
+    }
+
+    static ProxyManager<String> createProxyManager(DataSource dataSource) {
+        SQLProxyConfiguration<String> configuration = SQLProxyConfiguration.builder()
+            .withTableSettings(BucketTableSettings.customSettings(TABLE, "id", "state"))
+            .withPrimaryKeyMapper(PrimaryKeyMapper.STRING)
+            .build(dataSource);
+        return new PostgreSQLSelectForUpdateBasedProxyManager<>(configuration);
+    }
+
+    /**
+     * bucket4j only reads and writes id and state; updated_at is maintained by a
+     * trigger so idle rows can be found without decoding the serialized state.
+     * Runs in one transaction holding an advisory lock, so instances starting together
+     * create the schema one after another: CREATE OR REPLACE of the same function or
+     * trigger at the same moment fails with "tuple concurrently updated" (PostgreSQL 14+).
+     */
+    static void createTable(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                // Released when the transaction ends
+                statement.execute("SELECT pg_advisory_xact_lock(" + SCHEMA_LOCK_KEY + ")");
+                for (String ddl : SCHEMA) {
+                    statement.execute(ddl);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.chatbotmc.config;
 
+import com.example.chatbotmc.llm.gemini.GeminiSimulator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -8,10 +11,14 @@ import org.springframework.web.reactive.function.client.WebClient;
 public class GeminiConfig {
 
     @Bean
-    public WebClient geminiWebClient() {
+    public WebClient geminiWebClient(
+            @Value("${gemini.base-url:https://generativelanguage.googleapis.com/}") String baseUrl,
+            ObjectProvider<GeminiSimulator> simulator
+    ) {
+        // The gemini-sim profile replaces the real API with the local simulator
+        GeminiSimulator localSimulator = simulator.getIfAvailable();
         return WebClient.builder()
-                .baseUrl("https://generativelanguage.googleapis.com/")
+                .baseUrl(localSimulator != null ? localSimulator.baseUrl() : baseUrl)
                 .build();
     }
 }
-
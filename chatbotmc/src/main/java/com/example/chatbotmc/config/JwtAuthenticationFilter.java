@@ -1,5 +1,6 @@
 package com.example.chatbotmc.config;
 
+import com.example.chatbotmc.dto.AuthenticatedUser;
 import com.example.chatbotmc.service.JwtService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -13,7 +14,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Collections;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -41,22 +42,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String token = authHeader.substring(7);
         
         try {
-            if (jwtService.validateToken(token)) {
-                String username = jwtService.extractUsername(token);
-                String role = jwtService.extractRole(token);
-                
-                // Use the actual role from the JWT token
-                String authority = "ROLE_" + (role != null ? role : "USER");
-                
-                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        username,
-                        null,
-                        Collections.singletonList(new SimpleGrantedAuthority(authority))
-                );
-                
-                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authentication);
-            }
+            // Parse and verify once; controllers get the result as the principal
+            AuthenticatedUser user = jwtService.authenticate(token);
+            
+            // Use the actual role from the JWT token
+            String authority = "ROLE_" + (user.role() != null ? user.role() : "USER");
+            
+            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                    user,
+                    null,
+                    List.of(new SimpleGrantedAuthority(authority))
+            );
+            
+            authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authentication);
         } catch (Exception e) {
             // Invalid token - just continue without authentication
             logger.warn("JWT validation failed: " + e.getMessage());
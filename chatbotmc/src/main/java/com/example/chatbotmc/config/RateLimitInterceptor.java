@@ -1,28 +1,53 @@
 package com.example.chatbotmc.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
+import io.github.bucket4j.BucketConfiguration;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.optimization.DelayParameters;
+import io.github.bucket4j.distributed.proxy.optimization.Optimizations;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import java.time.Duration;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.function.Function;
 
 /**
  * Rate limiting interceptor to prevent API abuse
  * Limits requests per IP address using token bucket algorithm
  * Stricter limits for authentication endpoints to prevent brute force attacks
+ *
+ * Buckets live in bounded Caffeine caches (lock-striped internally) so a flood of
+ * distinct source addresses cannot grow the heap without limit. A bucket idle for its
+ * whole refill period is full again, so expiring it after at least that long is
+ * indistinguishable from keeping it. Hit, size and eviction counts are reported by
+ * GET /api/admin/cache-stats.
+ *
+ * With rate-limit.store=postgres the buckets are shared by all instances through
+ * DistributedRateLimitConfig. General buckets then consume up to
+ * rate-limit.postgres.sync-tokens tokens locally before synchronizing, so most requests
+ * cost no database write; auth buckets synchronize on every request to stay exact.
+ * While the database cannot be reached, each instance falls back to local buckets of the
+ * same size, so limits are enforced per instance rather than dropped.
  */
 @Component
 public class RateLimitInterceptor implements HandlerInterceptor {
     
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitInterceptor.class);
+    
     // Separate caches for different rate limit tiers
-    private final Map<String, Bucket> generalCache = new ConcurrentHashMap<>();
-    private final Map<String, Bucket> authCache = new ConcurrentHashMap<>();
+    private final Cache<String, Bucket> generalCache;
+    private final Cache<String, Bucket> authCache;
     
     // Default: 100 requests per minute per IP
     private static final int REQUESTS_PER_MINUTE = 100;
@@ -30,6 +55,40 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     // Auth endpoints: 1 request per minute per IP (stricter to prevent brute force)
     private static final int AUTH_REQUESTS_PER_MINUTE = 1;
     
+    // Time for an empty bucket of either tier to refill completely
+    private static final Duration REFILL_PERIOD = Duration.ofMinutes(1);
+    
+    // Shared bucket store; null when buckets are local to this instance
+    private final ProxyManager<String> proxyManager;
+    
+    // Local buckets standing in for shared ones while the store fails, keyed like the shared ones
+    private final Cache<String, Bucket> fallbackCache;
+    private final DelayParameters syncParameters;
+    
+    public RateLimitInterceptor(
+            CaffeineCacheManager cacheManager,
+            @Value("${rate-limit.max-buckets:100000}") long maxBuckets,
+            @Value("${rate-limit.idle-expiry-seconds:120}") long idleExpirySeconds,
+            Optional<ProxyManager<String>> proxyManager,
+            @Value("${rate-limit.postgres.sync-tokens:5}") long syncTokens,
+            @Value("${rate-limit.postgres.sync-interval-ms:500}") long syncIntervalMs
+    ) {
+        this.proxyManager = proxyManager.orElse(null);
+        this.syncParameters = new DelayParameters(syncTokens, Duration.ofMillis(syncIntervalMs));
+        
+        // Never expire a bucket that might still be refilling, or limits would reset early
+        Duration idleExpiry = Duration.ofSeconds(idleExpirySeconds);
+        if (idleExpiry.compareTo(REFILL_PERIOD) < 0) {
+            idleExpiry = REFILL_PERIOD;
+        }
+        
+        this.generalCache = createBucketCache(maxBuckets, idleExpiry);
+        this.authCache = createBucketCache(maxBuckets, idleExpiry);
+        this.fallbackCache = createBucketCache(maxBuckets, idleExpiry);
+        cacheManager.registerCustomCache(CacheConfig.RATE_LIMIT_BUCKETS, castToObjectCache(generalCache));
+        cacheManager.registerCustomCache(CacheConfig.AUTH_RATE_LIMIT_BUCKETS, castToObjectCache(authCache));
+    }
+    
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         String clientIP = getClientIP(request);
@@ -56,9 +115,9 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     
     private boolean handleAuthRateLimit(String clientIP, HttpServletResponse response) throws Exception {
         String key = "auth:" + clientIP;
-        Bucket bucket = authCache.computeIfAbsent(key, k -> createAuthBucket());
+        Bucket bucket = authCache.get(key, this::createAuthBucket);
         
-        if (bucket.tryConsume(1)) {
+        if (tryConsume(bucket, key, k -> localBucket(authLimit()))) {
             return true;
         } else {
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
@@ -69,9 +128,9 @@ public class RateLimitInterceptor implements HandlerInterceptor {
     }
     
     private boolean handleGeneralRateLimit(String clientIP, HttpServletResponse response) throws Exception {
-        Bucket bucket = generalCache.computeIfAbsent(clientIP, k -> createGeneralBucket());
+        Bucket bucket = generalCache.get(clientIP, this::createGeneralBucket);
         
-        if (bucket.tryConsume(1)) {
+        if (tryConsume(bucket, clientIP, k -> localBucket(generalLimit()))) {
             return true;
         } else {
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
@@ -81,26 +140,71 @@ public class RateLimitInterceptor implements HandlerInterceptor {
         }
     }
     
-    private Bucket createGeneralBucket() {
-        Bandwidth limit = Bandwidth.builder()
+    /**
+     * A shared bucket that cannot be reached is replaced by the local fallback bucket for its key,
+     * rather than letting every request through
+     */
+    private boolean tryConsume(Bucket bucket, String key, Function<String, Bucket> createFallback) {
+        try {
+            return bucket.tryConsume(1);
+        } catch (RuntimeException e) {
+            logger.warn("Rate limit check for {} failed, limiting locally: {}", key, e.getMessage());
+            return fallbackCache.get(key, createFallback).tryConsume(1);
+        }
+    }
+    
+    private Bucket createGeneralBucket(String key) {
+        Bandwidth limit = generalLimit();
+        if (proxyManager != null) {
+            return proxyManager.builder()
+                .withOptimization(Optimizations.delaying(syncParameters))
+                .build(key, () -> BucketConfiguration.builder().addLimit(limit).build());
+        }
+        return localBucket(limit);
+    }
+    
+    private Bucket createAuthBucket(String key) {
+        Bandwidth limit = authLimit();
+        if (proxyManager != null) {
+            return proxyManager.builder()
+                .build(key, () -> BucketConfiguration.builder().addLimit(limit).build());
+        }
+        return localBucket(limit);
+    }
+    
+    private static Bandwidth generalLimit() {
+        return Bandwidth.builder()
             .capacity(REQUESTS_PER_MINUTE)
-            .refillGreedy(REQUESTS_PER_MINUTE, Duration.ofMinutes(1))
-            .build();
-        return Bucket.builder()
-            .addLimit(limit)
+            .refillGreedy(REQUESTS_PER_MINUTE, REFILL_PERIOD)
             .build();
     }
     
-    private Bucket createAuthBucket() {
-        Bandwidth limit = Bandwidth.builder()
+    private static Bandwidth authLimit() {
+        return Bandwidth.builder()
             .capacity(AUTH_REQUESTS_PER_MINUTE)
-            .refillGreedy(AUTH_REQUESTS_PER_MINUTE, Duration.ofMinutes(1))
+            .refillGreedy(AUTH_REQUESTS_PER_MINUTE, REFILL_PERIOD)
             .build();
+    }
+    
+    private static Bucket localBucket(Bandwidth limit) {
         return Bucket.builder()
             .addLimit(limit)
             .build();
     }
     
+    private static Cache<String, Bucket> createBucketCache(long maxBuckets, Duration idleExpiry) {
+        return Caffeine.newBuilder()
+            .maximumSize(maxBuckets)
+            .expireAfterAccess(idleExpiry)
+            .recordStats()
+            .build();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Cache<Object, Object> castToObjectCache(Cache<String, Bucket> cache) {
+        return (Cache<Object, Object>) (Cache<?, ?>) cache;
+    }
+    
     /**
      * Extract client IP address from request
      * Checks multiple headers and validates against spoofing
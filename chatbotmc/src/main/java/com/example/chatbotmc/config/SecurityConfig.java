@@ -1,5 +1,6 @@
 package com.example.chatbotmc.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -45,8 +46,13 @@ public class SecurityConfig {
                 )
             )
             .authorizeHttpRequests(auth -> auth
+                // Streamed responses finish in an async dispatch, which carries no JWT of its own;
+                // the request was authorized when it was first dispatched
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/test").permitAll()
+                // Actuator is served on management.server.port, which is not exposed publicly
+                .requestMatchers("/actuator/**").permitAll()
                 .requestMatchers("/api/llm/**").authenticated()
                 .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 .requestMatchers("/api/conversations/**").authenticated()
@@ -71,6 +77,8 @@ public class SecurityConfig {
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         // Only allow necessary headers - restrict from wildcard for security
         configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Accept", "Origin", "X-Requested-With"));
+        // Keyset pagination cursor for the conversation endpoints, stage timings of chat requests
+        configuration.setExposedHeaders(Arrays.asList("X-Next-Cursor", "Server-Timing"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L); // Cache preflight for 1 hour
         
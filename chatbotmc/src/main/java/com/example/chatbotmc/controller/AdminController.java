@@ -1,11 +1,18 @@
 package com.example.chatbotmc.controller;
 
+import com.example.chatbotmc.observability.FlightRecorderService;
+import com.example.chatbotmc.retrieval.EmbeddingDimensionMigration;
+import com.example.chatbotmc.retrieval.RetrievalEvaluator;
+import com.example.chatbotmc.retrieval.VectorIndexManager;
+import com.example.chatbotmc.service.CacheStatsService;
 import com.example.chatbotmc.service.RagDataLoader;
+import com.example.chatbotmc.service.RagSnapshotService;
 import com.example.chatbotmc.service.RagService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.file.Path;
 import java.util.Map;
 
 /**
@@ -19,10 +26,25 @@ public class AdminController {
     
     private final RagDataLoader ragDataLoader;
     private final RagService ragService;
+    private final CacheStatsService cacheStatsService;
+    private final FlightRecorderService flightRecorderService;
+    private final RetrievalEvaluator retrievalEvaluator;
+    private final RagSnapshotService ragSnapshotService;
+    private final VectorIndexManager vectorIndexManager;
+    private final EmbeddingDimensionMigration embeddingDimensionMigration;
     
-    public AdminController(RagDataLoader ragDataLoader, RagService ragService) {
+    public AdminController(RagDataLoader ragDataLoader, RagService ragService, CacheStatsService cacheStatsService,
+                           FlightRecorderService flightRecorderService, RetrievalEvaluator retrievalEvaluator,
+                           RagSnapshotService ragSnapshotService, VectorIndexManager vectorIndexManager,
+                           EmbeddingDimensionMigration embeddingDimensionMigration) {
         this.ragDataLoader = ragDataLoader;
         this.ragService = ragService;
+        this.cacheStatsService = cacheStatsService;
+        this.flightRecorderService = flightRecorderService;
+        this.retrievalEvaluator = retrievalEvaluator;
+        this.ragSnapshotService = ragSnapshotService;
+        this.vectorIndexManager = vectorIndexManager;
+        this.embeddingDimensionMigration = embeddingDimensionMigration;
     }
     
     /**
@@ -46,6 +68,77 @@ public class AdminController {
         }
     }
     
+    /**
+     * Re-embed chunks produced by a different embedding model than the active backend
+     * POST /api/admin/reindex-embeddings
+     */
+    @PostMapping("/reindex-embeddings")
+    public ResponseEntity<Map<String, String>> reindexEmbeddings() {
+        try {
+            int reindexed = ragDataLoader.reindexEmbeddings();
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "message", "Re-embedded " + reindexed + " chunks",
+                "stats", ragDataLoader.getLoadingStats()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Write the chunks and embeddings to the snapshot file (rag.snapshot.path) on the server
+     * Copy it to new nodes so their RAG load needs no embedding calls.
+     * POST /api/admin/rag-snapshot/export
+     */
+    @PostMapping("/rag-snapshot/export")
+    public ResponseEntity<?> exportSnapshot() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "snapshot", ragSnapshotService.export()
+            ));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Add the snapshot's chunks missing from the database
+     * POST /api/admin/rag-snapshot/import
+     */
+    @PostMapping("/rag-snapshot/import")
+    public ResponseEntity<?> importSnapshot() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "snapshot", ragDataLoader.importSnapshot(),
+                "stats", ragDataLoader.getLoadingStats()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
     /**
      * Get RAG data loading statistics
      * GET /api/admin/rag-stats
@@ -62,7 +155,217 @@ public class AdminController {
             "chunks_with_embeddings", stats.chunksWithEmbeddings(),
             "default_top_k", stats.defaultTopK(),
             "similarity_threshold", stats.similarityThreshold(),
-            "rag_available", ragService.isRagAvailable()
+            "rag_available", ragService.isRagAvailable(),
+            "rag_state", ragService.getReadiness(),
+            "filter_index", ragService.getFilterIndexStats()
         ));
     }
+    
+    /**
+     * Type, validity, size and last build of the pgvector index on rag_chunk.embedding,
+     * and the search setting in use
+     * GET /api/admin/vector-index
+     */
+    @GetMapping("/vector-index")
+    public ResponseEntity<?> getVectorIndex() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "index", vectorIndexManager.status()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Build the configured index concurrently and swap it in; searches continue meanwhile
+     * POST /api/admin/vector-index/rebuild
+     */
+    @PostMapping("/vector-index/rebuild")
+    public ResponseEntity<?> rebuildVectorIndex() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "index", vectorIndexManager.rebuild()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Measure recall and latency over a range of ef_search/probes values and keep the smallest
+     * one meeting rag.index.recall-target and rag.index.latency-target-ms
+     * POST /api/admin/vector-index/calibrate
+     */
+    @PostMapping("/vector-index/calibrate")
+    public ResponseEntity<?> calibrateVectorIndex() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "calibration", vectorIndexManager.calibrate()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Dimension of the vector column in use, the configured one, and progress of the migration between them
+     * GET /api/admin/embedding-dimensions
+     */
+    @GetMapping("/embedding-dimensions")
+    public ResponseEntity<?> getEmbeddingDimensions() {
+        return ResponseEntity.ok(Map.of(
+            "status", "success",
+            "migration", embeddingDimensionMigration.status()
+        ));
+    }
+    
+    /**
+     * Re-embed the remaining chunks at rag.embedding-dimensions and swap the new column in,
+     * e.g. after a migration stopped on failed embeddings; retrieval keeps using the old column meanwhile
+     * POST /api/admin/embedding-dimensions/migrate
+     */
+    @PostMapping("/embedding-dimensions/migrate")
+    public ResponseEntity<?> migrateEmbeddingDimensions() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "migration", embeddingDimensionMigration.migrate()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Hit ratios of the entity and query-result caches
+     * GET /api/admin/cache-stats
+     */
+    @GetMapping("/cache-stats")
+    public ResponseEntity<?> getCacheStats() {
+        return ResponseEntity.ok(Map.of(
+            "status", "success",
+            "caches", cacheStatsService.getStats()
+        ));
+    }
+    
+    /**
+     * Start a Java Flight Recorder recording, including the chatbotmc.* RAG and LLM events
+     * POST /api/admin/jfr/start?settings=profile
+     */
+    @PostMapping("/jfr/start")
+    public ResponseEntity<?> startRecording(@RequestParam(defaultValue = "profile") String settings) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "recording", flightRecorderService.start(settings)
+            ));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * Stop the recording and dump it to a file under jfr.dump-dir on the server
+     * POST /api/admin/jfr/stop
+     */
+    @PostMapping("/jfr/stop")
+    public ResponseEntity<Map<String, String>> stopRecording() {
+        try {
+            Path file = flightRecorderService.stop();
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "file", file.toString()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * State of the current recording
+     * GET /api/admin/jfr/status
+     */
+    @GetMapping("/jfr/status")
+    public ResponseEntity<?> getRecordingStatus() {
+        return ResponseEntity.ok(Map.of(
+            "status", "success",
+            "recording", flightRecorderService.status()
+        ));
+    }
+    
+    /**
+     * Recall@k, MRR, latency and memory of each retrieval backend on the labeled query set
+     * The report is also written to a file under rag.eval.report-dir on the server.
+     * Embeds every evaluation query once, which uses embedding API quota.
+     * POST /api/admin/retrieval/evaluate?k=10
+     */
+    @PostMapping("/retrieval/evaluate")
+    public ResponseEntity<?> evaluateRetrieval(@RequestParam(defaultValue = "10") int k) {
+        if (k < 1 || k > 100) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "k must be between 1 and 100"
+            ));
+        }
+        try {
+            RetrievalEvaluator.Evaluation evaluation = retrievalEvaluator.evaluate(k);
+            return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "file", evaluation.file().toString(),
+                "report", evaluation.report()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "status", "error",
+                "message", e.getMessage()
+            ));
+        }
+    }
 }
@@ -1,63 +1,97 @@
 package com.example.chatbotmc.controller;
 
-import com.example.chatbotmc.dto.ChatMessageDTO;
+import com.example.chatbotmc.dto.AuthenticatedUser;
 import com.example.chatbotmc.dto.ConversationDTO;
+import com.example.chatbotmc.dto.KeysetPage;
+import com.example.chatbotmc.observability.QueryCapture;
 import com.example.chatbotmc.service.ConversationService;
-import com.example.chatbotmc.service.JwtService;
-import org.springframework.http.HttpStatus;
+import jakarta.validation.constraints.Min;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
-
-import java.util.List;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.json.JsonMapper;
 
 @RestController
 @RequestMapping("/api/conversations")
+@Validated
 public class ConversationController {
     
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
     private final ConversationService conversationService;
-    private final JwtService jwtService;
+    private final JsonMapper jsonMapper;
+    private final QueryCapture queryCapture;
+    
+    @Value("${pagination.default-page-size:50}")
+    private int defaultPageSize;
     
-    public ConversationController(ConversationService conversationService, JwtService jwtService) {
+    @Value("${pagination.max-page-size:200}")
+    private int maxPageSize;
+    
+    public ConversationController(ConversationService conversationService, JsonMapper jsonMapper,
+                                  QueryCapture queryCapture) {
         this.conversationService = conversationService;
-        this.jwtService = jwtService;
+        this.jsonMapper = jsonMapper;
+        this.queryCapture = queryCapture;
     }
     
+    /**
+     * Conversations, most recently updated first, one keyset page at a time
+     * GET /api/conversations?limit=50&cursor=...
+     * The cursor for the next page is returned in the X-Next-Cursor header
+     */
     @GetMapping
-    public ResponseEntity<List<ConversationDTO>> getUserConversations(
-            @RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserId(authHeader);
-        return ResponseEntity.ok(conversationService.getUserConversations(userId));
+    public ResponseEntity<StreamingResponseBody> getUserConversations(
+            @RequestParam(required = false) @Min(1) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        Long userId = user.userId();
+        queryCapture.record(QueryCapture.CONVERSATIONS, userId, null, false, null);
+        return streamPage(conversationService.getUserConversations(userId, pageSize(limit), cursor));
     }
     
+    /**
+     * Messages in chronological order, newest page first
+     * GET /api/conversations/{id}/messages?limit=50&cursor=...
+     * The cursor for the page of older messages is returned in the X-Next-Cursor header
+     */
     @GetMapping("/{conversationId}/messages")
-    public ResponseEntity<List<ChatMessageDTO>> getConversationMessages(
+    public ResponseEntity<StreamingResponseBody> getConversationMessages(
             @PathVariable Long conversationId,
-            @RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserId(authHeader);
-        return ResponseEntity.ok(conversationService.getConversationMessages(conversationId, userId));
+            @RequestParam(required = false) @Min(1) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        Long userId = user.userId();
+        queryCapture.record(QueryCapture.MESSAGES, userId, conversationId, false, null);
+        return streamPage(conversationService.getConversationMessages(conversationId, userId, pageSize(limit), cursor));
     }
     
     @PostMapping
     public ResponseEntity<ConversationDTO> createConversation(
             @RequestBody CreateConversationRequest request,
-            @RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserId(authHeader);
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        Long userId = user.userId();
         var conversation = conversationService.createConversation(userId, request.title());
         return ResponseEntity.ok(new ConversationDTO(
             conversation.getId(),
             conversation.getTitle(),
             conversation.getCreatedAt(),
             conversation.getUpdatedAt(),
-            0
+            0,
+            null
         ));
     }
     
     @DeleteMapping("/{conversationId}")
     public ResponseEntity<Void> deleteConversation(
             @PathVariable Long conversationId,
-            @RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserId(authHeader);
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        Long userId = user.userId();
         conversationService.deleteConversation(conversationId, userId);
         return ResponseEntity.noContent().build();
     }
@@ -66,21 +100,36 @@ public class ConversationController {
     public ResponseEntity<Void> updateTitle(
             @PathVariable Long conversationId,
             @RequestBody UpdateTitleRequest request,
-            @RequestHeader("Authorization") String authHeader) {
-        Long userId = extractUserId(authHeader);
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        Long userId = user.userId();
         conversationService.updateConversationTitle(conversationId, userId, request.title());
         return ResponseEntity.ok().build();
     }
     
+    private int pageSize(Integer limit) {
+        return limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+    }
+    
     /**
-     * Safely extracts userId from Authorization header with proper validation
+     * Write the page items as a JSON array straight to the response stream,
+     * element by element, instead of buffering the whole serialized page
      */
-    private Long extractUserId(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ") || authHeader.length() <= 7) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid authorization header");
+    private ResponseEntity<StreamingResponseBody> streamPage(KeysetPage<?> page) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = jsonMapper.createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (Object item : page.items()) {
+                    jsonMapper.writeValue(generator, item);
+                }
+                generator.writeEndArray();
+            }
+        };
+        
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
         }
-        String token = authHeader.substring(7);
-        return jwtService.extractUserId(token);
+        return response.body(body);
     }
 }
 
@@ -1,66 +1,93 @@
 package com.example.chatbotmc.controller;
 
-import com.example.chatbotmc.dto.ChatRequest;
+import com.example.chatbotmc.dto.AuthenticatedUser;
+import com.example.chatbotmc.dto.ChatRequestWithRag;
 import com.example.chatbotmc.dto.ChatResponse;
-import com.example.chatbotmc.service.JwtService;
+import com.example.chatbotmc.observability.QueryCapture;
+import com.example.chatbotmc.observability.StageTimer;
+import com.example.chatbotmc.retrieval.RagFilter;
 import com.example.chatbotmc.service.LlmService;
+import com.example.chatbotmc.service.RagOptions;
 import com.example.chatbotmc.service.UserService;
 import jakarta.validation.Valid;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api/llm")
 public class LlmController {
 
     private final LlmService llmService;
-    private final JwtService jwtService;
     private final UserService userService;
+    private final QueryCapture queryCapture;
+    private final boolean serverTimingEnabled;
 
-    public LlmController(LlmService llmService, JwtService jwtService, UserService userService) {
+    public LlmController(LlmService llmService, UserService userService, QueryCapture queryCapture,
+                         @Value("${chat.server-timing.enabled:true}") boolean serverTimingEnabled) {
         this.llmService = llmService;
-        this.jwtService = jwtService;
         this.userService = userService;
+        this.queryCapture = queryCapture;
+        this.serverTimingEnabled = serverTimingEnabled;
     }
 
     @PostMapping("/chat")
     public ResponseEntity<ChatResponse> chat(
-            @Valid @RequestBody ChatRequest request,
-            @RequestHeader("Authorization") String authHeader) {
+            @Valid @RequestBody ChatRequestWithRag request,
+            @RequestParam(defaultValue = "false") boolean debug,
+            @AuthenticationPrincipal AuthenticatedUser user) {
         
-        // Extract userId from JWT token with validation
-        Long userId = extractUserIdFromHeader(authHeader);
+        Long userId = user.userId();
         
         // Check and increment query count
-        userService.incrementQueryCount(userId);
+        userService.incrementQueryCount(userId, user.role());
         
-        ChatResponse response = llmService.chatWithHistory(userId, request.prompt(), request.conversationId());
-        return ResponseEntity.ok(response);
+        // Stage timings go back in a Server-Timing header, and in the body for admins asking with debug=true
+        boolean debugTimings = debug && "ADMIN".equals(user.role());
+        if (!serverTimingEnabled && !debugTimings) {
+            return ResponseEntity.ok(chat(userId, request));
+        }
+        
+        StageTimer timer = StageTimer.start();
+        try {
+            ChatResponse response = chat(userId, request);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+            if (serverTimingEnabled) {
+                builder.header("Server-Timing", timer.toServerTiming());
+            }
+            return builder.body(debugTimings ? response.withTimings(timer.toMillis()) : response);
+        } finally {
+            StageTimer.clear();
+        }
+    }
+    
+    private ChatResponse chat(Long userId, ChatRequestWithRag request) {
+        ChatResponse response = llmService.chatWithHistory(userId, request.prompt(), request.conversationId(),
+            ragOptions(request));
+        // Recorded with the conversation the chat ended up in, so replays can follow new conversations
+        queryCapture.record(QueryCapture.CHAT, userId, response.conversationId(), request.conversationId() == null, request.prompt());
+        return response;
+    }
+    
+    private static RagOptions ragOptions(ChatRequestWithRag request) {
+        return new RagOptions(
+            request.useRag() == null || request.useRag(),
+            request.topK(),
+            new RagFilter(request.modpackFilter(), request.modNameFilter(), request.categoryFilter(),
+                request.docTypeFilter(), request.languageFilter()),
+            request.neighbours()
+        );
     }
     
     @GetMapping("/remaining-queries")
     public ResponseEntity<RemainingQueriesResponse> getRemainingQueries(
-            @RequestHeader("Authorization") String authHeader) {
-        
-        // Extract userId from JWT token with validation
-        Long userId = extractUserIdFromHeader(authHeader);
+            @AuthenticationPrincipal AuthenticatedUser user) {
         
-        int remaining = userService.getRemainingQueries(userId);
-        return ResponseEntity.ok(new RemainingQueriesResponse(remaining));
-    }
-    
-    /**
-     * Safely extracts userId from Authorization header with proper validation
-     */
-    private Long extractUserIdFromHeader(String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ") || authHeader.length() <= 7) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid authorization header");
-        }
-        String token = authHeader.substring(7);
-        return jwtService.extractUserId(token);
+        int remaining = userService.getRemainingQueries(user.userId(), user.role());
+        // null tells the client there is no limit to display
+        return ResponseEntity.ok(new RemainingQueriesResponse(remaining < 0 ? null : remaining));
     }
     
-    private record RemainingQueriesResponse(int remainingQueries) {}
+    private record RemainingQueriesResponse(Integer remainingQueries) {}
 }
@@ -79,7 +79,8 @@ public class RagTestController {
         String vectorString = embeddingService.embeddingToVectorString(queryEmbedding);
         
         // Search for similar chunks
-        List<RagChunk> similarChunks = ragChunkRepository.findSimilarByEmbedding(vectorString, limit);
+        List<RagChunk> similarChunks = ragChunkRepository.findSimilarByEmbedding(
+            vectorString, embeddingService.getModelName(), limit);
         
         // Format response
         List<Map<String, Object>> results = similarChunks.stream()
@@ -123,6 +124,7 @@ public class RagTestController {
         String vectorString = embeddingService.embeddingToVectorString(queryEmbedding);
         List<RagChunk> similarChunks = ragChunkRepository.findSimilarByEmbeddingAndModpack(
             vectorString, 
+            embeddingService.getModelName(),
             modpack, 
             limit
         );
@@ -0,0 +1,19 @@
+package com.example.chatbotmc.dto;
+
+import java.security.Principal;
+
+/**
+ * Principal published by JwtAuthenticationFilter once the token has been verified
+ * Controllers receive it with @AuthenticationPrincipal instead of re-reading the token.
+ */
+public record AuthenticatedUser(
+    Long userId,
+    String username,
+    String role
+) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+}
@@ -1,17 +1,39 @@
 package com.example.chatbotmc.dto;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
 /**
  * Extended chat request with RAG configuration options
+ * POST /api/llm/chat accepts it; a plain { prompt, conversationId } body uses the defaults.
+ * The filters are combined with AND and compared ignoring case.
  */
 public record ChatRequestWithRag(
+    @NotBlank(message = "Prompt cannot be empty")
+    @Size(min = 1, max = 5000, message = "Prompt must be between 1 and 5000 characters")
     String prompt,
+    
     Long conversationId,
     Boolean useRag,          // Optional: explicitly enable/disable RAG for this request
+    
+    @Min(value = 1, message = "topK must be between 1 and 20")
+    @Max(value = 20, message = "topK must be between 1 and 20")
     Integer topK,            // Optional: override default top-k value
-    String modpackFilter     // Optional: filter results by modpack name
+    
+    @Size(max = 255) String modpackFilter,   // Optional: filter results by modpack name
+    @Size(max = 255) String modNameFilter,   // Optional: filter results by mod name
+    @Size(max = 255) String categoryFilter,  // Optional: filter results by category
+    @Size(max = 255) String docTypeFilter,   // Optional: filter results by document type
+    @Size(max = 255) String languageFilter,  // Optional: filter results by language
+    
+    @Min(value = 0, message = "neighbours must be between 0 and 3")
+    @Max(value = 3, message = "neighbours must be between 0 and 3")
+    Integer neighbours       // Optional: sub-chunks around each hit to include from the same document
 ) {
     // Constructor with defaults
     public ChatRequestWithRag(String prompt, Long conversationId) {
-        this(prompt, conversationId, true, null, null);
+        this(prompt, conversationId, true, null, null, null, null, null, null, null);
     }
 }
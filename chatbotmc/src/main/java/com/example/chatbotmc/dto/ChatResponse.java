@@ -1,7 +1,24 @@
 package com.example.chatbotmc.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * @param timings per-stage milliseconds, only filled in for admins who ask for them with debug=true
+ */
 public record ChatResponse(
     String response,
     Long conversationId,
-    Long messageId
-) {}
\ No newline at end of file
+    Long messageId,
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    Map<String, Double> timings
+) {
+    public ChatResponse(String response, Long conversationId, Long messageId) {
+        this(response, conversationId, messageId, null);
+    }
+
+    public ChatResponse withTimings(Map<String, Double> timings) {
+        return new ChatResponse(response, conversationId, messageId, timings);
+    }
+}
@@ -7,5 +7,6 @@ public record ConversationDTO(
     String title,
     LocalDateTime createdAt,
     LocalDateTime updatedAt,
-    int messageCount
+    int messageCount,
+    String lastMessagePreview
 ) {}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.example.chatbotmc.dto;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing
+ * nextCursor is null when there are no further pages
+ */
+public record KeysetPage<T>(
+    List<T> items,
+    String nextCursor
+) {}
@@ -6,7 +6,9 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+    @Index(name = "idx_chat_messages_conversation_created", columnList = "conversation_id, created_at")
+})
 @Getter
 @Setter
 public class ChatMessage {
@@ -1,14 +1,21 @@
 package com.example.chatbotmc.entity;
 
+import com.example.chatbotmc.config.CacheConfig;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+    @Index(name = "idx_conversations_user_updated", columnList = "user_id, updated_at")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.CONVERSATIONS_REGION)
 @Getter
 @Setter
 public class Conversation {
@@ -29,6 +36,21 @@ public class Conversation {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    // Denormalized so the sidebar does not have to load every message
+    @Column(name = "message_count", nullable = false, columnDefinition = "integer default 0")
+    private int messageCount = 0;
+    
+    @Column(name = "last_message_preview", length = 120)
+    private String lastMessagePreview;
+    
+    // Rolling summary of the turns that fell out of the verbatim memory window
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+    
+    // Id of the newest message folded into the summary
+    @Column(name = "summarized_through_message_id")
+    private Long summarizedThroughMessageId;
+    
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ChatMessage> messages = new ArrayList<>();
     
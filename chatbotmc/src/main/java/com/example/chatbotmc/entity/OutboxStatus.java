@@ -0,0 +1,7 @@
+package com.example.chatbotmc.entity;
+
+public enum OutboxStatus {
+    PENDING,
+    SENT,
+    FAILED
+}
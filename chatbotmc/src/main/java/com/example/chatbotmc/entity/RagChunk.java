@@ -5,7 +5,9 @@ import jakarta.persistence.*;
 import org.hibernate.annotations.Type;
 
 @Entity
-@Table(name = "rag_chunk")
+@Table(name = "rag_chunk", indexes = {
+    @Index(name = "idx_rag_chunk_parent", columnList = "parent_chunk_id, chunk_index")
+})
 public class RagChunk {
     
     @Id
@@ -18,10 +20,14 @@ public class RagChunk {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String text;
     
+    // Dimension is set from rag.embedding-dimensions by EmbeddingDimensionMigration
     @Type(VectorType.class)
-    @Column(columnDefinition = "vector(768)")
+    @Column(columnDefinition = "vector")
     private String embedding;
     
+    // Model that produced the embedding, used to find chunks that need re-embedding
+    private String embeddingModel;
+    
     // Metadata fields
     private String modpack;
     private String modName;
@@ -30,6 +36,10 @@ public class RagChunk {
     private String docType;
     private String language;
     
+    // Sub-chunks of a data.json document: its id and their position in it; null for a whole document
+    private String parentChunkId;
+    private Integer chunkIndex;
+    
     public RagChunk() {}
     
     public RagChunk(String chunkId, String text) {
@@ -70,6 +80,14 @@ public class RagChunk {
         this.embedding = embedding;
     }
     
+    public String getEmbeddingModel() {
+        return embeddingModel;
+    }
+    
+    public void setEmbeddingModel(String embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+    
     public String getModpack() {
         return modpack;
     }
@@ -117,4 +135,20 @@ public class RagChunk {
     public void setLanguage(String language) {
         this.language = language;
     }
+    
+    public String getParentChunkId() {
+        return parentChunkId;
+    }
+    
+    public void setParentChunkId(String parentChunkId) {
+        this.parentChunkId = parentChunkId;
+    }
+    
+    public Integer getChunkIndex() {
+        return chunkIndex;
+    }
+    
+    public void setChunkIndex(Integer chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
 }
@@ -0,0 +1,44 @@
+package com.example.chatbotmc.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * A chunk found at ingestion to be a near-duplicate of an already stored one
+ * Only the canonical chunk is embedded and searched; the alias keeps the duplicate's id and
+ * metadata so filters on e.g. its modpack still find the canonical chunk.
+ */
+@Entity
+@Table(name = "rag_chunk_alias", indexes = {
+    @Index(name = "idx_rag_chunk_alias_canonical", columnList = "canonical_id")
+})
+@Getter
+@Setter
+public class RagChunkAlias {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "canonical_id", nullable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private RagChunk canonical;
+    
+    // Id the duplicate would have had in rag_chunk, and its data.json document for sub-chunks
+    @Column(nullable = false, unique = true)
+    private String chunkId;
+    private String parentChunkId;
+    
+    // SimHash bits that differ from the canonical chunk; 0 for identical text
+    private int distance;
+    
+    private String modpack;
+    private String modName;
+    private String modVersion;
+    private String category;
+    private String docType;
+    private String language;
+}
@@ -0,0 +1,23 @@
+package com.example.chatbotmc.llm;
+
+import java.util.List;
+
+/**
+ * Backend that turns text into embedding vectors.
+ * Implementations return one vector per input text, in the same order,
+ * with null for texts that could not be embedded.
+ */
+public interface EmbeddingClient {
+
+    /**
+     * @param dimensions requested vector size; models that cannot shorten their output return their
+     *                   own size and leave fitting it to the caller
+     */
+    List<List<Double>> embed(List<String> texts, int dimensions);
+
+    /**
+     * Name of the model producing the vectors, stored alongside each chunk
+     * so vectors from different models are never compared with each other
+     */
+    String modelName();
+}
@@ -1,5 +1,23 @@
 package com.example.chatbotmc.llm;
 
+import java.util.List;
+
 public interface LlmClient {
     String generate(String prompt);
+
+    /**
+     * Generate a reply to the last message given the preceding turns.
+     * Clients without native multi-turn support receive the turns flattened into one prompt.
+     */
+    default String generate(List<LlmMessage> messages) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < messages.size() - 1; i++) {
+            LlmMessage message = messages.get(i);
+            prompt.append(message.role() == LlmMessage.Role.USER ? "User: " : "Assistant: ")
+                  .append(message.text())
+                  .append("\n\n");
+        }
+        prompt.append(messages.get(messages.size() - 1).text());
+        return generate(prompt.toString());
+    }
 }
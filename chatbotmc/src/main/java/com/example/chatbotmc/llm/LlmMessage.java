@@ -0,0 +1,20 @@
+package com.example.chatbotmc.llm;
+
+/**
+ * A single turn of a multi-turn exchange sent to the LLM
+ */
+public record LlmMessage(Role role, String text) {
+
+    public enum Role {
+        USER,
+        MODEL
+    }
+
+    public static LlmMessage user(String text) {
+        return new LlmMessage(Role.USER, text);
+    }
+
+    public static LlmMessage model(String text) {
+        return new LlmMessage(Role.MODEL, text);
+    }
+}
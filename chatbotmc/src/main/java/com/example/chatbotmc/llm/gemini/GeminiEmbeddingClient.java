@@ -0,0 +1,121 @@
+package com.example.chatbotmc.llm.gemini;
+
+import com.example.chatbotmc.llm.EmbeddingClient;
+import com.example.chatbotmc.observability.ChatMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedding backend using the Google Gemini text-embedding-004 model
+ * Fewer than its 768 dimensions are requested with outputDimensionality; the model is trained so
+ * that the leading dimensions carry most of the meaning, so shortened vectors lose little recall.
+ */
+@Component
+@ConditionalOnProperty(name = "embedding.provider", havingValue = "gemini", matchIfMissing = true)
+public class GeminiEmbeddingClient implements EmbeddingClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiEmbeddingClient.class);
+
+    private static final String MODEL = "text-embedding-004";
+    private static final int MODEL_DIMENSIONS = 768;
+    // Most requests batchEmbedContents accepts in one call
+    private static final int MAX_BATCH = 100;
+
+    private final WebClient webClient;
+    private final String apiKey;
+    private final ChatMetrics chatMetrics;
+
+    public GeminiEmbeddingClient(
+            WebClient geminiWebClient,
+            @Value("${gemini.api-key}") String apiKey,
+            ChatMetrics chatMetrics
+    ) {
+        this.webClient = geminiWebClient;
+        this.apiKey = apiKey;
+        this.chatMetrics = chatMetrics;
+    }
+
+    /**
+     * Embed texts with one batchEmbedContents call per {@value #MAX_BATCH} texts
+     * A failed call leaves null for each text it carried.
+     */
+    @Override
+    public List<List<Double>> embed(List<String> texts, int dimensions) {
+        List<List<Double>> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i += MAX_BATCH) {
+            embeddings.addAll(embedBatch(texts.subList(i, Math.min(i + MAX_BATCH, texts.size())), dimensions));
+        }
+        return embeddings;
+    }
+
+    @Override
+    public String modelName() {
+        return MODEL;
+    }
+
+    private List<List<Double>> embedBatch(List<String> batch, int dimensions) {
+        try {
+            List<Map<String, Object>> requests = batch.stream()
+                .map(text -> embedRequest(text, dimensions))
+                .toList();
+
+            Map<String, Object> response = webClient.post()
+                    .uri("/v1beta/models/" + MODEL + ":batchEmbedContents?key=" + apiKey)
+                    .bodyValue(Map.of("requests", requests))
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .block();
+
+            return extractEmbeddings(response, batch.size());
+
+        } catch (Exception e) {
+            logger.error("Failed to generate {} embeddings: {}", batch.size(), e.getMessage(), e);
+            chatMetrics.recordUpstreamError("gemini-embed", e);
+            return Collections.nCopies(batch.size(), null);
+        }
+    }
+
+    private static Map<String, Object> embedRequest(String text, int dimensions) {
+        Map<String, Object> content = Map.of(
+            "parts", List.of(
+                Map.of("text", text)
+            )
+        );
+        return dimensions > 0 && dimensions < MODEL_DIMENSIONS
+            ? Map.of("model", "models/" + MODEL, "content", content, "outputDimensionality", dimensions)
+            : Map.of("model", "models/" + MODEL, "content", content);
+    }
+
+    /**
+     * Extract the embedding vectors from a batchEmbedContents response, in request order
+     */
+    @SuppressWarnings("unchecked")
+    private List<List<Double>> extractEmbeddings(Map<String, Object> response, int expected) {
+        List<Map<String, Object>> embeddings = (List<Map<String, Object>>) response.get("embeddings");
+        if (embeddings == null || embeddings.size() != expected) {
+            throw new IllegalStateException("Expected " + expected + " embeddings but got "
+                + (embeddings == null ? "none" : embeddings.size()));
+        }
+
+        List<List<Double>> vectors = new ArrayList<>(expected);
+        for (Map<String, Object> embedding : embeddings) {
+            List<Double> values = (List<Double>) embedding.get("values");
+            if (values == null || values.isEmpty()) {
+                logger.error("No embedding values in response");
+                values = null;
+            }
+            vectors.add(values);
+        }
+        return vectors;
+    }
+}
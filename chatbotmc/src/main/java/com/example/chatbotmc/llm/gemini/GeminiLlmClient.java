@@ -1,6 +1,10 @@
 package com.example.chatbotmc.llm.gemini;
 
 import com.example.chatbotmc.llm.LlmClient;
+import com.example.chatbotmc.llm.LlmMessage;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.observability.LlmGenerationEvent;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.ParameterizedTypeReference;
@@ -14,15 +18,20 @@ import java.util.Map;
 @Profile("gemini")
 public class GeminiLlmClient implements LlmClient {
 
+    private static final String MODEL = "gemini-2.0-flash-lite-001";
+
     private final WebClient webClient;
     private final String apiKey;
+    private final ChatMetrics chatMetrics;
 
     public GeminiLlmClient(
             WebClient geminiWebClient,
-            @Value("${gemini.api-key}") String apiKey
+            @Value("${gemini.api-key}") String apiKey,
+            ChatMetrics chatMetrics
     ) {
         this.webClient = geminiWebClient;
         this.apiKey = apiKey;
+        this.chatMetrics = chatMetrics;
     }
 
     @Override
@@ -36,14 +45,57 @@ public class GeminiLlmClient implements LlmClient {
                 )
         );
 
-        Map<String, Object> response = webClient.post()
-                .uri("/v1beta/models/gemini-2.0-flash-lite-001:generateContent?key=" + apiKey)
-                .bodyValue(request)
-                .retrieve()
-                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                .block();
+        return send(request);
+    }
+
+    @Override
+    public String generate(List<LlmMessage> messages) {
+
+        GeminiRequest request = new GeminiRequest(
+                messages.stream()
+                        .map(message -> new GeminiRequest.Content(
+                                message.role() == LlmMessage.Role.USER ? "user" : "model",
+                                List.of(new GeminiRequest.Part(message.text()))
+                        ))
+                        .toList()
+        );
+
+        return send(request);
+    }
+
+    private String send(GeminiRequest request) {
+        int promptChars = request.contents().stream()
+                .flatMap(content -> content.parts().stream())
+                .mapToInt(part -> part.text().length())
+                .sum();
+        Timer.Sample sample = chatMetrics.start();
+        LlmGenerationEvent event = new LlmGenerationEvent();
+        event.model = MODEL;
+        event.promptCharacters = promptChars;
+        event.begin();
+
+        Map<String, Object> response;
+        try {
+            response = webClient.post()
+                    .uri("/v1beta/models/" + MODEL + ":generateContent?key=" + apiKey)
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .block();
+        } catch (RuntimeException e) {
+            event.httpStatus = ChatMetrics.httpStatus(e);
+            event.commit();
+            chatMetrics.recordGeneration(sample, MODEL, promptChars, 0, false);
+            chatMetrics.recordUpstreamError("gemini-generate", e);
+            throw e;
+        }
 
-        return extractText(response);
+        String text = extractText(response);
+        event.responseCharacters = text == null ? 0 : text.length();
+        event.success = true;
+        event.commit();
+        chatMetrics.recordGeneration(sample, MODEL, promptChars, text == null ? 0 : text.length(), true);
+        return text;
     }
 
     private String extractText(Map<String, Object> response) {
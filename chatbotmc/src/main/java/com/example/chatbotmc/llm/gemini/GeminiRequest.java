@@ -1,9 +1,16 @@
 package com.example.chatbotmc.llm.gemini;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public record GeminiRequest(List<Content> contents) {
 
-    public record Content(List<Part> parts) {}
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Content(String role, List<Part> parts) {
+        public Content(List<Part> parts) {
+            this(null, parts);
+        }
+    }
     public record Part(String text) {}
 }
@@ -0,0 +1,320 @@
+package com.example.chatbotmc.llm.gemini;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process stand-in for the Gemini API (profile gemini-sim, together with gemini)
+ *
+ * Serves generateContent, streamGenerateContent, embedContent and batchEmbedContents on
+ * a local port, and GeminiConfig points the Gemini WebClient at it, so the whole chat
+ * stack runs without an API key or network access.
+ *
+ * - Latency per call follows a log-normal distribution given by its median and p99
+ *   (gemini.simulator.*-latency); streaming adds a delay per token.
+ * - gemini.simulator.error-rate and rate-limit-rate inject 500 and 429 responses.
+ * - Embeddings are derived from the words of the text (feature hashing, L2-normalized):
+ *   the same text always gets the same vector, and texts sharing words are close, so
+ *   retrieval behaves plausibly.
+ * - Answers are filler text of gemini.simulator.response-words words, seeded by the prompt.
+ */
+@Component
+@Profile("gemini-sim")
+public class GeminiSimulator {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeminiSimulator.class);
+
+    private static final String PATH_PREFIX = "/v1beta/models/";
+
+    private static final String[] WORDS = (
+        "the a to of and in for with your it you can this that mod block item craft machine energy " +
+        "ore power chest recipe pack server world build use place first then make needs more when " +
+        "from into each one two by or at as be will also need set up get"
+    ).split(" ");
+
+    private final ObjectMapper objectMapper;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Latency generateLatency;
+    private final Latency embedLatency;
+    private final long tokenDelayMs;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final int responseWords;
+    private final int dimensions;
+
+    public GeminiSimulator(
+            ObjectMapper objectMapper,
+            @Value("${gemini.simulator.port:0}") int port,
+            @Value("${gemini.simulator.generate-latency.median-ms:800}") double generateMedianMs,
+            @Value("${gemini.simulator.generate-latency.p99-ms:4000}") double generateP99Ms,
+            @Value("${gemini.simulator.embed-latency.median-ms:60}") double embedMedianMs,
+            @Value("${gemini.simulator.embed-latency.p99-ms:300}") double embedP99Ms,
+            @Value("${gemini.simulator.stream.token-delay-ms:20}") long tokenDelayMs,
+            @Value("${gemini.simulator.error-rate:0}") double errorRate,
+            @Value("${gemini.simulator.rate-limit-rate:0}") double rateLimitRate,
+            @Value("${gemini.simulator.response-words:120}") int responseWords,
+            @Value("${gemini.simulator.embedding-dimensions:768}") int dimensions
+    ) throws IOException {
+        this.objectMapper = objectMapper;
+        this.generateLatency = new Latency(generateMedianMs, generateP99Ms);
+        this.embedLatency = new Latency(embedMedianMs, embedP99Ms);
+        this.tokenDelayMs = tokenDelayMs;
+        this.errorRate = errorRate;
+        this.rateLimitRate = rateLimitRate;
+        this.responseWords = responseWords;
+        this.dimensions = dimensions;
+
+        // Requests mostly sleep, so one virtual thread each scales to any load a laptop can generate
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH_PREFIX, this::handle);
+        this.server.start();
+
+        logger.info("Gemini simulator listening on {}", baseUrl());
+    }
+
+    /**
+     * Base URL to use instead of https://generativelanguage.googleapis.com/
+     */
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath().substring(PATH_PREFIX.length());
+            int separator = path.lastIndexOf(':');
+            if (!"POST".equals(exchange.getRequestMethod()) || separator < 0) {
+                sendError(exchange, 404, "NOT_FOUND", "Unknown endpoint: " + exchange.getRequestURI().getPath());
+                return;
+            }
+            String method = path.substring(separator + 1);
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+
+            if (injectFailure(exchange)) {
+                return;
+            }
+
+            switch (method) {
+                case "generateContent" -> generateContent(exchange, request);
+                case "streamGenerateContent" -> streamGenerateContent(exchange, request);
+                case "embedContent" -> embedContent(exchange, request);
+                case "batchEmbedContents" -> batchEmbedContents(exchange, request);
+                default -> sendError(exchange, 404, "NOT_FOUND", "Unknown method: " + method);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.debug("Gemini simulator request failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean injectFailure(HttpExchange exchange) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRate) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 429, "RESOURCE_EXHAUSTED", "Resource has been exhausted (e.g. check quota).");
+            return true;
+        }
+        if (roll < rateLimitRate + errorRate) {
+            sendError(exchange, 500, "INTERNAL", "An internal error has occurred.");
+            return true;
+        }
+        return false;
+    }
+
+    private void generateContent(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        String prompt = promptText(request);
+        List<String> tokens = answerTokens(prompt);
+        Thread.sleep(generateLatency.sampleMs());
+        sendJson(exchange, 200, candidateResponse(String.join("", tokens), prompt, tokens.size(), true));
+    }
+
+    /**
+     * One chunk per token, as server-sent events with alt=sse, otherwise as a streamed JSON array
+     */
+    private void streamGenerateContent(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        String prompt = promptText(request);
+        List<String> tokens = answerTokens(prompt);
+        boolean sse = String.valueOf(exchange.getRequestURI().getQuery()).contains("alt=sse");
+
+        // Time to first token
+        Thread.sleep(generateLatency.sampleMs());
+        exchange.getResponseHeaders().set("Content-Type", sse ? "text/event-stream" : "application/json");
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream body = exchange.getResponseBody();
+        if (!sse) {
+            body.write('[');
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            boolean last = i == tokens.size() - 1;
+            String chunk = objectMapper.writeValueAsString(candidateResponse(tokens.get(i), prompt, i + 1, last));
+            if (sse) {
+                body.write(("data: " + chunk + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            } else {
+                body.write(((i == 0 ? "" : ",\r\n") + chunk).getBytes(StandardCharsets.UTF_8));
+            }
+            body.flush();
+            if (!last && tokenDelayMs > 0) {
+                Thread.sleep(tokenDelayMs);
+            }
+        }
+        if (!sse) {
+            body.write(']');
+        }
+    }
+
+    private void embedContent(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        Thread.sleep(embedLatency.sampleMs());
+        sendJson(exchange, 200, Map.of("embedding", Map.of("values",
+            embed(partsText(request.path("content")), request.path("outputDimensionality").asInt(dimensions)))));
+    }
+
+    private void batchEmbedContents(HttpExchange exchange, JsonNode request) throws IOException, InterruptedException {
+        List<Map<String, Object>> embeddings = new ArrayList<>();
+        for (JsonNode item : request.path("requests")) {
+            embeddings.add(Map.of("values",
+                embed(partsText(item.path("content")), item.path("outputDimensionality").asInt(dimensions))));
+        }
+        Thread.sleep(embedLatency.sampleMs());
+        sendJson(exchange, 200, Map.of("embeddings", embeddings));
+    }
+
+    private Map<String, Object> candidateResponse(String text, String prompt, int outputTokens, boolean finished) {
+        Map<String, Object> candidate = finished
+            ? Map.of("content", Map.of("role", "model", "parts", List.of(Map.of("text", text))), "finishReason", "STOP")
+            : Map.of("content", Map.of("role", "model", "parts", List.of(Map.of("text", text))));
+        int promptTokens = countWords(prompt);
+        return Map.of(
+            "candidates", List.of(candidate),
+            "usageMetadata", Map.of(
+                "promptTokenCount", promptTokens,
+                "candidatesTokenCount", outputTokens,
+                "totalTokenCount", promptTokens + outputTokens
+            )
+        );
+    }
+
+    /**
+     * Filler answer split into tokens (words with their trailing space), seeded by the prompt
+     */
+    private List<String> answerTokens(String prompt) {
+        SplittableRandom random = new SplittableRandom(prompt.hashCode());
+        List<String> tokens = new ArrayList<>(responseWords + 1);
+        tokens.add("Simulated answer. ");
+        for (int i = 0; i < responseWords; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            tokens.add(i == responseWords - 1 ? word + "." : word + " ");
+        }
+        return tokens;
+    }
+
+    /**
+     * Feature-hashed bag of words: every word adds its own pseudo-random direction
+     * A shorter outputDimensionality gives the leading components, renormalized, like the real model.
+     */
+    private List<Double> embed(String text, int outputDimensionality) {
+        int size = outputDimensionality > 0 ? Math.min(outputDimensionality, dimensions) : dimensions;
+        double[] vector = new double[size];
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            SplittableRandom random = new SplittableRandom(word.hashCode());
+            for (int i = 0; i < size; i++) {
+                vector[i] += random.nextGaussian();
+            }
+        }
+
+        double norm = 0;
+        for (double value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+
+        List<Double> values = new ArrayList<>(size);
+        for (double value : vector) {
+            values.add(norm == 0 ? 0.0 : value / norm);
+        }
+        return values;
+    }
+
+    private static String promptText(JsonNode request) {
+        StringBuilder prompt = new StringBuilder();
+        for (JsonNode content : request.path("contents")) {
+            prompt.append(partsText(content)).append('\n');
+        }
+        return prompt.toString();
+    }
+
+    private static String partsText(JsonNode content) {
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : content.path("parts")) {
+            text.append(part.path("text").asText(""));
+        }
+        return text.toString();
+    }
+
+    private static int countWords(String text) {
+        String trimmed = text.trim();
+        return trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String reason, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", Map.of("code", status, "message", message, "status", reason)));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Log-normal latency fitted to a median and a 99th percentile
+     */
+    private record Latency(double medianMs, double p99Ms) {
+
+        // z-score of the 99th percentile of the standard normal distribution
+        private static final double Z_99 = 2.326;
+
+        long sampleMs() {
+            if (medianMs <= 0) {
+                return 0;
+            }
+            double sigma = p99Ms > medianMs ? Math.log(p99Ms / medianMs) / Z_99 : 0;
+            return Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.chatbotmc.llm.local;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import com.example.chatbotmc.llm.EmbeddingClient;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process embedding backend running a sentence-embedding ONNX model on the CPU
+ * Uses mean pooling over the last hidden state followed by L2 normalization,
+ * which is what sentence-transformers models such as all-MiniLM-L6-v2 expect.
+ *
+ * Enable with embedding.provider=local and point embedding.local.model-path /
+ * embedding.local.vocab-path at the exported model.onnx and vocab.txt.
+ */
+@Component
+@ConditionalOnProperty(name = "embedding.provider", havingValue = "local")
+public class LocalEmbeddingClient implements EmbeddingClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalEmbeddingClient.class);
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final WordPieceTokenizer tokenizer;
+    private final ExecutorService executor;
+    private final String modelName;
+    private final int batchSize;
+    private final int maxTokens;
+    private final boolean needsTokenTypeIds;
+
+    public LocalEmbeddingClient(
+            @Value("${embedding.local.model-path}") String modelPath,
+            @Value("${embedding.local.vocab-path}") String vocabPath,
+            @Value("${embedding.local.model-name:all-MiniLM-L6-v2}") String modelName,
+            @Value("${embedding.local.lowercase:true}") boolean lowercase,
+            @Value("${embedding.local.batch-size:32}") int batchSize,
+            @Value("${embedding.local.max-tokens:256}") int maxTokens,
+            @Value("${embedding.local.threads:2}") int threads,
+            @Value("${embedding.local.intra-op-threads:1}") int intraOpThreads
+    ) throws OrtException, IOException {
+        this.environment = OrtEnvironment.getEnvironment();
+        this.tokenizer = WordPieceTokenizer.fromVocabFile(Path.of(vocabPath), lowercase);
+        this.modelName = modelName;
+        this.batchSize = batchSize;
+        this.maxTokens = maxTokens;
+
+        OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+        options.setIntraOpNumThreads(intraOpThreads);
+        options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+        this.session = environment.createSession(modelPath, options);
+        this.needsTokenTypeIds = session.getInputNames().contains("token_type_ids");
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "local-embedding-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        logger.info("Loaded local embedding model {} from {} ({} worker threads)", modelName, modelPath, threads);
+    }
+
+    /**
+     * Embed texts in batches of embedding.local.batch-size, running batches in parallel on the worker pool
+     * Vectors are cut to the first {@code dimensions} entries and normalized again when the model's own size
+     * is larger; smaller vectors keep their size and are zero-padded by EmbeddingService.
+     */
+    @Override
+    public List<List<Double>> embed(List<String> texts, int dimensions) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+
+        List<Future<List<List<Double>>>> futures = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i += batchSize) {
+            List<String> batch = texts.subList(i, Math.min(i + batchSize, texts.size()));
+            futures.add(executor.submit(() -> embedBatch(batch, dimensions)));
+        }
+
+        List<List<Double>> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < futures.size(); i++) {
+            int batchStart = i * batchSize;
+            int batchLength = Math.min(batchSize, texts.size() - batchStart);
+            try {
+                results.addAll(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Local embedding interrupted", e);
+            } catch (Exception e) {
+                logger.error("Local embedding batch failed: {}", e.getMessage(), e);
+                for (int j = 0; j < batchLength; j++) {
+                    results.add(null);
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public String modelName() {
+        return modelName;
+    }
+
+    private List<List<Double>> embedBatch(List<String> batch, int dimensions) throws OrtException {
+        long[][] tokenIds = new long[batch.size()][];
+        int sequenceLength = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            tokenIds[i] = tokenizer.encode(batch.get(i), maxTokens);
+            sequenceLength = Math.max(sequenceLength, tokenIds[i].length);
+        }
+
+        // Pad every row to the longest sequence in the batch
+        long[][] inputIds = new long[batch.size()][sequenceLength];
+        long[][] attentionMask = new long[batch.size()][sequenceLength];
+        for (int i = 0; i < batch.size(); i++) {
+            System.arraycopy(tokenIds[i], 0, inputIds[i], 0, tokenIds[i].length);
+            Arrays.fill(attentionMask[i], 0, tokenIds[i].length, 1L);
+        }
+
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, inputIds));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, attentionMask));
+            if (needsTokenTypeIds) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, new long[batch.size()][sequenceLength]));
+            }
+
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][][] hiddenStates = (float[][][]) result.get(0).getValue();
+                List<List<Double>> embeddings = new ArrayList<>(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    embeddings.add(meanPoolAndNormalize(hiddenStates[i], attentionMask[i], dimensions));
+                }
+                return embeddings;
+            }
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    /**
+     * Average the hidden states of the tokens the mask keeps, limited to the first maxDimensions entries, to unit length
+     */
+    static List<Double> meanPoolAndNormalize(float[][] tokenStates, long[] mask, int maxDimensions) {
+        int dimensions = Math.min(tokenStates[0].length, maxDimensions);
+        double[] pooled = new double[dimensions];
+        int tokens = 0;
+        for (int t = 0; t < tokenStates.length; t++) {
+            if (mask[t] == 0) {
+                continue;
+            }
+            tokens++;
+            for (int d = 0; d < dimensions; d++) {
+                pooled[d] += tokenStates[t][d];
+            }
+        }
+
+        double norm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            pooled[d] /= Math.max(tokens, 1);
+            norm += pooled[d] * pooled[d];
+        }
+        norm = Math.sqrt(norm);
+
+        List<Double> embedding = new ArrayList<>(dimensions);
+        for (int d = 0; d < dimensions; d++) {
+            embedding.add(norm > 0 ? pooled[d] / norm : 0.0);
+        }
+        return embedding;
+    }
+
+    @PreDestroy
+    public void close() throws OrtException {
+        executor.shutdownNow();
+        session.close();
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.chatbotmc.llm.local;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BERT-style WordPiece tokenizer driven by a vocab.txt file
+ * Matches the tokenization used by sentence-transformers models (e.g. all-MiniLM-L6-v2)
+ */
+public class WordPieceTokenizer {
+
+    private static final String CLS = "[CLS]";
+    private static final String SEP = "[SEP]";
+    private static final String UNK = "[UNK]";
+    private static final int MAX_CHARS_PER_WORD = 100;
+
+    private final Map<String, Integer> vocab;
+    private final boolean lowercase;
+    private final int clsId;
+    private final int sepId;
+    private final int unkId;
+
+    public WordPieceTokenizer(Map<String, Integer> vocab, boolean lowercase) {
+        this.vocab = vocab;
+        this.lowercase = lowercase;
+        this.clsId = requireToken(CLS);
+        this.sepId = requireToken(SEP);
+        this.unkId = requireToken(UNK);
+    }
+
+    public static WordPieceTokenizer fromVocabFile(Path vocabFile, boolean lowercase) throws IOException {
+        Map<String, Integer> vocab = new HashMap<>();
+        List<String> lines = Files.readAllLines(vocabFile, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            vocab.putIfAbsent(lines.get(i).strip(), i);
+        }
+        return new WordPieceTokenizer(vocab, lowercase);
+    }
+
+    /**
+     * Tokenize text into ids wrapped in [CLS] ... [SEP], truncated to maxTokens
+     */
+    public long[] encode(String text, int maxTokens) {
+        List<Integer> ids = new ArrayList<>();
+        ids.add(clsId);
+
+        int budget = maxTokens - 1;
+        for (String word : basicTokenize(text)) {
+            List<Integer> pieces = wordPiece(word);
+            if (ids.size() + pieces.size() > budget) {
+                break;
+            }
+            ids.addAll(pieces);
+        }
+        ids.add(sepId);
+
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Whitespace and punctuation splitting with optional lowercasing and accent stripping
+     */
+    private List<String> basicTokenize(String text) {
+        String normalized = lowercase
+            ? Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFD).replaceAll("\\p{Mn}", "")
+            : text;
+
+        List<String> words = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+                flush(current, words);
+            } else if (isPunctuation(c)) {
+                flush(current, words);
+                words.add(String.valueOf(c));
+            } else {
+                current.append(c);
+            }
+        }
+        flush(current, words);
+        return words;
+    }
+
+    /**
+     * Greedy longest-match-first split of a word into vocabulary pieces
+     */
+    private List<Integer> wordPiece(String word) {
+        if (word.length() > MAX_CHARS_PER_WORD) {
+            return List.of(unkId);
+        }
+
+        List<Integer> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < word.length()) {
+            int end = word.length();
+            Integer match = null;
+            while (start < end) {
+                String candidate = word.substring(start, end);
+                if (start > 0) {
+                    candidate = "##" + candidate;
+                }
+                match = vocab.get(candidate);
+                if (match != null) {
+                    break;
+                }
+                end--;
+            }
+            if (match == null) {
+                return List.of(unkId);
+            }
+            pieces.add(match);
+            start = end;
+        }
+        return pieces;
+    }
+
+    private static void flush(StringBuilder current, List<String> words) {
+        if (!current.isEmpty()) {
+            words.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    private static boolean isPunctuation(char c) {
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION
+            || type == Character.DASH_PUNCTUATION
+            || type == Character.START_PUNCTUATION
+            || type == Character.END_PUNCTUATION
+            || type == Character.INITIAL_QUOTE_PUNCTUATION
+            || type == Character.FINAL_QUOTE_PUNCTUATION
+            || type == Character.OTHER_PUNCTUATION;
+    }
+
+    private int requireToken(String token) {
+        Integer id = vocab.get(token);
+        if (id == null) {
+            throw new IllegalArgumentException("Vocabulary is missing required token " + token);
+        }
+        return id;
+    }
+}
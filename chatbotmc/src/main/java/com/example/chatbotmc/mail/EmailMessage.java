@@ -0,0 +1,12 @@
+package com.example.chatbotmc.mail;
+
+/**
+ * A single email as handed to an EmailSender
+ * html may be null for plain-text-only messages
+ */
+public record EmailMessage(
+    String to,
+    String subject,
+    String plainText,
+    String html
+) {}
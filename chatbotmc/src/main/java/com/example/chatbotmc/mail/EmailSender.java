@@ -0,0 +1,15 @@
+package com.example.chatbotmc.mail;
+
+/**
+ * Delivers emails for the outbox dispatcher
+ * Implementations are selected with email.sender (sendgrid, log).
+ */
+public interface EmailSender {
+
+    /**
+     * Deliver one email
+     * @throws RuntimeException if the provider rejected the email or could not be reached;
+     *         the dispatcher retries with backoff
+     */
+    void send(EmailMessage message);
+}
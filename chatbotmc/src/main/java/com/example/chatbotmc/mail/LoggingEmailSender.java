@@ -0,0 +1,22 @@
+package com.example.chatbotmc.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local stand-in that logs emails instead of sending them (email.sender=log)
+ * For development and tests without a mail provider.
+ */
+@Component
+@ConditionalOnProperty(name = "email.sender", havingValue = "log")
+public class LoggingEmailSender implements EmailSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingEmailSender.class);
+
+    @Override
+    public void send(EmailMessage message) {
+        logger.info("Email to {}: {}\n{}", message.to(), message.subject(), message.plainText());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.chatbotmc.mail;
+
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Sends email through the SendGrid API with one client shared by all sends
+ */
+@Component
+@ConditionalOnProperty(name = "email.sender", havingValue = "sendgrid", matchIfMissing = true)
+public class SendGridEmailSender implements EmailSender {
+
+    private final SendGrid sendGrid;
+    private final Email from;
+
+    public SendGridEmailSender(
+            @Value("${sendgrid.api-key}") String apiKey,
+            @Value("${sendgrid.from-email:noreply@yourdomain.com}") String fromEmail,
+            @Value("${sendgrid.from-name:Modpack Assistant}") String fromName
+    ) {
+        this.sendGrid = new SendGrid(apiKey);
+        this.from = new Email(fromEmail, fromName);
+    }
+
+    @Override
+    public void send(EmailMessage message) {
+        try {
+            Mail mail = new Mail(from, message.subject(), new Email(message.to()), new Content("text/plain", message.plainText()));
+            if (message.html() != null) {
+                mail.addContent(new Content("text/html", message.html()));
+            }
+
+            Request request = new Request();
+            request.setMethod(Method.POST);
+            request.setEndpoint("mail/send");
+            request.setBody(mail.build());
+
+            Response response = sendGrid.api(request);
+
+            if (response.getStatusCode() >= 400) {
+                throw new RuntimeException("SendGrid error: " + response.getStatusCode() + " - " + response.getBody());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Email could not be sent: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.chatbotmc.observability;
+
+import com.example.chatbotmc.service.CacheStatsService;
+import com.example.chatbotmc.service.CacheStatsService.CacheStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Meters for the chat and RAG pipeline, scraped from /actuator/prometheus on the management port
+ *
+ * Stages of a chat turn are timed separately (embedding, vector search, prompt build,
+ * generation, persistence) so their share of the latency can be compared. Sizes are
+ * recorded in characters or counts, and upstream failures are counted per HTTP status.
+ */
+@Component
+public class ChatMetrics {
+
+    private final MeterRegistry registry;
+    private final CacheStatsService cacheStatsService;
+
+    public ChatMetrics(MeterRegistry registry, CacheStatsService cacheStatsService) {
+        this.registry = registry;
+        this.cacheStatsService = cacheStatsService;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * One EmbeddingService call, covering every text in the batch
+     */
+    public void recordEmbedding(Timer.Sample sample, String model, int texts, boolean success) {
+        sample.stop(timer("chat.embedding", "model", model, "outcome", outcome(success)));
+        summary("chat.embedding.texts", null).record(texts);
+    }
+
+    /**
+     * One vector search; filter is "none" or the name of the filtered column
+     */
+    public void recordSearch(Timer.Sample sample, String filter, int chunks) {
+        sample.stop(timer("chat.rag.search", "filter", filter));
+        summary("chat.rag.chunks", null).record(chunks);
+    }
+
+    public void recordPromptBuild(Timer.Sample sample, int promptChars) {
+        sample.stop(timer("chat.prompt.build"));
+        summary("chat.prompt.size", "characters").record(promptChars);
+    }
+
+    /**
+     * One generation request; responseChars is ignored when the request failed
+     */
+    public void recordGeneration(Timer.Sample sample, String model, int promptChars, int responseChars, boolean success) {
+        sample.stop(timer("chat.llm.generate", "model", model, "outcome", outcome(success)));
+        summary("chat.llm.prompt.size", "characters").record(promptChars);
+        if (success) {
+            summary("chat.llm.response.size", "characters").record(responseChars);
+        }
+    }
+
+    /**
+     * path is "database" for direct writes and "journal" for write-behind appends
+     */
+    public void recordMessageSave(Timer.Sample sample, String path) {
+        sample.stop(timer("chat.message.save", "path", path));
+    }
+
+    /**
+     * Count a failed call to an external API, tagged with the HTTP status when there was one
+     */
+    public void recordUpstreamError(String upstream, Throwable error) {
+        int httpStatus = httpStatus(error);
+        String status = httpStatus == 0 ? "none" : String.valueOf(httpStatus);
+        Counter.builder("chat.upstream.errors")
+            .tag("upstream", upstream)
+            .tag("status", status)
+            .tag("exception", error.getClass().getSimpleName())
+            .register(registry)
+            .increment();
+    }
+
+    /**
+     * HTTP status of a failed upstream response, or 0 when the call failed without one
+     */
+    public static int httpStatus(Throwable error) {
+        return error instanceof WebClientResponseException responseException
+            ? responseException.getStatusCode().value()
+            : 0;
+    }
+
+    /**
+     * Expose the Hibernate regions and Spring caches reported by CacheStatsService.
+     * Registered once the application is ready, after RateLimitInterceptor has added its caches.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void bindCacheMeters() {
+        for (CacheStats stats : cacheStatsService.getStats()) {
+            String name = stats.name();
+            FunctionCounter.builder("chat.cache.hits", this, metrics -> cacheValue(metrics, name, CacheStats::hits))
+                .tag("cache", name)
+                .register(registry);
+            FunctionCounter.builder("chat.cache.misses", this, metrics -> cacheValue(metrics, name, CacheStats::misses))
+                .tag("cache", name)
+                .register(registry);
+            Gauge.builder("chat.cache.hit.ratio", this, metrics -> cacheValue(metrics, name, CacheStats::hitRatio))
+                .tag("cache", name)
+                .register(registry);
+            Gauge.builder("chat.cache.entries", this, metrics -> cacheValue(metrics, name,
+                    s -> s.entries() == null ? Double.NaN : s.entries()))
+                .tag("cache", name)
+                .register(registry);
+        }
+    }
+
+    private static double cacheValue(ChatMetrics metrics, String name, ToDoubleFunction<CacheStats> value) {
+        return metrics.cacheStatsService.getStats().stream()
+            .filter(stats -> stats.name().equals(name))
+            .mapToDouble(value)
+            .findFirst()
+            .orElse(Double.NaN);
+    }
+
+    private Timer timer(String name, String... tags) {
+        return Timer.builder(name)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private DistributionSummary summary(String name, String baseUnit) {
+        return DistributionSummary.builder(name)
+            .baseUnit(baseUnit)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private static String outcome(boolean success) {
+        return success ? "success" : "error";
+    }
+}
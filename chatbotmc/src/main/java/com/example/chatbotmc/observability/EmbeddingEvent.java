@@ -0,0 +1,28 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one EmbeddingService call, covering the whole batch
+ */
+@Name("chatbotmc.Embedding")
+@Label("Embedding")
+@Category({"Chatbot", "RAG"})
+@Description("Texts embedded by the active embedding backend")
+public class EmbeddingEvent extends jdk.jfr.Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Texts")
+    public int texts;
+
+    @Label("Characters")
+    public long characters;
+
+    @Label("Success")
+    public boolean success;
+}
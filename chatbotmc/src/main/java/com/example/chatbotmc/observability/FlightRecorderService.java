@@ -0,0 +1,116 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * One on-demand Java Flight Recorder recording at a time, started and stopped from the admin API
+ * The recording uses a built-in JFR configuration (default or profile) and includes the
+ * chatbotmc.* events next to GC, thread and allocation data. Stopping writes it to
+ * jfr.dump-dir for analysis in JDK Mission Control or with the jfr tool.
+ */
+@Service
+public class FlightRecorderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${jfr.dump-dir:recordings}")
+    private String dumpDir;
+
+    @Value("${jfr.max-duration-minutes:30}")
+    private long maxDurationMinutes;
+
+    private Recording recording;
+
+    /**
+     * Start a recording
+     * @param settings name of a JFR configuration, "default" (low overhead) or "profile"
+     */
+    public synchronized RecordingStatus start(String settings) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A recording is already running since " + recording.getStartTime());
+        }
+
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (IOException | ParseException e) {
+            throw new IllegalArgumentException("Unknown JFR configuration: " + settings, e);
+        }
+
+        Recording newRecording = new Recording(configuration);
+        newRecording.setName("chatbotmc-" + settings);
+        newRecording.setToDisk(true);
+        // A forgotten recording must not grow forever; it stops itself and is dumped on the next stop call
+        newRecording.setDuration(Duration.ofMinutes(maxDurationMinutes));
+        newRecording.start();
+        recording = newRecording;
+
+        logger.info("Started JFR recording with {} settings", settings);
+        return status();
+    }
+
+    /**
+     * Stop the recording and write it to a new file in jfr.dump-dir
+     * @return path of the written file
+     */
+    public synchronized Path stop() throws IOException {
+        if (recording == null) {
+            throw new IllegalStateException("No recording has been started");
+        }
+
+        Path directory = Path.of(dumpDir);
+        Files.createDirectories(directory);
+        Path file = directory.resolve("chatbotmc-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr").toAbsolutePath();
+
+        try {
+            if (recording.getState() == RecordingState.RUNNING) {
+                recording.stop();
+            }
+            recording.dump(file);
+        } finally {
+            recording.close();
+            recording = null;
+        }
+
+        logger.info("Wrote JFR recording to {}", file);
+        return file;
+    }
+
+    public synchronized RecordingStatus status() {
+        if (recording == null) {
+            return new RecordingStatus(false, null, null, 0);
+        }
+        return new RecordingStatus(
+            recording.getState() == RecordingState.RUNNING,
+            recording.getName(),
+            recording.getStartTime() == null ? null : recording.getStartTime().toString(),
+            recording.getSize()
+        );
+    }
+
+    /**
+     * running is false for a recording that reached jfr.max-duration-minutes but has not been dumped yet
+     */
+    public record RecordingStatus(
+        boolean running,
+        String name,
+        String startedAt,
+        long bytes
+    ) {}
+}
@@ -0,0 +1,32 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one batch of chunks loaded or re-embedded by RagDataLoader
+ */
+@Name("chatbotmc.IngestionBatch")
+@Label("Ingestion Batch")
+@Category({"Chatbot", "RAG"})
+@Description("Batch of chunks embedded and written to the rag_chunk table")
+public class IngestionBatchEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("load or reindex")
+    public String operation;
+
+    @Label("Model")
+    public String model;
+
+    @Label("Batch")
+    public int batch;
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Failed")
+    public int failed;
+}
@@ -0,0 +1,32 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one generation request to the LLM
+ */
+@Name("chatbotmc.LlmGeneration")
+@Label("LLM Generation")
+@Category({"Chatbot", "LLM"})
+@Description("Generation request sent to the language model")
+public class LlmGenerationEvent extends jdk.jfr.Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Prompt Characters")
+    public long promptCharacters;
+
+    @Label("Response Characters")
+    public long responseCharacters;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("HTTP Status")
+    @Description("Status of a failed upstream response, 0 when there was none")
+    public int httpStatus;
+}
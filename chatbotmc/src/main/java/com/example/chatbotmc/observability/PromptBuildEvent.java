@@ -0,0 +1,22 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for assembling the RAG prompt from retrieved chunks
+ */
+@Name("chatbotmc.PromptBuild")
+@Label("Prompt Build")
+@Category({"Chatbot", "RAG"})
+@Description("Augmented prompt assembled from the user question and retrieved chunks")
+public class PromptBuildEvent extends jdk.jfr.Event {
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Prompt Characters")
+    public long promptCharacters;
+}
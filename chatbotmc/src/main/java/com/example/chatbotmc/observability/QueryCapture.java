@@ -0,0 +1,184 @@
+package com.example.chatbotmc.observability;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in capture of chat traffic for the load-test harness (capture.enabled=true)
+ *
+ * Each request becomes one JSON line in capture.path with the endpoint, the time, and
+ * for chats the prompt. The records are anonymized before they are written:
+ * - users and conversations appear only as salted hashes, so sessions can be replayed
+ *   without revealing who they belong to. With no capture.salt a random salt is drawn
+ *   at startup, and hashes cannot be linked across restarts.
+ * - e-mail addresses, URLs, IP addresses and long digit runs in prompts are replaced
+ *   with placeholders.
+ * Writing happens on a single background thread and drops records under overload.
+ */
+@Service
+public class QueryCapture {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryCapture.class);
+
+    public static final String CHAT = "chat";
+    public static final String CONVERSATIONS = "conversations";
+    public static final String MESSAGES = "messages";
+
+    private static final Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+    private static final Pattern URL = Pattern.compile("\\b(https?://|www\\.)\\S+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern IP_ADDRESS = Pattern.compile("\\b\\d{1,3}(\\.\\d{1,3}){3}\\b");
+    private static final Pattern LONG_NUMBER = Pattern.compile("\\d{5,}");
+
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolTaskExecutor executor;
+
+    @Value("${capture.enabled:false}")
+    private boolean enabled;
+
+    @Value("${capture.path:data/query-capture.jsonl}")
+    private String capturePath;
+
+    @Value("${capture.salt:}")
+    private String configuredSalt;
+
+    private byte[] salt;
+    private BufferedWriter writer;
+
+    public QueryCapture(ObjectMapper objectMapper,
+                        @Qualifier("queryCaptureExecutor") ThreadPoolTaskExecutor executor) {
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (configuredSalt.isBlank()) {
+            salt = new byte[16];
+            new SecureRandom().nextBytes(salt);
+        } else {
+            salt = configuredSalt.getBytes(StandardCharsets.UTF_8);
+        }
+
+        Path path = Path.of(capturePath);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        logger.info("Capturing anonymized chat traffic to {}", path.toAbsolutePath());
+    }
+
+    /**
+     * Let queued records reach the file, then close it on this thread
+     * The executor is shut down first, so no record is written after the file is closed.
+     */
+    @PreDestroy
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        ThreadPoolExecutor pool = executor.getThreadPoolExecutor();
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Query capture records still queued at shutdown were dropped");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Could not close query capture: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record one request
+     *
+     * @param endpoint        CHAT, CONVERSATIONS or MESSAGES
+     * @param conversationId  conversation the request used, or null
+     * @param newConversation whether a chat started the conversation
+     * @param prompt          chat prompt, null for other endpoints
+     */
+    public void record(String endpoint, Long userId, Long conversationId, boolean newConversation, String prompt) {
+        if (!enabled) {
+            return;
+        }
+        long at = System.currentTimeMillis();
+        executor.execute(() -> write(endpoint, at, userId, conversationId, newConversation, prompt));
+    }
+
+    private void write(String endpoint, long at, Long userId, Long conversationId, boolean newConversation, String prompt) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("session", anonymize("user", userId));
+        line.put("at", at);
+        line.put("endpoint", endpoint);
+        if (conversationId != null) {
+            line.put("conversation", anonymize("conversation", conversationId));
+        }
+        if (newConversation) {
+            line.put("newConversation", true);
+        }
+        if (prompt != null) {
+            line.put("prompt", scrub(prompt));
+        }
+
+        try {
+            writer.write(objectMapper.writeValueAsString(line));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Could not write query capture: {}", e.getMessage());
+        }
+    }
+
+    private String anonymize(String kind, Long id) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update((kind + ":" + id).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String scrub(String prompt) {
+        String scrubbed = EMAIL.matcher(prompt).replaceAll("<email>");
+        scrubbed = URL.matcher(scrubbed).replaceAll("<url>");
+        scrubbed = IP_ADDRESS.matcher(scrubbed).replaceAll("<ip>");
+        return LONG_NUMBER.matcher(scrubbed).replaceAll("<number>");
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.chatbotmc.observability;
+
+import com.example.chatbotmc.service.RagReadiness;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * "rag" entry of the readiness probe
+ * Always UP: the application serves while the index warms, just without document context.
+ * The state detail tells "serving, RAG warming" apart from "RAG ready".
+ */
+@Component
+public class RagHealthIndicator implements HealthIndicator {
+
+    private final RagReadiness ragReadiness;
+
+    public RagHealthIndicator(RagReadiness ragReadiness) {
+        this.ragReadiness = ragReadiness;
+    }
+
+    @Override
+    public Health health() {
+        RagReadiness.Status status = ragReadiness.status();
+        return Health.up()
+            .withDetail("state", status.state().name().toLowerCase())
+            .withDetail("since", status.since().toString())
+            .withDetail("embeddedChunks", status.embeddedChunks())
+            .withDetail("message", status.message())
+            .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.chatbotmc.observability;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-request breakdown of where a chat turn spent its time
+ *
+ * LlmController starts a timer on the request thread; the services on the chat path
+ * report their stages with {@link #now()} and {@link #record(Stage, long)}. Without an
+ * active timer both calls are a ThreadLocal read and nothing else, so background work
+ * (summaries, reindexing) and disabled timing pay no clock reads or allocations.
+ * A stage reported several times (e.g. persisting both messages) accumulates.
+ */
+public final class StageTimer {
+
+    public enum Stage {
+        EMBED("embed"),
+        SEARCH("search"),
+        BUILD("build"),
+        GENERATE("generate"),
+        PERSIST("persist");
+
+        private final String metricName;
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private static final ThreadLocal<StageTimer> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final long[] stageNanos = new long[Stage.values().length];
+
+    private StageTimer() {
+    }
+
+    /**
+     * Start timing the current request; pair with {@link #clear()} in a finally block
+     */
+    public static StageTimer start() {
+        StageTimer timer = new StageTimer();
+        CURRENT.set(timer);
+        return timer;
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Start of a stage, or 0 when no timer is active
+     */
+    public static long now() {
+        return CURRENT.get() == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Add the time since stageStart (from {@link #now()}) to the stage
+     */
+    public static void record(Stage stage, long stageStart) {
+        StageTimer timer = CURRENT.get();
+        if (timer != null && stageStart != 0L) {
+            timer.stageNanos[stage.ordinal()] += System.nanoTime() - stageStart;
+        }
+    }
+
+    /**
+     * Stage durations in milliseconds, in pipeline order, plus the total so far
+     * Stages that did not run are left out.
+     */
+    public Map<String, Double> toMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            long nanos = stageNanos[stage.ordinal()];
+            if (nanos > 0) {
+                millis.put(stage.metricName, toMillis(nanos));
+            }
+        }
+        millis.put("total", toMillis(System.nanoTime() - startNanos));
+        return millis;
+    }
+
+    /**
+     * Value for the Server-Timing response header, e.g. "embed;dur=41.2, generate;dur=1830.5, total;dur=1902.3"
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Double> entry : toMillis().entrySet()) {
+            if (!header.isEmpty()) {
+                header.append(", ");
+            }
+            header.append(entry.getKey()).append(";dur=").append(entry.getValue());
+        }
+        return header.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        // One decimal is plenty and keeps the header short
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
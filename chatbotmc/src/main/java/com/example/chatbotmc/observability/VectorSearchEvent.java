@@ -0,0 +1,28 @@
+package com.example.chatbotmc.observability;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one similarity search against the rag_chunk table
+ */
+@Name("chatbotmc.VectorSearch")
+@Label("Vector Search")
+@Category({"Chatbot", "RAG"})
+@Description("Similarity search for the chunks closest to a query embedding")
+public class VectorSearchEvent extends jdk.jfr.Event {
+
+    @Label("Filter")
+    public String filter;
+
+    @Label("Top K")
+    public int topK;
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Success")
+    public boolean success;
+}
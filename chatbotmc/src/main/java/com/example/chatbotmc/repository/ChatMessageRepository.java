@@ -1,11 +1,47 @@
 package com.example.chatbotmc.repository;
 
+import com.example.chatbotmc.dto.ChatMessageDTO;
 import com.example.chatbotmc.entity.ChatMessage;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
     List<ChatMessage> findByConversationIdOrderByCreatedAtAsc(Long conversationId);
+    List<ChatMessage> findByConversationIdOrderByIdDesc(Long conversationId, Pageable pageable);
+    List<ChatMessage> findByConversationIdAndIdGreaterThanOrderByIdAsc(Long conversationId, Long afterId);
+    
+    /**
+     * Newest page of a conversation, newest first
+     */
+    @Query("""
+        SELECT new com.example.chatbotmc.dto.ChatMessageDTO(m.id, m.content, m.role, m.createdAt)
+        FROM ChatMessage m
+        WHERE m.conversation.id = :conversationId
+        ORDER BY m.createdAt DESC, m.id DESC
+        """)
+    List<ChatMessageDTO> findLatestPage(@Param("conversationId") Long conversationId, Limit limit);
+    
+    /**
+     * Page of messages older than the (createdAt, id) keyset cursor, newest first
+     */
+    @Query("""
+        SELECT new com.example.chatbotmc.dto.ChatMessageDTO(m.id, m.content, m.role, m.createdAt)
+        FROM ChatMessage m
+        WHERE m.conversation.id = :conversationId
+        AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id))
+        ORDER BY m.createdAt DESC, m.id DESC
+        """)
+    List<ChatMessageDTO> findPageBefore(
+        @Param("conversationId") Long conversationId,
+        @Param("createdAt") LocalDateTime createdAt,
+        @Param("id") Long id,
+        Limit limit
+    );
 }
\ No newline at end of file
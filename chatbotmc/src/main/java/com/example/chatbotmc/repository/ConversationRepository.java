@@ -1,8 +1,15 @@
 package com.example.chatbotmc.repository;
 
+import com.example.chatbotmc.dto.ConversationDTO;
 import com.example.chatbotmc.entity.Conversation;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,4 +17,62 @@ import java.util.Optional;
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
     List<Conversation> findByUserIdOrderByUpdatedAtDesc(Long userId);
     Optional<Conversation> findByIdAndUserId(Long id, Long userId);
+    
+    /**
+     * First page of the sidebar listing, built in a single statement from the denormalized columns
+     */
+    @Query("""
+        SELECT new com.example.chatbotmc.dto.ConversationDTO(
+            c.id, c.title, c.createdAt, c.updatedAt, c.messageCount, c.lastMessagePreview)
+        FROM Conversation c
+        WHERE c.user.id = :userId
+        ORDER BY c.updatedAt DESC, c.id DESC
+        """)
+    List<ConversationDTO> findSummariesByUserId(@Param("userId") Long userId, Limit limit);
+    
+    /**
+     * Next page of the sidebar listing after the (updatedAt, id) keyset cursor
+     */
+    @Query("""
+        SELECT new com.example.chatbotmc.dto.ConversationDTO(
+            c.id, c.title, c.createdAt, c.updatedAt, c.messageCount, c.lastMessagePreview)
+        FROM Conversation c
+        WHERE c.user.id = :userId
+        AND (c.updatedAt < :updatedAt OR (c.updatedAt = :updatedAt AND c.id < :id))
+        ORDER BY c.updatedAt DESC, c.id DESC
+        """)
+    List<ConversationDTO> findSummariesByUserIdAfter(
+        @Param("userId") Long userId,
+        @Param("updatedAt") LocalDateTime updatedAt,
+        @Param("id") Long id,
+        Limit limit
+    );
+    
+    /**
+     * Owners of the given conversations, for invalidating their cached listings
+     */
+    @Query("SELECT DISTINCT c.user.id FROM Conversation c WHERE c.id IN :ids")
+    List<Long> findUserIdsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * One-off backfill for conversations created before message_count existed
+     * Only messages of conversations still at zero are aggregated.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE conversations c
+        SET message_count = stats.cnt,
+            last_message_preview = LEFT(stats.last_content, 120)
+        FROM (
+            SELECT m.conversation_id,
+                   COUNT(*) AS cnt,
+                   (ARRAY_AGG(m.content ORDER BY m.id DESC))[1] AS last_content
+            FROM chat_messages m
+            WHERE m.conversation_id IN (SELECT id FROM conversations WHERE message_count = 0)
+            GROUP BY m.conversation_id
+        ) stats
+        WHERE c.id = stats.conversation_id
+        AND c.message_count = 0
+        """, nativeQuery = true)
+    int backfillMessageStats();
 }
\ No newline at end of file
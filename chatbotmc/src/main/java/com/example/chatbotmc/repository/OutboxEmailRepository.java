@@ -0,0 +1,44 @@
+package com.example.chatbotmc.repository;
+
+import com.example.chatbotmc.entity.OutboxEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+    
+    /**
+     * Lock the next due emails; rows locked by another instance are skipped, not waited for
+     */
+    @Query(value = """
+        SELECT * FROM email_outbox
+        WHERE status = 'PENDING' AND next_attempt_at <= :now
+        ORDER BY id
+        LIMIT :limit
+        FOR UPDATE SKIP LOCKED
+        """, nativeQuery = true)
+    List<OutboxEmail> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+    
+    /**
+     * Move the lease of a claimed email forward, unless it ran out and another instance claimed the email since
+     *
+     * @param leasedUntil lease this instance holds, as claimed or last renewed
+     * @return 0 if the email was claimed by someone else or is no longer pending
+     */
+    @Modifying
+    @Query("""
+        UPDATE OutboxEmail e SET e.nextAttemptAt = :until
+        WHERE e.id = :id AND e.nextAttemptAt = :leasedUntil
+        AND e.status = com.example.chatbotmc.entity.OutboxStatus.PENDING
+        """)
+    int renewLease(@Param("id") Long id, @Param("leasedUntil") LocalDateTime leasedUntil, @Param("until") LocalDateTime until);
+    
+    @Modifying
+    @Query("DELETE FROM OutboxEmail e WHERE e.status = com.example.chatbotmc.entity.OutboxStatus.SENT AND e.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
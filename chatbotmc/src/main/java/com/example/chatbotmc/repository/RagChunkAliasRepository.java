@@ -0,0 +1,48 @@
+package com.example.chatbotmc.repository;
+
+import com.example.chatbotmc.entity.RagChunkAlias;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RagChunkAliasRepository extends JpaRepository<RagChunkAlias, Long> {
+    
+    /**
+     * Metadata of every alias under its canonical chunk's id, for the filter index
+     */
+    @Query("""
+        SELECT a.canonical.id AS id, a.chunkId AS chunkId, a.parentChunkId AS parentChunkId,
+               a.modpack AS modpack, a.modName AS modName, a.category AS category,
+               a.docType AS docType, a.language AS language
+        FROM RagChunkAlias a
+        """)
+    List<AliasMetadata> findAllMetadata();
+    
+    /**
+     * Aliases with their canonical chunk loaded, for snapshot export
+     */
+    @Query("SELECT a FROM RagChunkAlias a JOIN FETCH a.canonical")
+    List<RagChunkAlias> findAllWithCanonical();
+    
+    /**
+     * Aliases of sub-chunks of the given documents with their canonical chunk loaded, for neighbour expansion
+     */
+    @Query("SELECT a FROM RagChunkAlias a JOIN FETCH a.canonical WHERE a.parentChunkId IN :parentChunkIds")
+    List<RagChunkAlias> findByParentChunkIdInWithCanonical(@Param("parentChunkIds") Collection<String> parentChunkIds);
+    
+    /**
+     * Aliases collapsed into the given canonical chunks
+     */
+    @Query("SELECT a FROM RagChunkAlias a WHERE a.canonical.id IN :canonicalIds ORDER BY a.id")
+    List<RagChunkAlias> findByCanonicalIdIn(@Param("canonicalIds") Collection<Long> canonicalIds);
+    
+    interface AliasMetadata extends RagChunkRepository.ChunkMetadata {
+        String getChunkId();
+        String getParentChunkId();
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.chatbotmc.repository;
 
 import com.example.chatbotmc.entity.RagChunk;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,18 +20,27 @@ public interface RagChunkRepository extends JpaRepository<RagChunk, Long> {
     
     List<RagChunk> findByCategory(String category);
     
+    /**
+     * Sub-chunks of the given documents
+     */
+    List<RagChunk> findByParentChunkIdIn(Collection<String> parentChunkIds);
+    
     /**
      * Find similar chunks using cosine similarity with pgvector
      * Returns top K most similar chunks to the query embedding
+     * Every search takes the model the query was embedded with: while chunks are re-embedded after a
+     * model switch, only those already embedded with it are comparable to the query.
      */
     @Query(value = """
         SELECT * FROM rag_chunk 
         WHERE embedding IS NOT NULL 
+        AND embedding_model = :model
         ORDER BY embedding <=> CAST(:queryEmbedding AS vector) 
         LIMIT :limit
         """, nativeQuery = true)
     List<RagChunk> findSimilarByEmbedding(
         @Param("queryEmbedding") String queryEmbedding, 
+        @Param("model") String model,
         @Param("limit") int limit
     );
     
@@ -39,16 +50,62 @@ public interface RagChunkRepository extends JpaRepository<RagChunk, Long> {
     @Query(value = """
         SELECT * FROM rag_chunk 
         WHERE embedding IS NOT NULL 
+        AND embedding_model = :model
         AND modpack = :modpack
         ORDER BY embedding <=> CAST(:queryEmbedding AS vector) 
         LIMIT :limit
         """, nativeQuery = true)
     List<RagChunk> findSimilarByEmbeddingAndModpack(
         @Param("queryEmbedding") String queryEmbedding,
+        @Param("model") String model,
         @Param("modpack") String modpack,
         @Param("limit") int limit
     );
     
+    /**
+     * Find similar chunks among the given ids, ranked exactly
+     * The candidates are materialized first, so an ANN index on embedding cannot be used
+     * and its post-filtering cannot drop matches; cheap when the candidate set is small
+     *
+     * @param ids PostgreSQL array literal, e.g. {1,2,3}
+     */
+    @Query(value = """
+        WITH candidates AS MATERIALIZED (
+            SELECT * FROM rag_chunk
+            WHERE id = ANY(CAST(:ids AS bigint[]))
+            AND embedding IS NOT NULL
+            AND embedding_model = :model
+        )
+        SELECT * FROM candidates
+        ORDER BY embedding <=> CAST(:queryEmbedding AS vector)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<RagChunk> findSimilarByEmbeddingAmongIds(
+        @Param("queryEmbedding") String queryEmbedding,
+        @Param("model") String model,
+        @Param("ids") String ids,
+        @Param("limit") int limit
+    );
+    
+    /**
+     * Find similar chunks among the given ids, leaving the plan to the database
+     * Meant for large candidate sets, where an ANN index scan finds enough matches
+     */
+    @Query(value = """
+        SELECT * FROM rag_chunk
+        WHERE embedding IS NOT NULL
+        AND embedding_model = :model
+        AND id = ANY(CAST(:ids AS bigint[]))
+        ORDER BY embedding <=> CAST(:queryEmbedding AS vector)
+        LIMIT :limit
+        """, nativeQuery = true)
+    List<RagChunk> findSimilarByEmbeddingFilteredByIds(
+        @Param("queryEmbedding") String queryEmbedding,
+        @Param("model") String model,
+        @Param("ids") String ids,
+        @Param("limit") int limit
+    );
+    
     /**
      * Find similar chunks with similarity score above threshold
      */
@@ -56,15 +113,68 @@ public interface RagChunkRepository extends JpaRepository<RagChunk, Long> {
         SELECT *, 1 - (embedding <=> CAST(:queryEmbedding AS vector)) as similarity 
         FROM rag_chunk 
         WHERE embedding IS NOT NULL 
+        AND embedding_model = :model
         AND 1 - (embedding <=> CAST(:queryEmbedding AS vector)) > :threshold
         ORDER BY embedding <=> CAST(:queryEmbedding AS vector) 
         LIMIT :limit
         """, nativeQuery = true)
     List<RagChunk> findSimilarAboveThreshold(
         @Param("queryEmbedding") String queryEmbedding,
+        @Param("model") String model,
         @Param("threshold") double threshold,
         @Param("limit") int limit
     );
     
     long countByEmbeddingIsNotNull();
+    
+    List<RagChunk> findByEmbeddingIsNotNull();
+    
+    /**
+     * Filterable metadata of every chunk with an embedding, without text or vectors
+     */
+    @Query("""
+        SELECT c.id AS id, c.modpack AS modpack, c.modName AS modName, c.category AS category,
+               c.docType AS docType, c.language AS language
+        FROM RagChunk c WHERE c.embedding IS NOT NULL
+        """)
+    List<ChunkMetadata> findEmbeddedMetadata();
+    
+    /**
+     * Text of every chunk with an embedding, to fingerprint the chunks a load may duplicate
+     */
+    @Query("SELECT c.id AS id, c.text AS text FROM RagChunk c WHERE c.embedding IS NOT NULL")
+    List<ChunkText> findEmbeddedTexts();
+    
+    /**
+     * Size of rag_chunk including its TOAST data and indexes
+     */
+    @Query(value = "SELECT pg_total_relation_size('rag_chunk')", nativeQuery = true)
+    long totalRelationSizeBytes();
+    
+    /**
+     * Chunks after lastId whose embedding was produced by a different model (or none at all)
+     */
+    @Query("""
+        SELECT c FROM RagChunk c
+        WHERE (c.embeddingModel IS NULL OR c.embeddingModel <> :model) AND c.id > :lastId
+        ORDER BY c.id
+        """)
+    List<RagChunk> findNeedingReindex(@Param("model") String model, @Param("lastId") long lastId, Pageable pageable);
+    
+    @Query("SELECT COUNT(c) FROM RagChunk c WHERE c.embeddingModel IS NULL OR c.embeddingModel <> :model")
+    long countNeedingReindex(@Param("model") String model);
+    
+    interface ChunkText {
+        Long getId();
+        String getText();
+    }
+    
+    interface ChunkMetadata {
+        Long getId();
+        String getModpack();
+        String getModName();
+        String getCategory();
+        String getDocType();
+        String getLanguage();
+    }
 }
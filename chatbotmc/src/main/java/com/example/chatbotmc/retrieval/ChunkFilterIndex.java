@@ -0,0 +1,212 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compressed bitmaps of rag_chunk ids, one per metadata value (modpack, mod name, category, doc type, language)
+ * A RagFilter is resolved to its candidate ids by intersecting bitmaps in memory, before the vector search
+ * runs, so the database ranks only the candidates instead of filtering the rows the distance scan returns.
+ * A canonical chunk also matches a filter that one of the near-duplicates collapsed into it (RagChunkAlias)
+ * matches, so filtering on a duplicate's modpack still finds the shared text. Aliases get bitmaps of their
+ * own, over alias ordinals, so a filter is matched against one alias's metadata at a time and the fields
+ * of different aliases never combine; matching aliases are then mapped to their canonical chunk's id.
+ * Rebuilt by RagDataLoader whenever the index becomes READY; chunk ids must fit in an int.
+ */
+@Component
+public class ChunkFilterIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkFilterIndex.class);
+
+    private final RagChunkRepository ragChunkRepository;
+    private final RagChunkAliasRepository ragChunkAliasRepository;
+
+    private volatile Bitmaps bitmaps = new Bitmaps(new RoaringBitmap(), new EnumMap<>(RagFilter.Field.class),
+        new RoaringBitmap(), new EnumMap<>(RagFilter.Field.class), new int[0]);
+
+    public ChunkFilterIndex(RagChunkRepository ragChunkRepository, RagChunkAliasRepository ragChunkAliasRepository) {
+        this.ragChunkRepository = ragChunkRepository;
+        this.ragChunkAliasRepository = ragChunkAliasRepository;
+    }
+
+    /**
+     * Read the metadata of every chunk with an embedding and replace the bitmaps
+     *
+     * @return number of chunks indexed
+     */
+    public int rebuild() {
+        List<RagChunkRepository.ChunkMetadata> rows = ragChunkRepository.findEmbeddedMetadata();
+        RoaringBitmap all = new RoaringBitmap();
+        Map<RagFilter.Field, Map<String, RoaringBitmap>> byField = emptyFields();
+        for (RagChunkRepository.ChunkMetadata row : rows) {
+            int id = Math.toIntExact(row.getId());
+            all.add(id);
+            addMetadata(byField, row, id);
+        }
+
+        // Only aliases of canonical chunks that are searchable themselves; getId() is the canonical's id
+        List<RagChunkAliasRepository.AliasMetadata> aliasRows = ragChunkAliasRepository.findAllMetadata();
+        RoaringBitmap allAliases = new RoaringBitmap();
+        Map<RagFilter.Field, Map<String, RoaringBitmap>> aliasByField = emptyFields();
+        int[] aliasCanonical = new int[aliasRows.size()];
+        int aliases = 0;
+        for (RagChunkAliasRepository.AliasMetadata alias : aliasRows) {
+            int canonical = Math.toIntExact(alias.getId());
+            if (all.contains(canonical)) {
+                aliasCanonical[aliases] = canonical;
+                allAliases.add(aliases);
+                addMetadata(aliasByField, alias, aliases);
+                aliases++;
+            }
+        }
+
+        // Ids are assigned in load order, so chunks of one modpack or mod mostly form runs
+        all.runOptimize();
+        allAliases.runOptimize();
+        byField.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+        aliasByField.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+        Bitmaps rebuilt = new Bitmaps(all, byField, allAliases, aliasByField, Arrays.copyOf(aliasCanonical, aliases));
+        bitmaps = rebuilt;
+
+        logger.info("Chunk filter index built over {} chunks, {} bytes", all.getCardinality(), rebuilt.sizeInBytes());
+        return all.getCardinality();
+    }
+
+    /**
+     * Ids of the chunks matching every non-null field of the filter, by their own metadata or that of
+     * one of their aliases
+     * The returned bitmap may be shared with the index and must not be modified.
+     */
+    public RoaringBitmap candidates(RagFilter filter) {
+        Bitmaps current = bitmaps;
+        if (filter.isEmpty()) {
+            return current.all();
+        }
+        RoaringBitmap chunks = matching(current.all(), current.byField(), filter);
+        RoaringBitmap aliases = matching(current.allAliases(), current.aliasByField(), filter);
+        if (aliases.isEmpty()) {
+            return chunks;
+        }
+        RoaringBitmap canonical = new RoaringBitmap();
+        aliases.forEach((int alias) -> canonical.add(current.aliasCanonical()[alias]));
+        return RoaringBitmap.or(chunks, canonical);
+    }
+
+    public int size() {
+        return bitmaps.all().getCardinality();
+    }
+
+    public long sizeInBytes() {
+        return bitmaps.sizeInBytes();
+    }
+
+    /**
+     * Number of distinct values per field, for the admin stats
+     */
+    public Map<String, Integer> distinctValues() {
+        Bitmaps current = bitmaps;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        current.byField().forEach((field, values) -> {
+            Set<String> distinct = new HashSet<>(values.keySet());
+            distinct.addAll(current.aliasByField().getOrDefault(field, Map.of()).keySet());
+            counts.put(field.name().toLowerCase(Locale.ROOT), distinct.size());
+        });
+        return counts;
+    }
+
+    /**
+     * Ids as a PostgreSQL array literal, e.g. {1,2,3}, for the ids parameter of the filtered searches
+     */
+    public static String toArrayLiteral(RoaringBitmap ids) {
+        StringBuilder literal = new StringBuilder(ids.getCardinality() * 7 + 2).append('{');
+        ids.forEach((int id) -> {
+            if (literal.length() > 1) {
+                literal.append(',');
+            }
+            literal.append(id);
+        });
+        return literal.append('}').toString();
+    }
+
+    /**
+     * Rows of all matching every non-null field of the filter
+     */
+    private static RoaringBitmap matching(RoaringBitmap all, Map<RagFilter.Field, Map<String, RoaringBitmap>> byField,
+                                          RagFilter filter) {
+        RoaringBitmap result = all;
+        for (RagFilter.Field field : RagFilter.Field.values()) {
+            String value = filter.value(field);
+            if (value == null) {
+                continue;
+            }
+            RoaringBitmap matching = byField.getOrDefault(field, Map.of()).get(value);
+            if (matching == null) {
+                return new RoaringBitmap();
+            }
+            result = RoaringBitmap.and(result, matching);
+        }
+        return result;
+    }
+
+    private static Map<RagFilter.Field, Map<String, RoaringBitmap>> emptyFields() {
+        Map<RagFilter.Field, Map<String, RoaringBitmap>> byField = new EnumMap<>(RagFilter.Field.class);
+        for (RagFilter.Field field : RagFilter.Field.values()) {
+            byField.put(field, new HashMap<>());
+        }
+        return byField;
+    }
+
+    private static void addMetadata(Map<RagFilter.Field, Map<String, RoaringBitmap>> byField,
+                                    RagChunkRepository.ChunkMetadata row, int id) {
+        add(byField, RagFilter.Field.MODPACK, row.getModpack(), id);
+        add(byField, RagFilter.Field.MOD_NAME, row.getModName(), id);
+        add(byField, RagFilter.Field.CATEGORY, row.getCategory(), id);
+        add(byField, RagFilter.Field.DOC_TYPE, row.getDocType(), id);
+        add(byField, RagFilter.Field.LANGUAGE, row.getLanguage(), id);
+    }
+
+    private static void add(Map<RagFilter.Field, Map<String, RoaringBitmap>> byField, RagFilter.Field field,
+                            String value, int id) {
+        String key = RagFilter.normalize(value);
+        if (key != null) {
+            byField.get(field).computeIfAbsent(key, k -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    /**
+     * @param all            ids of the searchable chunks
+     * @param byField        chunk ids per metadata value
+     * @param allAliases     ordinals of the aliases of searchable chunks
+     * @param aliasByField   alias ordinals per metadata value
+     * @param aliasCanonical canonical chunk id per alias ordinal
+     */
+    private record Bitmaps(RoaringBitmap all, Map<RagFilter.Field, Map<String, RoaringBitmap>> byField,
+                           RoaringBitmap allAliases, Map<RagFilter.Field, Map<String, RoaringBitmap>> aliasByField,
+                           int[] aliasCanonical) {
+        long sizeInBytes() {
+            long bytes = all.getLongSizeInBytes() + allAliases.getLongSizeInBytes() + 4L * aliasCanonical.length;
+            for (Map<RagFilter.Field, Map<String, RoaringBitmap>> fields : List.of(byField, aliasByField)) {
+                for (Map<String, RoaringBitmap> values : fields.values()) {
+                    for (RoaringBitmap bitmap : values.values()) {
+                        bytes += bitmap.getLongSizeInBytes();
+                    }
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.service.EmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Keeps rag_chunk.embedding at rag.embedding-dimensions without taking retrieval offline
+ *
+ * The entity leaves the vector column's dimension open; it is set here from the configuration:
+ * - a column without vectors is retyped to vector(N) in place
+ * - a column holding vectors of another dimension keeps serving them while a background job
+ *   re-embeds every chunk at N dimensions into the shadow column embedding_next, builds the vector
+ *   index on it, and swaps the two columns in one short transaction
+ * Until the swap, queries are embedded at the dimension of the column in use (EmbeddingService.getDimensions).
+ * Chunks added meanwhile are picked up by another pass; if a pass embeds none of the chunks left,
+ * the migration stops and the old column stays in use.
+ *
+ * Instances sharing the database coordinate through a PostgreSQL advisory lock: only its holder changes
+ * the columns, in prepare() or migrate(); an instance that cannot take it only reads the dimension in use.
+ * Other instances learn of a swap when their first search after it fails on the dimension (see refresh()).
+ *
+ * The retired column is dropped after the swap, which only marks it dropped: its vectors stay in every
+ * row until the row is rewritten. A plain VACUUM runs afterwards to reclaim the row versions the
+ * re-embedding left behind; to return the dropped vectors' space to the operating system, run
+ * VACUUM FULL rag_chunk (locks the table for its duration) or pg_repack in a quiet period.
+ */
+@Service
+public class EmbeddingDimensionMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingDimensionMigration.class);
+
+    static final String SHADOW_COLUMN = "embedding_next";
+    private static final String RETIRED_COLUMN = "embedding_retired";
+    // Advisory lock key shared by every instance; "ragdim" in ASCII
+    private static final long LOCK_KEY = 0x7261676469_6dL;
+
+    public enum State {
+        // Column already has the configured dimension
+        CURRENT,
+        // Column has another dimension; migration starts once the RAG index is ready
+        PENDING,
+        RUNNING,
+        FAILED
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingService embeddingService;
+    private final VectorIndexManager vectorIndexManager;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Value("${rag.embedding-dimensions:768}")
+    private int targetDimensions;
+
+    @Value("${rag.batch-size:10}")
+    private int batchSize;
+
+    @Value("${rag.delay-ms:1000}")
+    private long delayMs;
+
+    private volatile State state = State.CURRENT;
+    private volatile int columnDimensions;
+    private volatile long migrated;
+    private volatile String message;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    public EmbeddingDimensionMigration(JdbcTemplate jdbcTemplate, EmbeddingService embeddingService,
+                                       VectorIndexManager vectorIndexManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingService = embeddingService;
+        this.vectorIndexManager = vectorIndexManager;
+    }
+
+    /**
+     * Read the column's dimension, retype it in place if it holds no vectors, and embed queries and
+     * new chunks at the dimension of the column that will be searched
+     * Called before the RAG load, so a new table is loaded at the configured dimension right away.
+     * While another instance holds the migration lock, the columns are left as they are.
+     */
+    public synchronized void prepare() {
+        if (withLock(this::prepareColumns) == null) {
+            int current = attributeDimensions("embedding");
+            if (current <= 0) {
+                // Being created or retyped by the lock holder, at the configured dimension
+                current = targetDimensions;
+            }
+            columnDimensions = current;
+            embeddingService.setDimensions(current);
+            state = current == targetDimensions ? State.CURRENT : State.PENDING;
+            logger.info("Another instance is changing the vector column; using its {} dimensions", current);
+        }
+    }
+
+    /**
+     * Re-read the dimension of the column searches run against, after another instance swapped in
+     * its migrated column; queries are embedded at the new dimension from then on
+     *
+     * @return true if the dimension changed
+     */
+    public synchronized boolean refresh() {
+        int current = attributeDimensions("embedding");
+        if (current <= 0 || current == columnDimensions) {
+            return false;
+        }
+        logger.info("Vector column now has {} dimensions, was {}", current, columnDimensions);
+        columnDimensions = current;
+        embeddingService.setDimensions(current);
+        // The index in use was built elsewhere, so this instance's build state no longer applies
+        vectorIndexManager.shadowSwapped();
+        if (current == targetDimensions && state != State.RUNNING) {
+            state = State.CURRENT;
+        }
+        return true;
+    }
+
+    private Boolean prepareColumns() {
+        int current = attributeDimensions("embedding");
+        if (current != targetDimensions && count("embedding IS NOT NULL") == 0) {
+            // Nothing to keep, so no shadow column is needed
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + VectorIndexManager.INDEX_NAME);
+            jdbcTemplate.execute("ALTER TABLE rag_chunk ALTER COLUMN embedding TYPE vector(" + targetDimensions + ")");
+            logger.info("Vector column set to {} dimensions", targetDimensions);
+            current = targetDimensions;
+        } else if (current < 0) {
+            // Created without a dimension and loaded before it was set; the vectors tell which one they have
+            current = jdbcTemplate.queryForObject(
+                "SELECT vector_dims(embedding) FROM rag_chunk WHERE embedding IS NOT NULL LIMIT 1", Integer.class);
+            jdbcTemplate.execute("ALTER TABLE rag_chunk ALTER COLUMN embedding TYPE vector(" + current + ")");
+        }
+
+        columnDimensions = current;
+        embeddingService.setDimensions(current);
+        int shadow = attributeDimensions(SHADOW_COLUMN);
+        if (current == targetDimensions) {
+            if (shadow != 0) {
+                // Left by a migration to a dimension that is no longer configured
+                jdbcTemplate.execute("ALTER TABLE rag_chunk DROP COLUMN " + SHADOW_COLUMN);
+            }
+            state = State.CURRENT;
+            return true;
+        }
+
+        if (shadow != 0 && shadow != targetDimensions) {
+            jdbcTemplate.execute("ALTER TABLE rag_chunk DROP COLUMN " + SHADOW_COLUMN);
+            shadow = 0;
+        }
+        if (shadow == 0) {
+            // A nullable column without default is added without rewriting the table
+            jdbcTemplate.execute("ALTER TABLE rag_chunk ADD COLUMN " + SHADOW_COLUMN + " vector(" + targetDimensions + ")");
+        }
+        state = State.PENDING;
+        logger.info("Vector column has {} dimensions but rag.embedding-dimensions is {}; "
+            + "it keeps serving until the chunks are re-embedded", current, targetDimensions);
+        return true;
+    }
+
+    /**
+     * Run the migration prepare() found necessary; called in the background once the RAG index is ready
+     * Failures are logged and leave the current column in use. Skipped while another instance migrates.
+     */
+    public void migrateIfPending() {
+        if (state != State.PENDING) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (MigrationLockedException e) {
+            logger.info("Embedding dimension migration left to the instance running it");
+        } catch (RuntimeException e) {
+            logger.error("Embedding dimension migration failed, still serving {} dimensions: {}",
+                columnDimensions, e.getMessage());
+        }
+    }
+
+    /**
+     * Re-embed the chunks missing from the shadow column, then swap it in
+     * Resumes where an earlier run stopped, since chunks already in the shadow column are skipped.
+     *
+     * @throws IllegalStateException if the column is already at the configured dimension or a migration is
+     *                               running, here or on another instance (MigrationLockedException)
+     */
+    public MigrationStatus migrate() {
+        if (state == State.CURRENT) {
+            throw new IllegalStateException("Vector column already has " + targetDimensions + " dimensions");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Embedding dimension migration is already running");
+        }
+        try {
+            MigrationStatus status = withLock(this::migrateLocked);
+            if (status == null) {
+                throw new MigrationLockedException();
+            }
+            return status;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private MigrationStatus migrateLocked() {
+        // Another instance may have finished the migration since prepare()
+        refresh();
+        if (columnDimensions == targetDimensions) {
+            state = State.CURRENT;
+            return status();
+        }
+        state = State.RUNNING;
+        message = null;
+        migrated = 0;
+        startedAt = Instant.now();
+        finishedAt = null;
+        try {
+            while (true) {
+                long pending = count(SHADOW_COLUMN + " IS NULL");
+                if (pending > 0) {
+                    if (pass() == 0) {
+                        fail(pending + " chunks could not be embedded with " + targetDimensions + " dimensions");
+                        return status();
+                    }
+                    continue;
+                }
+                vectorIndexManager.buildShadowIndex(SHADOW_COLUMN);
+                if (swap()) {
+                    break;
+                }
+            }
+            state = State.CURRENT;
+            finishedAt = Instant.now();
+            logger.info("✓ Switched to {}-dimension embeddings after re-embedding {} chunks", targetDimensions, migrated);
+            return status();
+        } catch (RuntimeException e) {
+            fail(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Run work holding the migration advisory lock, on a connection kept for it until work ends
+     *
+     * @return work's result, or null if another instance holds the lock
+     */
+    private <T> T withLock(Supplier<T> work) {
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet locked = statement.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+                    locked.next();
+                    if (!locked.getBoolean(1)) {
+                        return null;
+                    }
+                }
+                try {
+                    return work.get();
+                } finally {
+                    statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                }
+            }
+        });
+    }
+
+    public MigrationStatus status() {
+        long total = 0;
+        long remaining = 0;
+        try {
+            total = count("TRUE");
+            remaining = state == State.CURRENT ? 0 : count(SHADOW_COLUMN + " IS NULL");
+        } catch (RuntimeException e) {
+            logger.debug("Could not count chunks: {}", e.getMessage());
+        }
+        return new MigrationStatus(state, columnDimensions, targetDimensions, migrated, remaining, total,
+            message, startedAt, finishedAt);
+    }
+
+    /**
+     * Embed every chunk without a shadow vector once, in id order
+     * Chunks that fail are passed over, so a pass always ends.
+     *
+     * @return number of chunks embedded
+     */
+    private int pass() {
+        int embedded = 0;
+        long cursor = 0;
+        while (true) {
+            List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, text FROM rag_chunk WHERE " + SHADOW_COLUMN + " IS NULL AND id > ? ORDER BY id LIMIT ?",
+                cursor, batchSize);
+            if (rows.isEmpty()) {
+                return embedded;
+            }
+            cursor = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+
+            List<List<Double>> embeddings = embeddingService.generateEmbeddings(
+                rows.stream().map(row -> (String) row.get("text")).toList(), targetDimensions);
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                List<Double> embedding = embeddings.get(i);
+                if (embedding == null) {
+                    logger.warn("Failed to embed chunk {} with {} dimensions", rows.get(i).get("id"), targetDimensions);
+                    continue;
+                }
+                updates.add(new Object[] {embeddingService.embeddingToVectorString(embedding), rows.get(i).get("id")});
+            }
+            jdbcTemplate.batchUpdate(
+                "UPDATE rag_chunk SET " + SHADOW_COLUMN + " = CAST(? AS vector) WHERE id = ?", updates);
+            embedded += updates.size();
+            migrated += updates.size();
+            logger.info("Re-embedded {} chunks with {} dimensions", migrated, targetDimensions);
+
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Embedding dimension migration interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Rename the shadow column to embedding and retire the old one
+     *
+     * @return false if chunks were added without a shadow vector since the last pass
+     */
+    private boolean swap() {
+        Boolean swapped = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                // Writes wait from here on, so no chunk can be added without a shadow vector; reads go on
+                // until the renames below, which take ACCESS EXCLUSIVE and hold searches until the commit
+                statement.execute("LOCK TABLE rag_chunk IN SHARE ROW EXCLUSIVE MODE");
+                try (ResultSet missing = statement.executeQuery(
+                        "SELECT EXISTS (SELECT 1 FROM rag_chunk WHERE " + SHADOW_COLUMN + " IS NULL)")) {
+                    missing.next();
+                    if (missing.getBoolean(1)) {
+                        connection.rollback();
+                        return false;
+                    }
+                }
+                statement.execute("ALTER TABLE rag_chunk RENAME COLUMN embedding TO " + RETIRED_COLUMN);
+                statement.execute("ALTER TABLE rag_chunk RENAME COLUMN " + SHADOW_COLUMN + " TO embedding");
+                vectorIndexManager.swapShadowIndex(connection);
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+        if (!Boolean.TRUE.equals(swapped)) {
+            return false;
+        }
+
+        columnDimensions = targetDimensions;
+        embeddingService.setDimensions(targetDimensions);
+        vectorIndexManager.shadowSwapped();
+        // Drops the old vectors' index and hides the column; searches no longer use either
+        jdbcTemplate.execute("ALTER TABLE rag_chunk DROP COLUMN IF EXISTS " + RETIRED_COLUMN);
+        try {
+            // Reclaims the row versions every UPDATE of the re-embedding left, and refreshes the statistics
+            jdbcTemplate.execute("VACUUM (ANALYZE) rag_chunk");
+        } catch (RuntimeException e) {
+            logger.warn("VACUUM after the embedding dimension swap failed, leaving it to autovacuum: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    private void fail(String reason) {
+        state = State.FAILED;
+        message = reason;
+        finishedAt = Instant.now();
+        logger.error("Embedding dimension migration stopped, still serving {} dimensions: {}", columnDimensions, reason);
+    }
+
+    /**
+     * Dimension of a vector column of rag_chunk: pgvector keeps it as the type modifier,
+     * -1 when the column has no fixed dimension, 0 when there is no such column
+     */
+    private int attributeDimensions(String column) {
+        List<Integer> found = jdbcTemplate.queryForList("""
+            SELECT atttypmod FROM pg_attribute
+            WHERE attrelid = 'rag_chunk'::regclass AND attname = ? AND NOT attisdropped
+            """, Integer.class, column);
+        return found.isEmpty() ? 0 : found.get(0);
+    }
+
+    private long count(String condition) {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM rag_chunk WHERE " + condition, Long.class);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * Another instance holds the migration lock
+     */
+    public static class MigrationLockedException extends IllegalStateException {
+        MigrationLockedException() {
+            super("Embedding dimension migration is running on another instance");
+        }
+    }
+
+    /**
+     * @param columnDimensions dimension of the column searches run against
+     * @param migrated         chunks re-embedded by the current or last run
+     * @param remaining        chunks without a vector in the shadow column
+     * @param message          why the last run stopped, if it failed
+     */
+    public record MigrationStatus(
+        State state,
+        int columnDimensions,
+        int targetDimensions,
+        long migrated,
+        long remaining,
+        long total,
+        String message,
+        Instant startedAt,
+        Instant finishedAt
+    ) {}
+}
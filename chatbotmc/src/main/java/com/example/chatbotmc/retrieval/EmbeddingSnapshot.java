@@ -0,0 +1,446 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary file holding RAG chunks with their embeddings, read through a memory mapping
+ *
+ * Layout, little-endian:
+ * <pre>
+ * header   magic "CMCRAGSN", format version, encoding, dimensions, chunk count,
+ *          dictionary size, vector block offset, SHA-256 of the body, model name
+ * body     metadata dictionary: every distinct modpack/mod/version/category/type/language string
+ *          chunks: chunk id, text, six dictionary indices (-1 for null),
+ *                  since version 2 also the parent chunk id as a dictionary index and the chunk index (-1 for null)
+ *          since version 3 near-duplicate aliases: alias count, then per alias its chunk id,
+ *                  the row of its canonical chunk, its SimHash distance, parent id and six metadata dictionary indices
+ *          padding to a multiple of 4
+ *          INT8 only: one float scale per chunk
+ *          vector block: chunk count x dimensions floats (FLOAT32) or bytes (INT8)
+ * </pre>
+ * The model name and dimensions tell whether the vectors can be compared with the active
+ * embedding backend; the SHA-256 detects truncated or corrupted files.
+ */
+public final class EmbeddingSnapshot {
+
+    public static final int FORMAT_VERSION = 3;
+
+    private static final byte[] MAGIC = "CMCRAGSN".getBytes(StandardCharsets.US_ASCII);
+    private static final int METADATA_FIELDS = 6;
+
+    public enum Encoding {
+        // 4 bytes per dimension, exact
+        FLOAT32,
+        // 1 byte per dimension with a per-vector scale; about a quarter of the size
+        INT8
+    }
+
+    private final String model;
+    private final int dimensions;
+    private final Encoding encoding;
+    private final List<RagChunk> chunks;
+    private final List<RagChunkAlias> aliases;
+    private final ByteBuffer vectors;
+    private final ByteBuffer scales;
+
+    private EmbeddingSnapshot(String model, int dimensions, Encoding encoding, List<RagChunk> chunks,
+                              List<RagChunkAlias> aliases, ByteBuffer vectors, ByteBuffer scales) {
+        this.model = model;
+        this.dimensions = dimensions;
+        this.encoding = encoding;
+        this.chunks = chunks;
+        this.aliases = aliases;
+        this.vectors = vectors;
+        this.scales = scales;
+    }
+
+    /**
+     * Write the chunks that have an embedding; the file is replaced atomically
+     *
+     * @return number of chunks written
+     */
+    public static int write(Path file, String model, int dimensions, Encoding encoding, List<RagChunk> chunks)
+            throws IOException {
+        return write(file, model, dimensions, encoding, chunks, List.of());
+    }
+
+    /**
+     * Write the chunks that have an embedding and the aliases of those chunks; the file is replaced atomically
+     *
+     * @param aliases aliases with their canonical chunk loaded; others are skipped
+     * @return number of chunks written
+     */
+    public static int write(Path file, String model, int dimensions, Encoding encoding, List<RagChunk> chunks,
+                            List<RagChunkAlias> aliases) throws IOException {
+        List<RagChunk> embedded = chunks.stream().filter(chunk -> chunk.getEmbedding() != null).toList();
+
+        // Metadata values repeat across chunks, so each is stored once and referenced by index
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> dictionaryValues = new ArrayList<>();
+        ByteArrayOutputStream chunkSection = new ByteArrayOutputStream();
+        LittleEndianOutput chunkOutput = new LittleEndianOutput(chunkSection);
+        for (RagChunk chunk : embedded) {
+            chunkOutput.writeString(chunk.getChunkId());
+            chunkOutput.writeString(chunk.getText());
+            for (String value : metadata(chunk)) {
+                chunkOutput.writeInt(dictionaryIndex(value, dictionary, dictionaryValues));
+            }
+            // Sub-chunks of one document share its id, so it goes in the dictionary too
+            chunkOutput.writeInt(dictionaryIndex(chunk.getParentChunkId(), dictionary, dictionaryValues));
+            chunkOutput.writeInt(chunk.getChunkIndex() == null ? -1 : chunk.getChunkIndex());
+        }
+
+        Map<String, Integer> rowsByChunkId = new HashMap<>();
+        for (int row = 0; row < embedded.size(); row++) {
+            rowsByChunkId.put(embedded.get(row).getChunkId(), row);
+        }
+        List<RagChunkAlias> written = aliases.stream()
+            .filter(alias -> rowsByChunkId.containsKey(alias.getCanonical().getChunkId()))
+            .toList();
+        chunkOutput.writeInt(written.size());
+        for (RagChunkAlias alias : written) {
+            chunkOutput.writeString(alias.getChunkId());
+            chunkOutput.writeInt(rowsByChunkId.get(alias.getCanonical().getChunkId()));
+            chunkOutput.writeInt(alias.getDistance());
+            chunkOutput.writeInt(dictionaryIndex(alias.getParentChunkId(), dictionary, dictionaryValues));
+            for (String value : metadata(alias)) {
+                chunkOutput.writeInt(dictionaryIndex(value, dictionary, dictionaryValues));
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        LittleEndianOutput bodyOutput = new LittleEndianOutput(body);
+        for (String value : dictionaryValues) {
+            bodyOutput.writeString(value);
+        }
+        chunkSection.writeTo(body);
+
+        ByteBuffer vectorBlock = encodeVectors(embedded, dimensions, encoding);
+
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        int headerSize = MAGIC.length + 4 * 5 + 8 + 32 + 2 + modelBytes.length;
+        int padding = (4 - (headerSize + body.size()) % 4) % 4;
+        body.write(new byte[padding]);
+        long vectorOffset = headerSize + body.size()
+            + (encoding == Encoding.INT8 ? 4L * embedded.size() : 0);
+
+        MessageDigest digest = sha256();
+        digest.update(body.toByteArray());
+        digest.update(vectorBlock.duplicate());
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+            LittleEndianOutput header = new LittleEndianOutput(stream);
+            stream.write(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeInt(encoding.ordinal());
+            header.writeInt(dimensions);
+            header.writeInt(embedded.size());
+            header.writeInt(dictionaryValues.size());
+            header.writeLong(vectorOffset);
+            stream.write(digest.digest());
+            header.writeShort(modelBytes.length);
+            stream.write(modelBytes);
+            body.writeTo(stream);
+            stream.write(vectorBlock.array(), 0, vectorBlock.limit());
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return embedded.size();
+    }
+
+    /**
+     * Map a snapshot file and read its chunk section; vectors stay in the mapping until requested
+     *
+     * @throws IOException if the file is not a snapshot of this format or fails its checksum
+     */
+    public static EmbeddingSnapshot open(Path file) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(file + " is not an embedding snapshot");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format version " + version);
+            }
+            Encoding encoding = Encoding.values()[buffer.getInt()];
+            int dimensions = buffer.getInt();
+            int count = buffer.getInt();
+            int dictionarySize = buffer.getInt();
+            long vectorOffset = buffer.getLong();
+            byte[] expectedDigest = new byte[32];
+            buffer.get(expectedDigest);
+            byte[] modelBytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(modelBytes);
+            String model = new String(modelBytes, StandardCharsets.UTF_8);
+
+            MessageDigest digest = sha256();
+            digest.update(buffer.duplicate());
+            if (!MessageDigest.isEqual(expectedDigest, digest.digest())) {
+                throw new IOException("Snapshot checksum mismatch; the file is truncated or corrupted");
+            }
+
+            String[] dictionary = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                dictionary[i] = readString(buffer);
+            }
+            List<RagChunk> chunks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                RagChunk chunk = new RagChunk(readString(buffer), readString(buffer));
+                String[] metadata = new String[METADATA_FIELDS];
+                for (int field = 0; field < METADATA_FIELDS; field++) {
+                    int index = buffer.getInt();
+                    metadata[field] = index < 0 ? null : dictionary[index];
+                }
+                setMetadata(chunk, metadata);
+                if (version >= 2) {
+                    int parent = buffer.getInt();
+                    int chunkIndex = buffer.getInt();
+                    chunk.setParentChunkId(parent < 0 ? null : dictionary[parent]);
+                    chunk.setChunkIndex(chunkIndex < 0 ? null : chunkIndex);
+                }
+                chunk.setEmbeddingModel(model);
+                chunks.add(chunk);
+            }
+            List<RagChunkAlias> aliases = new ArrayList<>();
+            if (version >= 3) {
+                int aliasCount = buffer.getInt();
+                for (int i = 0; i < aliasCount; i++) {
+                    RagChunkAlias alias = new RagChunkAlias();
+                    alias.setChunkId(readString(buffer));
+                    alias.setCanonical(chunks.get(buffer.getInt()));
+                    alias.setDistance(buffer.getInt());
+                    int parent = buffer.getInt();
+                    alias.setParentChunkId(parent < 0 ? null : dictionary[parent]);
+                    String[] metadata = new String[METADATA_FIELDS];
+                    for (int field = 0; field < METADATA_FIELDS; field++) {
+                        int index = buffer.getInt();
+                        metadata[field] = index < 0 ? null : dictionary[index];
+                    }
+                    setMetadata(alias, metadata);
+                    aliases.add(alias);
+                }
+            }
+
+            int bytesPerValue = encoding == Encoding.FLOAT32 ? 4 : 1;
+            ByteBuffer vectors = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                .position(Math.toIntExact(vectorOffset))
+                .limit(Math.toIntExact(vectorOffset + (long) count * dimensions * bytesPerValue))
+                .slice()
+                .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer scales = null;
+            if (encoding == Encoding.INT8) {
+                scales = buffer.duplicate()
+                    .position(Math.toIntExact(vectorOffset - 4L * count))
+                    .limit(Math.toIntExact(vectorOffset))
+                    .slice()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new EmbeddingSnapshot(model, dimensions, encoding, chunks, aliases, vectors, scales);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed snapshot " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public String model() {
+        return model;
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    public int size() {
+        return chunks.size();
+    }
+
+    /**
+     * Chunk without id or embedding; use {@link #vector} for the embedding
+     */
+    public RagChunk chunk(int index) {
+        return chunks.get(index);
+    }
+
+    /**
+     * Near-duplicates collapsed into the snapshot's chunks; each canonical is one of {@link #chunk}
+     */
+    public List<RagChunkAlias> aliases() {
+        return aliases;
+    }
+
+    public float[] vector(int index) {
+        float[] vector = new float[dimensions];
+        if (encoding == Encoding.FLOAT32) {
+            vectors.asFloatBuffer().get(index * dimensions, vector);
+        } else {
+            float scale = scales.getFloat(index * 4);
+            int offset = index * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = vectors.get(offset + i) * scale;
+            }
+        }
+        return vector;
+    }
+
+    private static ByteBuffer encodeVectors(List<RagChunk> chunks, int dimensions, Encoding encoding) {
+        int bytesPerValue = encoding == Encoding.FLOAT32 ? 4 : 1;
+        int scaleBytes = encoding == Encoding.INT8 ? 4 * chunks.size() : 0;
+        ByteBuffer block = ByteBuffer.allocate(scaleBytes + chunks.size() * dimensions * bytesPerValue)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer values = block.duplicate().order(ByteOrder.LITTLE_ENDIAN).position(scaleBytes);
+
+        for (int row = 0; row < chunks.size(); row++) {
+            float[] vector = VectorMath.parse(chunks.get(row).getEmbedding());
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("Chunk " + chunks.get(row).getChunkId() + " has "
+                    + vector.length + " dimensions, expected " + dimensions);
+            }
+            if (encoding == Encoding.FLOAT32) {
+                for (float value : vector) {
+                    values.putFloat(value);
+                }
+            } else {
+                // Symmetric quantization: the largest component maps to +-127
+                float maxAbs = 0;
+                for (float value : vector) {
+                    maxAbs = Math.max(maxAbs, Math.abs(value));
+                }
+                float scale = maxAbs == 0 ? 1 : maxAbs / 127;
+                block.putFloat(row * 4, scale);
+                for (float value : vector) {
+                    values.put((byte) Math.round(value / scale));
+                }
+            }
+        }
+        return block;
+    }
+
+    private static int dictionaryIndex(String value, Map<String, Integer> dictionary, List<String> dictionaryValues) {
+        if (value == null) {
+            return -1;
+        }
+        return dictionary.computeIfAbsent(value, key -> {
+            dictionaryValues.add(key);
+            return dictionaryValues.size() - 1;
+        });
+    }
+
+    private static String[] metadata(RagChunk chunk) {
+        return new String[] {
+            chunk.getModpack(), chunk.getModName(), chunk.getModVersion(),
+            chunk.getCategory(), chunk.getDocType(), chunk.getLanguage()
+        };
+    }
+
+    private static String[] metadata(RagChunkAlias alias) {
+        return new String[] {
+            alias.getModpack(), alias.getModName(), alias.getModVersion(),
+            alias.getCategory(), alias.getDocType(), alias.getLanguage()
+        };
+    }
+
+    private static void setMetadata(RagChunkAlias alias, String[] metadata) {
+        alias.setModpack(metadata[0]);
+        alias.setModName(metadata[1]);
+        alias.setModVersion(metadata[2]);
+        alias.setCategory(metadata[3]);
+        alias.setDocType(metadata[4]);
+        alias.setLanguage(metadata[5]);
+    }
+
+    private static void setMetadata(RagChunk chunk, String[] metadata) {
+        chunk.setModpack(metadata[0]);
+        chunk.setModName(metadata[1]);
+        chunk.setModVersion(metadata[2]);
+        chunk.setCategory(metadata[3]);
+        chunk.setDocType(metadata[4]);
+        chunk.setLanguage(metadata[5]);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * DataOutputStream writes big-endian; the snapshot is little-endian to match the mapped reads
+     */
+    private static final class LittleEndianOutput {
+
+        private final OutputStream stream;
+        private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        LittleEndianOutput(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        void writeShort(int value) throws IOException {
+            scratch.clear();
+            scratch.putShort((short) value);
+            stream.write(scratch.array(), 0, 2);
+        }
+
+        void writeInt(int value) throws IOException {
+            scratch.clear();
+            scratch.putInt(value);
+            stream.write(scratch.array(), 0, 4);
+        }
+
+        void writeLong(long value) throws IOException {
+            scratch.clear();
+            scratch.putLong(value);
+            stream.write(scratch.array(), 0, 8);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            stream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.entity.RagChunk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exact cosine search over an in-memory copy of the chunk embeddings
+ * Rows are normalized once when the index is built, so a search is one dot product per
+ * chunk plus a bounded heap (VectorMath.topK).
+ */
+public class ExactVectorIndex implements RetrievalBackend {
+
+    // Object header plus length field of a Java array
+    private static final long ARRAY_OVERHEAD_BYTES = 16;
+
+    private final long[] ids;
+    private final float[][] rows;
+
+    private ExactVectorIndex(long[] ids, float[][] rows) {
+        this.ids = ids;
+        this.rows = rows;
+    }
+
+    /**
+     * Index of the chunks that have an embedding
+     */
+    public static ExactVectorIndex of(List<RagChunk> chunks) {
+        List<RagChunk> embedded = chunks.stream().filter(chunk -> chunk.getEmbedding() != null).toList();
+        long[] ids = new long[embedded.size()];
+        float[][] rows = new float[embedded.size()][];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = embedded.get(i).getId();
+            rows[i] = VectorMath.normalize(VectorMath.parse(embedded.get(i).getEmbedding()));
+        }
+        return new ExactVectorIndex(ids, rows);
+    }
+
+    @Override
+    public String name() {
+        return "exact-in-memory";
+    }
+
+    @Override
+    public List<Long> search(float[] query, int k) {
+        int[] rowIndices = VectorMath.topK(VectorMath.normalize(query), rows, k);
+        List<Long> result = new ArrayList<>(rowIndices.length);
+        for (int row : rowIndices) {
+            result.add(ids[row]);
+        }
+        return result;
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = ARRAY_OVERHEAD_BYTES + 8L * ids.length + ARRAY_OVERHEAD_BYTES + 8L * rows.length;
+        for (float[] row : rows) {
+            bytes += ARRAY_OVERHEAD_BYTES + 4L * row.length;
+        }
+        return bytes;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+}
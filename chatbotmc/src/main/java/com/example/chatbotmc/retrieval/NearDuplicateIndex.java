@@ -0,0 +1,81 @@
+package com.example.chatbotmc.retrieval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds a stored SimHash fingerprint within maxDistance bits of a new one without comparing against all
+ *
+ * Fingerprints are cut into maxDistance + 1 bands; two fingerprints differing in at most maxDistance
+ * bits agree exactly on at least one band, so only fingerprints sharing a band value are compared.
+ * Not thread-safe; one index serves one ingestion run.
+ */
+public final class NearDuplicateIndex {
+
+    private final int maxDistance;
+    private final int[] bandShifts;
+    private final long[] bandMasks;
+    private final List<Map<Long, List<Entry>>> bands;
+    private int size;
+
+    public NearDuplicateIndex(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 15) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and 15");
+        }
+        this.maxDistance = maxDistance;
+        int count = maxDistance + 1;
+        this.bandShifts = new int[count];
+        this.bandMasks = new long[count];
+        this.bands = new ArrayList<>(count);
+        for (int band = 0, shift = 0; band < count; band++) {
+            int width = 64 / count + (band < 64 % count ? 1 : 0);
+            bandShifts[band] = shift;
+            bandMasks[band] = width == 64 ? -1L : (1L << width) - 1;
+            shift += width;
+            bands.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * The closest stored entry within maxDistance bits, or null
+     */
+    public Entry find(long fingerprint) {
+        Entry closest = null;
+        for (int band = 0; band < bands.size(); band++) {
+            List<Entry> bucket = bands.get(band).get(bandValue(fingerprint, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry entry : bucket) {
+                int distance = SimHash.distance(fingerprint, entry.fingerprint());
+                if (distance <= maxDistance && (closest == null || distance < SimHash.distance(fingerprint, closest.fingerprint()))) {
+                    closest = entry;
+                }
+            }
+        }
+        return closest;
+    }
+
+    public void add(long fingerprint, long id) {
+        Entry entry = new Entry(fingerprint, id);
+        for (int band = 0; band < bands.size(); band++) {
+            bands.get(band).computeIfAbsent(bandValue(fingerprint, band), key -> new ArrayList<>(1)).add(entry);
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        return (fingerprint >>> bandShifts[band]) & bandMasks[band];
+    }
+
+    /**
+     * @param id rag_chunk id of the stored chunk
+     */
+    public record Entry(long fingerprint, long id) {}
+}
@@ -0,0 +1,51 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.service.EmbeddingService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * The search RagService runs in production: pgvector's <=> operator on rag_chunk
+ * Uses the index VectorIndexManager keeps on the embedding column with its search settings,
+ * so its recall is that index's.
+ */
+@Component
+public class PgvectorBackend implements RetrievalBackend {
+
+    private final RagChunkRepository ragChunkRepository;
+    private final VectorIndexManager vectorIndexManager;
+    private final EmbeddingService embeddingService;
+
+    public PgvectorBackend(RagChunkRepository ragChunkRepository, VectorIndexManager vectorIndexManager,
+                           EmbeddingService embeddingService) {
+        this.ragChunkRepository = ragChunkRepository;
+        this.vectorIndexManager = vectorIndexManager;
+        this.embeddingService = embeddingService;
+    }
+
+    @Override
+    public String name() {
+        return "pgvector";
+    }
+
+    @Override
+    public List<Long> search(float[] query, int k) {
+        String vector = VectorMath.toVectorString(query);
+        String model = embeddingService.getModelName();
+        return vectorIndexManager.withSearchSettings(k, false, () -> ragChunkRepository.findSimilarByEmbedding(vector, model, k))
+            .stream()
+            .map(RagChunk::getId)
+            .toList();
+    }
+
+    /**
+     * Table, TOAST and index pages of rag_chunk on disk; what the database must cache to serve searches from memory
+     */
+    @Override
+    public long memoryBytes() {
+        return ragChunkRepository.totalRelationSizeBytes();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.chatbotmc.retrieval;
+
+import java.util.Locale;
+
+/**
+ * Metadata a retrieved chunk must match; null fields match anything
+ * Values are compared ignoring case and surrounding whitespace.
+ */
+public record RagFilter(String modpack, String modName, String category, String docType, String language) {
+
+    public static final RagFilter NONE = new RagFilter(null, null, null, null, null);
+
+    public enum Field {
+        MODPACK,
+        MOD_NAME,
+        CATEGORY,
+        DOC_TYPE,
+        LANGUAGE
+    }
+
+    public RagFilter {
+        modpack = normalize(modpack);
+        modName = normalize(modName);
+        category = normalize(category);
+        docType = normalize(docType);
+        language = normalize(language);
+    }
+
+    public static RagFilter modpack(String modpack) {
+        return new RagFilter(modpack, null, null, null, null);
+    }
+
+    public boolean isEmpty() {
+        return modpack == null && modName == null && category == null && docType == null && language == null;
+    }
+
+    /**
+     * Whether metadata with these values meets every non-null field of the filter
+     */
+    public boolean matches(String modpack, String modName, String category, String docType, String language) {
+        return matches(this.modpack, modpack)
+            && matches(this.modName, modName)
+            && matches(this.category, category)
+            && matches(this.docType, docType)
+            && matches(this.language, language);
+    }
+
+    public String value(Field field) {
+        return switch (field) {
+            case MODPACK -> modpack;
+            case MOD_NAME -> modName;
+            case CATEGORY -> category;
+            case DOC_TYPE -> docType;
+            case LANGUAGE -> language;
+        };
+    }
+
+    private static boolean matches(String wanted, String value) {
+        return wanted == null || wanted.equals(normalize(value));
+    }
+
+    static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
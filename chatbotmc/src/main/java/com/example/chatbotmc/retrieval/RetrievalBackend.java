@@ -0,0 +1,27 @@
+package com.example.chatbotmc.retrieval;
+
+import java.util.List;
+
+/**
+ * A way of finding the chunks nearest to a query embedding
+ * Implementations are compared by RetrievalEvaluator against exact cosine search.
+ */
+public interface RetrievalBackend {
+
+    /**
+     * Short name used in evaluation reports
+     */
+    String name();
+
+    /**
+     * Ids of the k chunks closest to the query, closest first
+     *
+     * @param query query embedding with rag.embedding-dimensions entries
+     */
+    List<Long> search(float[] query, int k);
+
+    /**
+     * Approximate bytes taken by the backend's data and indexes, or -1 if unknown
+     */
+    long memoryBytes();
+}
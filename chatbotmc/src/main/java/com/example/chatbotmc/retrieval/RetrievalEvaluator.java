@@ -0,0 +1,256 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.service.EmbeddingService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Measures retrieval backends on a labeled query set (rag.eval.queries)
+ *
+ * Each backend answers every query; the report gives per backend:
+ * - recall@k: overlap of its top k with the exact cosine top k over the same chunks
+ * - MRR: mean reciprocal rank of the first labeled relevant chunk within the top k
+ * - p50/p99 search latency, without embedding the query
+ * - memory taken by its data and indexes
+ * Reports are written as JSON to rag.eval.report-dir so runs before and after a change can be compared.
+ */
+@Service
+public class RetrievalEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalEvaluator.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final RagChunkRepository ragChunkRepository;
+    private final RagChunkAliasRepository ragChunkAliasRepository;
+    private final EmbeddingService embeddingService;
+    private final List<RetrievalBackend> backends;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper objectMapper;
+
+    @Value("${rag.eval.queries:classpath:retrieval-eval.json}")
+    private String queriesLocation;
+
+    @Value("${rag.eval.repetitions:5}")
+    private int repetitions;
+
+    @Value("${rag.eval.report-dir:reports/retrieval}")
+    private String reportDir;
+
+    public RetrievalEvaluator(RagChunkRepository ragChunkRepository, RagChunkAliasRepository ragChunkAliasRepository,
+                              EmbeddingService embeddingService, List<RetrievalBackend> backends,
+                              ResourceLoader resourceLoader, ObjectMapper objectMapper) {
+        this.ragChunkRepository = ragChunkRepository;
+        this.ragChunkAliasRepository = ragChunkAliasRepository;
+        this.embeddingService = embeddingService;
+        this.backends = backends;
+        this.resourceLoader = resourceLoader;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Evaluate the exact in-memory index and every RetrievalBackend bean, and write the report
+     */
+    public synchronized Evaluation evaluate(int k) throws IOException {
+        List<LabeledQuery> labeledQueries = loadQueries();
+        List<RagChunk> chunks = ragChunkRepository.findByEmbeddingIsNotNull();
+        if (chunks.isEmpty()) {
+            throw new IllegalStateException("No chunks with embeddings; load the RAG data first");
+        }
+
+        // Labels name data.json documents; a document split at ingestion is answered by any of its sub-chunks
+        Map<String, List<Long>> idsByChunkId = new HashMap<>();
+        List<float[]> vectors = new ArrayList<>(chunks.size());
+        for (RagChunk chunk : chunks) {
+            String document = chunk.getParentChunkId() != null ? chunk.getParentChunkId() : chunk.getChunkId();
+            idsByChunkId.computeIfAbsent(document, key -> new ArrayList<>()).add(chunk.getId());
+            vectors.add(VectorMath.parse(chunk.getEmbedding()));
+        }
+        // A near-duplicate collapsed at ingestion is answered by its canonical chunk
+        for (RagChunkAliasRepository.AliasMetadata alias : ragChunkAliasRepository.findAllMetadata()) {
+            String document = alias.getParentChunkId() != null ? alias.getParentChunkId() : alias.getChunkId();
+            idsByChunkId.computeIfAbsent(document, key -> new ArrayList<>()).add(alias.getId());
+        }
+
+        List<EmbeddedQuery> queries = embedQueries(labeledQueries, idsByChunkId);
+        if (queries.isEmpty()) {
+            throw new IllegalStateException("None of the evaluation queries could be embedded");
+        }
+
+        // Ground truth: brute-force cosine distance on the raw vectors, independent of any backend
+        List<List<Long>> truth = new ArrayList<>(queries.size());
+        for (EmbeddedQuery query : queries) {
+            truth.add(IntStream.range(0, chunks.size())
+                .boxed()
+                .sorted(Comparator.comparingDouble(row -> VectorMath.cosineDistance(query.vector(), vectors.get(row))))
+                .limit(k)
+                .map(row -> chunks.get(row).getId())
+                .toList());
+        }
+
+        List<RetrievalBackend> evaluated = new ArrayList<>();
+        evaluated.add(ExactVectorIndex.of(chunks));
+        evaluated.addAll(backends);
+
+        List<BackendResult> results = new ArrayList<>();
+        for (RetrievalBackend backend : evaluated) {
+            results.add(evaluateBackend(backend, queries, truth, k));
+        }
+
+        RetrievalReport report = new RetrievalReport(
+            LocalDateTime.now().toString(),
+            embeddingService.getModelName(),
+            chunks.size(),
+            queries.size(),
+            labeledQueries.size() - queries.size(),
+            k,
+            repetitions,
+            results
+        );
+        Path file = writeReport(report);
+        logger.info("Retrieval evaluation over {} queries written to {}", queries.size(), file);
+        return new Evaluation(report, file);
+    }
+
+    private BackendResult evaluateBackend(RetrievalBackend backend, List<EmbeddedQuery> queries,
+                                          List<List<Long>> truth, int k) {
+        double recallSum = 0;
+        double reciprocalRankSum = 0;
+        long[] latencies = new long[queries.size() * Math.max(repetitions, 1)];
+        int samples = 0;
+
+        for (int q = 0; q < queries.size(); q++) {
+            EmbeddedQuery query = queries.get(q);
+            // The first search warms caches and JIT; only the repetitions after it are timed
+            List<Long> result = backend.search(query.vector(), k);
+            for (int r = 0; r < Math.max(repetitions, 1); r++) {
+                long start = System.nanoTime();
+                backend.search(query.vector(), k);
+                latencies[samples++] = System.nanoTime() - start;
+            }
+
+            Set<Long> expected = new HashSet<>(truth.get(q));
+            long found = result.stream().filter(expected::contains).count();
+            recallSum += expected.isEmpty() ? 1.0 : (double) found / expected.size();
+
+            for (int rank = 0; rank < result.size(); rank++) {
+                if (query.relevantIds().contains(result.get(rank))) {
+                    reciprocalRankSum += 1.0 / (rank + 1);
+                    break;
+                }
+            }
+        }
+
+        Arrays.sort(latencies, 0, samples);
+        return new BackendResult(
+            backend.name(),
+            recallSum / queries.size(),
+            reciprocalRankSum / queries.size(),
+            percentileMs(latencies, samples, 0.50),
+            percentileMs(latencies, samples, 0.99),
+            backend.memoryBytes()
+        );
+    }
+
+    private List<LabeledQuery> loadQueries() throws IOException {
+        try (InputStream input = resourceLoader.getResource(queriesLocation).getInputStream()) {
+            return objectMapper.readValue(input, new TypeReference<List<LabeledQuery>>() {});
+        }
+    }
+
+    /**
+     * Embed the queries in one batch; labels naming unknown chunks are ignored
+     */
+    private List<EmbeddedQuery> embedQueries(List<LabeledQuery> labeledQueries, Map<String, List<Long>> idsByChunkId) {
+        List<List<Double>> embeddings = embeddingService.generateEmbeddings(
+            labeledQueries.stream().map(LabeledQuery::query).toList());
+
+        List<EmbeddedQuery> queries = new ArrayList<>();
+        for (int i = 0; i < labeledQueries.size(); i++) {
+            if (embeddings.get(i) == null) {
+                logger.warn("Could not embed evaluation query: {}", labeledQueries.get(i).query());
+                continue;
+            }
+            Set<Long> relevantIds = new HashSet<>();
+            for (String chunkId : labeledQueries.get(i).relevant()) {
+                relevantIds.addAll(idsByChunkId.getOrDefault(chunkId, List.of()));
+            }
+            queries.add(new EmbeddedQuery(VectorMath.toFloatArray(embeddings.get(i)), relevantIds));
+        }
+        return queries;
+    }
+
+    private Path writeReport(RetrievalReport report) throws IOException {
+        Path directory = Path.of(reportDir);
+        Files.createDirectories(directory);
+        Path file = directory.resolve("retrieval-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".json").toAbsolutePath();
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), report);
+        return file;
+    }
+
+    // Nearest-rank percentile
+    private static double percentileMs(long[] sorted, int size, double percentile) {
+        if (size == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(percentile * size);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    /**
+     * An entry of the query set: the question and the data.json ids of chunks that answer it
+     */
+    public record LabeledQuery(String query, List<String> relevant) {
+        public LabeledQuery {
+            relevant = relevant == null ? List.of() : relevant;
+        }
+    }
+
+    private record EmbeddedQuery(float[] vector, Set<Long> relevantIds) {}
+
+    public record RetrievalReport(
+        String createdAt,
+        String embeddingModel,
+        int chunks,
+        int queries,
+        int skippedQueries,
+        int k,
+        int repetitions,
+        List<BackendResult> backends
+    ) {}
+
+    public record BackendResult(
+        String backend,
+        double recallAtK,
+        double mrr,
+        double p50Ms,
+        double p99Ms,
+        long memoryBytes
+    ) {}
+
+    public record Evaluation(RetrievalReport report, Path file) {}
+}
@@ -0,0 +1,86 @@
+package com.example.chatbotmc.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 64-bit SimHash fingerprints over word shingles
+ * Texts sharing most of their shingles get fingerprints differing in few bits, so near-duplicates
+ * are found by Hamming distance (Charikar; 3 bits of 64 is the usual web-page threshold).
+ */
+public final class SimHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    /**
+     * @param shingleWords words per shingle; texts shorter than that form a single shingle
+     */
+    public static long fingerprint(String text, int shingleWords) {
+        List<String> words = words(text);
+        if (words.isEmpty()) {
+            return 0;
+        }
+        int[] weights = new int[64];
+        int shingles = Math.max(words.size() - shingleWords + 1, 1);
+        for (int start = 0; start < shingles; start++) {
+            long hash = hash(words, start, Math.min(start + shingleWords, words.size()));
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // Lowercased letter and digit runs, so punctuation and spacing differences do not count
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (!word.isEmpty()) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    // FNV-1a over the shingle, then the MurmurHash3 finalizer so every output bit depends on every input bit
+    private static long hash(List<String> words, int from, int to) {
+        long hash = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            String word = words.get(i);
+            for (int j = 0; j < word.length(); j++) {
+                hash = (hash ^ word.charAt(j)) * FNV_PRIME;
+            }
+            hash = (hash ^ ' ') * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.chatbotmc.retrieval;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits documents into token-bounded, overlapping sub-chunks for embedding (rag.chunking.*)
+ *
+ * Text is cut at paragraph boundaries first, then at sentence boundaries, and only a sentence
+ * longer than the limit is cut between words. Consecutive sub-chunks share whole trailing sentences
+ * of up to overlapTokens, so an answer spanning a boundary is still found in one of them.
+ * Token counts are estimated (see {@link #estimateTokens}); no tokenizer is needed at ingestion.
+ */
+@Component
+public class TextChunker {
+
+    private final int maxTokens;
+    private final int overlapTokens;
+
+    public TextChunker(@Value("${rag.chunking.max-tokens:256}") int maxTokens,
+                       @Value("${rag.chunking.overlap-tokens:32}") int overlapTokens) {
+        if (maxTokens < 16) {
+            throw new IllegalArgumentException("rag.chunking.max-tokens must be at least 16");
+        }
+        this.maxTokens = maxTokens;
+        this.overlapTokens = Math.max(0, Math.min(overlapTokens, maxTokens / 2));
+    }
+
+    /**
+     * @return the text itself if it fits in maxTokens, otherwise its sub-chunks in order
+     */
+    public List<String> split(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        if (estimateTokens(text) <= maxTokens) {
+            return List.of(text.strip());
+        }
+
+        List<Unit> units = new ArrayList<>();
+        for (String paragraph : text.strip().split("\\n\\s*\\n")) {
+            addParagraph(units, paragraph.strip());
+        }
+        return pack(units);
+    }
+
+    /**
+     * Approximate token count: one per punctuation mark, and one per word plus one per further
+     * eight characters, which follows WordPiece and SentencePiece counts on English text closely
+     */
+    public static int estimateTokens(String text) {
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+            tokens += wordTokens(wordLength);
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + wordTokens(wordLength);
+    }
+
+    private static int wordTokens(int length) {
+        return length == 0 ? 0 : 1 + (length - 1) / 8;
+    }
+
+    private void addParagraph(List<Unit> units, String paragraph) {
+        if (paragraph.isEmpty()) {
+            return;
+        }
+        int tokens = estimateTokens(paragraph);
+        if (tokens <= maxTokens) {
+            units.add(new Unit(paragraph, tokens, true));
+            return;
+        }
+
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(paragraph);
+        boolean first = true;
+        for (int start = sentences.first(), end = sentences.next(); end != BreakIterator.DONE;
+             start = end, end = sentences.next()) {
+            String sentence = paragraph.substring(start, end).strip();
+            if (sentence.isEmpty()) {
+                continue;
+            }
+            int sentenceTokens = estimateTokens(sentence);
+            if (sentenceTokens <= maxTokens) {
+                units.add(new Unit(sentence, sentenceTokens, first));
+            } else {
+                for (String piece : splitWords(sentence)) {
+                    units.add(new Unit(piece, estimateTokens(piece), first));
+                    first = false;
+                }
+            }
+            first = false;
+        }
+    }
+
+    // Last resort for a "sentence" longer than maxTokens, e.g. a list without full stops
+    private List<String> splitWords(String sentence) {
+        List<String> pieces = new ArrayList<>();
+        StringBuilder piece = new StringBuilder();
+        int tokens = 0;
+        for (String word : sentence.split("\\s+")) {
+            int wordTokens = estimateTokens(word);
+            if (tokens + wordTokens > maxTokens && !piece.isEmpty()) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+                tokens = 0;
+            }
+            if (!piece.isEmpty()) {
+                piece.append(' ');
+            }
+            piece.append(word);
+            tokens += wordTokens;
+        }
+        if (!piece.isEmpty()) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    /**
+     * Fill sub-chunks greedily with units; each new one starts with the trailing units of the
+     * previous one that fit in overlapTokens
+     */
+    private List<String> pack(List<Unit> units) {
+        List<String> chunks = new ArrayList<>();
+        List<Unit> current = new ArrayList<>();
+        int currentTokens = 0;
+        boolean hasNewUnit = false;
+
+        for (Unit unit : units) {
+            if (currentTokens + unit.tokens() > maxTokens && hasNewUnit) {
+                chunks.add(join(current));
+                List<Unit> overlap = trailingOverlap(current, unit.tokens());
+                current = new ArrayList<>(overlap);
+                currentTokens = overlap.stream().mapToInt(Unit::tokens).sum();
+                hasNewUnit = false;
+            }
+            current.add(unit);
+            currentTokens += unit.tokens();
+            hasNewUnit = true;
+        }
+        if (hasNewUnit) {
+            chunks.add(join(current));
+        }
+        return chunks;
+    }
+
+    private List<Unit> trailingOverlap(List<Unit> previous, int nextTokens) {
+        int budget = Math.min(overlapTokens, maxTokens - nextTokens);
+        int tokens = 0;
+        int from = previous.size();
+        while (from > 0 && tokens + previous.get(from - 1).tokens() <= budget) {
+            from--;
+            tokens += previous.get(from).tokens();
+        }
+        return previous.subList(from, previous.size());
+    }
+
+    private static String join(List<Unit> units) {
+        StringBuilder text = new StringBuilder();
+        for (Unit unit : units) {
+            if (!text.isEmpty()) {
+                text.append(unit.startsParagraph() ? "\n\n" : " ");
+            }
+            text.append(unit.text());
+        }
+        return text.toString();
+    }
+
+    private record Unit(String text, int tokens, boolean startsParagraph) {}
+}
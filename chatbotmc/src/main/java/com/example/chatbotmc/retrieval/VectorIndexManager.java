@@ -0,0 +1,557 @@
+package com.example.chatbotmc.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Lifecycle of the pgvector index on rag_chunk.embedding (rag.index.*)
+ * Hibernate creates the vector column but no ANN index, so without one every search scans the table.
+ * - status: whether the index exists, is valid and was built with the configured type and parameters
+ * - rebuild: CREATE INDEX CONCURRENTLY under a temporary name, then swapped in, so searches and writes go on
+ * - maintain: rebuild when the index is missing, invalid, built with other parameters, or the table has
+ *   changed by rag.index.rebuild-fraction since the last build (IVFFlat centroids go stale)
+ * - withSearchSettings: hnsw.ef_search or ivfflat.probes for one search, derived from rag.index.recall-target
+ *   until calibrate() has measured the smallest setting meeting the recall and latency targets
+ * - buildShadowIndex / swapShadowIndex: the index for the column EmbeddingDimensionMigration swaps in
+ */
+@Service
+public class VectorIndexManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorIndexManager.class);
+
+    static final String INDEX_NAME = "idx_rag_chunk_embedding";
+    private static final String BUILD_NAME = INDEX_NAME + "_build";
+    private static final String RETIRED_NAME = INDEX_NAME + "_retired";
+    private static final String SHADOW_NAME = INDEX_NAME + "_next";
+
+    public enum IndexType {
+        HNSW,
+        IVFFLAT,
+        NONE
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${rag.index.type:hnsw}")
+    private String type;
+
+    @Value("${rag.index.hnsw.m:16}")
+    private int m;
+
+    @Value("${rag.index.hnsw.ef-construction:64}")
+    private int efConstruction;
+
+    // 0 picks rows / 1000 (sqrt(rows) above a million rows), as pgvector suggests
+    @Value("${rag.index.ivfflat.lists:0}")
+    private int lists;
+
+    @Value("${rag.index.recall-target:0.95}")
+    private double recallTarget;
+
+    @Value("${rag.index.latency-target-ms:50}")
+    private double latencyTargetMs;
+
+    @Value("${rag.index.iterative-scan:off}")
+    private String iterativeScan;
+
+    @Value("${rag.index.rebuild-fraction:0.2}")
+    private double rebuildFraction;
+
+    @Value("${rag.index.maintenance-work-mem:256MB}")
+    private String maintenanceWorkMem;
+
+    @Value("${rag.index.calibration-queries:50}")
+    private int calibrationQueries;
+
+    @Value("${rag.top-k:5}")
+    private int defaultTopK;
+
+    // Measured by calibrate() for the current index; 0 until then
+    private volatile int calibratedSetting;
+    // Lists of the IVFFlat index found or built, needed to turn the recall target into probes
+    private volatile int indexLists;
+    // Rows with embeddings when the index was last built or first seen by this process
+    private volatile long rowsAtBuild = -1;
+    private volatile BuildInfo lastBuild;
+    // Built by buildShadowIndex, becomes lastBuild when swapped in
+    private volatile BuildInfo shadowBuild;
+    private volatile int shadowLists;
+
+    public VectorIndexManager(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    public IndexType indexType() {
+        return IndexType.valueOf(type.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Run a search with the index's search parameter set for its transaction only
+     * Joins the caller's transaction if there is one; the setting then lasts until it ends.
+     */
+    public <T> T withSearchSettings(int topK, boolean filtered, Supplier<T> search) {
+        IndexType indexType = indexType();
+        if (indexType == IndexType.NONE) {
+            return search.get();
+        }
+        int value = searchSetting(indexType, topK);
+        return transactionTemplate.execute(status -> {
+            if (value > 0) {
+                setLocal(searchParameter(indexType), Integer.toString(value));
+            }
+            // Iterative scans (pgvector 0.8+) keep scanning until enough rows pass the filter
+            if (filtered && !"off".equalsIgnoreCase(iterativeScan)) {
+                setLocal(indexType.name().toLowerCase(Locale.ROOT) + ".iterative_scan", iterativeScan);
+            }
+            return search.get();
+        });
+    }
+
+    /**
+     * The index as PostgreSQL has it, compared with the configuration
+     */
+    public IndexStatus status() {
+        long rows = countRows();
+        List<Map<String, Object>> found = jdbcTemplate.queryForList("""
+            SELECT am.amname AS method, i.indisvalid AS valid,
+                   coalesce(array_to_string(c.reloptions, ','), '') AS options,
+                   pg_relation_size(c.oid) AS bytes
+            FROM pg_index i
+            JOIN pg_class c ON c.oid = i.indexrelid
+            JOIN pg_am am ON am.oid = c.relam
+            WHERE c.relname = ?
+            """, INDEX_NAME);
+
+        IndexType configured = indexType();
+        if (found.isEmpty()) {
+            return new IndexStatus(INDEX_NAME, configured.name(), null, false, false, configured == IndexType.NONE,
+                null, 0, rows, rowsAtBuild, lastBuild, searchParameter(configured), currentSetting(configured));
+        }
+
+        Map<String, Object> index = found.get(0);
+        String method = ((String) index.get("method")).toUpperCase(Locale.ROOT);
+        String options = (String) index.get("options");
+        boolean valid = (Boolean) index.get("valid");
+        if (method.equals(IndexType.IVFFLAT.name())) {
+            indexLists = parseOption(options, "lists");
+        }
+        if (rowsAtBuild < 0 && valid) {
+            // Built before this process started; changes are counted from here
+            rowsAtBuild = rows;
+        }
+        return new IndexStatus(INDEX_NAME, configured.name(), method, true, valid,
+            matchesConfiguration(configured, method, options), options, ((Number) index.get("bytes")).longValue(),
+            rows, rowsAtBuild, lastBuild, searchParameter(configured), currentSetting(configured));
+    }
+
+    /**
+     * Rebuild the index if it is missing, invalid, out of date with the configuration, or the table
+     * has changed enough since the last build; called after every load, import and re-embedding
+     * Runs in the background, so failures (e.g. no pgvector) are logged rather than thrown.
+     */
+    public void maintain() {
+        try {
+            if (indexType() == IndexType.NONE) {
+                return;
+            }
+            IndexStatus status = status();
+            if (status.rows() == 0) {
+                return;
+            }
+            String reason = null;
+            if (!status.exists()) {
+                reason = "missing";
+            } else if (!status.valid()) {
+                reason = "invalid";
+            } else if (!status.matchesConfiguration()) {
+                reason = "built with " + status.type() + " (" + status.options() + ")";
+            } else if (Math.abs(status.rows() - status.rowsAtBuild()) >= rebuildFraction * Math.max(status.rowsAtBuild(), 1)) {
+                reason = "rows changed from " + status.rowsAtBuild() + " to " + status.rows();
+            }
+            if (reason != null) {
+                logger.info("Rebuilding vector index: {}", reason);
+                rebuild();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Vector index maintenance failed, searches stay as they are: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Build the configured index concurrently and swap it in for the current one
+     * With rag.index.type=none the index is dropped, so searches are exact.
+     *
+     * @throws IllegalStateException if there are no embedded chunks to build from
+     */
+    public synchronized IndexStatus rebuild() {
+        IndexType indexType = indexType();
+        if (indexType == IndexType.NONE) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + INDEX_NAME);
+            return status();
+        }
+        long rows = countRows();
+        if (rows == 0) {
+            throw new IllegalStateException("No chunks with embeddings to index; load the RAG data first");
+        }
+
+        int buildLists = indexType == IndexType.IVFFLAT ? resolveLists(rows) : 0;
+        String definition = definition(indexType, "embedding", buildLists);
+        long buildMs = createConcurrently(BUILD_NAME, definition);
+
+        // Renames are quick and do not block searches; the old index is dropped once no query uses it
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            connection.setAutoCommit(false);
+            try {
+                execute(connection, "ALTER INDEX IF EXISTS " + INDEX_NAME + " RENAME TO " + RETIRED_NAME);
+                execute(connection, "ALTER INDEX " + BUILD_NAME + " RENAME TO " + INDEX_NAME);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return null;
+        });
+        jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + RETIRED_NAME);
+
+        indexLists = buildLists;
+        calibratedSetting = 0;
+        rowsAtBuild = rows;
+        lastBuild = new BuildInfo(Instant.now(), buildMs, rows, definition);
+        logger.info("Built vector index {} over {} rows in {} ms: {}", INDEX_NAME, rows, buildMs, definition);
+        return status();
+    }
+
+    /**
+     * Build the configured index on a column that is to replace rag_chunk.embedding, under a name of its own
+     * Searches keep using the current index until swapShadowIndex; nothing is built with rag.index.type=none.
+     */
+    public synchronized void buildShadowIndex(String column) {
+        IndexType indexType = indexType();
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM rag_chunk WHERE " + column + " IS NOT NULL", Long.class);
+        if (indexType == IndexType.NONE || rows == null || rows == 0) {
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS " + SHADOW_NAME);
+            shadowBuild = null;
+            return;
+        }
+
+        int buildLists = indexType == IndexType.IVFFLAT ? resolveLists(rows) : 0;
+        long buildMs = createConcurrently(SHADOW_NAME, definition(indexType, column, buildLists));
+        // Recorded as it will read once the column is renamed to embedding
+        shadowBuild = new BuildInfo(Instant.now(), buildMs, rows, definition(indexType, "embedding", buildLists));
+        shadowLists = buildLists;
+        logger.info("Built vector index {} on {} over {} rows in {} ms", SHADOW_NAME, column, rows, buildMs);
+    }
+
+    /**
+     * Put the shadow index in place of the current one, within the caller's transaction that renames
+     * the shadow column to embedding; the current index stays on the old column and goes with it
+     */
+    void swapShadowIndex(Connection connection) throws SQLException {
+        execute(connection, "ALTER INDEX IF EXISTS " + INDEX_NAME + " RENAME TO " + RETIRED_NAME);
+        execute(connection, "ALTER INDEX IF EXISTS " + SHADOW_NAME + " RENAME TO " + INDEX_NAME);
+    }
+
+    /**
+     * Take over the shadow build's state once the transaction calling swapShadowIndex has committed
+     */
+    synchronized void shadowSwapped() {
+        BuildInfo build = shadowBuild;
+        indexLists = build == null ? 0 : shadowLists;
+        calibratedSetting = 0;
+        rowsAtBuild = build == null ? -1 : build.rows();
+        lastBuild = build;
+        shadowBuild = null;
+    }
+
+    /**
+     * Measure recall against exact search and latency for a range of search settings on
+     * rag.index.calibration-queries stored vectors, and use the smallest setting meeting both targets
+     * Falls back to the best recall within the latency target, then to the fastest setting.
+     *
+     * @throws IllegalStateException if there is no valid index to calibrate
+     */
+    public synchronized Calibration calibrate() {
+        IndexType indexType = indexType();
+        IndexStatus status = status();
+        if (indexType == IndexType.NONE || !status.exists() || !status.valid()) {
+            throw new IllegalStateException("No valid vector index to calibrate; rebuild it first");
+        }
+
+        int k = defaultTopK;
+        // Stored vectors stand in for queries; each one's own row is left out of both result sets,
+        // since it is always its own nearest neighbour and would inflate recall
+        List<CalibrationQuery> queries = jdbcTemplate.query(
+            "SELECT id, embedding::text FROM rag_chunk WHERE embedding IS NOT NULL ORDER BY random() LIMIT ?",
+            (rs, rowNum) -> new CalibrationQuery(rs.getLong(1), rs.getString(2)), calibrationQueries);
+
+        // Exact answers: with index scans off the planner sorts every row by distance
+        List<Set<Long>> truth = new ArrayList<>(queries.size());
+        for (CalibrationQuery query : queries) {
+            truth.add(new HashSet<>(transactionTemplate.execute(transaction -> {
+                jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+                return neighbourIds(query, k);
+            })));
+        }
+
+        String parameter = searchParameter(indexType);
+        List<Trial> trials = new ArrayList<>();
+        for (int value : candidateSettings(indexType, k)) {
+            double recallSum = 0;
+            long[] latencies = new long[queries.size()];
+            for (int q = 0; q < queries.size(); q++) {
+                CalibrationQuery query = queries.get(q);
+                long start = System.nanoTime();
+                List<Long> ids = transactionTemplate.execute(transaction -> {
+                    setLocal(parameter, Integer.toString(value));
+                    return neighbourIds(query, k);
+                });
+                latencies[q] = System.nanoTime() - start;
+                Set<Long> expected = truth.get(q);
+                recallSum += expected.isEmpty() ? 1.0 : (double) ids.stream().filter(expected::contains).count() / expected.size();
+            }
+            Arrays.sort(latencies);
+            trials.add(new Trial(value, recallSum / Math.max(queries.size(), 1),
+                percentileMs(latencies, 0.50), percentileMs(latencies, 0.99)));
+        }
+
+        Trial chosen = choose(trials);
+        calibratedSetting = chosen.value();
+        logger.info("Calibrated {} = {} (recall {}, p99 {} ms) over {} queries",
+            parameter, chosen.value(), chosen.recall(), chosen.p99Ms(), queries.size());
+        return new Calibration(parameter, k, queries.size(), recallTarget, latencyTargetMs, chosen.value(), trials);
+    }
+
+    private Trial choose(List<Trial> trials) {
+        Trial bestWithinLatency = null;
+        Trial fastest = trials.get(0);
+        for (Trial trial : trials) {
+            boolean withinLatency = trial.p99Ms() <= latencyTargetMs;
+            if (withinLatency && trial.recall() >= recallTarget) {
+                return trial;
+            }
+            if (withinLatency && (bestWithinLatency == null || trial.recall() > bestWithinLatency.recall())) {
+                bestWithinLatency = trial;
+            }
+            if (trial.p99Ms() < fastest.p99Ms()) {
+                fastest = trial;
+            }
+        }
+        return bestWithinLatency != null ? bestWithinLatency : fastest;
+    }
+
+    private List<Integer> candidateSettings(IndexType indexType, int k) {
+        TreeSet<Integer> values = new TreeSet<>();
+        if (indexType == IndexType.HNSW) {
+            for (int ef : new int[] {10, 20, 40, 64, 100, 200, 400}) {
+                values.add(Math.max(ef, k));
+            }
+        } else {
+            int maxProbes = Math.max(indexLists, 1);
+            for (int probes = 1; probes < maxProbes; probes *= 2) {
+                values.add(probes);
+            }
+            values.add(maxProbes);
+        }
+        return List.copyOf(values);
+    }
+
+    /**
+     * ef_search or probes for a search: the calibrated value, else one derived from the recall target
+     * HNSW returns at most ef_search rows, so it is never below top-k.
+     */
+    private int searchSetting(IndexType indexType, int topK) {
+        int value = currentSetting(indexType);
+        return indexType == IndexType.HNSW ? Math.max(value, topK) : value;
+    }
+
+    private int currentSetting(IndexType indexType) {
+        if (calibratedSetting > 0) {
+            return calibratedSetting;
+        }
+        return switch (indexType) {
+            case HNSW -> recallTarget <= 0.90 ? 20 : recallTarget <= 0.95 ? 40 : recallTarget <= 0.98 ? 100
+                : recallTarget <= 0.99 ? 200 : 400;
+            case IVFFLAT -> {
+                if (indexLists == 0) {
+                    yield 0;
+                }
+                double root = Math.sqrt(indexLists);
+                double probes = recallTarget <= 0.90 ? root / 2 : recallTarget <= 0.95 ? root
+                    : recallTarget <= 0.98 ? 2 * root : recallTarget <= 0.99 ? 4 * root : indexLists;
+                yield (int) Math.min(Math.max(Math.ceil(probes), 1), indexLists);
+            }
+            case NONE -> 0;
+        };
+    }
+
+    private static String searchParameter(IndexType indexType) {
+        return switch (indexType) {
+            case HNSW -> "hnsw.ef_search";
+            case IVFFLAT -> "ivfflat.probes";
+            case NONE -> null;
+        };
+    }
+
+    private boolean matchesConfiguration(IndexType configured, String method, String options) {
+        if (!configured.name().equals(method)) {
+            return false;
+        }
+        if (configured == IndexType.HNSW) {
+            return parseOption(options, "m") == m && parseOption(options, "ef_construction") == efConstruction;
+        }
+        // With automatic lists the count follows the table size; growth is handled by rebuild-fraction
+        return lists <= 0 || parseOption(options, "lists") == lists;
+    }
+
+    private String definition(IndexType indexType, String column, int buildLists) {
+        return indexType == IndexType.HNSW
+            ? "hnsw (" + column + " vector_cosine_ops) WITH (m = " + m + ", ef_construction = " + efConstruction + ")"
+            : "ivfflat (" + column + " vector_cosine_ops) WITH (lists = " + buildLists + ")";
+    }
+
+    /**
+     * CREATE INDEX CONCURRENTLY with rag.index.maintenance-work-mem
+     *
+     * @return build time in milliseconds
+     */
+    private long createConcurrently(String name, String definition) {
+        long start = System.nanoTime();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            // Left behind (invalid) if an earlier concurrent build was interrupted
+            execute(connection, "DROP INDEX IF EXISTS " + name);
+            try (PreparedStatement statement = connection.prepareStatement("SELECT set_config('maintenance_work_mem', ?, false)")) {
+                statement.setString(1, maintenanceWorkMem);
+                statement.execute();
+            }
+            try {
+                execute(connection, "CREATE INDEX CONCURRENTLY " + name + " ON rag_chunk USING " + definition);
+            } finally {
+                execute(connection, "RESET maintenance_work_mem");
+            }
+            return null;
+        });
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private int resolveLists(long rows) {
+        if (lists > 0) {
+            return lists;
+        }
+        long resolved = rows <= 1_000_000 ? rows / 1000 : (long) Math.sqrt(rows);
+        return (int) Math.max(resolved, 1);
+    }
+
+    /**
+     * The k nearest rows to a stored vector other than its own row
+     * One extra row is fetched rather than excluding the id in SQL, so the plan is the one searches use.
+     */
+    private List<Long> neighbourIds(CalibrationQuery query, int k) {
+        List<Long> ids = jdbcTemplate.queryForList("""
+            SELECT id FROM rag_chunk
+            WHERE embedding IS NOT NULL
+            ORDER BY embedding <=> CAST(? AS vector)
+            LIMIT ?
+            """, Long.class, query.vector(), k + 1);
+        return ids.stream().filter(id -> id != query.id()).limit(k).toList();
+    }
+
+    private record CalibrationQuery(long id, String vector) {}
+
+    private long countRows() {
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM rag_chunk WHERE embedding IS NOT NULL", Long.class);
+        return rows == null ? 0 : rows;
+    }
+
+    private void setLocal(String parameter, String value) {
+        jdbcTemplate.queryForObject("SELECT set_config(?, ?, true)", String.class, parameter, value);
+    }
+
+    // reloptions as "m=16,ef_construction=64"; 0 when the option is not set
+    private static int parseOption(String options, String name) {
+        for (String option : options.split(",")) {
+            int equals = option.indexOf('=');
+            if (equals > 0 && option.substring(0, equals).trim().equals(name)) {
+                return Integer.parseInt(option.substring(equals + 1).trim());
+            }
+        }
+        return 0;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    // Nearest-rank percentile
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    /**
+     * @param type                 access method of the existing index, null if there is none
+     * @param matchesConfiguration the index has the configured type and build parameters
+     * @param rowsAtBuild          rows with embeddings at the last build, or when the index was first seen
+     * @param lastBuild            last build by this process, null if none
+     * @param searchValue          value of searchParameter used for unfiltered searches
+     */
+    public record IndexStatus(
+        String name,
+        String configuredType,
+        String type,
+        boolean exists,
+        boolean valid,
+        boolean matchesConfiguration,
+        String options,
+        long sizeBytes,
+        long rows,
+        long rowsAtBuild,
+        BuildInfo lastBuild,
+        String searchParameter,
+        int searchValue
+    ) {}
+
+    public record BuildInfo(Instant builtAt, long buildMs, long rows, String definition) {}
+
+    public record Trial(int value, double recall, double p50Ms, double p99Ms) {}
+
+    public record Calibration(
+        String parameter,
+        int k,
+        int queries,
+        double recallTarget,
+        double latencyTargetMs,
+        int chosen,
+        List<Trial> trials
+    ) {}
+}
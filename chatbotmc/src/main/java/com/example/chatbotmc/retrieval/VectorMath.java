@@ -0,0 +1,175 @@
+package com.example.chatbotmc.retrieval;
+
+import java.util.List;
+
+/**
+ * Vector arithmetic for exact in-memory similarity search
+ * Vectors are float[] like the pgvector column. Cosine distance matches pgvector's
+ * <=> operator: 1 - cos(a, b), so 0 is identical and 2 is opposite.
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    public static float[] toFloatArray(List<Double> vector) {
+        float[] result = new float[vector.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = vector.get(i).floatValue();
+        }
+        return result;
+    }
+
+    /**
+     * Parse pgvector's text form, e.g. "[0.1,0.2,0.3]"
+     */
+    public static float[] parse(String vector) {
+        String body = vector.trim();
+        body = body.substring(1, body.length() - 1);
+        if (body.isBlank()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Float.parseFloat(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * pgvector's text form of the vector
+     */
+    public static String toVectorString(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public static double norm(float[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    /**
+     * Unit-length copy of the vector; a zero vector is returned unchanged
+     */
+    public static float[] normalize(float[] a) {
+        double norm = norm(a);
+        float[] result = new float[a.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (float) (a[i] / norm);
+        }
+        return result;
+    }
+
+    /**
+     * 1 - cos(a, b); 1 when either vector is zero, like pgvector
+     */
+    public static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        if (normA == 0 || normB == 0) {
+            return 1.0;
+        }
+        return 1.0 - dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * Indices of the k rows with the smallest cosine distance to the query, closest first
+     * Rows must already be normalized (see {@link #normalize}), so the distance reduces to
+     * 1 - dot product. Selection keeps a bounded min-heap of scores: O(n log k), no boxing.
+     */
+    public static int[] topK(float[] normalizedQuery, float[][] normalizedRows, int k) {
+        int size = Math.min(k, normalizedRows.length);
+        if (size <= 0) {
+            return new int[0];
+        }
+
+        // Heap ordered by ascending score, so the weakest of the current best k is at the root
+        int[] heapIndex = new int[size];
+        double[] heapScore = new double[size];
+        int heapSize = 0;
+
+        for (int row = 0; row < normalizedRows.length; row++) {
+            double score = dot(normalizedQuery, normalizedRows[row]);
+            if (heapSize < size) {
+                heapIndex[heapSize] = row;
+                heapScore[heapSize] = score;
+                siftUp(heapIndex, heapScore, heapSize++);
+            } else if (score > heapScore[0]) {
+                heapIndex[0] = row;
+                heapScore[0] = score;
+                siftDown(heapIndex, heapScore, heapSize);
+            }
+        }
+
+        // Pop the weakest first and fill from the back to get best-first order
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = heapIndex[0];
+            heapSize--;
+            heapIndex[0] = heapIndex[heapSize];
+            heapScore[0] = heapScore[heapSize];
+            siftDown(heapIndex, heapScore, heapSize);
+        }
+        return result;
+    }
+
+    private static void siftUp(int[] index, double[] score, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (score[parent] <= score[position]) {
+                return;
+            }
+            swap(index, score, parent, position);
+            position = parent;
+        }
+    }
+
+    private static void siftDown(int[] index, double[] score, int size) {
+        int position = 0;
+        while (true) {
+            int left = 2 * position + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && score[left + 1] < score[left] ? left + 1 : left;
+            if (score[position] <= score[smallest]) {
+                return;
+            }
+            swap(index, score, position, smallest);
+            position = smallest;
+        }
+    }
+
+    private static void swap(int[] index, double[] score, int a, int b) {
+        int i = index[a];
+        index[a] = index[b];
+        index[b] = i;
+        double s = score[a];
+        score[a] = score[b];
+        score[b] = s;
+    }
+}
@@ -9,6 +9,7 @@ import com.example.chatbotmc.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -34,6 +35,7 @@ public class AuthService {
         this.emailService = emailService;
     }
     
+    @Transactional
     public AuthResponse register(RegisterRequest request) {
         if (userRepository.existsByUsername(request.username())) {
             throw new RuntimeException("Username is already taken");
@@ -60,7 +62,7 @@ public class AuthService {
         
         userRepository.save(user);
         
-        // Send approval email to admin
+        // Queue approval email to admin, committed together with the user
         emailService.sendAdminApprovalEmail(user.getUsername(), user.getEmail(), approvalToken);
         
         // Return response without token (user needs admin approval first)
@@ -96,6 +98,7 @@ public class AuthService {
         );
     }
     
+    @Transactional
     public String approveUser(String token, String action) {
         User user = userRepository.findByApprovalToken(token)
             .orElseThrow(() -> new RuntimeException("Invalid approval token"));
@@ -111,7 +114,7 @@ public class AuthService {
             user.setApprovalToken(null);
             userRepository.save(user);
             
-            // Send notification to user
+            // Queue notification to user
             emailService.sendUserApprovalNotification(user.getEmail(), user.getUsername(), true);
             
             return "User " + user.getUsername() + " has been successfully approved!";
@@ -120,7 +123,7 @@ public class AuthService {
             user.setApprovalToken(null);
             userRepository.save(user);
             
-            // Send notification to user
+            // Queue notification to user
             emailService.sendUserApprovalNotification(user.getEmail(), user.getUsername(), false);
             
             return "User " + user.getUsername() + " has been rejected.";
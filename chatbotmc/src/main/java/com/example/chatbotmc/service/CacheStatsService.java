@@ -0,0 +1,82 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.config.CacheConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hit ratios and sizes of the Hibernate second-level cache regions and the Spring caches
+ */
+@Service
+public class CacheStatsService {
+
+    private static final List<String> ENTITY_REGIONS = List.of(
+        CacheConfig.USERS_REGION,
+        CacheConfig.CONVERSATIONS_REGION
+    );
+
+    private final CacheManager cacheManager;
+    private final Statistics statistics;
+
+    public CacheStatsService(CacheManager cacheManager, EntityManagerFactory entityManagerFactory) {
+        this.cacheManager = cacheManager;
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public List<CacheStats> getStats() {
+        List<CacheStats> stats = new ArrayList<>();
+
+        for (String region : ENTITY_REGIONS) {
+            CacheRegionStatistics regionStats = statistics.getDomainDataRegionStatistics(region);
+            long elements = regionStats.getElementCountInMemory();
+            stats.add(CacheStats.of(
+                "hibernate:" + region,
+                regionStats.getHitCount(),
+                regionStats.getMissCount(),
+                elements == CacheRegionStatistics.NO_EXTENDED_STAT_SUPPORT_RETURN ? null : elements,
+                null
+            ));
+        }
+
+        for (String name : cacheManager.getCacheNames()) {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+                com.github.benmanes.caffeine.cache.stats.CacheStats cacheStats = cache.getNativeCache().stats();
+                stats.add(CacheStats.of(
+                    name,
+                    cacheStats.hitCount(),
+                    cacheStats.missCount(),
+                    cache.getNativeCache().estimatedSize(),
+                    cacheStats.evictionCount()
+                ));
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Counters of one cache since startup
+     * entries and evictions are null where the cache does not report them
+     */
+    public record CacheStats(
+        String name,
+        long hits,
+        long misses,
+        double hitRatio,
+        Long entries,
+        Long evictions
+    ) {
+        static CacheStats of(String name, long hits, long misses, Long entries, Long evictions) {
+            long lookups = hits + misses;
+            return new CacheStats(name, hits, misses, lookups == 0 ? 0.0 : (double) hits / lookups, entries, evictions);
+        }
+    }
+}
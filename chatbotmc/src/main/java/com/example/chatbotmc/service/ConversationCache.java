@@ -0,0 +1,104 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.config.CacheConfig;
+import com.example.chatbotmc.dto.ConversationDTO;
+import com.example.chatbotmc.dto.KeysetPage;
+import com.example.chatbotmc.entity.Conversation;
+import com.example.chatbotmc.repository.ConversationRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Caching around conversations
+ * Holds each user's first page of conversations and evicts it, together with the
+ * Conversation entry in Hibernate's second-level cache, whenever a write changes what
+ * the listing or the entity would show. Evictions are deferred until the writing
+ * transaction commits, so a concurrent reader cannot re-cache the old state.
+ */
+@Component
+public class ConversationCache {
+
+    private final Cache listings;
+    private final jakarta.persistence.Cache entityCache;
+    private final ConversationRepository conversationRepository;
+
+    public ConversationCache(CacheManager cacheManager,
+                             EntityManagerFactory entityManagerFactory,
+                             ConversationRepository conversationRepository) {
+        this.listings = new TransactionAwareCacheDecorator(cacheManager.getCache(CacheConfig.CONVERSATION_LISTS));
+        this.entityCache = entityManagerFactory.getCache();
+        this.conversationRepository = conversationRepository;
+    }
+
+    /**
+     * The cached first page of a user's conversations, or null if none is cached for this page size
+     */
+    public KeysetPage<ConversationDTO> getFirstPage(Long userId, int limit) {
+        CachedListing cached = listings.get(userId, CachedListing.class);
+        return cached != null && cached.limit() == limit ? cached.page() : null;
+    }
+
+    public void putFirstPage(Long userId, int limit, KeysetPage<ConversationDTO> page) {
+        listings.put(userId, new CachedListing(limit, page));
+    }
+
+    /**
+     * Forget the user's listing, e.g. after a conversation was created or deleted
+     */
+    public void evictListing(Long userId) {
+        listings.evict(userId);
+    }
+
+    /**
+     * Forget a conversation whose row was changed outside Hibernate, and its owner's listing
+     */
+    public void evict(Long conversationId, Long userId) {
+        listings.evict(userId);
+        afterCommit(() -> entityCache.evict(Conversation.class, conversationId));
+    }
+
+    /**
+     * Forget a conversation whose row was changed outside Hibernate in columns the listing does not show
+     */
+    public void evictConversation(Long conversationId) {
+        afterCommit(() -> entityCache.evict(Conversation.class, conversationId));
+    }
+
+    /**
+     * Forget conversations updated in bulk outside Hibernate, e.g. by the message journal
+     */
+    public void evictAll(Collection<Long> conversationIds) {
+        if (conversationIds.isEmpty()) {
+            return;
+        }
+        List<Long> userIds = conversationRepository.findUserIdsByIdIn(conversationIds);
+        afterCommit(() -> conversationIds.forEach(id -> entityCache.evict(Conversation.class, id)));
+        userIds.forEach(listings::evict);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * A cached first page together with the page size it was built for
+     */
+    private record CachedListing(int limit, KeysetPage<ConversationDTO> page) {}
+}
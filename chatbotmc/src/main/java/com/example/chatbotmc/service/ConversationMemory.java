@@ -0,0 +1,233 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.ChatMessage;
+import com.example.chatbotmc.entity.Conversation;
+import com.example.chatbotmc.entity.MessageRole;
+import com.example.chatbotmc.llm.LlmClient;
+import com.example.chatbotmc.llm.LlmMessage;
+import com.example.chatbotmc.repository.ChatMessageRepository;
+import com.example.chatbotmc.repository.ConversationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded multi-turn memory for conversations
+ * Keeps the last few turns verbatim and folds everything older into a rolling
+ * summary stored on the Conversation, so prompt size stays fixed as conversations grow.
+ * Summaries are regenerated in the background after the request has committed.
+ */
+@Service
+public class ConversationMemory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationMemory.class);
+
+    private final ConversationRepository conversationRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final LlmClient llmClient;
+    private final ThreadPoolTaskExecutor summaryExecutor;
+    private final JdbcTemplate jdbcTemplate;
+    private final MessageJournal messageJournal;
+    private final ConversationCache conversationCache;
+
+    // Conversations with a summary update already queued or running
+    private final Set<Long> pendingSummaries = ConcurrentHashMap.newKeySet();
+
+    @Value("${memory.enabled:true}")
+    private boolean enabled;
+
+    @Value("${memory.recent-messages:6}")
+    private int recentMessages;
+
+    @Value("${memory.summary-trigger:6}")
+    private int summaryTrigger;
+
+    @Value("${memory.summary-max-chars:2000}")
+    private int summaryMaxChars;
+
+    public ConversationMemory(ConversationRepository conversationRepository,
+                              ChatMessageRepository chatMessageRepository,
+                              LlmClient llmClient,
+                              ThreadPoolTaskExecutor conversationSummaryExecutor,
+                              JdbcTemplate jdbcTemplate,
+                              MessageJournal messageJournal,
+                              ConversationCache conversationCache) {
+        this.conversationRepository = conversationRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.llmClient = llmClient;
+        this.summaryExecutor = conversationSummaryExecutor;
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageJournal = messageJournal;
+        this.conversationCache = conversationCache;
+    }
+
+    /**
+     * Build the messages to send for a new user turn: the rolling summary (if any)
+     * and every turn not yet folded into it verbatim, followed by the new prompt.
+     * The summary lags by at most memory.summary-trigger messages, so the verbatim
+     * part never exceeds recent-messages + summary-trigger turns.
+     * Must be called before the new user message is saved.
+     */
+    public List<LlmMessage> buildMessages(Conversation conversation, String prompt) {
+        List<LlmMessage> messages = new ArrayList<>();
+
+        if (enabled && conversation != null) {
+            messageJournal.flushPending(conversation.getId());
+            long summarizedThrough = conversation.getSummarizedThroughMessageId() != null
+                ? conversation.getSummarizedThroughMessageId() : 0L;
+            List<ChatMessage> recent = new ArrayList<>(chatMessageRepository.findByConversationIdOrderByIdDesc(
+                conversation.getId(), PageRequest.of(0, recentMessages + summaryTrigger)
+            ));
+            recent.removeIf(message -> message.getId() <= summarizedThrough);
+            Collections.reverse(recent);
+
+            for (ChatMessage message : recent) {
+                messages.add(message.getRole() == MessageRole.USER
+                    ? LlmMessage.user(message.getContent())
+                    : LlmMessage.model(message.getContent()));
+            }
+
+            if (conversation.getSummary() != null && !conversation.getSummary().isBlank()) {
+                prompt = """
+                    SUMMARY OF THE EARLIER CONVERSATION:
+                    %s
+
+                    %s
+                    """.formatted(conversation.getSummary(), prompt);
+            }
+        }
+
+        messages.add(LlmMessage.user(prompt));
+        return messages;
+    }
+
+    /**
+     * Queue a summary update once the current transaction commits
+     */
+    public void scheduleSummaryUpdate(Long conversationId) {
+        if (!enabled) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submitSummaryUpdate(conversationId);
+                }
+            });
+        } else {
+            submitSummaryUpdate(conversationId);
+        }
+    }
+
+    private void submitSummaryUpdate(Long conversationId) {
+        if (!pendingSummaries.add(conversationId)) {
+            return;
+        }
+
+        try {
+            summaryExecutor.execute(() -> {
+                try {
+                    updateSummary(conversationId);
+                } catch (Exception e) {
+                    logger.warn("Failed to update summary for conversation {}: {}", conversationId, e.getMessage());
+                } finally {
+                    pendingSummaries.remove(conversationId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // Queue full; the summary catches up when the next turn schedules it again
+            pendingSummaries.remove(conversationId);
+            logger.debug("Summary update for conversation {} rejected, queue is full", conversationId);
+        } catch (RuntimeException e) {
+            pendingSummaries.remove(conversationId);
+            throw e;
+        }
+    }
+
+    /**
+     * Fold messages that have left the verbatim window into the stored summary.
+     * Runs only when at least memory.summary-trigger messages are waiting, so the
+     * LLM is asked to summarize once every few turns rather than on every turn.
+     */
+    private void updateSummary(Long conversationId) {
+        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null) {
+            return;
+        }
+
+        Long summarizedThrough = conversation.getSummarizedThroughMessageId();
+        List<ChatMessage> unsummarized = chatMessageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(
+            conversationId, summarizedThrough != null ? summarizedThrough : 0L
+        );
+
+        int outsideWindow = unsummarized.size() - recentMessages;
+        if (outsideWindow < summaryTrigger) {
+            return;
+        }
+
+        List<ChatMessage> toFold = unsummarized.subList(0, outsideWindow);
+        String summary = llmClient.generate(buildSummaryPrompt(conversation.getSummary(), toFold));
+        if (summary == null || summary.isBlank()) {
+            return;
+        }
+        if (summary.length() > summaryMaxChars) {
+            summary = summary.substring(0, summaryMaxChars);
+        }
+
+        Long newSummarizedThrough = toFold.get(toFold.size() - 1).getId();
+        // Only the summary columns: the counters, preview and updated_at may have changed during the LLM
+        // call, and must not move. Another update may have landed first; never move the pointer backwards.
+        int updated = jdbcTemplate.update("""
+            UPDATE conversations
+            SET summary = ?, summarized_through_message_id = ?
+            WHERE id = ? AND (summarized_through_message_id IS NULL OR summarized_through_message_id < ?)
+            """, summary.strip(), newSummarizedThrough, conversationId, newSummarizedThrough);
+        if (updated == 0) {
+            return;
+        }
+        conversationCache.evictConversation(conversationId);
+
+        logger.debug("Folded {} messages into summary of conversation {}", toFold.size(), conversationId);
+    }
+
+    private String buildSummaryPrompt(String previousSummary, List<ChatMessage> messages) {
+        StringBuilder transcript = new StringBuilder();
+        for (ChatMessage message : messages) {
+            transcript.append(message.getRole() == MessageRole.USER ? "User: " : "Assistant: ")
+                      .append(message.getContent())
+                      .append("\n\n");
+        }
+
+        return """
+            You maintain a running summary of a conversation between a user and a Minecraft modpack assistant.
+
+            CURRENT SUMMARY:
+            %s
+
+            NEW MESSAGES:
+            %s
+            Update the summary to include the new messages. Keep the facts the assistant needs to continue the
+            conversation: the user's modpack, mods, goals, problems and decisions already made. Drop greetings and
+            repetition. Answer with the updated summary only, in at most %d characters.
+            """.formatted(
+                previousSummary != null && !previousSummary.isBlank() ? previousSummary : "(none)",
+                transcript,
+                summaryMaxChars
+            );
+    }
+}
@@ -2,28 +2,59 @@ package com.example.chatbotmc.service;
 
 import com.example.chatbotmc.dto.ChatMessageDTO;
 import com.example.chatbotmc.dto.ConversationDTO;
+import com.example.chatbotmc.dto.KeysetCursor;
+import com.example.chatbotmc.dto.KeysetPage;
 import com.example.chatbotmc.entity.*;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.observability.StageTimer;
 import com.example.chatbotmc.repository.*;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class ConversationService {
     
+    private static final Logger logger = LoggerFactory.getLogger(ConversationService.class);
+    
+    private static final int PREVIEW_LENGTH = 120;
+    
+    private static final String MESSAGE_STATS_BACKFILL = "conversation-message-stats";
+    
     private final ConversationRepository conversationRepository;
     private final ChatMessageRepository chatMessageRepository;
     private final UserRepository userRepository;
+    private final MessageJournal messageJournal;
+    private final ConversationCache conversationCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatMetrics chatMetrics;
     
     public ConversationService(ConversationRepository conversationRepository,
                               ChatMessageRepository chatMessageRepository,
-                              UserRepository userRepository) {
+                              UserRepository userRepository,
+                              MessageJournal messageJournal,
+                              ConversationCache conversationCache,
+                              JdbcTemplate jdbcTemplate,
+                              ChatMetrics chatMetrics) {
         this.conversationRepository = conversationRepository;
         this.chatMessageRepository = chatMessageRepository;
         this.userRepository = userRepository;
+        this.messageJournal = messageJournal;
+        this.conversationCache = conversationCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.chatMetrics = chatMetrics;
     }
     
     @Transactional
@@ -35,44 +66,94 @@ public class ConversationService {
         conversation.setUser(user);
         conversation.setTitle(title != null && !title.trim().isEmpty() ? title : "New Conversation");
         
-        return conversationRepository.save(conversation);
+        Conversation saved = conversationRepository.save(conversation);
+        conversationCache.evictListing(userId);
+        return saved;
     }
     
+    /**
+     * One page of the user's conversations, most recently updated first
+     * The first page is cached per user until one of the user's conversations changes
+     * 
+     * @param cursor nextCursor from the previous page, or null for the first page
+     */
     @Transactional(readOnly = true)
-    public List<ConversationDTO> getUserConversations(Long userId) {
-        return conversationRepository.findByUserIdOrderByUpdatedAtDesc(userId)
-            .stream()
-            .map(conv -> new ConversationDTO(
-                conv.getId(),
-                conv.getTitle(),
-                conv.getCreatedAt(),
-                conv.getUpdatedAt(),
-                conv.getMessages().size()
-            ))
-            .collect(Collectors.toList());
+    public KeysetPage<ConversationDTO> getUserConversations(Long userId, int limit, String cursor) {
+        if (cursor == null) {
+            KeysetPage<ConversationDTO> cached = conversationCache.getFirstPage(userId, limit);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        // Fetch one extra row to learn whether another page exists
+        Limit fetch = Limit.of(limit + 1);
+        List<ConversationDTO> rows;
+        if (cursor == null) {
+            rows = conversationRepository.findSummariesByUserId(userId, fetch);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            rows = conversationRepository.findSummariesByUserIdAfter(userId, after.timestamp(), after.id(), fetch);
+        }
+        
+        KeysetPage<ConversationDTO> page;
+        if (rows.size() <= limit) {
+            page = new KeysetPage<>(List.copyOf(rows), null);
+        } else {
+            ConversationDTO last = rows.get(limit - 1);
+            page = new KeysetPage<>(List.copyOf(rows.subList(0, limit)), new KeysetCursor(last.updatedAt(), last.id()).encode());
+        }
+        
+        if (cursor == null) {
+            conversationCache.putFirstPage(userId, limit, page);
+        }
+        return page;
     }
     
+    /**
+     * One page of a conversation's messages in chronological order
+     * Pages walk backwards from the newest message; nextCursor loads the page of older messages
+     * 
+     * @param cursor nextCursor from the previous page, or null for the newest page
+     */
     @Transactional(readOnly = true)
-    public List<ChatMessageDTO> getConversationMessages(Long conversationId, Long userId) {
+    public KeysetPage<ChatMessageDTO> getConversationMessages(Long conversationId, Long userId, int limit, String cursor) {
         // Verify user has access to this conversation
-        conversationRepository.findByIdAndUserId(conversationId, userId)
-            .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        findOwned(conversationId, userId);
+        messageJournal.flushPending(conversationId);
         
-        return chatMessageRepository.findByConversationIdOrderByCreatedAtAsc(conversationId)
-            .stream()
-            .map(msg -> new ChatMessageDTO(
-                msg.getId(),
-                msg.getContent(),
-                msg.getRole(),
-                msg.getCreatedAt()
-            ))
-            .collect(Collectors.toList());
+        Limit fetch = Limit.of(limit + 1);
+        List<ChatMessageDTO> rows;
+        if (cursor == null) {
+            rows = chatMessageRepository.findLatestPage(conversationId, fetch);
+        } else {
+            KeysetCursor before = KeysetCursor.decode(cursor);
+            rows = chatMessageRepository.findPageBefore(conversationId, before.timestamp(), before.id(), fetch);
+        }
+        
+        String nextCursor = null;
+        List<ChatMessageDTO> page = new ArrayList<>(rows.subList(0, Math.min(limit, rows.size())));
+        if (rows.size() > limit) {
+            ChatMessageDTO oldest = page.get(limit - 1);
+            nextCursor = new KeysetCursor(oldest.createdAt(), oldest.id()).encode();
+        }
+        Collections.reverse(page);
+        return new KeysetPage<>(page, nextCursor);
     }
     
     @Transactional
     public ChatMessage saveMessage(Long conversationId, Long userId, String content, MessageRole role) {
-        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
-            .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        Timer.Sample sample = chatMetrics.start();
+        long stageStart = StageTimer.now();
+        Conversation conversation = findOwned(conversationId, userId);
+        
+        if (messageJournal.isEnabled()) {
+            // Acknowledged from the journal; written to the database in the next batch
+            ChatMessage journaled = messageJournal.append(conversationId, content, role);
+            StageTimer.record(StageTimer.Stage.PERSIST, stageStart);
+            chatMetrics.recordMessageSave(sample, "journal");
+            return journaled;
+        }
         
         ChatMessage message = new ChatMessage();
         message.setConversation(conversation);
@@ -81,32 +162,88 @@ public class ConversationService {
         
         ChatMessage savedMessage = chatMessageRepository.save(message);
         
-        // Update conversation's updatedAt timestamp
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
+        // Update conversation's updatedAt timestamp, message count and preview in one statement.
+        // Plain JDBC because a JPQL bulk update clears every conversation from the second-level
+        // cache; only this one is evicted instead.
+        jdbcTemplate.update("""
+            UPDATE conversations
+            SET message_count = message_count + 1, last_message_preview = ?, updated_at = ?
+            WHERE id = ?
+            """, buildPreview(content), Timestamp.valueOf(LocalDateTime.now()), conversationId);
+        conversationCache.evict(conversationId, userId);
+        StageTimer.record(StageTimer.Stage.PERSIST, stageStart);
+        chatMetrics.recordMessageSave(sample, "database");
         
         return savedMessage;
     }
     
     @Transactional(readOnly = true)
     public Conversation getConversation(Long conversationId, Long userId) {
-        return conversationRepository.findByIdAndUserId(conversationId, userId)
-            .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        return findOwned(conversationId, userId);
     }
     
     @Transactional
     public void deleteConversation(Long conversationId, Long userId) {
-        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
-            .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        Conversation conversation = findOwned(conversationId, userId);
         conversationRepository.delete(conversation);
+        conversationCache.evictListing(userId);
     }
     
+    /**
+     * Rename a conversation in one statement that checks ownership
+     * Only title and updated_at are written: saving the entity, possibly a stale copy from the
+     * second-level cache, would put back counters and preview that saveMessage and the journal moved on.
+     */
     @Transactional
     public void updateConversationTitle(Long conversationId, Long userId, String title) {
-        Conversation conversation = conversationRepository.findByIdAndUserId(conversationId, userId)
+        int updated = jdbcTemplate.update(
+            "UPDATE conversations SET title = ?, updated_at = ? WHERE id = ? AND user_id = ?",
+            title, Timestamp.valueOf(LocalDateTime.now()), conversationId, userId);
+        if (updated == 0) {
+            throw new RuntimeException("Conversation not found");
+        }
+        conversationCache.evict(conversationId, userId);
+    }
+    
+    /**
+     * Fill message_count and last_message_preview for conversations that predate them, once per database
+     * The run is recorded in data_migrations in the same transaction, so later starts skip it; an instance
+     * starting alongside waits on the marker row and then finds it taken.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillMessageStats() {
+        jdbcTemplate.execute("""
+            CREATE TABLE IF NOT EXISTS data_migrations (
+                name VARCHAR(100) PRIMARY KEY,
+                applied_at TIMESTAMP NOT NULL DEFAULT now()
+            )
+            """);
+        int claimed = jdbcTemplate.update(
+            "INSERT INTO data_migrations (name) VALUES (?) ON CONFLICT (name) DO NOTHING", MESSAGE_STATS_BACKFILL);
+        if (claimed == 0) {
+            return;
+        }
+        int updated = conversationRepository.backfillMessageStats();
+        logger.info("Backfilled message stats for {} conversations", updated);
+    }
+    
+    /**
+     * Look up by primary key so repeated lookups are served by the second-level cache;
+     * ownership is checked on the user proxy's id without loading the user
+     */
+    private Conversation findOwned(Long conversationId, Long userId) {
+        return conversationRepository.findById(conversationId)
+            .filter(conversation -> conversation.getUser().getId().equals(userId))
             .orElseThrow(() -> new RuntimeException("Conversation not found"));
-        conversation.setTitle(title);
-        conversationRepository.save(conversation);
+    }
+    
+    static String buildPreview(String content) {
+        if (content == null) {
+            return null;
+        }
+        String cleaned = content.trim().replaceAll("\\s+", " ");
+        return cleaned.length() > PREVIEW_LENGTH ? cleaned.substring(0, PREVIEW_LENGTH - 3) + "..." : cleaned;
     }
     
     @Transactional
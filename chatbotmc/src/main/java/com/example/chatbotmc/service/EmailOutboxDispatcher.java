@@ -0,0 +1,179 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.OutboxEmail;
+import com.example.chatbotmc.entity.OutboxStatus;
+import com.example.chatbotmc.mail.EmailMessage;
+import com.example.chatbotmc.mail.EmailSender;
+import com.example.chatbotmc.repository.OutboxEmailRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Delivers queued emails from the email_outbox table
+ *
+ * Each poll claims up to email.outbox.batch-size due rows with FOR UPDATE SKIP LOCKED and
+ * leases them by moving next_attempt_at forward, then sends outside any transaction.
+ * Right before each send the email's lease is renewed for one send; if the batch took so
+ * long that the lease ran out and another instance claimed the email, it is skipped.
+ * Several instances can poll the same table without sending an email twice, and a row
+ * whose instance dies mid-send becomes due again when the lease runs out.
+ *
+ * Failed sends are retried with exponential backoff; after email.outbox.max-attempts
+ * the row is marked FAILED and kept for inspection.
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private final OutboxEmailRepository outboxEmailRepository;
+    private final EmailSender emailSender;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${email.outbox.batch-size:20}")
+    private int batchSize;
+
+    @Value("${email.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${email.outbox.initial-backoff-ms:5000}")
+    private long initialBackoffMs;
+
+    @Value("${email.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    @Value("${email.outbox.lease-seconds:120}")
+    private long leaseSeconds;
+
+    @Value("${email.outbox.retention-days:7}")
+    private int retentionDays;
+
+    public EmailOutboxDispatcher(OutboxEmailRepository outboxEmailRepository,
+                                 EmailSender emailSender,
+                                 PlatformTransactionManager transactionManager) {
+        this.outboxEmailRepository = outboxEmailRepository;
+        this.emailSender = emailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        List<OutboxEmail> batch;
+        try {
+            batch = claimBatch();
+        } catch (Exception e) {
+            logger.warn("Could not claim outbox emails: {}", e.getMessage());
+            return;
+        }
+
+        for (OutboxEmail email : batch) {
+            if (!renewLease(email)) {
+                continue;
+            }
+            try {
+                emailSender.send(new EmailMessage(email.getRecipient(), email.getSubject(), email.getPlainBody(), email.getHtmlBody()));
+                markSent(email);
+            } catch (Exception e) {
+                markFailed(email, e);
+            }
+        }
+    }
+
+    /**
+     * Delete sent emails older than email.outbox.retention-days
+     */
+    @Scheduled(fixedDelayString = "${email.outbox.cleanup-interval-ms:3600000}")
+    public void deleteSent() {
+        Integer deleted = transactionTemplate.execute(status ->
+            outboxEmailRepository.deleteSentBefore(LocalDateTime.now().minusDays(retentionDays)));
+        if (deleted != null && deleted > 0) {
+            logger.debug("Deleted {} sent outbox emails", deleted);
+        }
+    }
+
+    private List<OutboxEmail> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            List<OutboxEmail> due = outboxEmailRepository.lockDue(LocalDateTime.now(), batchSize);
+            LocalDateTime leasedUntil = leaseEnd();
+            for (OutboxEmail email : due) {
+                email.setNextAttemptAt(leasedUntil);
+            }
+            return due;
+        });
+    }
+
+    /**
+     * Give the email a full lease for its own send
+     *
+     * @return false if the lease could not be renewed and the email must be left alone
+     */
+    private boolean renewLease(OutboxEmail email) {
+        LocalDateTime leasedUntil = leaseEnd();
+        try {
+            Integer renewed = transactionTemplate.execute(status ->
+                outboxEmailRepository.renewLease(email.getId(), email.getNextAttemptAt(), leasedUntil));
+            if (renewed == null || renewed == 0) {
+                logger.info("Lease on email {} ran out before it was sent; leaving it to the instance that claimed it", email.getId());
+                return false;
+            }
+        } catch (Exception e) {
+            logger.warn("Could not renew the lease on email {}: {}", email.getId(), e.getMessage());
+            return false;
+        }
+        email.setNextAttemptAt(leasedUntil);
+        return true;
+    }
+
+    // Truncated to what a timestamp column stores, so renewLease can compare it
+    private LocalDateTime leaseEnd() {
+        return LocalDateTime.now().plusSeconds(leaseSeconds).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private void markSent(OutboxEmail email) {
+        email.setStatus(OutboxStatus.SENT);
+        email.setSentAt(LocalDateTime.now());
+        email.setLastError(null);
+        save(email);
+    }
+
+    private void markFailed(OutboxEmail email, Exception e) {
+        int attempts = email.getAttempts() + 1;
+        email.setAttempts(attempts);
+        email.setLastError(truncate(e.getMessage()));
+
+        if (attempts >= maxAttempts) {
+            email.setStatus(OutboxStatus.FAILED);
+            logger.error("Giving up on email {} to {} after {} attempts: {}", email.getId(), email.getRecipient(), attempts, e.getMessage());
+        } else {
+            long backoffMs = initialBackoffMs << Math.min(attempts - 1, 30);
+            email.setNextAttemptAt(LocalDateTime.now().plusNanos(Math.min(backoffMs, maxBackoffMs) * 1_000_000));
+            logger.warn("Email {} to {} failed (attempt {}), retrying in {} ms: {}", email.getId(), email.getRecipient(), attempts, Math.min(backoffMs, maxBackoffMs), e.getMessage());
+        }
+        save(email);
+    }
+
+    // Outcome writes are best effort; if one is lost the lease expires and the email is retried
+    private void save(OutboxEmail email) {
+        try {
+            outboxEmailRepository.save(email);
+        } catch (Exception e) {
+            logger.warn("Could not update outbox email {}: {}", email.getId(), e.getMessage());
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
+    }
+}
@@ -1,24 +1,19 @@
 package com.example.chatbotmc.service;
 
-import com.sendgrid.*;
-import com.sendgrid.helpers.mail.Mail;
-import com.sendgrid.helpers.mail.objects.Content;
-import com.sendgrid.helpers.mail.objects.Email;
+import com.example.chatbotmc.entity.OutboxEmail;
+import com.example.chatbotmc.repository.OutboxEmailRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.io.IOException;
 
+/**
+ * Composes application emails and queues them in the email_outbox table
+ * The row is written in the caller's transaction, so an email exists exactly when the
+ * change it announces was committed. EmailOutboxDispatcher delivers it afterwards.
+ */
 @Service
 public class EmailService {
     
-    @Value("${sendgrid.api-key}")
-    private String sendGridApiKey;
-    
-    @Value("${sendgrid.from-email:noreply@yourdomain.com}")
-    private String fromEmail;
-    
-    @Value("${sendgrid.from-name:Modpack Assistant}")
-    private String fromName;
+    private final OutboxEmailRepository outboxEmailRepository;
     
     @Value("${app.backend.url:http://localhost:8080}")
     private String backendUrl;
@@ -26,74 +21,48 @@ public class EmailService {
     @Value("${admin.email}")
     private String adminEmail;
     
+    public EmailService(OutboxEmailRepository outboxEmailRepository) {
+        this.outboxEmailRepository = outboxEmailRepository;
+    }
+    
     public void sendAdminApprovalEmail(String username, String email, String approvalToken) {
-        try {
-            Email from = new Email(fromEmail, fromName);
-            Email to = new Email(adminEmail);
-            String subject = "New user registration: " + username;
-            
-            String approveUrl = backendUrl + "/api/auth/approve-user?token=" + approvalToken + "&action=approve";
-            String rejectUrl = backendUrl + "/api/auth/approve-user?token=" + approvalToken + "&action=reject";
-            
-            String plainContent = buildAdminApprovalEmailPlain(username, email, approveUrl, rejectUrl);
-            String htmlContent = buildAdminApprovalEmail(username, email, approveUrl, rejectUrl);
-            
-            Mail mail = new Mail(from, subject, to, new Content("text/plain", plainContent));
-            mail.addContent(new Content("text/html", htmlContent));
-            SendGrid sg = new SendGrid(sendGridApiKey);
-            Request request = new Request();
-            
-            request.setMethod(Method.POST);
-            request.setEndpoint("mail/send");
-            request.setBody(mail.build());
-            
-            Response response = sg.api(request);
-            
-            if (response.getStatusCode() >= 400) {
-                throw new RuntimeException("SendGrid error: " + response.getStatusCode() + " - " + response.getBody());
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Email could not be sent: " + e.getMessage(), e);
-        }
+        String subject = "New user registration: " + username;
+        
+        String approveUrl = backendUrl + "/api/auth/approve-user?token=" + approvalToken + "&action=approve";
+        String rejectUrl = backendUrl + "/api/auth/approve-user?token=" + approvalToken + "&action=reject";
+        
+        String plainContent = buildAdminApprovalEmailPlain(username, email, approveUrl, rejectUrl);
+        String htmlContent = buildAdminApprovalEmail(username, email, approveUrl, rejectUrl);
+        
+        enqueue(adminEmail, subject, plainContent, htmlContent);
     }
     
     public void sendUserApprovalNotification(String userEmail, String username, boolean approved) {
-        try {
-            Email from = new Email(fromEmail, fromName);
-            Email to = new Email(userEmail);
-            
-            String subject;
-            String plainContent;
-            String htmlContent;
-            
-            if (approved) {
-                subject = "Account approved - " + username;
-                plainContent = buildUserApprovedEmailPlain(username);
-                htmlContent = buildUserApprovedEmail(username);
-            } else {
-                subject = "Registration update - " + username;
-                plainContent = buildUserRejectedEmailPlain(username);
-                htmlContent = buildUserRejectedEmail(username);
-            }
-            
-            Mail mail = new Mail(from, subject, to, new Content("text/plain", plainContent));
-            mail.addContent(new Content("text/html", htmlContent));
-            
-            SendGrid sg = new SendGrid(sendGridApiKey);
-            Request request = new Request();
-            
-            request.setMethod(Method.POST);
-            request.setEndpoint("mail/send");
-            request.setBody(mail.build());
-            
-            Response response = sg.api(request);
-            
-            if (response.getStatusCode() >= 400) {
-                throw new RuntimeException("SendGrid error: " + response.getStatusCode() + " - " + response.getBody());
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Email could not be sent: " + e.getMessage(), e);
+        String subject;
+        String plainContent;
+        String htmlContent;
+        
+        if (approved) {
+            subject = "Account approved - " + username;
+            plainContent = buildUserApprovedEmailPlain(username);
+            htmlContent = buildUserApprovedEmail(username);
+        } else {
+            subject = "Registration update - " + username;
+            plainContent = buildUserRejectedEmailPlain(username);
+            htmlContent = buildUserRejectedEmail(username);
         }
+        
+        enqueue(userEmail, subject, plainContent, htmlContent);
+    }
+    
+    // Joins the caller's transaction when there is one
+    private void enqueue(String recipient, String subject, String plainContent, String htmlContent) {
+        OutboxEmail outboxEmail = new OutboxEmail();
+        outboxEmail.setRecipient(recipient);
+        outboxEmail.setSubject(subject);
+        outboxEmail.setPlainBody(plainContent);
+        outboxEmail.setHtmlBody(htmlContent);
+        outboxEmailRepository.save(outboxEmail);
     }
     
     private String buildAdminApprovalEmailPlain(String username, String email, String approveUrl, String rejectUrl) {
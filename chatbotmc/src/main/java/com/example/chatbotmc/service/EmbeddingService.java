@@ -1,104 +1,163 @@
 package com.example.chatbotmc.service;
 
+import com.example.chatbotmc.llm.EmbeddingClient;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.observability.EmbeddingEvent;
+import com.example.chatbotmc.observability.StageTimer;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
- * Service for generating text embeddings using Google Gemini Embedding API
+ * Service for generating text embeddings
+ * Delegates to the configured EmbeddingClient backend (embedding.provider=gemini|local)
  */
 @Service
 public class EmbeddingService {
 
     private static final Logger logger = LoggerFactory.getLogger(EmbeddingService.class);
     
-    private final WebClient webClient;
-    private final String apiKey;
+    private final EmbeddingClient embeddingClient;
+    private final ChatMetrics chatMetrics;
     
-    public EmbeddingService(
-            WebClient geminiWebClient,
-            @Value("${gemini.api-key}") String apiKey
-    ) {
-        this.webClient = geminiWebClient;
-        this.apiKey = apiKey;
+    // Dimension of the vector column in use; differs from rag.embedding-dimensions while
+    // EmbeddingDimensionMigration moves the column to it
+    @Value("${rag.embedding-dimensions:768}")
+    private volatile int columnDimensions;
+    
+    public EmbeddingService(EmbeddingClient embeddingClient, ChatMetrics chatMetrics) {
+        this.embeddingClient = embeddingClient;
+        this.chatMetrics = chatMetrics;
     }
     
     /**
-     * Generate embedding vector for a given text using Gemini text-embedding-004 model
-     * Returns a 768-dimensional vector
+     * Generate embedding vector for a given text
+     * Returns a vector with {@link #getDimensions()} entries, comparable with the stored chunks
      */
     public List<Double> generateEmbedding(String text) {
-        try {
-            if (text == null || text.trim().isEmpty()) {
-                logger.warn("Empty text provided for embedding generation");
-                return null;
-            }
-            
-            // Truncate text if too long (Gemini has input limits)
-            String truncatedText = text.length() > 10000 ? text.substring(0, 10000) : text;
-            
-            // Build request body
-            Map<String, Object> requestBody = Map.of(
-                "content", Map.of(
-                    "parts", List.of(
-                        Map.of("text", truncatedText)
-                    )
-                )
-            );
-            
-            // Call Gemini embedding API
-            Map<String, Object> response = webClient.post()
-                    .uri("/v1beta/models/text-embedding-004:embedContent?key=" + apiKey)
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                    .block();
-            
-            return extractEmbedding(response);
-            
-        } catch (Exception e) {
-            logger.error("Failed to generate embedding: {}", e.getMessage(), e);
+        if (text == null || text.trim().isEmpty()) {
+            logger.warn("Empty text provided for embedding generation");
             return null;
         }
+        
+        return generateEmbeddings(List.of(text)).get(0);
     }
     
     /**
      * Generate embeddings for multiple texts in batch
-     * Note: Currently processes sequentially. For production, consider batching API calls.
+     * Backends that support batching (e.g. the local ONNX engine) embed the whole list at once
      */
     public List<List<Double>> generateEmbeddings(List<String> texts) {
-        return texts.stream()
-                .map(this::generateEmbedding)
-                .toList();
+        return generateEmbeddings(texts, columnDimensions);
     }
     
     /**
-     * Extract embedding vector from Gemini API response
+     * Generate embeddings with the given number of dimensions, for a column other than the one in use
+     * Null or blank texts are not sent to the backend and get a null embedding at their position.
      */
-    @SuppressWarnings("unchecked")
-    private List<Double> extractEmbedding(Map<String, Object> response) {
+    public List<List<Double>> generateEmbeddings(List<String> texts, int dimensions) {
+        Timer.Sample sample = chatMetrics.start();
+        long stageStart = StageTimer.now();
+        EmbeddingEvent event = new EmbeddingEvent();
+        event.begin();
         try {
-            Map<String, Object> embedding = (Map<String, Object>) response.get("embedding");
-            List<Double> values = (List<Double>) embedding.get("values");
-            
-            if (values == null || values.isEmpty()) {
-                logger.error("No embedding values in response");
-                return null;
+            // Positions of the texts worth embedding, truncated if too long (Gemini has input limits)
+            List<Integer> positions = new ArrayList<>(texts.size());
+            List<String> truncatedTexts = new ArrayList<>(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                String text = texts.get(i);
+                if (text == null || text.isBlank()) {
+                    continue;
+                }
+                positions.add(i);
+                truncatedTexts.add(text.length() > 10000 ? text.substring(0, 10000) : text);
             }
             
-            logger.debug("Generated embedding with {} dimensions", values.size());
-            return values;
+            List<List<Double>> embeddings = truncatedTexts.isEmpty()
+                    ? List.of()
+                    : embeddingClient.embed(truncatedTexts, dimensions);
+            
+            List<List<Double>> result = new ArrayList<>(texts.size());
+            texts.forEach(text -> result.add(null));
+            for (int i = 0; i < positions.size(); i++) {
+                result.set(positions.get(i), fitToColumn(embeddings.get(i), dimensions));
+            }
+            event.success = positions.stream().allMatch(position -> result.get(position) != null);
+            chatMetrics.recordEmbedding(sample, embeddingClient.modelName(), texts.size(), event.success);
+            return result;
             
         } catch (Exception e) {
-            logger.error("Failed to extract embedding from response: {}", e.getMessage());
+            logger.error("Failed to generate embeddings: {}", e.getMessage(), e);
+            chatMetrics.recordEmbedding(sample, embeddingClient.modelName(), texts.size(), false);
+            List<List<Double>> failed = new ArrayList<>(texts.size());
+            texts.forEach(text -> failed.add(null));
+            return failed;
+        } finally {
+            StageTimer.record(StageTimer.Stage.EMBED, stageStart);
+            event.end();
+            if (event.shouldCommit()) {
+                event.model = embeddingClient.modelName();
+                event.texts = texts.size();
+                event.characters = texts.stream().mapToLong(text -> text == null ? 0 : text.length()).sum();
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Name of the model behind the active backend
+     */
+    public String getModelName() {
+        return embeddingClient.modelName();
+    }
+    
+    /**
+     * Dimension of the vector column searches run against
+     */
+    public int getDimensions() {
+        return columnDimensions;
+    }
+    
+    /**
+     * Switch query and chunk embeddings to a new column dimension, once that column is in use
+     */
+    public void setDimensions(int dimensions) {
+        if (dimensions != columnDimensions) {
+            logger.info("Embedding dimension changed from {} to {}", columnDimensions, dimensions);
+        }
+        this.columnDimensions = dimensions;
+    }
+    
+    /**
+     * Zero-pad smaller vectors to the vector column dimension.
+     * Padding with zeros leaves dot products and norms unchanged, so cosine distance
+     * between two padded vectors is identical to the distance between the originals.
+     */
+    private List<Double> fitToColumn(List<Double> embedding, int dimensions) {
+        if (embedding == null || embedding.isEmpty()) {
             return null;
         }
+        if (embedding.size() > dimensions) {
+            logger.error("Embedding has {} dimensions but the vector column has {}", 
+                embedding.size(), dimensions);
+            return null;
+        }
+        if (embedding.size() == dimensions) {
+            logger.debug("Generated embedding with {} dimensions", embedding.size());
+            return embedding;
+        }
+        
+        List<Double> padded = new ArrayList<>(dimensions);
+        padded.addAll(embedding);
+        while (padded.size() < dimensions) {
+            padded.add(0.0);
+        }
+        return padded;
     }
     
     /**
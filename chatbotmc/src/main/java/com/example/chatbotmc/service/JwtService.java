@@ -1,21 +1,46 @@
 package com.example.chatbotmc.service;
 
+import com.example.chatbotmc.dto.AuthenticatedUser;
 import com.example.chatbotmc.entity.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.Date;
 
 @Service
 public class JwtService {
     
-    @Value("${jwt.secret}")
-    private String secret;
+    private final Long expiration;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
     
-    @Value("${jwt.expiration}")
-    private Long expiration;
+    // Recently verified tokens keyed by signature; entries never outlive the token's own expiry
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    
+    public JwtService(
+            @Value("${jwt.secret}") String secret,
+            @Value("${jwt.expiration}") Long expiration,
+            @Value("${jwt.cache.max-size:10000}") long cacheMaxSize
+    ) {
+        this.expiration = expiration;
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parser()
+            .verifyWith(signingKey)
+            .build();
+        this.verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfter(Expiry.creating((String signature, VerifiedToken verified) ->
+                Duration.ofMillis(Math.max(0, verified.expiresAtMillis() - System.currentTimeMillis()))))
+            .build();
+    }
     
     public String generateToken(User user) {
         return Jwts.builder()
@@ -24,40 +49,45 @@ public class JwtService {
             .claim("role", user.getRole())
             .issuedAt(new Date())
             .expiration(new Date(System.currentTimeMillis() + expiration))
-            .signWith(getSigningKey())
+            .signWith(signingKey)
             .compact();
     }
     
-    public String extractUsername(String token) {
-        return getClaims(token).getSubject();
-    }
-    
-    public Long extractUserId(String token) {
-        return getClaims(token).get("userId", Long.class);
-    }
-    
-    public String extractRole(String token) {
-        return getClaims(token).get("role", String.class);
-    }
-    
-    public boolean validateToken(String token) {
-        try {
-            getClaims(token);
-            return true;
-        } catch (JwtException e) {
-            return false;
+    /**
+     * Verify a token and return the user it was issued to
+     * A token seen recently is answered from the cache without re-checking the signature.
+     * 
+     * @throws JwtException if the token is malformed, forged or expired
+     */
+    public AuthenticatedUser authenticate(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            throw new MalformedJwtException("Token has no signature");
         }
+        String signature = token.substring(signatureStart + 1);
+        byte[] signedContent = token.substring(0, signatureStart).getBytes(StandardCharsets.UTF_8);
+        
+        VerifiedToken cached = verifiedTokens.getIfPresent(signature);
+        // The signature alone is not trusted: the header and payload must be the ones it was verified with
+        if (cached != null
+                && cached.expiresAtMillis() > System.currentTimeMillis()
+                && MessageDigest.isEqual(cached.signedContent(), signedContent)) {
+            return cached.user();
+        }
+        
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        AuthenticatedUser user = new AuthenticatedUser(
+            claims.get("userId", Long.class),
+            claims.getSubject(),
+            claims.get("role", String.class)
+        );
+        
+        Date expiresAt = claims.getExpiration();
+        if (expiresAt != null) {
+            verifiedTokens.put(signature, new VerifiedToken(signedContent, user, expiresAt.getTime()));
+        }
+        return user;
     }
     
-    private Claims getClaims(String token) {
-        return Jwts.parser()
-            .verifyWith(getSigningKey())
-            .build()
-            .parseSignedClaims(token)
-            .getPayload();
-    }
-    
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
-    }
-}
\ No newline at end of file
+    private record VerifiedToken(byte[] signedContent, AuthenticatedUser user, long expiresAtMillis) {}
+}
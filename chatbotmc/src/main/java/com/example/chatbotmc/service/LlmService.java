@@ -5,6 +5,8 @@ import com.example.chatbotmc.entity.Conversation;
 import com.example.chatbotmc.entity.MessageRole;
 import com.example.chatbotmc.entity.RagChunk;
 import com.example.chatbotmc.llm.LlmClient;
+import com.example.chatbotmc.llm.LlmMessage;
+import com.example.chatbotmc.observability.StageTimer;
 import com.example.chatbotmc.prompt.PromptBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,18 +23,21 @@ public class LlmService {
     private final LlmClient llmClient;
     private final ConversationService conversationService;
     private final RagService ragService;
+    private final ConversationMemory conversationMemory;
 
-    public LlmService(LlmClient llmClient, ConversationService conversationService, RagService ragService) {
+    public LlmService(LlmClient llmClient, ConversationService conversationService, RagService ragService,
+                      ConversationMemory conversationMemory) {
         this.llmClient = llmClient;
         this.conversationService = conversationService;
         this.ragService = ragService;
+        this.conversationMemory = conversationMemory;
     }
 
     /**
      * Simple chat without conversation history (uses RAG if available)
      */
     public String chat(String userInput) {
-        String prompt = generatePromptWithRag(userInput);
+        String prompt = generatePromptWithRag(userInput, RagOptions.DEFAULT);
         return llmClient.generate(prompt);
     }
 
@@ -41,30 +46,53 @@ public class LlmService {
      */
     @Transactional
     public ChatResponse chatWithHistory(Long userId, String userInput, Long conversationId) {
+        return chatWithHistory(userId, userInput, conversationId, RagOptions.DEFAULT);
+    }
+
+    /**
+     * Chat with conversation history, retrieving with the request's RAG options
+     */
+    @Transactional
+    public ChatResponse chatWithHistory(Long userId, String userInput, Long conversationId, RagOptions ragOptions) {
         // Create new conversation if none provided
+        Conversation conversation = null;
         if (conversationId == null) {
             String title = conversationService.generateConversationTitle(userInput);
             Conversation newConversation = conversationService.createConversation(userId, title);
             conversationId = newConversation.getId();
+        } else {
+            conversation = conversationService.getConversation(conversationId, userId);
         }
         
+        // Earlier turns (summary + recent messages) must be read before the new message is saved
+        String prompt = generatePromptWithRag(userInput, ragOptions);
+        List<LlmMessage> messages = conversationMemory.buildMessages(conversation, prompt);
+        
         // Save user message
         conversationService.saveMessage(conversationId, userId, userInput, MessageRole.USER);
         
-        // Generate AI response with RAG
-        String prompt = generatePromptWithRag(userInput);
-        String aiResponse = llmClient.generate(prompt);
+        // Generate AI response with RAG and bounded conversation memory
+        long stageStart = StageTimer.now();
+        String aiResponse = llmClient.generate(messages);
+        StageTimer.record(StageTimer.Stage.GENERATE, stageStart);
         
         // Save AI message
         var savedMessage = conversationService.saveMessage(conversationId, userId, aiResponse, MessageRole.ASSISTANT);
         
+        // Fold older turns into the rolling summary off the request path
+        conversationMemory.scheduleSummaryUpdate(conversationId);
+        
         return new ChatResponse(aiResponse, conversationId, savedMessage.getId());
     }
     
     /**
      * Generate prompt with RAG context if available, otherwise use fallback
      */
-    private String generatePromptWithRag(String userInput) {
+    private String generatePromptWithRag(String userInput, RagOptions ragOptions) {
+        if (!ragOptions.enabled()) {
+            logger.debug("RAG turned off for this request, using fallback prompt");
+            return PromptBuilder.minecraftPrompt(userInput);
+        }
         try {
             // Check if RAG is available
             if (!ragService.isRagAvailable()) {
@@ -74,7 +102,7 @@ public class LlmService {
             
             // Retrieve relevant chunks using RAG
             logger.debug("Retrieving RAG context for user input");
-            List<RagChunk> relevantChunks = ragService.retrieveRelevantChunks(userInput);
+            List<RagChunk> relevantChunks = ragService.retrieveRelevantChunks(userInput, ragOptions);
             
             if (relevantChunks.isEmpty()) {
                 logger.debug("No relevant chunks found, using fallback prompt");
@@ -0,0 +1,496 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.ChatMessage;
+import com.example.chatbotmc.entity.MessageRole;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional write-behind journal for chat messages (chat.journal.enabled=true)
+ *
+ * Messages are acknowledged from memory and written to the database in batches by a
+ * single flusher thread, either every chat.journal.flush-interval-ms or as soon as
+ * chat.journal.batch-size messages are waiting. Each batch is one multi-row INSERT plus
+ * one counter UPDATE per touched conversation, in a single transaction.
+ *
+ * Guarantees:
+ * - Each id is taken from the chat_messages identity sequence when the message is
+ *   acknowledged, so the id returned to the client is the id the row will have, and ids
+ *   follow the order messages arrive in across every instance. History, summaries and
+ *   previews order messages by id, which blocks of ids reserved per instance would break.
+ * - A single flusher drains a FIFO queue, so messages of a conversation are written
+ *   in the order they were acknowledged.
+ * - Every message is appended to a local log before it is acknowledged. On startup the
+ *   log is replayed with ON CONFLICT (id) DO NOTHING, so a crash between acknowledgement
+ *   and flush loses nothing and replaying already-flushed entries is harmless.
+ * - A message saved inside a transaction is logged and queued only once that transaction
+ *   commits, so the conversation it belongs to (possibly created by the same request) is
+ *   visible to the flusher, and a rolled-back request leaves nothing to write.
+ * - A batch the database rejects is retried one message at a time. A message the database
+ *   refuses as such (e.g. content PostgreSQL cannot store) is moved to the dead-letter file
+ *   chat.journal.dead-letter-path instead of holding up the messages behind it; any other
+ *   failure, such as a lost connection, leaves it at the head of the queue to retry.
+ */
+@Service
+public class MessageJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageJournal.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ConversationCache conversationCache;
+
+    @Value("${chat.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.journal.path:data/message-journal.log}")
+    private String logPath;
+
+    @Value("${chat.journal.dead-letter-path:data/message-journal.dead}")
+    private String deadLetterPath;
+
+    @Value("${chat.journal.fsync:true}")
+    private boolean fsync;
+
+    @Value("${chat.journal.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.journal.batch-size:100}")
+    private int batchSize;
+
+    // Guards the queue and the log file together
+    private final Object lock = new Object();
+    private final Deque<JournalEntry> queue = new ArrayDeque<>();
+    private final Map<Long, AtomicInteger> pendingByConversation = new ConcurrentHashMap<>();
+
+    private FileChannel log;
+    private ScheduledExecutorService flusher;
+
+    public MessageJournal(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          ObjectMapper objectMapper,
+                          ConversationCache conversationCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.conversationCache = conversationCache;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path path = Path.of(logPath);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        replay(path);
+
+        log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Message journal enabled (log: {}, flush every {}ms or {} messages)", path, flushIntervalMs, batchSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Durably log a message and acknowledge it; the database write happens in the next batch
+     * Inside a transaction the message is logged when the transaction commits, and dropped if it rolls back.
+     */
+    public ChatMessage append(Long conversationId, String content, MessageRole role) {
+        long id = nextId();
+        JournalEntry entry = new JournalEntry(id, conversationId, role.name(), LocalDateTime.now().toString(), content);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueueCommitted(entry);
+                }
+            });
+        } else {
+            enqueue(entry);
+        }
+
+        ChatMessage message = new ChatMessage();
+        message.setId(entry.id());
+        message.setContent(content);
+        message.setRole(role);
+        message.setCreatedAt(LocalDateTime.parse(entry.createdAt()));
+        return message;
+    }
+
+    /**
+     * Queue a message whose request has committed and was acknowledged
+     * Failing now would report an error for an accepted message, so a message that cannot be logged
+     * is still queued; only a crash before its flush would lose it.
+     */
+    private void enqueueCommitted(JournalEntry entry) {
+        try {
+            enqueue(entry);
+        } catch (RuntimeException e) {
+            logger.error("Message {} could not be journaled, queued without it: {}", entry.id(), e.getMessage());
+            enqueue(entry, false);
+        }
+    }
+
+    private void enqueue(JournalEntry entry) {
+        enqueue(entry, true);
+    }
+
+    private void enqueue(JournalEntry entry, boolean logged) {
+        int queued;
+        synchronized (lock) {
+            if (logged) {
+                writeToLog(entry);
+            }
+            pendingByConversation.computeIfAbsent(entry.conversationId(), id -> new AtomicInteger()).incrementAndGet();
+            queue.addLast(entry);
+            queued = queue.size();
+        }
+
+        if (queued >= batchSize) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Block until messages acknowledged for this conversation are in the database,
+     * so readers see their own writes
+     */
+    public void flushPending(Long conversationId) {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger pending = pendingByConversation.get(conversationId);
+        if (pending == null || pending.get() == 0) {
+            return;
+        }
+
+        try {
+            flusher.submit(this::flushQuietly).get(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Timed out waiting for journal flush of conversation {}", conversationId);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Message journal flush failed, will retry: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drain and write everything queued so far. Only ever runs on the flusher thread.
+     */
+    private void flush() throws IOException {
+        while (true) {
+            List<JournalEntry> batch = new ArrayList<>();
+            synchronized (lock) {
+                while (!queue.isEmpty() && batch.size() < batchSize) {
+                    batch.add(queue.pollFirst());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                writeOneByOne(batch);
+            }
+            written(batch);
+
+            synchronized (lock) {
+                // Everything in the log is in the database once the queue is empty
+                if (queue.isEmpty()) {
+                    log.truncate(0);
+                }
+            }
+        }
+    }
+
+    private void write(List<JournalEntry> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            insertBatch(batch);
+            updateConversations(batch);
+        });
+    }
+
+    /**
+     * Write a batch the database rejected one message at a time, dead-lettering the messages it refuses
+     * On any other failure the rest of the batch is put back in front, so ordering is preserved on retry.
+     */
+    private void writeOneByOne(List<JournalEntry> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            JournalEntry entry = batch.get(i);
+            try {
+                write(List.of(entry));
+            } catch (RuntimeException e) {
+                if (!isRefused(e) || !deadLetter(entry, e)) {
+                    synchronized (lock) {
+                        for (int j = batch.size() - 1; j >= i; j--) {
+                            queue.addFirst(batch.get(j));
+                        }
+                    }
+                    written(batch.subList(0, i));
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the database refused the data itself, so retrying the same message cannot succeed
+     */
+    static boolean isRefused(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException;
+    }
+
+    /**
+     * Move a refused message to the dead-letter file
+     *
+     * @return false if the file could not be written, so the message has to stay queued
+     */
+    private boolean deadLetter(JournalEntry entry, RuntimeException cause) {
+        try {
+            Path path = Path.of(deadLetterPath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            String line = objectMapper.writeValueAsString(new DeadLetter(entry, cause.getMessage())) + "\n";
+            Files.writeString(path, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.error("Could not dead-letter message {}: {}", entry.id(), e.getMessage());
+            return false;
+        }
+        logger.error("Message {} of conversation {} refused by the database, moved to {}: {}",
+            entry.id(), entry.conversationId(), deadLetterPath, cause.getMessage());
+        return true;
+    }
+
+    /**
+     * Forget entries that are no longer pending, written or dead-lettered
+     */
+    private void written(List<JournalEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Counters were changed behind Hibernate's back; a failure here must not requeue the batch
+        try {
+            conversationCache.evictAll(entries.stream().map(JournalEntry::conversationId).distinct().toList());
+        } catch (RuntimeException e) {
+            logger.warn("Could not evict cached conversations after journal flush: {}", e.getMessage());
+        }
+
+        for (JournalEntry entry : entries) {
+            pendingByConversation.computeIfPresent(entry.conversationId(),
+                (id, count) -> count.decrementAndGet() <= 0 ? null : count);
+        }
+    }
+
+    /**
+     * One multi-row INSERT for the whole batch; rows of conversations deleted in the
+     * meantime are skipped and rows already written by an earlier attempt are ignored
+     */
+    private void insertBatch(List<JournalEntry> batch) {
+        StringBuilder sql = new StringBuilder("""
+            INSERT INTO chat_messages (id, conversation_id, content, role, created_at)
+            SELECT v.id, v.conversation_id, v.content, v.role, v.created_at
+            FROM (VALUES
+            """);
+        List<Object> args = new ArrayList<>(batch.size() * 5);
+        for (int i = 0; i < batch.size(); i++) {
+            JournalEntry entry = batch.get(i);
+            sql.append(i == 0 ? "" : ",\n").append("(CAST(? AS bigint), CAST(? AS bigint), ?, ?, CAST(? AS timestamp))");
+            args.add(entry.id());
+            args.add(entry.conversationId());
+            args.add(entry.content());
+            args.add(entry.role());
+            args.add(Timestamp.valueOf(LocalDateTime.parse(entry.createdAt())));
+        }
+        sql.append("""
+            ) AS v(id, conversation_id, content, role, created_at)
+            WHERE EXISTS (SELECT 1 FROM conversations c WHERE c.id = v.conversation_id)
+            ON CONFLICT (id) DO NOTHING
+            """);
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * One counter update per conversation touched by the batch
+     */
+    private void updateConversations(List<JournalEntry> batch) {
+        Map<Long, List<JournalEntry>> byConversation = new LinkedHashMap<>();
+        for (JournalEntry entry : batch) {
+            byConversation.computeIfAbsent(entry.conversationId(), id -> new ArrayList<>()).add(entry);
+        }
+
+        List<Object[]> updates = new ArrayList<>(byConversation.size());
+        byConversation.forEach((conversationId, entries) -> {
+            JournalEntry last = entries.get(entries.size() - 1);
+            updates.add(new Object[] {
+                entries.size(),
+                ConversationService.buildPreview(last.content()),
+                Timestamp.valueOf(LocalDateTime.parse(last.createdAt())),
+                conversationId
+            });
+        });
+        jdbcTemplate.batchUpdate("""
+            UPDATE conversations
+            SET message_count = message_count + ?, last_message_preview = ?, updated_at = ?
+            WHERE id = ?
+            """, updates);
+    }
+
+    /**
+     * Re-insert everything left in the log by a previous run. Counters are recomputed
+     * rather than incremented, because some entries may have been flushed already.
+     */
+    private void replay(Path path) throws IOException {
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            return;
+        }
+
+        List<JournalEntry> entries = new ArrayList<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                entries.add(objectMapper.readValue(line, JournalEntry.class));
+            } catch (IOException e) {
+                // A torn final line from a crash mid-write was never acknowledged
+                logger.warn("Skipping unreadable journal line: {}", e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            List<JournalEntry> batch = entries.subList(i, Math.min(i + batchSize, entries.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertBatch(batch));
+            } catch (RuntimeException e) {
+                for (JournalEntry entry : batch) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> insertBatch(List.of(entry)));
+                    } catch (RuntimeException refused) {
+                        if (!isRefused(refused) || !deadLetter(entry, refused)) {
+                            throw refused;
+                        }
+                    }
+                }
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Object[]> conversationIds = entries.stream()
+                .map(JournalEntry::conversationId)
+                .distinct()
+                .map(id -> new Object[] { id })
+                .toList();
+            jdbcTemplate.batchUpdate("""
+                UPDATE conversations c
+                SET message_count = (SELECT COUNT(*) FROM chat_messages m WHERE m.conversation_id = c.id),
+                    last_message_preview = LEFT((SELECT m.content FROM chat_messages m
+                                                 WHERE m.conversation_id = c.id
+                                                 ORDER BY m.id DESC LIMIT 1), 120)
+                WHERE c.id = ?
+                """, conversationIds);
+        });
+
+        Files.write(path, new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+        logger.info("Replayed {} journaled messages from {}", entries.size(), path);
+    }
+
+    private long nextId() {
+        return jdbcTemplate.queryForObject("SELECT nextval(pg_get_serial_sequence('chat_messages', 'id'))", Long.class);
+    }
+
+    private void writeToLog(JournalEntry entry) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                log.write(buffer);
+            }
+            if (fsync) {
+                log.force(false);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Message could not be journaled", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+            flush();
+            log.close();
+        } catch (Exception e) {
+            logger.warn("Message journal not fully flushed on shutdown; it will be replayed on next start: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * One line of the append-only log
+     */
+    record JournalEntry(long id, long conversationId, String role, String createdAt, String content) {}
+
+    /**
+     * One line of the dead-letter file: a message the database refused, and why
+     */
+    record DeadLetter(JournalEntry entry, String error) {}
+}
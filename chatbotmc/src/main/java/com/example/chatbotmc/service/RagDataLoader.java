@@ -2,24 +2,39 @@ package com.example.chatbotmc.service;
 
 import com.example.chatbotmc.dto.RagChunkDTO;
 import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import com.example.chatbotmc.observability.IngestionBatchEvent;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
 import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.retrieval.ChunkFilterIndex;
+import com.example.chatbotmc.retrieval.EmbeddingDimensionMigration;
+import com.example.chatbotmc.retrieval.NearDuplicateIndex;
+import com.example.chatbotmc.retrieval.SimHash;
+import com.example.chatbotmc.retrieval.TextChunker;
+import com.example.chatbotmc.retrieval.VectorIndexManager;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Service to load RAG chunks from data.json into the database with embeddings
- * Runs automatically on application startup
+ * With rag.auto-load=true the load starts in the background once the application is up,
+ * so it accepts traffic right away; RagReadiness reports WARMING until the load is done.
  */
 @Service
 public class RagDataLoader implements CommandLineRunner {
@@ -27,9 +42,18 @@ public class RagDataLoader implements CommandLineRunner {
     private static final Logger logger = LoggerFactory.getLogger(RagDataLoader.class);
     
     private final RagChunkRepository ragChunkRepository;
+    private final RagChunkAliasRepository ragChunkAliasRepository;
     private final EmbeddingService embeddingService;
     private final ResourceLoader resourceLoader;
     private final ObjectMapper objectMapper;
+    private final RagReadiness ragReadiness;
+    private final RagSnapshotService ragSnapshotService;
+    private final ChunkFilterIndex chunkFilterIndex;
+    private final VectorIndexManager vectorIndexManager;
+    private final EmbeddingDimensionMigration embeddingDimensionMigration;
+    private final TextChunker textChunker;
+    private final ThreadPoolTaskExecutor ragIngestionExecutor;
+    private final TransactionTemplate transactionTemplate;
     
     @Value("${rag.auto-load:false}")
     private boolean autoLoad;
@@ -40,34 +64,94 @@ public class RagDataLoader implements CommandLineRunner {
     @Value("${rag.delay-ms:1000}")
     private long delayMs;
     
+    @Value("${rag.chunking.enabled:true}")
+    private boolean chunkingEnabled;
+    
+    @Value("${rag.dedup.enabled:true}")
+    private boolean dedupEnabled;
+    
+    @Value("${rag.dedup.max-distance:3}")
+    private int dedupMaxDistance;
+    
+    @Value("${rag.dedup.shingle-words:4}")
+    private int dedupShingleWords;
+    
     public RagDataLoader(
             RagChunkRepository ragChunkRepository,
+            RagChunkAliasRepository ragChunkAliasRepository,
             EmbeddingService embeddingService,
             ResourceLoader resourceLoader,
-            ObjectMapper objectMapper
+            ObjectMapper objectMapper,
+            RagReadiness ragReadiness,
+            RagSnapshotService ragSnapshotService,
+            ChunkFilterIndex chunkFilterIndex,
+            VectorIndexManager vectorIndexManager,
+            EmbeddingDimensionMigration embeddingDimensionMigration,
+            TextChunker textChunker,
+            @Qualifier("ragIngestionExecutor") ThreadPoolTaskExecutor ragIngestionExecutor,
+            PlatformTransactionManager transactionManager
     ) {
         this.ragChunkRepository = ragChunkRepository;
+        this.ragChunkAliasRepository = ragChunkAliasRepository;
         this.embeddingService = embeddingService;
         this.resourceLoader = resourceLoader;
         this.objectMapper = objectMapper;
+        this.ragReadiness = ragReadiness;
+        this.ragSnapshotService = ragSnapshotService;
+        this.chunkFilterIndex = chunkFilterIndex;
+        this.vectorIndexManager = vectorIndexManager;
+        this.embeddingDimensionMigration = embeddingDimensionMigration;
+        this.textChunker = textChunker;
+        this.ragIngestionExecutor = ragIngestionExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
     
     @Override
-    public void run(String... args) throws Exception {
+    public void run(String... args) {
         if (autoLoad) {
-            logger.info("Auto-load is enabled. Starting RAG data loading...");
-            loadRagData();
+            logger.info("Auto-load is enabled. Loading RAG data in the background...");
         } else {
             logger.info("Auto-load is disabled. Use /api/admin/load-rag-data endpoint to load data manually.");
             logger.info("To enable auto-load, set rag.auto-load=true in application.properties");
         }
+        ragIngestionExecutor.execute(this::warmUp);
     }
     
     /**
-     * Load all RAG chunks from data.json and generate embeddings
-     * Can be called manually via API endpoint
+     * Bring the index to READY: load data.json if enabled, otherwise serve what the database has
+     * The vector column's dimension is settled first, so chunks are embedded at the one searched with.
      */
-    public void loadRagData() {
+    private void warmUp() {
+        try {
+            embeddingDimensionMigration.prepare();
+            if (autoLoad) {
+                loadRagData();
+            } else {
+                markReady();
+            }
+        } catch (RuntimeException e) {
+            logger.error("RAG index could not be prepared, answering without document context: {}", e.getMessage());
+            ragReadiness.failed(e.getMessage());
+        }
+    }
+    
+    /**
+     * Rebuild the metadata filter bitmaps over the chunks now in the table, then serve retrieval
+     * The vector index is checked afterwards in the background; searches are exact until it is built.
+     * A pending change of embedding dimension then runs in the background too, serving the old column meanwhile.
+     */
+    private void markReady() {
+        ragReadiness.ready(chunkFilterIndex.rebuild());
+        ragIngestionExecutor.execute(vectorIndexManager::maintain);
+        ragIngestionExecutor.execute(embeddingDimensionMigration::migrateIfPending);
+    }
+    
+    /**
+     * Load all RAG chunks into an empty table: from the embedding snapshot when one matches the
+     * active model, otherwise from data.json with generated embeddings
+     * Can be called manually via API endpoint; waits for a load already running in the background
+     */
+    public synchronized void loadRagData() {
         try {
             logger.info("Loading RAG chunks from data.json...");
             
@@ -76,8 +160,15 @@ public class RagDataLoader implements CommandLineRunner {
             if (existingCount > 0) {
                 logger.info("Found {} existing chunks in database. Skipping load.", existingCount);
                 logger.info("To reload, clear the rag_chunk table first.");
+                markReady();
+                return;
+            }
+            
+            // Searches over a partly loaded table would miss documents, so answer without context meanwhile
+            if (ragSnapshotService.snapshotExists() && importSnapshotIfUsable()) {
                 return;
             }
+            ragReadiness.warming("Loading data.json");
             
             // Load JSON file
             Resource resource = resourceLoader.getResource("classpath:data.json");
@@ -91,7 +182,10 @@ public class RagDataLoader implements CommandLineRunner {
             
             int totalProcessed = 0;
             int totalFailed = 0;
+            int totalRows = 0;
+            int totalDuplicates = 0;
             int batchCount = 0;
+            NearDuplicateIndex duplicates = dedupEnabled ? storedFingerprints() : null;
             
             // Process in batches to avoid overwhelming the API
             for (int i = 0; i < chunkDTOs.size(); i += batchSize) {
@@ -107,9 +201,14 @@ public class RagDataLoader implements CommandLineRunner {
                     chunkDTOs.size()
                 );
                 
+                IngestionBatchEvent event = new IngestionBatchEvent();
+                event.begin();
+                int failedBefore = totalFailed;
                 for (RagChunkDTO dto : batch) {
                     try {
-                        saveChunkWithTransaction(dto);
+                        SavedChunk saved = saveChunkWithTransaction(dto, duplicates);
+                        totalRows += saved.rows();
+                        totalDuplicates += saved.duplicates();
                         totalProcessed++;
                         
                         // Small delay to avoid rate limiting
@@ -120,6 +219,7 @@ public class RagDataLoader implements CommandLineRunner {
                         logger.error("Error processing chunk {}: {}", dto.getId(), e.getMessage(), e);
                     }
                 }
+                commitBatchEvent(event, "load", batchCount, batch.size(), totalFailed - failedBefore);
                 
                 // Longer delay between batches
                 if (end < chunkDTOs.size()) {
@@ -128,38 +228,286 @@ public class RagDataLoader implements CommandLineRunner {
                 }
             }
             
-            logger.info("✓ Successfully loaded {} chunks with embeddings", totalProcessed);
+            logger.info("✓ Successfully loaded {} chunks with embeddings as {} rows", totalProcessed, totalRows);
+            logger.info("✓ Collapsed {} near-duplicate chunks into existing ones, dedup ratio {}",
+                totalDuplicates, String.format("%.1f%%", dedupRatio(totalDuplicates, totalRows)));
             logger.info("✗ Failed to load {} chunks", totalFailed);
             logger.info("✓ Total chunks in database: {}", ragChunkRepository.count());
-            logger.info("✓ Chunks with embeddings: {}", ragChunkRepository.countByEmbeddingIsNotNull());
+            long embedded = ragChunkRepository.countByEmbeddingIsNotNull();
+            logger.info("✓ Chunks with embeddings: {}", embedded);
+            markReady();
             
         } catch (IOException e) {
             logger.error("Failed to load data.json: {}", e.getMessage(), e);
+            ragReadiness.failed("Failed to load data.json: " + e.getMessage());
             throw new RuntimeException("Failed to load RAG data", e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             logger.error("Loading interrupted: {}", e.getMessage());
+            ragReadiness.failed("Loading interrupted");
             throw new RuntimeException("Loading interrupted", e);
         }
     }
     
+    /**
+     * Import rag.snapshot.path into rag_chunk, adding chunks that are not there yet
+     * POST /api/admin/rag-snapshot/import
+     */
+    public synchronized RagSnapshotService.SnapshotInfo importSnapshot() throws IOException {
+        ragReadiness.warming("Importing embedding snapshot");
+        RagSnapshotService.SnapshotInfo info;
+        try {
+            info = ragSnapshotService.importSnapshot();
+        } catch (IOException | RuntimeException e) {
+            ragReadiness.failed("Snapshot import failed: " + e.getMessage());
+            throw e;
+        }
+        markReady();
+        return info;
+    }
+    
+    /**
+     * @return false if the snapshot cannot be used, e.g. because it was made with another model
+     */
+    private boolean importSnapshotIfUsable() {
+        try {
+            RagSnapshotService.SnapshotInfo info = importSnapshot();
+            logger.info("✓ Loaded {} chunks from the embedding snapshot, no embedding calls needed", info.chunks());
+            return info.chunks() > 0;
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Embedding snapshot not usable, embedding data.json instead: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Duplicates index seeded with the chunks already stored, e.g. by a snapshot import that stopped
+     * part way, so the load collapses duplicates of those as well as of the chunks it saves itself
+     */
+    private NearDuplicateIndex storedFingerprints() {
+        NearDuplicateIndex duplicates = new NearDuplicateIndex(dedupMaxDistance);
+        for (RagChunkRepository.ChunkText chunk : ragChunkRepository.findEmbeddedTexts()) {
+            duplicates.add(SimHash.fingerprint(chunk.getText(), dedupShingleWords), chunk.getId());
+        }
+        if (duplicates.size() > 0) {
+            logger.info("Near-duplicate index seeded with {} stored chunks", duplicates.size());
+        }
+        return duplicates;
+    }
+    
     /**
      * Save a single chunk with its own transaction to prevent cascade failures
+     * A document longer than rag.chunking.max-tokens is saved as sub-chunks "<id>#<n>" that keep
+     * its metadata and point back to it, embedded in one batch. With a duplicates index, a (sub-)chunk
+     * whose text nearly matches one already saved is stored as an alias of it instead of being embedded.
+     * The chunks and their aliases are saved together or not at all; the duplicates index learns of
+     * the new chunks only once they are committed.
      */
-    @Transactional
-    private void saveChunkWithTransaction(RagChunkDTO dto) {
-        RagChunk chunk = convertToEntity(dto);
-        
-        // Generate embedding
-        List<Double> embedding = embeddingService.generateEmbedding(dto.getText());
-        if (embedding != null) {
-            String vectorString = embeddingService.embeddingToVectorString(embedding);
-            chunk.setEmbedding(vectorString);
+    private SavedChunk saveChunkWithTransaction(RagChunkDTO dto, NearDuplicateIndex duplicates) {
+        List<RagChunk> chunks = toChunks(dto);
+        long[] fingerprints = new long[chunks.size()];
+        List<RagChunk> saved = transactionTemplate.execute(status -> saveChunks(chunks, duplicates, fingerprints));
+        if (duplicates != null) {
+            // A chunk whose embedding failed is not searchable, so it should not absorb later duplicates
+            for (int i = 0; i < saved.size(); i++) {
+                if (saved.get(i).getEmbedding() != null) {
+                    duplicates.add(fingerprints[i], saved.get(i).getId());
+                }
+            }
+        }
+        return new SavedChunk(saved.size(), chunks.size() - saved.size());
+    }
+    
+    private List<RagChunk> toChunks(RagChunkDTO dto) {
+        List<String> parts = chunkingEnabled ? textChunker.split(dto.getText()) : List.of();
+        List<RagChunk> chunks = new ArrayList<>();
+        if (parts.size() <= 1) {
+            chunks.add(convertToEntity(dto));
         } else {
-            logger.warn("Failed to generate embedding for chunk: {}", dto.getId());
+            for (int i = 0; i < parts.size(); i++) {
+                RagChunk chunk = convertToEntity(dto);
+                chunk.setChunkId(dto.getId() + "#" + i);
+                chunk.setText(parts.get(i));
+                chunk.setParentChunkId(dto.getId());
+                chunk.setChunkIndex(i);
+                chunks.add(chunk);
+            }
         }
+        return chunks;
+    }
+    
+    /**
+     * @param fingerprints filled with the SimHash of each saved chunk, in order
+     * @return the chunks saved; the rest were saved as aliases
+     */
+    private List<RagChunk> saveChunks(List<RagChunk> chunks, NearDuplicateIndex duplicates, long[] fingerprints) {
+        List<RagChunkAlias> aliases = new ArrayList<>();
+        if (duplicates != null) {
+            chunks = collapseDuplicates(chunks, duplicates, fingerprints, aliases);
+            if (chunks.isEmpty()) {
+                ragChunkAliasRepository.saveAll(aliases);
+                return chunks;
+            }
+        }
+        
+        // Generate embeddings
+        List<List<Double>> embeddings = embeddingService.generateEmbeddings(
+            chunks.stream().map(RagChunk::getText).toList());
+        for (int i = 0; i < chunks.size(); i++) {
+            List<Double> embedding = embeddings.get(i);
+            if (embedding != null) {
+                chunks.get(i).setEmbedding(embeddingService.embeddingToVectorString(embedding));
+                chunks.get(i).setEmbeddingModel(embeddingService.getModelName());
+            } else {
+                logger.warn("Failed to generate embedding for chunk: {}", chunks.get(i).getChunkId());
+            }
+        }
+        
+        ragChunkRepository.saveAll(chunks);
+        ragChunkAliasRepository.saveAll(aliases);
+        return chunks;
+    }
+    
+    /**
+     * Replace the chunks that nearly match a saved chunk, or an earlier chunk of the same document,
+     * with aliases of it
+     *
+     * @param fingerprints filled with the SimHash of each returned chunk, in order
+     * @return the chunks to embed and save
+     */
+    private List<RagChunk> collapseDuplicates(List<RagChunk> chunks, NearDuplicateIndex duplicates,
+                                              long[] fingerprints, List<RagChunkAlias> aliases) {
+        List<RagChunk> kept = new ArrayList<>();
+        for (RagChunk chunk : chunks) {
+            long fingerprint = SimHash.fingerprint(chunk.getText(), dedupShingleWords);
+            RagChunk canonical = null;
+            int distance = dedupMaxDistance + 1;
+            NearDuplicateIndex.Entry saved = duplicates.find(fingerprint);
+            if (saved != null) {
+                canonical = ragChunkRepository.getReferenceById(saved.id());
+                distance = SimHash.distance(fingerprint, saved.fingerprint());
+            }
+            // Not yet in the index, since ids are assigned on save
+            for (int i = 0; i < kept.size(); i++) {
+                int keptDistance = SimHash.distance(fingerprint, fingerprints[i]);
+                if (keptDistance < distance) {
+                    canonical = kept.get(i);
+                    distance = keptDistance;
+                }
+            }
+            
+            if (canonical == null) {
+                fingerprints[kept.size()] = fingerprint;
+                kept.add(chunk);
+            } else {
+                aliases.add(toAlias(chunk, canonical, distance));
+                logger.debug("Chunk {} is a near-duplicate ({} bits) of an existing chunk", chunk.getChunkId(), distance);
+            }
+        }
+        return kept;
+    }
+    
+    private static RagChunkAlias toAlias(RagChunk chunk, RagChunk canonical, int distance) {
+        RagChunkAlias alias = new RagChunkAlias();
+        alias.setCanonical(canonical);
+        alias.setChunkId(chunk.getChunkId());
+        alias.setParentChunkId(chunk.getParentChunkId());
+        alias.setDistance(distance);
+        alias.setModpack(chunk.getModpack());
+        alias.setModName(chunk.getModName());
+        alias.setModVersion(chunk.getModVersion());
+        alias.setCategory(chunk.getCategory());
+        alias.setDocType(chunk.getDocType());
+        alias.setLanguage(chunk.getLanguage());
+        return alias;
+    }
+    
+    /**
+     * Share of ingested chunks that were collapsed into an existing one, in percent
+     */
+    private static double dedupRatio(long duplicates, long rows) {
+        return duplicates + rows > 0 ? duplicates * 100.0 / (duplicates + rows) : 0;
+    }
+    
+    private record SavedChunk(int rows, int duplicates) {}
+    
+    /**
+     * Re-embed every chunk whose vector came from a different model than the active backend.
+     * Run this after switching embedding.provider; vectors from different models are not comparable.
+     * Smaller vectors are zero-padded to the vector column's dimension so the column stays unchanged.
+     * Retrieval goes on meanwhile: searches only consider chunks embedded with the active model,
+     * so recall grows as chunks are re-embedded.
+     *
+     * @return number of chunks re-embedded
+     */
+    public synchronized int reindexEmbeddings() {
+        String model = embeddingService.getModelName();
+        long pending = ragChunkRepository.countNeedingReindex(model);
+        logger.info("Re-embedding {} chunks with model {}", pending, model);
+        int reindexed;
+        try {
+            reindexed = reindexPending(model, pending);
+        } catch (RuntimeException e) {
+            ragReadiness.failed("Re-embedding with " + model + " failed: " + e.getMessage());
+            throw e;
+        }
+        markReady();
+        return reindexed;
+    }
+    
+    private int reindexPending(String model, long pending) {
         
-        ragChunkRepository.save(chunk);
+        int reindexed = 0;
+        int failed = 0;
+        int batchCount = 0;
+        long lastId = 0;
+        while (true) {
+            // Failed chunks keep their old model, so page by id to move past them instead of re-reading them
+            List<RagChunk> batch = ragChunkRepository.findNeedingReindex(model, lastId, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            
+            batchCount++;
+            IngestionBatchEvent event = new IngestionBatchEvent();
+            event.begin();
+            List<List<Double>> embeddings = embeddingService.generateEmbeddings(
+                batch.stream().map(RagChunk::getText).toList()
+            );
+            
+            int batchFailed = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                List<Double> embedding = embeddings.get(i);
+                if (embedding == null) {
+                    batchFailed++;
+                    logger.warn("Failed to re-embed chunk: {}", batch.get(i).getChunkId());
+                    continue;
+                }
+                batch.get(i).setEmbedding(embeddingService.embeddingToVectorString(embedding));
+                batch.get(i).setEmbeddingModel(model);
+                reindexed++;
+            }
+            ragChunkRepository.saveAll(batch);
+            commitBatchEvent(event, "reindex", batchCount, batch.size(), batchFailed);
+            failed += batchFailed;
+            logger.info("Re-embedded {}/{} chunks", reindexed, pending);
+        }
+        
+        if (failed > 0) {
+            logger.warn("{} chunks could not be re-embedded and keep their old vectors", failed);
+        }
+        logger.info("✓ Re-embedded {} chunks with model {}", reindexed, model);
+        return reindexed;
+    }
+    
+    private void commitBatchEvent(IngestionBatchEvent event, String operation, int batch, int chunks, int failed) {
+        event.operation = operation;
+        event.model = embeddingService.getModelName();
+        event.batch = batch;
+        event.chunks = chunks;
+        event.failed = failed;
+        event.commit();
     }
     
     /**
@@ -188,12 +536,15 @@ public class RagDataLoader implements CommandLineRunner {
     public String getLoadingStats() {
         long totalChunks = ragChunkRepository.count();
         long chunksWithEmbeddings = ragChunkRepository.countByEmbeddingIsNotNull();
+        long duplicates = ragChunkAliasRepository.count();
         
         return String.format(
-            "Total chunks: %d, Chunks with embeddings: %d (%.1f%%)",
+            "Total chunks: %d, Chunks with embeddings: %d (%.1f%%), Near-duplicates collapsed: %d (%.1f%%)",
             totalChunks,
             chunksWithEmbeddings,
-            totalChunks > 0 ? (chunksWithEmbeddings * 100.0 / totalChunks) : 0
+            totalChunks > 0 ? (chunksWithEmbeddings * 100.0 / totalChunks) : 0,
+            duplicates,
+            dedupRatio(duplicates, totalChunks)
         );
     }
 }
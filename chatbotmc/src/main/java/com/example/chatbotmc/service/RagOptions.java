@@ -0,0 +1,20 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.retrieval.RagFilter;
+
+/**
+ * Per-request overrides of the retrieval settings
+ *
+ * @param enabled    false answers without document context
+ * @param topK       chunks to retrieve; null uses rag.top-k
+ * @param filter     metadata the retrieved chunks must match
+ * @param neighbours sub-chunks on each side of a hit to add from the same document; null uses rag.chunking.neighbours
+ */
+public record RagOptions(boolean enabled, Integer topK, RagFilter filter, Integer neighbours) {
+
+    public static final RagOptions DEFAULT = new RagOptions(true, null, RagFilter.NONE, null);
+
+    public RagOptions {
+        filter = filter == null ? RagFilter.NONE : filter;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.chatbotmc.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Whether the RAG index can serve retrieval yet
+ * The application accepts traffic while the index is WARMING; RagService answers without
+ * document context until it is READY. RagDataLoader moves the state as it loads or re-embeds.
+ */
+@Component
+public class RagReadiness {
+
+    private static final Logger logger = LoggerFactory.getLogger(RagReadiness.class);
+
+    public enum State {
+        WARMING,
+        READY,
+        FAILED
+    }
+
+    private volatile Status status = new Status(State.WARMING, 0, Instant.now(), "Starting");
+
+    public boolean isReady() {
+        return status.state() == State.READY;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    void warming(String message) {
+        transition(new Status(State.WARMING, status.embeddedChunks(), Instant.now(), message));
+    }
+
+    void ready(long embeddedChunks) {
+        transition(new Status(State.READY, embeddedChunks, Instant.now(), embeddedChunks + " chunks with embeddings"));
+    }
+
+    void failed(String message) {
+        transition(new Status(State.FAILED, status.embeddedChunks(), Instant.now(), message));
+    }
+
+    private void transition(Status next) {
+        Status previous = status;
+        status = next;
+        if (previous.state() != next.state()) {
+            logger.info("RAG index {} -> {}: {}", previous.state(), next.state(), next.message());
+        }
+    }
+
+    /**
+     * @param embeddedChunks chunks with embeddings when the state was entered
+     * @param since          when the state was entered
+     */
+    public record Status(State state, long embeddedChunks, Instant since, String message) {}
+}
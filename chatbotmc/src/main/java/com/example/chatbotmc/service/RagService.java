@@ -1,13 +1,32 @@
 package com.example.chatbotmc.service;
 
 import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.observability.PromptBuildEvent;
+import com.example.chatbotmc.observability.StageTimer;
+import com.example.chatbotmc.observability.VectorSearchEvent;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
 import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.retrieval.ChunkFilterIndex;
+import com.example.chatbotmc.retrieval.EmbeddingDimensionMigration;
+import com.example.chatbotmc.retrieval.RagFilter;
+import com.example.chatbotmc.retrieval.VectorIndexManager;
+import io.micrometer.core.instrument.Timer;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Service for Retrieval-Augmented Generation (RAG)
@@ -19,7 +38,13 @@ public class RagService {
     private static final Logger logger = LoggerFactory.getLogger(RagService.class);
     
     private final RagChunkRepository ragChunkRepository;
+    private final RagChunkAliasRepository ragChunkAliasRepository;
     private final EmbeddingService embeddingService;
+    private final ChatMetrics chatMetrics;
+    private final RagReadiness ragReadiness;
+    private final ChunkFilterIndex chunkFilterIndex;
+    private final VectorIndexManager vectorIndexManager;
+    private final EmbeddingDimensionMigration embeddingDimensionMigration;
     
     @Value("${rag.top-k:5}")
     private int defaultTopK;
@@ -30,9 +55,24 @@ public class RagService {
     @Value("${rag.enabled:true}")
     private boolean ragEnabled;
     
-    public RagService(RagChunkRepository ragChunkRepository, EmbeddingService embeddingService) {
+    @Value("${rag.filter.exact-max-candidates:5000}")
+    private int exactMaxCandidates;
+    
+    @Value("${rag.chunking.neighbours:0}")
+    private int defaultNeighbours;
+    
+    public RagService(RagChunkRepository ragChunkRepository, RagChunkAliasRepository ragChunkAliasRepository,
+                      EmbeddingService embeddingService, ChatMetrics chatMetrics, RagReadiness ragReadiness,
+                      ChunkFilterIndex chunkFilterIndex, VectorIndexManager vectorIndexManager,
+                      EmbeddingDimensionMigration embeddingDimensionMigration) {
         this.ragChunkRepository = ragChunkRepository;
+        this.ragChunkAliasRepository = ragChunkAliasRepository;
         this.embeddingService = embeddingService;
+        this.chatMetrics = chatMetrics;
+        this.ragReadiness = ragReadiness;
+        this.chunkFilterIndex = chunkFilterIndex;
+        this.vectorIndexManager = vectorIndexManager;
+        this.embeddingDimensionMigration = embeddingDimensionMigration;
     }
     
     /**
@@ -43,65 +83,318 @@ public class RagService {
      * @return List of relevant RAG chunks
      */
     public List<RagChunk> retrieveRelevantChunks(String query, int topK) {
-        if (!ragEnabled) {
-            logger.debug("RAG is disabled");
-            return List.of();
+        return retrieveRelevantChunks(query, topK, RagFilter.NONE);
+    }
+    
+    /**
+     * Retrieve relevant chunks using default topK value
+     */
+    public List<RagChunk> retrieveRelevantChunks(String query) {
+        return retrieveRelevantChunks(query, defaultTopK);
+    }
+    
+    /**
+     * Retrieve relevant chunks with the request's top-k and metadata filter
+     */
+    public List<RagChunk> retrieveRelevantChunks(String query, RagOptions options) {
+        int topK = options.topK() != null ? options.topK() : defaultTopK;
+        int neighbours = options.neighbours() != null ? options.neighbours() : defaultNeighbours;
+        List<RagChunk> chunks = retrieveRelevantChunks(query, topK, options.filter());
+        return neighbours > 0 ? expandNeighbours(chunks, neighbours) : chunks;
+    }
+    
+    /**
+     * Replace each sub-chunk hit by a passage of its document: the hit and up to neighbours
+     * sub-chunks on each side, without the text consecutive sub-chunks share
+     * Hits from the same document are merged into its passages at the rank of the first one.
+     * The passages are new, unsaved chunks; whole documents are returned as they are.
+     * Sub-chunks of all hit documents are read in one query; a sub-chunk collapsed into a near-duplicate
+     * is only an alias, so its canonical chunk's text fills its place.
+     */
+    List<RagChunk> expandNeighbours(List<RagChunk> hits, int neighbours) {
+        Map<String, List<Integer>> hitIndices = new LinkedHashMap<>();
+        List<RagChunk> ranked = new ArrayList<>();
+        for (RagChunk hit : hits) {
+            if (hit.getParentChunkId() == null || hit.getChunkIndex() == null) {
+                ranked.add(hit);
+                continue;
+            }
+            List<Integer> indices = hitIndices.get(hit.getParentChunkId());
+            if (indices == null) {
+                indices = new ArrayList<>();
+                hitIndices.put(hit.getParentChunkId(), indices);
+                ranked.add(hit);
+            }
+            indices.add(hit.getChunkIndex());
+        }
+        if (hitIndices.isEmpty()) {
+            return hits;
+        }
+        
+        Map<String, TreeMap<Integer, RagChunk>> documents = new HashMap<>();
+        for (RagChunk sibling : ragChunkRepository.findByParentChunkIdIn(hitIndices.keySet())) {
+            Integer index = sibling.getChunkIndex();
+            if (index != null && withinWindow(hitIndices.get(sibling.getParentChunkId()), index, neighbours)) {
+                documents.computeIfAbsent(sibling.getParentChunkId(), id -> new TreeMap<>()).put(index, sibling);
+            }
+        }
+        for (RagChunkAlias alias : ragChunkAliasRepository.findByParentChunkIdInWithCanonical(hitIndices.keySet())) {
+            Integer index = subChunkIndex(alias.getChunkId());
+            if (index != null && withinWindow(hitIndices.get(alias.getParentChunkId()), index, neighbours)) {
+                documents.computeIfAbsent(alias.getParentChunkId(), id -> new TreeMap<>())
+                    .putIfAbsent(index, aliasPart(alias, index));
+            }
+        }
+        for (RagChunk hit : hits) {
+            if (hit.getParentChunkId() != null && hit.getChunkIndex() != null) {
+                documents.computeIfAbsent(hit.getParentChunkId(), id -> new TreeMap<>())
+                    .putIfAbsent(hit.getChunkIndex(), hit);
+            }
         }
         
+        List<RagChunk> expanded = new ArrayList<>();
+        for (RagChunk chunk : ranked) {
+            if (chunk.getParentChunkId() == null || chunk.getChunkIndex() == null) {
+                expanded.add(chunk);
+                continue;
+            }
+            // Runs of consecutive sub-chunks; hits further apart than the window give separate passages
+            List<RagChunk> run = new ArrayList<>();
+            for (RagChunk part : documents.get(chunk.getParentChunkId()).values()) {
+                if (!run.isEmpty() && part.getChunkIndex() != run.get(run.size() - 1).getChunkIndex() + 1) {
+                    expanded.add(passage(run));
+                    run.clear();
+                }
+                run.add(part);
+            }
+            expanded.add(passage(run));
+        }
+        return expanded;
+    }
+    
+    private static boolean withinWindow(List<Integer> hitIndices, int index, int neighbours) {
+        return hitIndices != null && hitIndices.stream().anyMatch(hit -> Math.abs(hit - index) <= neighbours);
+    }
+    
+    /**
+     * Position of a sub-chunk in its document from its id "<document id>#<n>"; null for other ids
+     */
+    private static Integer subChunkIndex(String chunkId) {
+        int separator = chunkId.lastIndexOf('#');
+        if (separator < 0) {
+            return null;
+        }
         try {
-            logger.debug("Retrieving relevant chunks for query: {}", query);
-            
-            // Generate embedding for the query
-            List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
-            
-            if (queryEmbedding == null || queryEmbedding.isEmpty()) {
-                logger.warn("Failed to generate embedding for query");
-                return List.of();
+            return Integer.parseInt(chunkId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Replace each hit the filter matched only through one of its aliases by that alias: the canonical
+     * chunk's text under the alias's id and metadata, so the context names the modpack and document
+     * the user filtered on rather than those of the duplicate stored first
+     */
+    private List<RagChunk> asMatchingAliases(List<RagChunk> chunks, RagFilter filter) {
+        Map<Long, RagChunk> viaAlias = new HashMap<>();
+        for (RagChunk chunk : chunks) {
+            if (!filter.matches(chunk.getModpack(), chunk.getModName(), chunk.getCategory(),
+                    chunk.getDocType(), chunk.getLanguage())) {
+                viaAlias.put(chunk.getId(), chunk);
             }
-            
-            // Convert to vector string format
-            String vectorString = embeddingService.embeddingToVectorString(queryEmbedding);
-            
-            // Perform similarity search
-            List<RagChunk> chunks = ragChunkRepository.findSimilarByEmbedding(vectorString, topK);
-            
-            logger.debug("Retrieved {} relevant chunks", chunks.size());
+        }
+        if (viaAlias.isEmpty()) {
             return chunks;
-            
-        } catch (Exception e) {
-            logger.error("Error retrieving relevant chunks: {}", e.getMessage(), e);
-            return List.of();
         }
+        
+        Map<Long, RagChunk> replacements = new HashMap<>();
+        for (RagChunkAlias alias : ragChunkAliasRepository.findByCanonicalIdIn(viaAlias.keySet())) {
+            Long canonicalId = alias.getCanonical().getId();
+            if (!replacements.containsKey(canonicalId) && filter.matches(alias.getModpack(), alias.getModName(),
+                    alias.getCategory(), alias.getDocType(), alias.getLanguage())) {
+                replacements.put(canonicalId,
+                    aliasPart(alias, viaAlias.get(canonicalId).getText(), subChunkIndex(alias.getChunkId())));
+            }
+        }
+        return chunks.stream()
+            .map(chunk -> replacements.getOrDefault(chunk.getId(), chunk))
+            .toList();
+    }
+    
+    private static RagChunk aliasPart(RagChunkAlias alias, int index) {
+        return aliasPart(alias, alias.getCanonical().getText(), index);
+    }
+    
+    private static RagChunk aliasPart(RagChunkAlias alias, String text, Integer index) {
+        RagChunk part = new RagChunk(alias.getChunkId(), text);
+        part.setModpack(alias.getModpack());
+        part.setModName(alias.getModName());
+        part.setModVersion(alias.getModVersion());
+        part.setCategory(alias.getCategory());
+        part.setDocType(alias.getDocType());
+        part.setLanguage(alias.getLanguage());
+        part.setParentChunkId(alias.getParentChunkId());
+        part.setChunkIndex(index);
+        return part;
+    }
+    
+    private static RagChunk passage(List<RagChunk> run) {
+        RagChunk first = run.get(0);
+        String text = first.getText();
+        for (int i = 1; i < run.size(); i++) {
+            text = joinOverlapping(text, run.get(i).getText());
+        }
+        RagChunk passage = new RagChunk(run.size() == 1 ? first.getChunkId()
+            : first.getParentChunkId() + "#" + first.getChunkIndex() + "-" + run.get(run.size() - 1).getChunkIndex(), text);
+        passage.setModpack(first.getModpack());
+        passage.setModName(first.getModName());
+        passage.setModVersion(first.getModVersion());
+        passage.setCategory(first.getCategory());
+        passage.setDocType(first.getDocType());
+        passage.setLanguage(first.getLanguage());
+        passage.setParentChunkId(first.getParentChunkId());
+        passage.setChunkIndex(first.getChunkIndex());
+        return passage;
     }
     
     /**
-     * Retrieve relevant chunks using default topK value
+     * Append next to previous, dropping the leading sentences next repeats from previous's end
      */
-    public List<RagChunk> retrieveRelevantChunks(String query) {
-        return retrieveRelevantChunks(query, defaultTopK);
+    static String joinOverlapping(String previous, String next) {
+        for (int length = Math.min(previous.length(), next.length()); length > 0; length--) {
+            boolean atBoundary = length == next.length() || Character.isWhitespace(next.charAt(length));
+            if (atBoundary && previous.regionMatches(previous.length() - length, next, 0, length)) {
+                return previous + next.substring(length);
+            }
+        }
+        return previous + "\n\n" + next;
     }
     
     /**
      * Retrieve relevant chunks filtered by modpack
      */
     public List<RagChunk> retrieveRelevantChunksByModpack(String query, String modpack, int topK) {
+        return retrieveRelevantChunks(query, topK, RagFilter.modpack(modpack));
+    }
+    
+    /**
+     * Retrieve the chunks most similar to the query among those matching the filter
+     * The filter is resolved to candidate ids with ChunkFilterIndex before searching:
+     * - no candidates: no search at all
+     * - up to rag.filter.exact-max-candidates: only the candidates are ranked, exactly
+     * - more: the database searches with the ids as a filter, using its vector index if any
+     */
+    public List<RagChunk> retrieveRelevantChunks(String query, int topK, RagFilter filter) {
         if (!ragEnabled) {
+            logger.debug("RAG is disabled");
+            return List.of();
+        }
+        if (!ragReadiness.isReady()) {
+            logger.debug("RAG index is {}, answering without context", ragReadiness.status().state());
             return List.of();
         }
         
-        try {
-            List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
-            if (queryEmbedding == null) {
+        RoaringBitmap candidates = null;
+        if (!filter.isEmpty()) {
+            candidates = chunkFilterIndex.candidates(filter);
+            if (candidates.isEmpty()) {
+                logger.debug("No chunks match {}", filter);
                 return List.of();
             }
+            if (candidates.getCardinality() == chunkFilterIndex.size()) {
+                candidates = null;
+            }
+        }
+        
+        try {
+            logger.debug("Retrieving relevant chunks for query: {}", query);
+            
+            List<RagChunk> chunks;
+            try {
+                chunks = embedAndSearch(query, topK, candidates);
+            } catch (DataAccessException e) {
+                // Another instance swapped in a column of another dimension; embed the query again to match it
+                if (!isDimensionMismatch(e) || !embeddingDimensionMigration.refresh()) {
+                    throw e;
+                }
+                logger.info("Vector column changed dimension, searching again");
+                chunks = embedAndSearch(query, topK, candidates);
+            }
             
-            String vectorString = embeddingService.embeddingToVectorString(queryEmbedding);
-            return ragChunkRepository.findSimilarByEmbeddingAndModpack(vectorString, modpack, topK);
+            logger.debug("Retrieved {} relevant chunks", chunks.size());
+            return filter.isEmpty() ? chunks : asMatchingAliases(chunks, filter);
             
         } catch (Exception e) {
-            logger.error("Error retrieving chunks by modpack: {}", e.getMessage());
+            logger.error("Error retrieving relevant chunks: {}", e.getMessage(), e);
+            return List.of();
+        }
+    }
+    
+    /**
+     * Embed the query at the column's dimension and search the candidates, or every chunk if null
+     */
+    private List<RagChunk> embedAndSearch(String query, int topK, RoaringBitmap candidates) {
+        // Generate embedding for the query
+        List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
+        
+        if (queryEmbedding == null || queryEmbedding.isEmpty()) {
+            logger.warn("Failed to generate embedding for query");
             return List.of();
         }
+        
+        // Convert to vector string format
+        String vectorString = embeddingService.embeddingToVectorString(queryEmbedding);
+        String model = embeddingService.getModelName();
+        
+        // Perform similarity search
+        if (candidates == null) {
+            return search("none", topK,
+                () -> ragChunkRepository.findSimilarByEmbedding(vectorString, model, topK));
+        }
+        String ids = ChunkFilterIndex.toArrayLiteral(candidates);
+        if (candidates.getCardinality() <= exactMaxCandidates) {
+            return search("bitmap-exact", topK,
+                () -> ragChunkRepository.findSimilarByEmbeddingAmongIds(vectorString, model, ids, topK));
+        }
+        return search("bitmap", topK,
+            () -> ragChunkRepository.findSimilarByEmbeddingFilteredByIds(vectorString, model, ids, topK));
+    }
+    
+    /**
+     * Whether pgvector rejected the query vector for having another dimension than the column
+     */
+    static boolean isDimensionMismatch(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains("different vector dimensions")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Run a similarity search with the vector index's search settings, recording it in the metrics,
+     * the request's stage timer and JFR
+     */
+    private List<RagChunk> search(String filter, int topK, Supplier<List<RagChunk>> query) {
+        Timer.Sample sample = chatMetrics.start();
+        long stageStart = StageTimer.now();
+        VectorSearchEvent event = new VectorSearchEvent();
+        event.begin();
+        try {
+            List<RagChunk> chunks = vectorIndexManager.withSearchSettings(topK, !"none".equals(filter), query);
+            event.chunks = chunks.size();
+            event.success = true;
+            chatMetrics.recordSearch(sample, filter, chunks.size());
+            return chunks;
+        } finally {
+            StageTimer.record(StageTimer.Stage.SEARCH, stageStart);
+            event.filter = filter;
+            event.topK = topK;
+            event.commit();
+        }
     }
     
     /**
@@ -147,8 +440,20 @@ public class RagService {
      * @return Formatted prompt with context for the LLM
      */
     public String buildAugmentedPrompt(String userQuery, List<RagChunk> chunks) {
-        String context = buildContextString(chunks);
-        
+        Timer.Sample sample = chatMetrics.start();
+        long stageStart = StageTimer.now();
+        PromptBuildEvent event = new PromptBuildEvent();
+        event.begin();
+        String prompt = formatAugmentedPrompt(userQuery, buildContextString(chunks));
+        StageTimer.record(StageTimer.Stage.BUILD, stageStart);
+        event.chunks = chunks == null ? 0 : chunks.size();
+        event.promptCharacters = prompt.length();
+        event.commit();
+        chatMetrics.recordPromptBuild(sample, prompt.length());
+        return prompt;
+    }
+    
+    private String formatAugmentedPrompt(String userQuery, String context) {
         if (context.isEmpty()) {
             // No context available, return standard prompt
             return buildFallbackPrompt(userQuery);
@@ -196,19 +501,31 @@ public class RagService {
     
     /**
      * Check if RAG system is enabled and has data loaded
+     * Uses the chunk count taken when the index became ready, so no query runs per chat
      */
     public boolean isRagAvailable() {
-        if (!ragEnabled) {
-            return false;
-        }
-        
-        try {
-            long count = ragChunkRepository.countByEmbeddingIsNotNull();
-            return count > 0;
-        } catch (Exception e) {
-            logger.error("Error checking RAG availability: {}", e.getMessage());
+        if (!ragEnabled || !ragReadiness.isReady()) {
             return false;
         }
+        return ragReadiness.status().embeddedChunks() > 0;
+    }
+    
+    /**
+     * Whether the index is warming, ready or failed, and since when
+     */
+    public RagReadiness.Status getReadiness() {
+        return ragReadiness.status();
+    }
+    
+    /**
+     * Chunks in the metadata filter index, its size and the distinct values per field
+     */
+    public Map<String, Object> getFilterIndexStats() {
+        return Map.of(
+            "chunks", chunkFilterIndex.size(),
+            "bytes", chunkFilterIndex.sizeInBytes(),
+            "distinct_values", chunkFilterIndex.distinctValues()
+        );
     }
     
     /**
@@ -0,0 +1,165 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.retrieval.EmbeddingSnapshot;
+import com.example.chatbotmc.retrieval.VectorMath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Export of rag_chunk to an embedding snapshot file and import back into the table
+ * Importing needs no embedding API calls, so a new node or empty database gets RAG in seconds.
+ * A snapshot is only imported if it was made with the active embedding model and dimensions.
+ */
+@Service
+public class RagSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RagSnapshotService.class);
+
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private final RagChunkRepository ragChunkRepository;
+    private final RagChunkAliasRepository ragChunkAliasRepository;
+    private final EmbeddingService embeddingService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${rag.snapshot.path:data/rag-snapshot.bin}")
+    private String snapshotPath;
+
+    @Value("${rag.snapshot.encoding:float32}")
+    private String encoding;
+
+    public RagSnapshotService(RagChunkRepository ragChunkRepository, RagChunkAliasRepository ragChunkAliasRepository,
+                              EmbeddingService embeddingService, JdbcTemplate jdbcTemplate) {
+        this.ragChunkRepository = ragChunkRepository;
+        this.ragChunkAliasRepository = ragChunkAliasRepository;
+        this.embeddingService = embeddingService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean snapshotExists() {
+        return Files.isRegularFile(Path.of(snapshotPath));
+    }
+
+    /**
+     * Write the chunks embedded by the active model to rag.snapshot.path
+     */
+    public SnapshotInfo export() throws IOException {
+        String model = embeddingService.getModelName();
+        List<RagChunk> chunks = ragChunkRepository.findByEmbeddingIsNotNull().stream()
+            .filter(chunk -> model.equals(chunk.getEmbeddingModel()))
+            .toList();
+        if (chunks.isEmpty()) {
+            throw new IllegalStateException("No chunks embedded with " + model + " to export");
+        }
+
+        int dimensions = embeddingService.getDimensions();
+        EmbeddingSnapshot.Encoding snapshotEncoding = EmbeddingSnapshot.Encoding.valueOf(encoding.toUpperCase(Locale.ROOT));
+        Path file = Path.of(snapshotPath).toAbsolutePath();
+        int written = EmbeddingSnapshot.write(file, model, dimensions, snapshotEncoding, chunks,
+            ragChunkAliasRepository.findAllWithCanonical());
+        logger.info("Exported {} chunks embedded with {} to {}", written, model, file);
+        return new SnapshotInfo(file.toString(), model, dimensions, snapshotEncoding.name(), written, Files.size(file));
+    }
+
+    /**
+     * Insert the snapshot's chunks into rag_chunk and its near-duplicate aliases into rag_chunk_alias;
+     * chunks and aliases whose id already exists are kept as they are
+     *
+     * @throws IllegalStateException if the snapshot was made with another model or dimension
+     */
+    public SnapshotInfo importSnapshot() throws IOException {
+        Path file = Path.of(snapshotPath).toAbsolutePath();
+        EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(file);
+
+        String model = embeddingService.getModelName();
+        int dimensions = embeddingService.getDimensions();
+        if (!snapshot.model().equals(model)) {
+            throw new IllegalStateException("Snapshot was made with " + snapshot.model()
+                + " but the active embedding model is " + model);
+        }
+        if (snapshot.dimensions() != dimensions) {
+            throw new IllegalStateException("Snapshot has " + snapshot.dimensions()
+                + " dimensions but the vector column has " + dimensions);
+        }
+
+        // One multi-row batch per INSERT_BATCH_SIZE chunks rather than an entity save per chunk
+        int inserted = 0;
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < snapshot.size(); i++) {
+            RagChunk chunk = snapshot.chunk(i);
+            batch.add(new Object[] {
+                chunk.getChunkId(), chunk.getText(), VectorMath.toVectorString(snapshot.vector(i)), model,
+                chunk.getModpack(), chunk.getModName(), chunk.getModVersion(),
+                chunk.getCategory(), chunk.getDocType(), chunk.getLanguage(),
+                chunk.getParentChunkId(), chunk.getChunkIndex()
+            });
+            if (batch.size() == INSERT_BATCH_SIZE || i == snapshot.size() - 1) {
+                inserted += insert(batch);
+                batch.clear();
+            }
+        }
+
+        int aliases = insertAliases(snapshot.aliases());
+
+        logger.info("Imported {} of {} chunks and {} near-duplicate aliases from {} ({})",
+            inserted, snapshot.size(), aliases, file, snapshot.encoding());
+        return new SnapshotInfo(file.toString(), model, dimensions, snapshot.encoding().name(), inserted, Files.size(file));
+    }
+
+    private int insert(List<Object[]> rows) {
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate("""
+                INSERT INTO rag_chunk (chunk_id, text, embedding, embedding_model,
+                    modpack, mod_name, mod_version, category, doc_type, language, parent_chunk_id, chunk_index)
+                VALUES (?, ?, CAST(? AS vector), ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (chunk_id) DO NOTHING
+                """, rows)) {
+            inserted += Math.max(count, 0);
+        }
+        return inserted;
+    }
+
+    // The canonical chunk is looked up by chunk_id, since the snapshot does not carry database ids
+    private int insertAliases(List<RagChunkAlias> aliases) {
+        if (aliases.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> rows = aliases.stream()
+            .map(alias -> new Object[] {
+                alias.getChunkId(), alias.getParentChunkId(), alias.getDistance(),
+                alias.getModpack(), alias.getModName(), alias.getModVersion(),
+                alias.getCategory(), alias.getDocType(), alias.getLanguage(),
+                alias.getCanonical().getChunkId()
+            })
+            .toList();
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate("""
+                INSERT INTO rag_chunk_alias (chunk_id, parent_chunk_id, distance,
+                    modpack, mod_name, mod_version, category, doc_type, language, canonical_id)
+                SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, id FROM rag_chunk WHERE chunk_id = ?
+                ON CONFLICT (chunk_id) DO NOTHING
+                """, rows)) {
+            inserted += Math.max(count, 0);
+        }
+        return inserted;
+    }
+
+    /**
+     * @param chunks chunks written by an export, or inserted by an import
+     */
+    public record SnapshotInfo(String file, String model, int dimensions, String encoding, int chunks, long bytes) {}
+}
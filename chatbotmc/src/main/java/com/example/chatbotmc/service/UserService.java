@@ -1,58 +1,140 @@
 package com.example.chatbotmc.service;
 
+import com.example.chatbotmc.entity.Role;
 import com.example.chatbotmc.entity.User;
 import com.example.chatbotmc.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Query quotas
+ * A query is counted with a single conditional UPDATE, so concurrent requests can never
+ * push a user past their limit. Counts are mirrored in memory, which serves remaining-query
+ * reads and rejects users already at their limit without a database round-trip.
+ * Limits are per role (quota.limit.user, quota.limit.admin, ...); a negative limit means unlimited.
+ */
 @Service
 public class UserService {
-    
-    private static final int MAX_QUERY_LIMIT = 5;
-    
+
+    private static final int DEFAULT_QUERY_LIMIT = 5;
+
     private final UserRepository userRepository;
-    
-    public UserService(UserRepository userRepository) {
+    private final JdbcTemplate jdbcTemplate;
+    private final jakarta.persistence.Cache entityCache;
+    private final Map<Role, Integer> limits = new EnumMap<>(Role.class);
+
+    // Last known query_count per user; counts only grow, so a stale value never over-grants
+    private final Cache<Long, Integer> queryCounts;
+
+    public UserService(UserRepository userRepository,
+                       JdbcTemplate jdbcTemplate,
+                       EntityManagerFactory entityManagerFactory,
+                       Environment environment,
+                       @Value("${quota.cache.max-size:10000}") long cacheMaxSize,
+                       @Value("${quota.cache.ttl-minutes:10}") long cacheTtlMinutes) {
         this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityCache = entityManagerFactory.getCache();
+        for (Role role : Role.values()) {
+            limits.put(role, environment.getProperty(
+                "quota.limit." + role.name().toLowerCase(), Integer.class, DEFAULT_QUERY_LIMIT));
+        }
+        // The TTL lets counts reset directly in the database take effect eventually
+        this.queryCounts = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+            .build();
     }
-    
+
     /**
      * Check if user has reached their query limit
      * @param userId the user ID
+     * @param role the user's role, which selects the limit
      * @return true if user has reached limit, false otherwise
      */
-    public boolean hasReachedQueryLimit(Long userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
-        return user.getQueryCount() >= MAX_QUERY_LIMIT;
+    public boolean hasReachedQueryLimit(Long userId, String role) {
+        return getRemainingQueries(userId, role) == 0;
     }
-    
+
     /**
-     * Increment user's query count
+     * Count one query against the user's quota
      * @param userId the user ID
+     * @param role the user's role, which selects the limit
      * @throws RuntimeException if user has reached query limit
      */
-    @Transactional
-    public void incrementQueryCount(Long userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
-        
-        if (user.getQueryCount() >= MAX_QUERY_LIMIT) {
-            throw new RuntimeException("You have reached your query limit of " + MAX_QUERY_LIMIT + " questions");
+    public void incrementQueryCount(Long userId, String role) {
+        int limit = limitFor(role);
+        if (limit < 0) {
+            return;
+        }
+
+        Integer known = queryCounts.getIfPresent(userId);
+        if (known != null && known >= limit) {
+            throw limitReached(limit);
+        }
+
+        Integer count = jdbcTemplate.query("""
+            UPDATE users SET query_count = query_count + 1
+            WHERE id = ? AND query_count < ?
+            RETURNING query_count
+            """, rs -> rs.next() ? rs.getInt(1) : null, userId, limit);
+
+        if (count == null) {
+            // No row updated: either the user is gone or already at the limit
+            User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+            queryCounts.asMap().merge(userId, user.getQueryCount(), Math::max);
+            throw limitReached(limit);
         }
-        
-        user.setQueryCount(user.getQueryCount() + 1);
-        userRepository.save(user);
+
+        queryCounts.asMap().merge(userId, count, Math::max);
+        // The row changed outside Hibernate; drop the stale second-level cache entry
+        entityCache.evict(User.class, userId);
     }
-    
+
     /**
      * Get remaining queries for a user
      * @param userId the user ID
-     * @return number of queries remaining
+     * @param role the user's role, which selects the limit
+     * @return number of queries remaining, or -1 if the role is unlimited
+     */
+    public int getRemainingQueries(Long userId, String role) {
+        int limit = limitFor(role);
+        if (limit < 0) {
+            return -1;
+        }
+
+        Integer count = queryCounts.get(userId, id -> userRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("User not found"))
+            .getQueryCount());
+        return Math.max(0, limit - count);
+    }
+
+    /**
+     * Limit for a role name taken from a token; a missing or unknown role gets the USER limit,
+     * so a token from an older or newer release never fails the request or gains extra queries
      */
-    public int getRemainingQueries(Long userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
-        return Math.max(0, MAX_QUERY_LIMIT - user.getQueryCount());
+    private int limitFor(String role) {
+        if (role != null) {
+            for (Role candidate : Role.values()) {
+                if (candidate.name().equals(role)) {
+                    return limits.get(candidate);
+                }
+            }
+        }
+        return limits.get(Role.USER);
+    }
+
+    private static RuntimeException limitReached(int limit) {
+        return new RuntimeException("You have reached your query limit of " + limit + " questions");
     }
 }
@@ -0,0 +1,265 @@
+package com.example.chatbotmc.config;
+
+import io.github.bucket4j.distributed.proxy.ClientSideConfig;
+import io.github.bucket4j.distributed.proxy.ProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.pessimistic_locking.AbstractLockBasedProxyManager;
+import io.github.bucket4j.distributed.proxy.generic.pessimistic_locking.LockBasedTransaction;
+import io.github.bucket4j.distributed.remote.RemoteBucketState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Several interceptor instances sharing one bucket store must enforce a single limit
+ * Always runs against an in-memory store that locks each bucket the way SELECT ... FOR UPDATE does;
+ * also runs against a local database when one is given, e.g.
+ * RATE_LIMIT_TEST_DATABASE_URL=jdbc:postgresql://localhost:5432/chatbot_db mvn test
+ */
+class DistributedRateLimitTest {
+
+    private static final int INSTANCES = 3;
+    private static final int SYNC_TOKENS = 5;
+
+    private static DriverManagerDataSource dataSource;
+
+    static Stream<String> stores() {
+        return System.getenv("RATE_LIMIT_TEST_DATABASE_URL") == null
+            ? Stream.of("memory")
+            : Stream.of("memory", "postgres");
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void generalLimitHoldsAcrossInstances(String store) throws Exception {
+        List<RateLimitInterceptor> instances = startInstances(store);
+        String clientIP = uniqueClientIP(store);
+
+        // 150 concurrent requests from one client, spread over all instances
+        ExecutorService executor = Executors.newFixedThreadPool(INSTANCES * 2);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            RateLimitInterceptor instance = instances.get(i % INSTANCES);
+            results.add(executor.submit(() -> instance.preHandle(request("/api/llm/chat", clientIP), new MockHttpServletResponse(), null)));
+        }
+        int allowed = 0;
+        for (Future<Boolean> result : results) {
+            allowed += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        // Each instance may overshoot by the tokens it consumed without synchronizing
+        assertTrue(allowed >= 100, "allowed " + allowed);
+        assertTrue(allowed <= 100 + INSTANCES * SYNC_TOKENS, "allowed " + allowed);
+    }
+
+    @ParameterizedTest
+    @MethodSource("stores")
+    void authLimitIsExactAcrossInstances(String store) throws Exception {
+        List<RateLimitInterceptor> instances = startInstances(store);
+        String clientIP = uniqueClientIP(store);
+
+        int allowed = 0;
+        for (int i = 0; i < INSTANCES * 3; i++) {
+            RateLimitInterceptor instance = instances.get(i % INSTANCES);
+            allowed += instance.preHandle(request("/api/auth/login", clientIP), new MockHttpServletResponse(), null) ? 1 : 0;
+        }
+
+        assertEquals(1, allowed);
+    }
+
+    @Test
+    void schemaIsCreatedInOneTransactionHoldingTheLock() throws Exception {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+
+        DistributedRateLimitConfig.createTable(jdbcTemplate(connection));
+
+        var order = inOrder(connection, statement);
+        order.verify(connection).setAutoCommit(false);
+        order.verify(statement).execute("SELECT pg_advisory_xact_lock(" + DistributedRateLimitConfig.SCHEMA_LOCK_KEY + ")");
+        order.verify(statement).execute(contains("CREATE TABLE IF NOT EXISTS rate_limit_buckets"));
+        order.verify(statement).execute(contains("CREATE OR REPLACE FUNCTION touch_rate_limit_bucket"));
+        order.verify(statement).execute(contains("CREATE OR REPLACE TRIGGER rate_limit_buckets_touch"));
+        order.verify(statement).execute(contains("CREATE INDEX IF NOT EXISTS idx_rate_limit_buckets_updated"));
+        order.verify(connection).commit();
+        order.verify(connection).setAutoCommit(true);
+    }
+
+    @Test
+    void failedSchemaStatementRollsBack() throws Exception {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute(contains("CREATE OR REPLACE TRIGGER"))).thenThrow(new SQLException("tuple concurrently updated"));
+
+        assertThrows(RuntimeException.class, () -> DistributedRateLimitConfig.createTable(jdbcTemplate(connection)));
+
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(connection).setAutoCommit(true);
+        verify(statement, never()).execute(contains("CREATE INDEX"));
+    }
+
+    private static JdbcTemplate jdbcTemplate(Connection connection) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation -> {
+            try {
+                return invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return jdbcTemplate;
+    }
+
+    private static List<RateLimitInterceptor> startInstances(String store) {
+        Supplier<ProxyManager<String>> connect = "postgres".equals(store)
+            ? () -> DistributedRateLimitConfig.createProxyManager(dataSource())
+            : new SharedBucketStore()::connect;
+        List<RateLimitInterceptor> instances = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(new RateLimitInterceptor(
+                new CaffeineCacheManager(), 1000, 120, Optional.of(connect.get()), SYNC_TOKENS, 500));
+        }
+        return instances;
+    }
+
+    private static MockHttpServletRequest request(String uri, String clientIP) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.addHeader("X-Real-IP", clientIP);
+        return request;
+    }
+
+    // A fresh address per test, with any buckets left in the database by earlier runs removed
+    private static String uniqueClientIP(String store) {
+        long now = System.nanoTime();
+        String clientIP = "198.18." + (now >>> 8 & 0xff) + "." + (now & 0xff);
+        if ("postgres".equals(store)) {
+            new JdbcTemplate(dataSource()).update(
+                "DELETE FROM " + DistributedRateLimitConfig.TABLE + " WHERE id IN (?, ?)", clientIP, "auth:" + clientIP);
+        }
+        return clientIP;
+    }
+
+    private static synchronized DriverManagerDataSource dataSource() {
+        if (dataSource == null) {
+            dataSource = new DriverManagerDataSource(
+                System.getenv("RATE_LIMIT_TEST_DATABASE_URL"),
+                System.getenv().getOrDefault("RATE_LIMIT_TEST_DATABASE_USERNAME", "postgres"),
+                System.getenv().getOrDefault("RATE_LIMIT_TEST_DATABASE_PASSWORD", "postgres")
+            );
+            DistributedRateLimitConfig.createTable(new JdbcTemplate(dataSource));
+        }
+        return dataSource;
+    }
+
+    /**
+     * Bucket states shared by every instance connected to it, each row locked for the whole
+     * read-modify-write as the Postgres proxy manager's SELECT ... FOR UPDATE does
+     */
+    private static class SharedBucketStore {
+
+        private final Map<String, byte[]> rows = new ConcurrentHashMap<>();
+        private final Map<String, ReentrantLock> rowLocks = new ConcurrentHashMap<>();
+
+        ProxyManager<String> connect() {
+            return new AbstractLockBasedProxyManager<String>(ClientSideConfig.getDefault()) {
+                @Override
+                protected LockBasedTransaction allocateTransaction(String key, Optional<Long> timeoutNanos) {
+                    return new RowTransaction(key);
+                }
+
+                @Override
+                public void removeProxy(String key) {
+                    rows.remove(key);
+                }
+            };
+        }
+
+        private class RowTransaction implements LockBasedTransaction {
+
+            private final String key;
+            private final ReentrantLock lock;
+
+            RowTransaction(String key) {
+                this.key = key;
+                this.lock = rowLocks.computeIfAbsent(key, k -> new ReentrantLock());
+            }
+
+            @Override
+            public void begin(Optional<Long> timeoutNanos) {
+            }
+
+            @Override
+            public byte[] lockAndGet(Optional<Long> timeoutNanos) {
+                lock.lock();
+                return rows.get(key);
+            }
+
+            @Override
+            public void create(byte[] data, RemoteBucketState state, Optional<Long> timeoutNanos) {
+                rows.put(key, data);
+            }
+
+            @Override
+            public void update(byte[] data, RemoteBucketState state, Optional<Long> timeoutNanos) {
+                rows.put(key, data);
+            }
+
+            @Override
+            public void unlock() {
+                if (lock.isHeldByCurrentThread()) {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void commit(Optional<Long> timeoutNanos) {
+            }
+
+            @Override
+            public void rollback() {
+            }
+
+            @Override
+            public void release() {
+                unlock();
+            }
+        }
+    }
+}
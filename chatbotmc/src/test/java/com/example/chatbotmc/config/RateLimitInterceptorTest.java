@@ -0,0 +1,57 @@
+package com.example.chatbotmc.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Buckets shared through a Postgres store that cannot be reached
+ */
+class RateLimitInterceptorTest {
+
+    // Nothing listens on port 1, so every bucket operation fails
+    private final RateLimitInterceptor interceptor = new RateLimitInterceptor(
+        new CaffeineCacheManager(), 1000, 120,
+        Optional.of(DistributedRateLimitConfig.createProxyManager(
+            new DriverManagerDataSource("jdbc:postgresql://127.0.0.1:1/chatbot_db", "postgres", "postgres"))),
+        5, 500);
+
+    @Test
+    void authLimitHoldsWhileStoreIsDown() throws Exception {
+        int allowed = 0;
+        for (int i = 0; i < 3; i++) {
+            allowed += interceptor.preHandle(request("/api/auth/login"), new MockHttpServletResponse(), null) ? 1 : 0;
+        }
+
+        assertEquals(1, allowed);
+    }
+
+    @Test
+    void generalLimitHoldsWhileStoreIsDown() throws Exception {
+        int allowed = 0;
+        MockHttpServletResponse rejected = null;
+        for (int i = 0; i < 110; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            if (interceptor.preHandle(request("/api/llm/chat"), response, null)) {
+                allowed++;
+            } else {
+                rejected = response;
+            }
+        }
+
+        assertEquals(100, allowed);
+        assertEquals(429, rejected.getStatus());
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.addHeader("X-Real-IP", "198.18.0.1");
+        return request;
+    }
+}
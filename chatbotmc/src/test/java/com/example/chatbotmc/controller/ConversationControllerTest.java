@@ -0,0 +1,94 @@
+package com.example.chatbotmc.controller;
+
+import com.example.chatbotmc.config.JwtAuthenticationFilter;
+import com.example.chatbotmc.config.RateLimitInterceptor;
+import com.example.chatbotmc.config.SecurityConfig;
+import com.example.chatbotmc.dto.AuthenticatedUser;
+import com.example.chatbotmc.dto.ConversationDTO;
+import com.example.chatbotmc.dto.KeysetPage;
+import com.example.chatbotmc.observability.QueryCapture;
+import com.example.chatbotmc.service.ConversationService;
+import com.example.chatbotmc.service.JwtService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.security.autoconfigure.web.servlet.SecurityFilterAutoConfiguration;
+import org.springframework.boot.security.autoconfigure.web.servlet.ServletWebSecurityAutoConfiguration;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streamed listings complete in an async dispatch that carries no token of its own;
+ * it must not be rejected once the initial request has been authorized
+ */
+@WebMvcTest(ConversationController.class)
+@ImportAutoConfiguration({ServletWebSecurityAutoConfiguration.class, SecurityFilterAutoConfiguration.class})
+@Import({SecurityConfig.class, JwtAuthenticationFilter.class})
+class ConversationControllerTest {
+
+    private static final String TOKEN = "Bearer valid";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private ConversationService conversationService;
+
+    @MockitoBean
+    private QueryCapture queryCapture;
+
+    @MockitoBean
+    private JwtService jwtService;
+
+    @MockitoBean
+    private RateLimitInterceptor rateLimitInterceptor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jwtService.authenticate("valid")).thenReturn(new AuthenticatedUser(7L, "steve", "USER"));
+        when(rateLimitInterceptor.preHandle(any(), any(), any())).thenReturn(true);
+    }
+
+    @Test
+    void streamedPageIsWrittenInTheAsyncDispatch() throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        when(conversationService.getUserConversations(eq(7L), anyInt(), isNull())).thenReturn(new KeysetPage<>(
+            List.of(new ConversationDTO(1L, "Creepers", now, now, 2, "They explode")), "next"));
+
+        MvcResult result = mockMvc.perform(get("/api/conversations").header("Authorization", TOKEN))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(header().string(ConversationController.NEXT_CURSOR_HEADER, "next"))
+            .andExpect(jsonPath("$[0].title").value("Creepers"))
+            .andExpect(jsonPath("$[0].messageCount").value(2));
+    }
+
+    @Test
+    void requestWithoutTokenIsRejectedBeforeStreaming() throws Exception {
+        mockMvc.perform(get("/api/conversations"))
+            .andExpect(request().asyncNotStarted())
+            .andExpect(status().isForbidden());
+    }
+}
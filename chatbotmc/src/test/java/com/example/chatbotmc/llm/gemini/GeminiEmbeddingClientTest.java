@@ -0,0 +1,87 @@
+package com.example.chatbotmc.llm.gemini;
+
+import com.example.chatbotmc.observability.ChatMetrics;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Round trips to the Gemini batch embedding endpoint, against a stubbed exchange
+ */
+class GeminiEmbeddingClientTest {
+
+    private final List<ClientRequest> requests = new ArrayList<>();
+    // Number of embeddings the stub returns per call; null answers with a server error
+    private final List<Integer> answers = new ArrayList<>();
+
+    private final GeminiEmbeddingClient client = new GeminiEmbeddingClient(WebClient.builder()
+        .exchangeFunction(request -> {
+            requests.add(request);
+            Integer count = answers.removeFirst();
+            if (count == null) {
+                return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+            }
+            String body = IntStream.range(0, count)
+                .mapToObj(i -> "{\"values\": [0.6, 0.8]}")
+                .collect(Collectors.joining(",", "{\"embeddings\": [", "]}"));
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .body(body)
+                .build());
+        })
+        .build(), "test-key", mock(ChatMetrics.class));
+
+    @Test
+    void textsAreEmbeddedInOneCallPerHundred() {
+        answers.add(100);
+        answers.add(30);
+
+        List<List<Double>> embeddings = client.embed(texts(130), 256);
+
+        assertEquals(130, embeddings.size());
+        assertEquals(List.of(0.6, 0.8), embeddings.get(129));
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0).url().getPath().endsWith("text-embedding-004:batchEmbedContents"));
+    }
+
+    @Test
+    void failedCallLeavesNullForItsTextsOnly() {
+        answers.add(100);
+        answers.add(null);
+
+        List<List<Double>> embeddings = client.embed(texts(101), 256);
+
+        assertEquals(List.of(0.6, 0.8), embeddings.get(99));
+        assertNull(embeddings.get(100));
+    }
+
+    @Test
+    void responseMissingEmbeddingsFailsTheBatch() {
+        answers.add(1);
+
+        List<List<Double>> embeddings = client.embed(texts(2), 256);
+
+        assertEquals(2, embeddings.size());
+        assertNull(embeddings.get(0));
+        assertNull(embeddings.get(1));
+    }
+
+    private static List<String> texts(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "text " + i).toList();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.chatbotmc.llm.local;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Mean pooling over the model's hidden states, as sentence-transformers computes it
+ */
+class LocalEmbeddingClientTest {
+
+    private static final float[][] STATES = {
+        {0, 2, 2, 4},
+        {2, 2, 2, 4},
+        {100, 100, 100, 100}
+    };
+
+    @Test
+    void paddingTokensAreLeftOutOfTheMean() {
+        // Mean of the first two rows is (1, 2, 2, 4), of length 5
+        assertVector(List.of(0.2, 0.4, 0.4, 0.8), LocalEmbeddingClient.meanPoolAndNormalize(STATES, new long[] {1, 1, 0}, 4));
+    }
+
+    @Test
+    void requestedDimensionsCutTheVectorBeforeNormalizing() {
+        // (1, 2, 2) has length 3
+        assertVector(List.of(1 / 3.0, 2 / 3.0, 2 / 3.0),
+            LocalEmbeddingClient.meanPoolAndNormalize(STATES, new long[] {1, 1, 0}, 3));
+        assertEquals(4, LocalEmbeddingClient.meanPoolAndNormalize(STATES, new long[] {1, 1, 0}, 768).size());
+    }
+
+    @Test
+    void zeroVectorStaysZero() {
+        float[][] zero = {{0, 0}};
+
+        assertVector(List.of(0.0, 0.0), LocalEmbeddingClient.meanPoolAndNormalize(zero, new long[] {1}, 2));
+    }
+
+    private static void assertVector(List<Double> expected, List<Double> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.chatbotmc.llm.local;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tokenization has to match the vocabulary the model was trained with, piece for piece
+ */
+class WordPieceTokenizerTest {
+
+    private static final List<String> VOCAB = List.of(
+        "[PAD]", "[UNK]", "[CLS]", "[SEP]", "iron", "golem", "##s", "spawn", "in", "villages", ",", "!", "cafe");
+
+    private final WordPieceTokenizer tokenizer = new WordPieceTokenizer(vocab(), true);
+
+    @Test
+    void wordsAreSplitIntoLongestVocabularyPieces() {
+        assertArrayEquals(new long[] {2, 4, 5, 6, 7, 8, 9, 3}, tokenizer.encode("Iron golems spawn in villages", 64));
+    }
+
+    @Test
+    void punctuationIsSplitOffAndAccentsStripped() {
+        assertArrayEquals(new long[] {2, 12, 10, 4, 11, 3}, tokenizer.encode("Café,iron!", 64));
+    }
+
+    @Test
+    void unknownWordsBecomeOneUnknownToken() {
+        assertArrayEquals(new long[] {2, 4, 1, 3}, tokenizer.encode("iron creeper", 64));
+        assertArrayEquals(new long[] {2, 1, 3}, tokenizer.encode("golemz", 64));
+    }
+
+    @Test
+    void truncationKeepsWholeWordsAndTheSeparator() {
+        // [CLS] iron golem ##s would leave no room for [SEP] in four tokens
+        assertArrayEquals(new long[] {2, 4, 3}, tokenizer.encode("iron golems spawn", 4));
+        assertArrayEquals(new long[] {2, 3}, tokenizer.encode("   ", 64));
+    }
+
+    @Test
+    void casedTokenizerLeavesTextAlone() {
+        WordPieceTokenizer cased = new WordPieceTokenizer(vocab(), false);
+
+        assertArrayEquals(new long[] {2, 1, 4, 3}, cased.encode("Iron iron", 64));
+    }
+
+    @Test
+    void vocabularyWithoutSpecialTokensIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new WordPieceTokenizer(Map.of("iron", 0), true));
+    }
+
+    private static Map<String, Integer> vocab() {
+        return IntStream.range(0, VOCAB.size()).boxed()
+            .collect(Collectors.toMap(VOCAB::get, i -> i));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.chatbotmc.observability;
+
+import com.example.chatbotmc.service.CacheStatsService;
+import com.example.chatbotmc.service.CacheStatsService.CacheStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Meter names and tags the dashboards are built on
+ */
+class ChatMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CacheStatsService cacheStatsService = mock(CacheStatsService.class);
+    private final ChatMetrics chatMetrics = new ChatMetrics(registry, cacheStatsService);
+
+    @Test
+    void embeddingsAreTimedPerModelAndOutcome() {
+        chatMetrics.recordEmbedding(chatMetrics.start(), "text-embedding-004", 12, true);
+        chatMetrics.recordEmbedding(chatMetrics.start(), "text-embedding-004", 3, false);
+
+        assertEquals(1, registry.get("chat.embedding").tags("model", "text-embedding-004", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("chat.embedding").tags("outcome", "error").timer().count());
+        assertEquals(15, registry.get("chat.embedding.texts").summary().totalAmount());
+    }
+
+    @Test
+    void responseSizeIsOnlyRecordedForSuccessfulGenerations() {
+        chatMetrics.recordGeneration(chatMetrics.start(), "gemini", 900, 300, true);
+        chatMetrics.recordGeneration(chatMetrics.start(), "gemini", 800, 0, false);
+
+        assertEquals(2, registry.get("chat.llm.prompt.size").summary().count());
+        assertEquals(1, registry.get("chat.llm.response.size").summary().count());
+        assertEquals("characters", registry.get("chat.llm.response.size").summary().getId().getBaseUnit());
+    }
+
+    @Test
+    void stagesAreTimedUnderTheirOwnNames() {
+        chatMetrics.recordSearch(chatMetrics.start(), "modpack", 5);
+        chatMetrics.recordPromptBuild(chatMetrics.start(), 4000);
+        chatMetrics.recordMessageSave(chatMetrics.start(), "journal");
+
+        assertEquals(1, registry.get("chat.rag.search").tag("filter", "modpack").timer().count());
+        assertEquals(5, registry.get("chat.rag.chunks").summary().totalAmount());
+        assertEquals(4000, registry.get("chat.prompt.size").summary().totalAmount());
+        assertEquals(1, registry.get("chat.message.save").tag("path", "journal").timer().count());
+    }
+
+    @Test
+    void upstreamErrorsAreCountedPerStatus() {
+        chatMetrics.recordUpstreamError("gemini", WebClientResponseException.create(
+            HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests", null, null, null));
+        chatMetrics.recordUpstreamError("gemini", WebClientResponseException.create(
+            HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests", null, null, null));
+        chatMetrics.recordUpstreamError("gemini", new IOException("Connection reset"));
+
+        assertEquals(2, registry.get("chat.upstream.errors").tags("upstream", "gemini", "status", "429").counter().count());
+        assertEquals(1, registry.get("chat.upstream.errors")
+            .tags("status", "none", "exception", "IOException").counter().count());
+    }
+
+    @Test
+    void cacheMetersFollowTheCurrentStats() {
+        when(cacheStatsService.getStats()).thenReturn(
+            List.of(new CacheStats("users", 3, 1, 0.75, 10L, null)),
+            List.of(new CacheStats("users", 9, 1, 0.9, null, null)));
+
+        chatMetrics.bindCacheMeters();
+
+        assertEquals(9, registry.get("chat.cache.hits").tag("cache", "users").functionCounter().count());
+        assertEquals(0.9, registry.get("chat.cache.hit.ratio").tag("cache", "users").gauge().value());
+        // A cache that does not report its size shows NaN rather than zero
+        assertTrue(Double.isNaN(registry.get("chat.cache.entries").tag("cache", "users").gauge().value()));
+        assertNull(registry.find("chat.cache.hits").tag("cache", "conversations").functionCounter());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.chatbotmc.observability;
+
+import com.example.chatbotmc.config.AsyncConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCaptureTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void scrubReplacesPersonalDetails() {
+        String scrubbed = QueryCapture.scrub(
+            "I'm steve.miner+mc@example.co.uk on 192.168.1.20, see https://example.com/mods?id=7 or www.curseforge.com; "
+                + "my seed is 1234567890 and I have 64 diamonds");
+
+        assertEquals("I'm <email> on <ip>, see <url> or <url> "
+            + "my seed is <number> and I have 64 diamonds", scrubbed);
+    }
+
+    @Test
+    void scrubLeavesOrdinaryQuestionsAlone() {
+        String question = "How do I craft a Mekanism Digital Miner in version 10.4?";
+
+        assertEquals(question, QueryCapture.scrub(question));
+    }
+
+    @Test
+    void recordsAreAnonymizedAndAllWrittenBeforeClose() throws Exception {
+        Path file = directory.resolve("capture.jsonl");
+        QueryCapture capture = open(file);
+
+        capture.record(QueryCapture.CHAT, 7L, 3L, true, "Mail me at alex@example.com");
+        for (int i = 0; i < 500; i++) {
+            capture.record(QueryCapture.MESSAGES, 7L, 3L, false, null);
+        }
+        capture.record(QueryCapture.CONVERSATIONS, 8L, null, false, null);
+        capture.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(502, lines.size());
+        JsonNode chat = objectMapper.readTree(lines.get(0));
+        assertEquals("chat", chat.get("endpoint").asText());
+        assertEquals("Mail me at <email>", chat.get("prompt").asText());
+        assertTrue(chat.get("newConversation").asBoolean());
+        JsonNode other = objectMapper.readTree(lines.get(501));
+        assertNotEquals(chat.get("session").asText(), other.get("session").asText());
+        assertEquals(chat.get("session").asText(), objectMapper.readTree(lines.get(1)).get("session").asText());
+    }
+
+    private QueryCapture open(Path file) throws Exception {
+        ThreadPoolTaskExecutor executor = new AsyncConfig().queryCaptureExecutor();
+        executor.initialize();
+        QueryCapture capture = new QueryCapture(objectMapper, executor);
+        ReflectionTestUtils.setField(capture, "enabled", true);
+        ReflectionTestUtils.setField(capture, "capturePath", file.toString());
+        ReflectionTestUtils.setField(capture, "configuredSalt", "");
+        capture.open();
+        return capture;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Filters resolved to candidate ids over a mocked chunk table
+ */
+class ChunkFilterIndexTest {
+
+    private final RagChunkRepository chunkRepository = mock(RagChunkRepository.class);
+    private final RagChunkAliasRepository aliasRepository = mock(RagChunkAliasRepository.class);
+    private final ChunkFilterIndex index = new ChunkFilterIndex(chunkRepository, aliasRepository);
+
+    @Test
+    void filterIntersectsEveryGivenField() {
+        List<RagChunkRepository.ChunkMetadata> rows = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            rows.add(new Metadata(id, id <= 50 ? "SmallPack" : "BigPack", "mod" + id % 7,
+                id % 2 == 0 ? "items" : "guide", null, "en"));
+        }
+        when(chunkRepository.findEmbeddedMetadata()).thenReturn(rows);
+
+        assertEquals(1000, index.rebuild());
+
+        // Values are matched ignoring case and surrounding whitespace
+        assertEquals(50, index.candidates(RagFilter.modpack(" smallpack ")).getCardinality());
+        assertEquals(25, index.candidates(new RagFilter("SmallPack", null, "Items", null, "EN")).getCardinality());
+        assertEquals(1000, index.candidates(RagFilter.NONE).getCardinality());
+        assertTrue(index.candidates(RagFilter.modpack("unknown")).isEmpty());
+        assertTrue(index.candidates(new RagFilter(null, null, null, "wiki", null)).isEmpty());
+        assertEquals(7, index.distinctValues().get("mod_name"));
+    }
+
+    @Test
+    void rebuildReplacesTheBitmaps() {
+        when(chunkRepository.findEmbeddedMetadata())
+            .thenReturn(List.of(new Metadata(1L, "A", null, null, null, null)))
+            .thenReturn(List.of(new Metadata(2L, "B", null, null, null, null)));
+
+        index.rebuild();
+        index.rebuild();
+
+        assertTrue(index.candidates(RagFilter.modpack("a")).isEmpty());
+        assertEquals(RoaringBitmap.bitmapOf(2), index.candidates(RagFilter.modpack("b")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void aliasMetadataIsMatchedOneAliasAtATime() {
+        when(chunkRepository.findEmbeddedMetadata()).thenReturn(List.of(
+            new Metadata(1L, "PackA", null, "guide", null, "en"),
+            new Metadata(2L, "PackA", null, "items", null, "en")));
+        // Chunk 1's text also appears in PackB as a guide and in PackC as an item list
+        when(aliasRepository.findAllMetadata()).thenReturn(List.of(
+            new AliasMetadata(1L, "b", "PackB", "guide"),
+            new AliasMetadata(1L, "c", "PackC", "items"),
+            new AliasMetadata(99L, "orphan", "PackD", "guide")));
+
+        index.rebuild();
+
+        assertEquals(RoaringBitmap.bitmapOf(1), index.candidates(RagFilter.modpack("packb")));
+        assertEquals(RoaringBitmap.bitmapOf(1, 2), index.candidates(RagFilter.modpack("packa")));
+        assertEquals(RoaringBitmap.bitmapOf(1), index.candidates(new RagFilter("PackC", null, "items", null, null)));
+        // PackB's guide and PackC's item list are different aliases, so no chunk is a PackB item list
+        assertTrue(index.candidates(new RagFilter("PackB", null, "items", null, null)).isEmpty());
+        // Aliases of chunks that are not searchable add nothing
+        assertTrue(index.candidates(RagFilter.modpack("packd")).isEmpty());
+        assertEquals(3, index.distinctValues().get("modpack"));
+    }
+
+    @Test
+    void idsAreWrittenAsArrayLiteral() {
+        assertEquals("{1,2,70000}", ChunkFilterIndex.toArrayLiteral(RoaringBitmap.bitmapOf(70000, 2, 1)));
+        assertEquals("{}", ChunkFilterIndex.toArrayLiteral(new RoaringBitmap()));
+    }
+
+    private record AliasMetadata(Long getId, String getChunkId, String getModpack, String getCategory)
+            implements RagChunkAliasRepository.AliasMetadata {
+
+        @Override
+        public String getParentChunkId() {
+            return null;
+        }
+
+        @Override
+        public String getModName() {
+            return null;
+        }
+
+        @Override
+        public String getDocType() {
+            return null;
+        }
+
+        @Override
+        public String getLanguage() {
+            return null;
+        }
+    }
+
+    private record Metadata(Long getId, String getModpack, String getModName, String getCategory,
+                            String getDocType, String getLanguage) implements RagChunkRepository.ChunkMetadata {}
+}
@@ -0,0 +1,303 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.llm.EmbeddingClient;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.service.EmbeddingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The migration's states against a mocked rag_chunk, moving from a 768- to a 256-dimension column
+ * The table is kept as the shadow vector of each chunk id, null while the chunk still has to be re-embedded.
+ */
+class EmbeddingDimensionMigrationTest {
+
+    private static final int OLD = 768;
+    private static final int TARGET = 256;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final VectorIndexManager vectorIndexManager = mock(VectorIndexManager.class);
+    private final TreeMap<Long, String> shadowVectors = new TreeMap<>();
+    private final List<String> statements = new ArrayList<>();
+    // Texts the embedding model fails on
+    private final Set<String> failing = new HashSet<>();
+
+    // Dimension of the embedding and embedding_next columns, 0 when there is no such column
+    private int column = OLD;
+    private int shadowColumn;
+    // Whether another instance holds the migration lock
+    private boolean lockedElsewhere;
+    // Chunk to insert between the last pass and the first swap, as a concurrent write would
+    private boolean addChunkBeforeSwap;
+
+    private EmbeddingService embeddingService;
+    private EmbeddingDimensionMigration migration;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        EmbeddingClient client = new EmbeddingClient() {
+            @Override
+            public List<List<Double>> embed(List<String> texts, int dimensions) {
+                return texts.stream()
+                    .map(text -> failing.contains(text) ? null : Collections.nCopies(dimensions, 0.5))
+                    .toList();
+            }
+
+            @Override
+            public String modelName() {
+                return "test-model";
+            }
+        };
+        embeddingService = new EmbeddingService(client, mock(ChatMetrics.class, RETURNS_DEEP_STUBS));
+        embeddingService.setDimensions(OLD);
+        migration = new EmbeddingDimensionMigration(jdbcTemplate, embeddingService, vectorIndexManager);
+        ReflectionTestUtils.setField(migration, "targetDimensions", TARGET);
+        ReflectionTestUtils.setField(migration, "batchSize", 3);
+        ReflectionTestUtils.setField(migration, "delayMs", 0L);
+
+        when(jdbcTemplate.queryForList(contains("atttypmod"), eq(Integer.class), any(Object[].class)))
+            .thenAnswer(invocation -> {
+                Object[] args = (Object[]) invocation.getRawArguments()[2];
+                int dimensions = "embedding".equals(args[0]) ? column : shadowColumn;
+                return dimensions == 0 ? List.of() : List.of(dimensions);
+            });
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), eq(Long.class))).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (sql.contains("embedding_next IS NULL")) {
+                return shadowVectors.values().stream().filter(Objects::isNull).count();
+            }
+            return (long) shadowVectors.size();
+        });
+        when(jdbcTemplate.queryForList(startsWith("SELECT id, text"), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            List<Map<String, Object>> rows = new ArrayList<>();
+            shadowVectors.tailMap((Long) args[0], false).forEach((id, vector) -> {
+                if (vector == null && rows.size() < (Integer) args[1]) {
+                    rows.add(Map.of("id", id, "text", "text " + id));
+                }
+            });
+            return rows;
+        });
+        when(jdbcTemplate.batchUpdate(contains("SET embedding_next"), anyList())).thenAnswer(invocation -> {
+            List<Object[]> updates = invocation.getArgument(1);
+            updates.forEach(update -> shadowVectors.put((Long) update[1], (String) update[0]));
+            return new int[updates.size()];
+        });
+        doAnswer(invocation -> {
+            execute(invocation.getArgument(0));
+            return null;
+        }).when(jdbcTemplate).execute(anyString());
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+            invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection()));
+    }
+
+    @Test
+    void chunksAreReEmbeddedAndTheShadowColumnSwappedIn() throws Exception {
+        chunks(7);
+        addChunkBeforeSwap = true;
+
+        migration.prepare();
+
+        assertEquals(EmbeddingDimensionMigration.State.PENDING, migration.status().state());
+        assertEquals(TARGET, shadowColumn);
+        // Queries keep matching the column in use until the swap
+        assertEquals(OLD, embeddingService.generateEmbedding("query").size());
+
+        migration.migrateIfPending();
+
+        EmbeddingDimensionMigration.MigrationStatus status = migration.status();
+        assertEquals(EmbeddingDimensionMigration.State.CURRENT, status.state());
+        assertEquals(TARGET, column);
+        assertEquals(TARGET, embeddingService.generateEmbedding("query").size());
+        // The chunk added before the first swap sent the migration back for another pass
+        assertEquals(8, status.migrated());
+        verify(vectorIndexManager, times(2)).buildShadowIndex(EmbeddingDimensionMigration.SHADOW_COLUMN);
+        verify(vectorIndexManager).swapShadowIndex(any());
+        verify(vectorIndexManager).shadowSwapped();
+        assertTrue(statements.contains("ALTER TABLE rag_chunk DROP COLUMN IF EXISTS embedding_retired"));
+        assertTrue(statements.indexOf("VACUUM (ANALYZE) rag_chunk")
+            > statements.indexOf("ALTER TABLE rag_chunk DROP COLUMN IF EXISTS embedding_retired"));
+        assertThrows(IllegalStateException.class, migration::migrate);
+    }
+
+    @Test
+    void passWithoutProgressStopsAndALaterRunResumes() throws Exception {
+        chunks(4);
+        failing.add("text 3");
+
+        migration.prepare();
+        migration.migrateIfPending();
+
+        EmbeddingDimensionMigration.MigrationStatus status = migration.status();
+        assertEquals(EmbeddingDimensionMigration.State.FAILED, status.state());
+        assertEquals(1, status.remaining());
+        assertEquals(OLD, embeddingService.getDimensions());
+        verify(vectorIndexManager, never()).swapShadowIndex(any());
+
+        failing.clear();
+        migration.migrate();
+
+        assertEquals(EmbeddingDimensionMigration.State.CURRENT, migration.status().state());
+        assertEquals(1, migration.status().migrated());
+    }
+
+    @Test
+    void columnWithoutVectorsIsRetypedInPlace() {
+        column = -1;
+        shadowColumn = 512;
+
+        migration.prepare();
+
+        assertEquals(TARGET, column);
+        assertEquals(0, shadowColumn);
+        assertEquals(EmbeddingDimensionMigration.State.CURRENT, migration.status().state());
+        assertEquals(TARGET, embeddingService.getDimensions());
+    }
+
+    @Test
+    void prepareLeavesTheColumnsToTheInstanceHoldingTheLock() {
+        chunks(3);
+        lockedElsewhere = true;
+
+        migration.prepare();
+
+        assertTrue(statements.isEmpty(), statements.toString());
+        assertEquals(EmbeddingDimensionMigration.State.PENDING, migration.status().state());
+        assertEquals(OLD, embeddingService.getDimensions());
+    }
+
+    @Test
+    void migrationRunningElsewhereIsNotStartedAgain() {
+        chunks(3);
+        migration.prepare();
+        lockedElsewhere = true;
+
+        assertThrows(EmbeddingDimensionMigration.MigrationLockedException.class, migration::migrate);
+        migration.migrateIfPending();
+
+        assertEquals(EmbeddingDimensionMigration.State.PENDING, migration.status().state());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void columnSwappedByAnotherInstanceIsPickedUp() {
+        chunks(3);
+        migration.prepare();
+        assertFalse(migration.refresh());
+
+        // The other instance finished the migration
+        column = TARGET;
+        shadowColumn = 0;
+
+        assertTrue(migration.refresh());
+        assertEquals(TARGET, embeddingService.getDimensions());
+        assertEquals(EmbeddingDimensionMigration.State.CURRENT, migration.status().state());
+        verify(vectorIndexManager).shadowSwapped();
+        assertFalse(migration.refresh());
+    }
+
+    @Test
+    void migrationFinishedElsewhereMeanwhileIsNotRepeated() {
+        chunks(3);
+        migration.prepare();
+        column = TARGET;
+        shadowColumn = 0;
+
+        migration.migrate();
+
+        assertEquals(EmbeddingDimensionMigration.State.CURRENT, migration.status().state());
+        assertEquals(TARGET, embeddingService.getDimensions());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    private void chunks(int count) {
+        for (long id = 1; id <= count; id++) {
+            shadowVectors.put(id, null);
+        }
+    }
+
+    private void execute(String sql) {
+        statements.add(sql);
+        if (sql.contains("ADD COLUMN embedding_next")) {
+            shadowColumn = dimensionsIn(sql);
+        } else if (sql.contains("DROP COLUMN embedding_next")) {
+            shadowColumn = 0;
+        } else if (sql.contains("ALTER COLUMN embedding TYPE")) {
+            column = dimensionsIn(sql);
+        } else if (sql.contains("RENAME COLUMN embedding_next TO embedding")) {
+            column = shadowColumn;
+            shadowColumn = 0;
+        }
+    }
+
+    private static int dimensionsIn(String sql) {
+        return Integer.parseInt(sql.replaceAll(".*vector\\((\\d+)\\).*", "$1"));
+    }
+
+    /**
+     * A connection answering the advisory lock and the swap's check for chunks without a shadow vector
+     */
+    private Connection connection() throws Exception {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            boolean answer;
+            if (sql.contains("pg_try_advisory_lock")) {
+                answer = !lockedElsewhere;
+            } else {
+                if (addChunkBeforeSwap) {
+                    addChunkBeforeSwap = false;
+                    shadowVectors.put(shadowVectors.lastKey() + 1, null);
+                }
+                answer = shadowVectors.containsValue(null);
+            }
+            ResultSet result = mock(ResultSet.class);
+            when(result.next()).thenReturn(true);
+            when(result.getBoolean(1)).thenReturn(answer);
+            return result;
+        });
+        when(statement.execute(anyString())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            if (!sql.startsWith("SELECT pg_advisory_unlock") && !sql.startsWith("LOCK TABLE")) {
+                execute(sql);
+            }
+            return true;
+        });
+        return connection;
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.chatbotmc.retrieval;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Snapshot files written by this version and by earlier format versions
+ */
+class EmbeddingSnapshotTest {
+
+    private static final int DIMENSIONS = 16;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(EmbeddingSnapshot.Encoding.class)
+    void chunksAndVectorsSurviveRoundTrip(EmbeddingSnapshot.Encoding encoding) throws IOException {
+        List<RagChunk> chunks = chunks(20);
+        chunks.add(new RagChunk("no-vector", "not embedded yet"));
+        Path file = directory.resolve("snapshot.bin");
+
+        assertEquals(20, EmbeddingSnapshot.write(file, "test-model", DIMENSIONS, encoding, chunks));
+        EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(file);
+
+        assertEquals("test-model", snapshot.model());
+        assertEquals(DIMENSIONS, snapshot.dimensions());
+        assertEquals(encoding, snapshot.encoding());
+        assertEquals(20, snapshot.size());
+        for (int i = 0; i < 20; i++) {
+            RagChunk original = chunks.get(i);
+            RagChunk read = snapshot.chunk(i);
+            assertEquals(original.getChunkId(), read.getChunkId());
+            assertEquals(original.getText(), read.getText());
+            assertEquals(original.getModpack(), read.getModpack());
+            assertEquals(original.getModName(), read.getModName());
+            assertNull(read.getDocType());
+            assertEquals("test-model", read.getEmbeddingModel());
+
+            float[] expected = VectorMath.parse(original.getEmbedding());
+            if (encoding == EmbeddingSnapshot.Encoding.FLOAT32) {
+                assertArrayEquals(expected, snapshot.vector(i));
+            } else {
+                assertTrue(VectorMath.cosineDistance(expected, snapshot.vector(i)) < 1e-3);
+            }
+        }
+    }
+
+    @Test
+    void corruptedOrTruncatedFileIsRejected() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        EmbeddingSnapshot.write(file, "test-model", DIMENSIONS, EmbeddingSnapshot.Encoding.FLOAT32, chunks(5));
+        byte[] bytes = Files.readAllBytes(file);
+
+        bytes[bytes.length - 3] ^= 1;
+        Files.write(file, bytes);
+        IOException corrupted = assertThrows(IOException.class, () -> EmbeddingSnapshot.open(file));
+        assertTrue(corrupted.getMessage().contains("checksum"));
+
+        Files.write(file, Arrays.copyOf(bytes, 20));
+        assertThrows(IOException.class, () -> EmbeddingSnapshot.open(file));
+    }
+
+    @Test
+    void versionOneFileIsRead() throws IOException {
+        float[] vector = new float[DIMENSIONS];
+        vector[3] = 0.5f;
+        Path file = directory.resolve("snapshot-v1.bin");
+        Files.write(file, versionOneFile("old-model", "creeper", "Creepers explode", "BetterMC", vector));
+
+        EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(file);
+
+        assertEquals(1, snapshot.size());
+        assertEquals("old-model", snapshot.model());
+        assertEquals("creeper", snapshot.chunk(0).getChunkId());
+        assertEquals("Creepers explode", snapshot.chunk(0).getText());
+        assertEquals("BetterMC", snapshot.chunk(0).getModpack());
+        assertNull(snapshot.chunk(0).getModName());
+        assertNull(snapshot.chunk(0).getParentChunkId());
+        assertNull(snapshot.chunk(0).getChunkIndex());
+        assertTrue(snapshot.aliases().isEmpty());
+        assertArrayEquals(vector, snapshot.vector(0));
+    }
+
+    @Test
+    void subChunkPositionsSurviveRoundTrip() throws IOException {
+        List<RagChunk> chunks = chunks(2);
+        chunks.get(0).setChunkId("document#3");
+        chunks.get(0).setParentChunkId("document");
+        chunks.get(0).setChunkIndex(3);
+        Path file = directory.resolve("snapshot.bin");
+
+        EmbeddingSnapshot.write(file, "test-model", DIMENSIONS, EmbeddingSnapshot.Encoding.FLOAT32, chunks);
+        EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(file);
+
+        assertEquals("document", snapshot.chunk(0).getParentChunkId());
+        assertEquals(3, snapshot.chunk(0).getChunkIndex());
+        assertNull(snapshot.chunk(1).getParentChunkId());
+        assertNull(snapshot.chunk(1).getChunkIndex());
+    }
+
+    @Test
+    void aliasesSurviveRoundTripWithTheirCanonicalRow() throws IOException {
+        List<RagChunk> chunks = chunks(3);
+        RagChunk notWritten = new RagChunk("no-vector", "not embedded yet");
+        List<RagChunkAlias> aliases = List.of(
+            alias("copy-of-2", chunks.get(2), 2, "OtherPack"),
+            alias("copy-of-missing", notWritten, 1, "OtherPack"));
+        aliases.get(0).setParentChunkId("document");
+        Path file = directory.resolve("snapshot.bin");
+
+        EmbeddingSnapshot.write(file, "test-model", DIMENSIONS, EmbeddingSnapshot.Encoding.INT8, chunks, aliases);
+        EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(file);
+
+        // An alias whose canonical chunk is not in the file is left out
+        assertEquals(1, snapshot.aliases().size());
+        RagChunkAlias read = snapshot.aliases().get(0);
+        assertEquals("copy-of-2", read.getChunkId());
+        assertSame(snapshot.chunk(2), read.getCanonical());
+        assertEquals(2, read.getDistance());
+        assertEquals("document", read.getParentChunkId());
+        assertEquals("OtherPack", read.getModpack());
+        assertNull(read.getCategory());
+    }
+
+    @Test
+    void newerFormatVersionIsRejected() throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        EmbeddingSnapshot.write(file, "test-model", DIMENSIONS, EmbeddingSnapshot.Encoding.FLOAT32, chunks(1));
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8, EmbeddingSnapshot.FORMAT_VERSION + 1);
+        Files.write(file, bytes);
+
+        IOException rejected = assertThrows(IOException.class, () -> EmbeddingSnapshot.open(file));
+        assertTrue(rejected.getMessage().contains("Unsupported"));
+    }
+
+    private static List<RagChunk> chunks(int count) {
+        Random random = new Random(1);
+        List<RagChunk> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            RagChunk chunk = new RagChunk("chunk-" + i, "Text ü " + i);
+            chunk.setModpack(i % 2 == 0 ? "BetterMC" : null);
+            chunk.setModName("Mod" + i % 3);
+            float[] vector = new float[DIMENSIONS];
+            for (int j = 0; j < DIMENSIONS; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            chunk.setEmbedding(VectorMath.toVectorString(vector));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static RagChunkAlias alias(String chunkId, RagChunk canonical, int distance, String modpack) {
+        RagChunkAlias alias = new RagChunkAlias();
+        alias.setChunkId(chunkId);
+        alias.setCanonical(canonical);
+        alias.setDistance(distance);
+        alias.setModpack(modpack);
+        return alias;
+    }
+
+    /**
+     * A FLOAT32 file as format version 1 wrote it: chunks without parent id, chunk index or aliases
+     */
+    private static byte[] versionOneFile(String model, String chunkId, String text, String modpack, float[] vector)
+            throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        putString(body, modpack);
+        putString(body, chunkId);
+        putString(body, text);
+        body.putInt(0);
+        for (int field = 1; field < 6; field++) {
+            body.putInt(-1);
+        }
+
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+        int headerSize = 8 + 4 * 5 + 8 + 32 + 2 + modelBytes.length;
+        body.position(body.position() + (4 - (headerSize + body.position()) % 4) % 4);
+        for (float value : vector) {
+            body.putFloat(value);
+        }
+        byte[] bodyBytes = Arrays.copyOf(body.array(), body.position());
+        long vectorOffset = headerSize + bodyBytes.length - 4L * vector.length;
+
+        ByteBuffer file = ByteBuffer.allocate(headerSize + bodyBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        file.put("CMCRAGSN".getBytes(StandardCharsets.US_ASCII));
+        file.putInt(1);
+        file.putInt(EmbeddingSnapshot.Encoding.FLOAT32.ordinal());
+        file.putInt(vector.length);
+        file.putInt(1);
+        file.putInt(1);
+        file.putLong(vectorOffset);
+        try {
+            file.put(MessageDigest.getInstance("SHA-256").digest(bodyBytes));
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        file.putShort((short) modelBytes.length);
+        file.put(modelBytes);
+        file.put(bodyBytes);
+        return file.array();
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.chatbotmc.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SimHash fingerprints and the banded index that finds them within a Hamming distance
+ */
+class NearDuplicateIndexTest {
+
+    private static final String GOLEMS = "Iron golems spawn in villages with at least ten villagers and twenty beds. "
+        + "They protect villagers from zombies and attack hostile mobs. "
+        + "Build a golem from four iron blocks and a carved pumpkin.";
+
+    @Test
+    void nearDuplicateTextsGetCloseFingerprints() {
+        long original = SimHash.fingerprint(GOLEMS, 4);
+        long edited = SimHash.fingerprint(GOLEMS.replace("twenty", "twenty-one"), 4);
+        long other = SimHash.fingerprint(
+            "Creepers explode when close to the player, destroying blocks nearby unless mob griefing is off.", 4);
+
+        // Case, punctuation and surrounding whitespace do not change the shingles
+        assertEquals(original, SimHash.fingerprint("  " + GOLEMS.toUpperCase() + "!!", 4));
+        assertTrue(SimHash.distance(original, edited) < SimHash.distance(original, other));
+        assertTrue(SimHash.distance(original, other) > 10);
+    }
+
+    @Test
+    void distanceCountsDifferingBits() {
+        assertEquals(0, SimHash.distance(42L, 42L));
+        assertEquals(3, SimHash.distance(0L, 0b1011L));
+        assertEquals(64, SimHash.distance(0L, -1L));
+    }
+
+    @Test
+    void everyFingerprintWithinMaxDistanceIsFound() {
+        Random random = new Random(1);
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        for (int i = 0; i < 1000; i++) {
+            index.add(random.nextLong(), i);
+        }
+        long stored = random.nextLong();
+        index.add(stored, 5000);
+
+        // Whichever bands the flipped bits fall in, one band is left intact
+        for (int trial = 0; trial < 1000; trial++) {
+            long query = stored;
+            for (int flips = 0; flips < 3; flips++) {
+                query ^= 1L << random.nextInt(64);
+            }
+            assertEquals(5000, index.find(query).id());
+        }
+        assertEquals(1001, index.size());
+    }
+
+    @Test
+    void fingerprintBeyondMaxDistanceIsNotFound() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        index.add(0L, 1);
+
+        assertNull(index.find(0xFL));
+        assertEquals(1, index.find(0x7L).id());
+    }
+
+    @Test
+    void closestEntryWins() {
+        NearDuplicateIndex index = new NearDuplicateIndex(3);
+        index.add(0b111L, 1);
+        index.add(0b001L, 2);
+
+        assertEquals(2, index.find(0L).id());
+    }
+
+    @Test
+    void maxDistanceIsBounded() {
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateIndex(-1));
+        assertThrows(IllegalArgumentException.class, () -> new NearDuplicateIndex(16));
+        assertNull(new NearDuplicateIndex(0).find(0L));
+    }
+}
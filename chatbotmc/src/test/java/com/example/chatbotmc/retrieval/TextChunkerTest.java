@@ -0,0 +1,72 @@
+package com.example.chatbotmc.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Token limits and overlap of the sub-chunks a document is split into
+ */
+class TextChunkerTest {
+
+    @Test
+    void shortTextIsKeptWhole() {
+        TextChunker chunker = new TextChunker(64, 8);
+
+        assertEquals(List.of("Creepers explode."), chunker.split("  Creepers explode.\n"));
+        assertTrue(chunker.split(" ").isEmpty());
+        assertTrue(chunker.split(null).isEmpty());
+    }
+
+    @Test
+    void sentencesAreSplitWithinTheLimitAndOverlap() {
+        TextChunker chunker = new TextChunker(32, 8);
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            text.append("Sentence number ").append(i).append(" is about mining. ");
+        }
+
+        List<String> parts = chunker.split(text.toString());
+
+        assertTrue(parts.size() > 1);
+        for (int i = 0; i < parts.size(); i++) {
+            assertTrue(TextChunker.estimateTokens(parts.get(i)) <= 32, parts.get(i));
+            assertTrue(parts.get(i).endsWith("."), "cut at a sentence boundary: " + parts.get(i));
+            if (i > 0) {
+                // Each sub-chunk starts with the previous one's last sentence
+                String previous = parts.get(i - 1);
+                String lastSentence = previous.substring(previous.lastIndexOf("Sentence"));
+                assertTrue(parts.get(i).startsWith(lastSentence), parts.get(i));
+            }
+        }
+    }
+
+    @Test
+    void sentenceLongerThanTheLimitIsCutBetweenWords() {
+        TextChunker chunker = new TextChunker(20, 5);
+
+        List<String> parts = chunker.split(String.join(" ", Collections.nCopies(100, "word")));
+
+        assertTrue(parts.size() >= 5);
+        parts.forEach(part -> assertTrue(TextChunker.estimateTokens(part) <= 20, part));
+        parts.forEach(part -> assertTrue(part.matches("word( word)*"), part));
+    }
+
+    @Test
+    void tokensAreEstimatedPerWordAndPunctuation() {
+        assertEquals(0, TextChunker.estimateTokens(""));
+        assertEquals(3, TextChunker.estimateTokens("Hello, world"));
+        // A long word counts one token per further eight characters
+        assertTrue(TextChunker.estimateTokens("electroencephalography") > 1);
+    }
+
+    @Test
+    void limitBelowSixteenTokensIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TextChunker(8, 2));
+    }
+}
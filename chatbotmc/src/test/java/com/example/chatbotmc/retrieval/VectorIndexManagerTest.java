@@ -0,0 +1,114 @@
+package com.example.chatbotmc.retrieval;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Calibration against a mocked table of six vectors spread 10 degrees apart on a circle
+ * Exact searches rank by cosine distance; index searches are answered by a stand-in for the index.
+ */
+class VectorIndexManagerTest {
+
+    private static final int ROWS = 6;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final VectorIndexManager manager =
+        new VectorIndexManager(jdbcTemplate, mock(PlatformTransactionManager.class));
+
+    // True while the search runs with the index's search parameter set rather than index scans off
+    private boolean indexSearch;
+    // Whether the stand-in index finds only the query row itself and otherwise the farthest rows
+    private boolean indexFindsOnlyItself;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(manager, "type", "hnsw");
+        ReflectionTestUtils.setField(manager, "m", 16);
+        ReflectionTestUtils.setField(manager, "efConstruction", 64);
+        ReflectionTestUtils.setField(manager, "recallTarget", 0.95);
+        ReflectionTestUtils.setField(manager, "latencyTargetMs", 1000.0);
+        ReflectionTestUtils.setField(manager, "calibrationQueries", ROWS);
+        ReflectionTestUtils.setField(manager, "defaultTopK", 2);
+
+        when(jdbcTemplate.queryForObject(contains("count(*)"), eq(Long.class))).thenReturn((long) ROWS);
+        when(jdbcTemplate.queryForList(contains("pg_index"), any(Object[].class))).thenReturn(List.of(Map.of(
+            "method", "hnsw", "valid", true, "options", "m=16,ef_construction=64", "bytes", 8192L)));
+        when(jdbcTemplate.query(startsWith("SELECT id, embedding::text"), any(RowMapper.class), any(Object[].class)))
+            .thenAnswer(invocation -> {
+                RowMapper<?> mapper = invocation.getArgument(1);
+                List<Object> queries = new ArrayList<>();
+                for (long id = 1; id <= ROWS; id++) {
+                    ResultSet row = mock(ResultSet.class);
+                    when(row.getLong(1)).thenReturn(id);
+                    when(row.getString(2)).thenReturn(VectorMath.toVectorString(vector(id)));
+                    queries.add(mapper.mapRow(row, (int) id - 1));
+                }
+                return queries;
+            });
+        doAnswer(invocation -> indexSearch = false)
+            .when(jdbcTemplate).execute("SET LOCAL enable_indexscan = off");
+        when(jdbcTemplate.queryForObject(contains("set_config"), eq(String.class), any(Object[].class)))
+            .thenAnswer(invocation -> {
+                indexSearch = true;
+                return "";
+            });
+        when(jdbcTemplate.queryForList(contains("ORDER BY embedding <=>"), eq(Long.class), any(Object[].class)))
+            .thenAnswer(invocation -> {
+                Object[] args = (Object[]) invocation.getRawArguments()[2];
+                return search(VectorMath.parse((String) args[0]), (Integer) args[1]);
+            });
+    }
+
+    @Test
+    void queryRowDoesNotCountTowardsRecall() {
+        indexFindsOnlyItself = true;
+
+        VectorIndexManager.Calibration calibration = manager.calibrate();
+
+        // Counting each query's own row would give every setting a recall of at least 1/k
+        calibration.trials().forEach(trial -> assertEquals(0.0, trial.recall(), 1e-9));
+    }
+
+    @Test
+    void indexMatchingExactSearchHasFullRecall() {
+        VectorIndexManager.Calibration calibration = manager.calibrate();
+
+        calibration.trials().forEach(trial -> assertEquals(1.0, trial.recall(), 1e-9));
+        assertEquals(ROWS, calibration.queries());
+    }
+
+    private List<Long> search(float[] query, int limit) {
+        Comparator<Long> byDistance = Comparator.comparingDouble(id -> VectorMath.cosineDistance(query, vector(id)));
+        if (indexSearch && indexFindsOnlyItself) {
+            // The query row first, then the rows farthest from it
+            byDistance = Comparator.<Long>comparingInt(id -> VectorMath.cosineDistance(query, vector(id)) < 1e-6 ? 0 : 1)
+                .thenComparing(byDistance.reversed());
+        }
+        return LongStream.rangeClosed(1, ROWS).boxed().sorted(byDistance).limit(limit).toList();
+    }
+
+    private static float[] vector(long id) {
+        double angle = Math.toRadians(10 * id);
+        return new float[] {(float) Math.cos(angle), (float) Math.sin(angle)};
+    }
+}
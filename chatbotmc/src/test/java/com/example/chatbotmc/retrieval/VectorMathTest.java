@@ -0,0 +1,80 @@
+package com.example.chatbotmc.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Vector arithmetic must agree with pgvector, since both back the same searches
+ */
+class VectorMathTest {
+
+    @Test
+    void vectorStringRoundTrips() {
+        float[] vector = {0.25f, -1.5f, 3.0e-7f};
+
+        assertArrayEquals(vector, VectorMath.parse(VectorMath.toVectorString(vector)));
+        assertArrayEquals(new float[] {1f, 2f}, VectorMath.parse(" [1, 2] "));
+        assertEquals(0, VectorMath.parse("[]").length);
+        assertArrayEquals(new float[] {0.5f, 2f}, VectorMath.toFloatArray(List.of(0.5, 2.0)));
+    }
+
+    @Test
+    void cosineDistanceMatchesPgvector() {
+        float[] a = {1, 0};
+
+        assertEquals(0.0, VectorMath.cosineDistance(a, new float[] {3, 0}), 1e-9);
+        assertEquals(1.0, VectorMath.cosineDistance(a, new float[] {0, 2}), 1e-9);
+        assertEquals(2.0, VectorMath.cosineDistance(a, new float[] {-1, 0}), 1e-9);
+        // pgvector returns 1 rather than NaN for a zero vector
+        assertEquals(1.0, VectorMath.cosineDistance(a, new float[] {0, 0}), 1e-9);
+    }
+
+    @Test
+    void normalizeKeepsZeroVector() {
+        assertArrayEquals(new float[] {0.6f, 0.8f}, VectorMath.normalize(new float[] {3, 4}), 1e-6f);
+        assertArrayEquals(new float[] {0, 0}, VectorMath.normalize(new float[] {0, 0}));
+    }
+
+    @Test
+    void topKMatchesFullSort() {
+        Random random = new Random(7);
+        float[][] rows = new float[500][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = VectorMath.normalize(randomVector(random, 24));
+        }
+        float[] query = VectorMath.normalize(randomVector(random, 24));
+
+        int[] expected = IntStream.range(0, rows.length).boxed()
+            .sorted(Comparator.comparingDouble(row -> VectorMath.cosineDistance(query, rows[row])))
+            .limit(10)
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+        assertArrayEquals(expected, VectorMath.topK(query, rows, 10));
+    }
+
+    @Test
+    void topKReturnsAtMostTheRows() {
+        float[][] rows = {{1, 0}, {0, 1}};
+
+        assertEquals(2, VectorMath.topK(new float[] {1, 0}, rows, 5).length);
+        assertEquals(0, VectorMath.topK(new float[] {1, 0}, rows, 0).length);
+        assertArrayEquals(new int[] {0, 1}, VectorMath.topK(new float[] {1, 0}, rows, 2));
+        assertEquals(0, VectorMath.topK(new float[] {1, 0}, new float[0][], 3).length);
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
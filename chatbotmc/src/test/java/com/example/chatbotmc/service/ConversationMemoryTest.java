@@ -0,0 +1,165 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.config.AsyncConfig;
+import com.example.chatbotmc.entity.ChatMessage;
+import com.example.chatbotmc.entity.Conversation;
+import com.example.chatbotmc.entity.MessageRole;
+import com.example.chatbotmc.llm.LlmClient;
+import com.example.chatbotmc.llm.LlmMessage;
+import com.example.chatbotmc.repository.ChatMessageRepository;
+import com.example.chatbotmc.repository.ConversationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verbatim window, summary folding and the background queue of summary updates
+ */
+class ConversationMemoryTest {
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final ChatMessageRepository chatMessageRepository = mock(ChatMessageRepository.class);
+    private final LlmClient llmClient = mock(LlmClient.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ConversationCache conversationCache = mock(ConversationCache.class);
+    private final ThreadPoolTaskExecutor executor = new AsyncConfig().conversationSummaryExecutor();
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    void summaryIsPrependedAndOnlyLaterMessagesSentVerbatim() {
+        Conversation conversation = conversation(1L, "The user plays BetterMC.", 4L);
+        when(chatMessageRepository.findByConversationIdOrderByIdDesc(eq(1L), any()))
+            .thenReturn(messages(6, 3).reversed());
+
+        List<LlmMessage> sent = memory().buildMessages(conversation, "What next?");
+
+        assertEquals(List.of("message 5", "message 6", "What next?"),
+            sent.stream().map(message -> message.text().lines().reduce((first, last) -> last).orElseThrow()).toList());
+        assertEquals(LlmMessage.Role.MODEL, sent.get(1).role());
+        assertTrue(sent.get(2).text().startsWith("SUMMARY OF THE EARLIER CONVERSATION:\nThe user plays BetterMC."));
+    }
+
+    @Test
+    void summaryIsWrittenWithoutTouchingTheRestOfTheRow() {
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation(1L, null, null)));
+        when(chatMessageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(1L, 0L)).thenReturn(messages(12, 1));
+        when(llmClient.generate(anyString())).thenReturn("  The user plays BetterMC.  ");
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(1);
+
+        memory().scheduleSummaryUpdate(1L);
+
+        // memory.recent-messages=6 stay verbatim, the six before them are folded
+        verify(jdbcTemplate, timeout(5000)).update(contains("SET summary = ?, summarized_through_message_id = ?"),
+            eq("The user plays BetterMC."), eq(6L), eq(1L), eq(6L));
+        verify(conversationCache, timeout(5000)).evictConversation(1L);
+        verify(conversationRepository, never()).save(any());
+    }
+
+    @Test
+    void fewMessagesOutsideTheWindowAreNotSummarizedYet() throws Exception {
+        when(conversationRepository.findById(1L)).thenReturn(Optional.of(conversation(1L, null, null)));
+        when(chatMessageRepository.findByConversationIdAndIdGreaterThanOrderByIdAsc(1L, 0L)).thenReturn(messages(11, 1));
+
+        memory().scheduleSummaryUpdate(1L);
+        executor.getThreadPoolExecutor().shutdown();
+        executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+
+        verify(llmClient, never()).generate(anyString());
+    }
+
+    @Test
+    void updateRejectedByFullQueueIsQueuedAgainOnTheNextTurn() throws Exception {
+        ConversationMemory memory = memory();
+        CountDownLatch release = new CountDownLatch(1);
+        // Occupy both threads and fill the queue
+        int capacity = executor.getMaxPoolSize() + executor.getQueueCapacity();
+        for (int i = 0; i < capacity; i++) {
+            executor.execute(() -> awaitQuietly(release));
+        }
+
+        memory.scheduleSummaryUpdate(1L);
+        release.countDown();
+        waitUntilIdle();
+        verify(conversationRepository, never()).findById(anyLong());
+
+        memory.scheduleSummaryUpdate(1L);
+
+        verify(conversationRepository, timeout(5000)).findById(1L);
+    }
+
+    private ConversationMemory memory() {
+        executor.initialize();
+        ConversationMemory memory = new ConversationMemory(conversationRepository, chatMessageRepository, llmClient,
+            executor, jdbcTemplate, mock(MessageJournal.class), conversationCache);
+        ReflectionTestUtils.setField(memory, "enabled", true);
+        ReflectionTestUtils.setField(memory, "recentMessages", 6);
+        ReflectionTestUtils.setField(memory, "summaryTrigger", 6);
+        ReflectionTestUtils.setField(memory, "summaryMaxChars", 2000);
+        return memory;
+    }
+
+    private void waitUntilIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((executor.getActiveCount() > 0 || !executor.getThreadPoolExecutor().getQueue().isEmpty())
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Conversation conversation(Long id, String summary, Long summarizedThrough) {
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setSummary(summary);
+        conversation.setSummarizedThroughMessageId(summarizedThrough);
+        return conversation;
+    }
+
+    /**
+     * Messages with ids first..last, alternating user and assistant turns
+     */
+    private static List<ChatMessage> messages(long last, long first) {
+        List<ChatMessage> messages = new ArrayList<>();
+        LongStream.rangeClosed(first, last).forEach(id -> {
+            ChatMessage message = new ChatMessage();
+            message.setId(id);
+            message.setRole(id % 2 == 1 ? MessageRole.USER : MessageRole.ASSISTANT);
+            message.setContent("message " + id);
+            messages.add(message);
+        });
+        return messages;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.repository.ChatMessageRepository;
+import com.example.chatbotmc.repository.ConversationRepository;
+import com.example.chatbotmc.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Writes that must not touch the counter and preview columns kept up to date by plain JDBC
+ */
+class ConversationServiceTest {
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ConversationCache conversationCache = mock(ConversationCache.class);
+    private final ConversationService service = new ConversationService(conversationRepository,
+        mock(ChatMessageRepository.class), mock(UserRepository.class), mock(MessageJournal.class), conversationCache,
+        jdbcTemplate, new ChatMetrics(new SimpleMeterRegistry(), null));
+
+    @Test
+    void renameWritesOnlyTheTitle() {
+        when(jdbcTemplate.update(startsWith("UPDATE conversations SET title = ?, updated_at = ? WHERE"),
+            eq("Creepers"), any(), eq(3L), eq(7L))).thenReturn(1);
+
+        service.updateConversationTitle(3L, 7L, "Creepers");
+
+        verify(conversationCache).evict(3L, 7L);
+        verify(conversationRepository, never()).save(any());
+        verify(conversationRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void renamingAnotherUsersConversationFails() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(0);
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> service.updateConversationTitle(3L, 8L, "Mine now"));
+
+        assertEquals("Conversation not found", e.getMessage());
+        verifyNoInteractions(conversationCache);
+    }
+
+    @Test
+    void previewCollapsesWhitespaceAndIsShortened() {
+        assertEquals("How do I tame a wolf?", ConversationService.buildPreview("  How do I\n\ttame a wolf? "));
+        String preview = ConversationService.buildPreview("x".repeat(200));
+        assertEquals(120, preview.length());
+        assertEquals("...", preview.substring(117));
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.OutboxEmail;
+import com.example.chatbotmc.entity.OutboxStatus;
+import com.example.chatbotmc.mail.EmailMessage;
+import com.example.chatbotmc.mail.EmailSender;
+import com.example.chatbotmc.repository.OutboxEmailRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmailOutboxDispatcherTest {
+
+    private final OutboxEmailRepository repository = mock(OutboxEmailRepository.class);
+    private final EmailSender emailSender = mock(EmailSender.class);
+    private final EmailOutboxDispatcher dispatcher =
+        new EmailOutboxDispatcher(repository, emailSender, mock(PlatformTransactionManager.class));
+
+    @Test
+    void leaseIsRenewedRightBeforeEachSend() {
+        OutboxEmail first = email(1L, "alex@example.com");
+        OutboxEmail second = email(2L, "steve@example.com");
+        when(repository.lockDue(any(), anyInt())).thenReturn(List.of(first, second));
+        when(repository.renewLease(any(), any(), any())).thenReturn(1);
+
+        dispatcher.dispatch();
+
+        InOrder order = inOrder(repository, emailSender);
+        order.verify(repository).renewLease(eq(1L), any(), any());
+        order.verify(emailSender).send(new EmailMessage("alex@example.com", "Welcome", "plain", "html"));
+        order.verify(repository).renewLease(eq(2L), any(), any());
+        order.verify(emailSender).send(new EmailMessage("steve@example.com", "Welcome", "plain", "html"));
+        assertEquals(OutboxStatus.SENT, second.getStatus());
+    }
+
+    @Test
+    void emailClaimedElsewhereAfterLeaseRanOutIsNotSent() {
+        OutboxEmail slow = email(1L, "alex@example.com");
+        OutboxEmail expired = email(2L, "steve@example.com");
+        when(repository.lockDue(any(), anyInt())).thenReturn(List.of(slow, expired));
+        when(repository.renewLease(eq(1L), any(), any())).thenReturn(1);
+        when(repository.renewLease(eq(2L), any(), any())).thenReturn(0);
+
+        dispatcher.dispatch();
+
+        verify(emailSender).send(new EmailMessage("alex@example.com", "Welcome", "plain", "html"));
+        verify(emailSender, never()).send(new EmailMessage("steve@example.com", "Welcome", "plain", "html"));
+        verify(repository, never()).save(expired);
+        assertEquals(OutboxStatus.PENDING, expired.getStatus());
+    }
+
+    @Test
+    void renewalComparesAgainstTheLeaseTakenAtClaim() {
+        OutboxEmail email = email(1L, "alex@example.com");
+        when(repository.lockDue(any(), anyInt())).thenReturn(List.of(email));
+        when(repository.renewLease(any(), any(), any())).thenReturn(1);
+        ReflectionTestUtils.setField(dispatcher, "leaseSeconds", 120L);
+        LocalDateTime before = LocalDateTime.now();
+
+        dispatcher.dispatch();
+
+        verify(repository).renewLease(eq(1L), any(LocalDateTime.class), any(LocalDateTime.class));
+        LocalDateTime leasedUntil = email.getNextAttemptAt();
+        assertEquals(0, leasedUntil.getNano() % 1000);
+        assertTrue(leasedUntil.isAfter(before.plusSeconds(119)));
+    }
+
+    private static OutboxEmail email(Long id, String recipient) {
+        OutboxEmail email = new OutboxEmail();
+        email.setId(id);
+        email.setRecipient(recipient);
+        email.setSubject("Welcome");
+        email.setPlainBody("plain");
+        email.setHtmlBody("html");
+        email.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        return email;
+    }
+}
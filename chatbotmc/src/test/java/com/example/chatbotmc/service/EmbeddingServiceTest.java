@@ -0,0 +1,62 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.llm.EmbeddingClient;
+import com.example.chatbotmc.observability.ChatMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Batches sent to the embedding backend and the vectors handed back for the column in use
+ */
+class EmbeddingServiceTest {
+
+    private final List<List<String>> sent = new ArrayList<>();
+    private final EmbeddingService embeddingService = new EmbeddingService(new EmbeddingClient() {
+        @Override
+        public List<List<Double>> embed(List<String> texts, int dimensions) {
+            sent.add(texts);
+            return texts.stream().map(text -> Collections.nCopies(2, 0.5)).toList();
+        }
+
+        @Override
+        public String modelName() {
+            return "test-model";
+        }
+    }, mock(ChatMetrics.class, RETURNS_DEEP_STUBS));
+
+    @Test
+    void blankTextsAreNotSentAndGetNoEmbedding() {
+        List<List<Double>> embeddings = embeddingService.generateEmbeddings(Arrays.asList("golems", null, " ", "creepers"), 4);
+
+        assertEquals(List.of(List.of("golems", "creepers")), sent);
+        assertEquals(List.of(0.5, 0.5, 0.0, 0.0), embeddings.get(0));
+        assertNull(embeddings.get(1));
+        assertNull(embeddings.get(2));
+        assertEquals(List.of(0.5, 0.5, 0.0, 0.0), embeddings.get(3));
+    }
+
+    @Test
+    void batchOfOnlyBlankTextsSkipsTheBackend() {
+        List<List<Double>> embeddings = embeddingService.generateEmbeddings(Arrays.asList("", null), 4);
+
+        assertTrue(sent.isEmpty());
+        assertEquals(Arrays.asList(null, null), embeddings);
+    }
+
+    @Test
+    void longTextsAreTruncated() {
+        embeddingService.generateEmbeddings(List.of("x".repeat(12000)), 4);
+
+        assertEquals(10000, sent.get(0).get(0).length());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.dto.AuthenticatedUser;
+import com.example.chatbotmc.entity.Role;
+import com.example.chatbotmc.entity.User;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.security.SignatureException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Token verification and the cache of recently verified tokens
+ */
+class JwtServiceTest {
+
+    private static final String SECRET = "test-secret-that-is-long-enough-for-hmac-sha-256";
+
+    private final JwtService jwtService = new JwtService(SECRET, 60_000L, 100);
+
+    @Test
+    void tokenIsVerifiedOnceAndThenServedFromTheCache() {
+        String token = jwtService.generateToken(user(7L, "steve", Role.ADMIN));
+
+        AuthenticatedUser first = jwtService.authenticate(token);
+
+        assertEquals(new AuthenticatedUser(7L, "steve", "ADMIN"), first);
+        assertSame(first, jwtService.authenticate(token));
+    }
+
+    @Test
+    void cachedSignatureDoesNotVouchForAnotherPayload() {
+        String token = jwtService.generateToken(user(7L, "steve", Role.USER));
+        jwtService.authenticate(token);
+
+        // Same header and signature, payload claiming to be an admin
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+            .replace("\"USER\"", "\"ADMIN\"");
+        String forged = parts[0] + "."
+            + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+            + "." + parts[2];
+
+        assertThrows(SignatureException.class, () -> jwtService.authenticate(forged));
+    }
+
+    @Test
+    void tokensAreCachedSeparately() {
+        AuthenticatedUser steve = jwtService.authenticate(jwtService.generateToken(user(7L, "steve", Role.USER)));
+        AuthenticatedUser alex = jwtService.authenticate(jwtService.generateToken(user(8L, "alex", Role.USER)));
+
+        assertNotSame(steve, alex);
+        assertEquals("alex", alex.username());
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        JwtService expired = new JwtService(SECRET, -1_000L, 100);
+
+        String token = expired.generateToken(user(7L, "steve", Role.USER));
+
+        assertThrows(ExpiredJwtException.class, () -> expired.authenticate(token));
+    }
+
+    @Test
+    void tokenSignedWithAnotherKeyIsRejected() {
+        JwtService other = new JwtService("another-secret-that-is-long-enough-for-hmac-sha", 60_000L, 100);
+
+        String token = other.generateToken(user(7L, "steve", Role.USER));
+
+        assertThrows(SignatureException.class, () -> jwtService.authenticate(token));
+    }
+
+    @Test
+    void tokenWithoutSignatureIsRejected() {
+        assertThrows(MalformedJwtException.class, () -> jwtService.authenticate("not-a-token"));
+    }
+
+    private static User user(Long id, String username, Role role) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRole(role);
+        return user;
+    }
+}
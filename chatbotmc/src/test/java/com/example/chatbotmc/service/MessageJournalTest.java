@@ -0,0 +1,292 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.ChatMessage;
+import com.example.chatbotmc.entity.MessageRole;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Write-behind journal against a fake chat_messages table whose INSERT, like the real one,
+ * only keeps rows of conversations that other transactions can see
+ */
+class MessageJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final FakeTransactionManager transactionManager = new FakeTransactionManager();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Conversations committed so far, and those created by the open transaction
+    private final Set<Long> committedConversations = new HashSet<>();
+    private final Set<Long> uncommittedConversations = new HashSet<>();
+    private final List<Long> insertedIds = new ArrayList<>();
+    // Whether the database can be reached
+    private boolean connectionDown;
+
+    private MessageJournal journal;
+
+    @AfterEach
+    void stopJournal() {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void firstMessageOfNewConversationIsPersisted() throws Exception {
+        journal = startJournal();
+        TransactionTemplate request = new TransactionTemplate(transactionManager);
+
+        ChatMessage message = request.execute(status -> {
+            // Same request creates the conversation and saves its first message
+            uncommittedConversations.add(1L);
+            ChatMessage saved = journal.append(1L, "How do I tame a wolf?", MessageRole.USER);
+            // A flush while the request is still open must not drop the message
+            journal.flushPending(1L);
+            return saved;
+        });
+        journal.flushPending(1L);
+
+        assertEquals(List.of(message.getId()), insertedIds);
+        assertEquals(0, Files.size(logPath()));
+    }
+
+    @Test
+    void messageOfRolledBackRequestIsNotJournaled() throws Exception {
+        journal = startJournal();
+        committedConversations.add(1L);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            journal.append(1L, "Never answered", MessageRole.USER);
+            status.setRollbackOnly();
+        });
+        journal.flushPending(1L);
+
+        assertTrue(insertedIds.isEmpty());
+        assertEquals(0, Files.size(logPath()));
+    }
+
+    @Test
+    void messageOutsideTransactionIsQueuedRightAway() {
+        journal = startJournal();
+        committedConversations.add(2L);
+
+        ChatMessage first = journal.append(2L, "first", MessageRole.USER);
+        ChatMessage second = journal.append(2L, "second", MessageRole.ASSISTANT);
+        journal.flushPending(2L);
+
+        assertEquals(List.of(first.getId(), second.getId()), insertedIds);
+    }
+
+    @Test
+    void logLeftByCrashIsReplayedOnStart() throws Exception {
+        committedConversations.add(3L);
+        String now = LocalDateTime.now().toString();
+        Files.write(logPath(), List.of(
+            objectMapper.writeValueAsString(new MessageJournal.JournalEntry(41, 3, "USER", now, "question")),
+            objectMapper.writeValueAsString(new MessageJournal.JournalEntry(42, 3, "ASSISTANT", now, "answer")),
+            "{\"id\":43,\"conversa"
+        ), StandardCharsets.UTF_8);
+
+        journal = startJournal();
+
+        assertEquals(List.of(41L, 42L), insertedIds);
+        assertEquals(0, Files.size(logPath()));
+    }
+
+    @Test
+    void idsFollowArrivalOrderAcrossInstances() {
+        journal = startJournal();
+        MessageJournal other = startJournal(directory.resolve("other.log"));
+        committedConversations.add(8L);
+
+        List<Long> ids = new ArrayList<>();
+        for (int turn = 0; turn < 4; turn++) {
+            ids.add((turn % 2 == 0 ? journal : other).append(8L, "turn " + turn, MessageRole.USER).getId());
+        }
+        other.stop();
+
+        assertEquals(ids.stream().sorted().toList(), ids);
+    }
+
+    @Test
+    void refusedMessageIsDeadLetteredWithoutHoldingUpTheOthers() throws Exception {
+        journal = startJournal();
+        committedConversations.add(4L);
+
+        ChatMessage before = journal.append(4L, "before", MessageRole.USER);
+        ChatMessage refused = journal.append(4L, "pasted \u0000 binary", MessageRole.USER);
+        ChatMessage after = journal.append(4L, "after", MessageRole.ASSISTANT);
+        journal.flushPending(4L);
+        ChatMessage next = journal.append(4L, "next turn", MessageRole.USER);
+        journal.flushPending(4L);
+
+        assertEquals(List.of(before.getId(), after.getId(), next.getId()), insertedIds);
+        assertEquals(List.of(refused.getId()), deadLetteredIds());
+        assertEquals(0, Files.size(logPath()));
+    }
+
+    @Test
+    void batchIsKeptInOrderWhileTheDatabaseIsDown() throws Exception {
+        journal = startJournal();
+        committedConversations.add(5L);
+        connectionDown = true;
+
+        ChatMessage first = journal.append(5L, "first", MessageRole.USER);
+        ChatMessage second = journal.append(5L, "second", MessageRole.ASSISTANT);
+        journal.flushPending(5L);
+        assertTrue(insertedIds.isEmpty());
+
+        connectionDown = false;
+        journal.flushPending(5L);
+
+        assertEquals(List.of(first.getId(), second.getId()), insertedIds);
+        assertFalse(Files.exists(deadLetterPath()));
+    }
+
+    @Test
+    void refusedMessageLeftInTheLogDoesNotStopStartup() throws Exception {
+        committedConversations.add(6L);
+        String now = LocalDateTime.now().toString();
+        Files.write(logPath(), List.of(
+            objectMapper.writeValueAsString(new MessageJournal.JournalEntry(51, 6, "USER", now, "bad \u0000")),
+            objectMapper.writeValueAsString(new MessageJournal.JournalEntry(52, 6, "USER", now, "good"))
+        ), StandardCharsets.UTF_8);
+
+        journal = startJournal();
+
+        assertEquals(List.of(52L), insertedIds);
+        assertEquals(List.of(51L), deadLetteredIds());
+    }
+
+    @Test
+    void committedMessageIsAcceptedEvenIfTheLogCannotBeWritten() throws Exception {
+        journal = startJournal();
+        committedConversations.add(7L);
+        ((FileChannel) ReflectionTestUtils.getField(journal, "log")).close();
+
+        ChatMessage message = new TransactionTemplate(transactionManager).execute(status ->
+            journal.append(7L, "still answered", MessageRole.USER));
+        journal.flushPending(7L);
+
+        assertEquals(List.of(message.getId()), insertedIds);
+    }
+
+    private MessageJournal startJournal() {
+        return startJournal(logPath());
+    }
+
+    private MessageJournal startJournal(Path log) {
+        when(jdbcTemplate.queryForObject(contains("nextval"), eq(Long.class)))
+            .thenAnswer(invocation -> sequence.incrementAndGet());
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(invocation -> {
+            if (connectionDown) {
+                throw new CannotGetJdbcConnectionException("Connection refused");
+            }
+            Object[] args = (Object[]) invocation.getRawArguments()[1];
+            // Rows are (id, conversation_id, content, role, created_at); like PostgreSQL TEXT, NUL is refused
+            for (int i = 0; i < args.length; i += 5) {
+                if (((String) args[i + 2]).indexOf('\u0000') >= 0) {
+                    throw new DataIntegrityViolationException("invalid byte sequence for encoding \"UTF8\": 0x00");
+                }
+            }
+            for (int i = 0; i < args.length; i += 5) {
+                if (committedConversations.contains((Long) args[i + 1])) {
+                    insertedIds.add((Long) args[i]);
+                }
+            }
+            return args.length / 5;
+        });
+
+        MessageJournal started = new MessageJournal(jdbcTemplate, transactionManager, objectMapper,
+            mock(ConversationCache.class));
+        ReflectionTestUtils.setField(started, "enabled", true);
+        ReflectionTestUtils.setField(started, "logPath", log.toString());
+        ReflectionTestUtils.setField(started, "deadLetterPath", deadLetterPath().toString());
+        ReflectionTestUtils.setField(started, "fsync", false);
+        ReflectionTestUtils.setField(started, "flushIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(started, "batchSize", 100);
+        try {
+            started.start();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        return started;
+    }
+
+    private Path logPath() {
+        return directory.resolve("message-journal.log");
+    }
+
+    private Path deadLetterPath() {
+        return directory.resolve("message-journal.dead");
+    }
+
+    private List<Long> deadLetteredIds() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(deadLetterPath(), StandardCharsets.UTF_8)) {
+            ids.add(objectMapper.readTree(line).get("entry").get("id").asLong());
+        }
+        return ids;
+    }
+
+    /**
+     * Makes conversations created inside a transaction visible once it commits
+     */
+    private class FakeTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            committedConversations.addAll(uncommittedConversations);
+            uncommittedConversations.clear();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+            uncommittedConversations.clear();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.retrieval.ChunkFilterIndex;
+import com.example.chatbotmc.retrieval.EmbeddingDimensionMigration;
+import com.example.chatbotmc.retrieval.VectorIndexManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Re-embedding after a model switch, against an in-memory chunk table
+ */
+class RagDataLoaderTest {
+
+    private static final String MODEL = "new-model";
+
+    private final List<RagChunk> table = new ArrayList<>();
+    private final List<String> embedded = new ArrayList<>();
+    private final RagChunkRepository repository = mock(RagChunkRepository.class);
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private final RagReadiness readiness = new RagReadiness();
+    private final RagSnapshotService snapshotService = mock(RagSnapshotService.class);
+    private final RagChunkAliasRepository aliasRepository = mock(RagChunkAliasRepository.class);
+    private final ResourceLoader resourceLoader = mock(ResourceLoader.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    void reindexSendsEveryChunkOnceEvenWhenSomeFail() {
+        for (long id = 1; id <= 7; id++) {
+            table.add(chunk(id, id % 3 == 0 ? "fails " + id : "text " + id));
+        }
+
+        int reindexed = loader(2).reindexEmbeddings();
+
+        assertEquals(5, reindexed);
+        assertEquals(List.of("text 1", "text 2", "fails 3", "text 4", "text 5", "fails 6", "text 7"), embedded);
+        assertEquals(2, table.stream().filter(chunk -> !MODEL.equals(chunk.getEmbeddingModel())).count());
+    }
+
+    @Test
+    void reindexEndsWhenEveryChunkFails() {
+        for (long id = 1; id <= 4; id++) {
+            table.add(chunk(id, "fails " + id));
+        }
+
+        assertEquals(0, loader(2).reindexEmbeddings());
+        assertEquals(4, embedded.size());
+    }
+
+    @Test
+    void retrievalStaysUpDuringReindexAndIsReadyAfterwards() {
+        table.add(chunk(1, "text 1"));
+        readiness.ready(1);
+        RagDataLoader loader = loader(2);
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            // Searches only see chunks of the active model, so readiness is not withdrawn
+            assertEquals(RagReadiness.State.READY, readiness.status().state());
+            return List.of(List.of(1.0, 0.0));
+        });
+
+        loader.reindexEmbeddings();
+
+        assertEquals(RagReadiness.State.READY, readiness.status().state());
+    }
+
+    @Test
+    void failedReindexIsReportedAsFailed() {
+        table.add(chunk(1, "text 1"));
+        RagDataLoader loader = loader(2);
+        when(embeddingService.generateEmbeddings(anyList())).thenThrow(new IllegalStateException("backend down"));
+
+        assertThrows(IllegalStateException.class, loader::reindexEmbeddings);
+        assertEquals(RagReadiness.State.FAILED, readiness.status().state());
+        assertTrue(readiness.status().message().contains("backend down"));
+    }
+
+    @Test
+    void failedSnapshotImportIsReportedAsFailed() throws Exception {
+        RagDataLoader loader = loader(2);
+        when(snapshotService.importSnapshot()).thenThrow(new IOException("Snapshot checksum mismatch"));
+
+        assertThrows(IOException.class, loader::importSnapshot);
+        assertEquals(RagReadiness.State.FAILED, readiness.status().state());
+        assertTrue(readiness.status().message().contains("checksum mismatch"));
+    }
+
+    @Test
+    void importedSnapshotIsReady() throws Exception {
+        RagDataLoader loader = loader(2);
+        when(snapshotService.importSnapshot()).thenReturn(new RagSnapshotService.SnapshotInfo(
+            "rag-snapshot.bin", MODEL, 2, "FLOAT32", 3, 100));
+
+        loader.importSnapshot();
+
+        assertEquals(RagReadiness.State.READY, readiness.status().state());
+    }
+
+    @Test
+    void loadCollapsesDuplicatesOfChunksAlreadyStored() throws Exception {
+        String golems = "Iron golems spawn in villages with at least ten villagers and twenty beds. "
+            + "They protect villagers from zombies and attack hostile mobs.";
+        RagChunk stored = chunk(7, golems);
+        stored.setEmbeddingModel(MODEL);
+        RagDataLoader loader = loader(10);
+        ReflectionTestUtils.setField(loader, "chunkingEnabled", false);
+        ReflectionTestUtils.setField(loader, "dedupEnabled", true);
+        ReflectionTestUtils.setField(loader, "dedupMaxDistance", 3);
+        ReflectionTestUtils.setField(loader, "dedupShingleWords", 4);
+        // A snapshot import stored chunk 7, then failed, so data.json is loaded on top of it
+        when(repository.count()).thenReturn(0L);
+        when(snapshotService.snapshotExists()).thenReturn(true);
+        when(snapshotService.importSnapshot()).thenThrow(new IOException("Snapshot checksum mismatch"));
+        when(repository.findEmbeddedTexts()).thenReturn(List.of(new StoredText(7L, golems)));
+        when(repository.getReferenceById(7L)).thenReturn(stored);
+        when(resourceLoader.getResource("classpath:data.json")).thenReturn(new ByteArrayResource("""
+            [{"id": "golems-copy", "text": "%s", "metadata": {"modpack": "OtherPack"}}]
+            """.formatted(golems).getBytes(StandardCharsets.UTF_8)));
+        List<RagChunkAlias> aliases = new ArrayList<>();
+        when(aliasRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            aliases.addAll(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+
+        loader.loadRagData();
+
+        assertEquals(1, aliases.size());
+        assertEquals("golems-copy", aliases.get(0).getChunkId());
+        assertSame(stored, aliases.get(0).getCanonical());
+        assertTrue(embedded.isEmpty());
+        assertEquals(RagReadiness.State.READY, readiness.status().state());
+    }
+
+    @Test
+    void chunkIsNotSavedWithoutItsAliases() throws Exception {
+        String text = "Creepers explode when close to the player, destroying blocks nearby unless mob griefing is off.";
+        RagDataLoader loader = loader(10);
+        ReflectionTestUtils.setField(loader, "chunkingEnabled", false);
+        ReflectionTestUtils.setField(loader, "dedupEnabled", true);
+        ReflectionTestUtils.setField(loader, "dedupMaxDistance", 3);
+        ReflectionTestUtils.setField(loader, "dedupShingleWords", 4);
+        when(repository.count()).thenReturn(0L);
+        when(repository.findEmbeddedTexts()).thenReturn(List.of());
+        when(resourceLoader.getResource("classpath:data.json")).thenReturn(new ByteArrayResource("""
+            [{"id": "creepers", "text": "%1$s"}, {"id": "creepers-copy", "text": "%1$s"}]
+            """.formatted(text).getBytes(StandardCharsets.UTF_8)));
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<RagChunk> chunks = invocation.getArgument(0);
+            chunks.forEach(chunk -> chunk.setId(1L));
+            return chunks;
+        });
+        when(repository.getReferenceById(1L)).thenReturn(new RagChunk("creepers", text));
+        when(aliasRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<RagChunkAlias> aliases = invocation.getArgument(0);
+            if (!aliases.isEmpty()) {
+                throw new IllegalStateException("connection lost");
+            }
+            return aliases;
+        });
+
+        loader.loadRagData();
+
+        // The first chunk commits; the copy's alias fails, so its transaction is rolled back
+        verify(transactionManager).commit(any());
+        verify(transactionManager).rollback(any());
+    }
+
+    private RagDataLoader loader(int batchSize) {
+        when(embeddingService.getModelName()).thenReturn(MODEL);
+        when(embeddingService.embeddingToVectorString(any())).thenReturn("[1,0]");
+        when(embeddingService.generateEmbeddings(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            embedded.addAll(texts);
+            return texts.stream().map(text -> text.startsWith("fails") ? null : List.of(1.0, 0.0)).toList();
+        });
+        when(repository.countNeedingReindex(anyString())).thenAnswer(invocation -> needingReindex(0).count());
+        when(repository.findNeedingReindex(anyString(), anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long lastId = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return needingReindex(lastId).limit(page.getPageSize()).toList();
+        });
+
+        ChunkFilterIndex chunkFilterIndex = mock(ChunkFilterIndex.class);
+        RagDataLoader loader = new RagDataLoader(repository, aliasRepository, embeddingService, resourceLoader,
+            new ObjectMapper(), readiness, snapshotService, chunkFilterIndex, mock(VectorIndexManager.class), mock(EmbeddingDimensionMigration.class), null,
+            mock(ThreadPoolTaskExecutor.class), transactionManager);
+        ReflectionTestUtils.setField(loader, "batchSize", batchSize);
+        return loader;
+    }
+
+    private Stream<RagChunk> needingReindex(long lastId) {
+        return table.stream()
+            .filter(chunk -> !MODEL.equals(chunk.getEmbeddingModel()) && chunk.getId() > lastId);
+    }
+
+    private record StoredText(Long getId, String getText) implements RagChunkRepository.ChunkText {}
+
+    private static RagChunk chunk(long id, String text) {
+        RagChunk chunk = new RagChunk();
+        chunk.setId(id);
+        chunk.setChunkId("chunk-" + id);
+        chunk.setText(text);
+        chunk.setEmbeddingModel("old-model");
+        return chunk;
+    }
+}
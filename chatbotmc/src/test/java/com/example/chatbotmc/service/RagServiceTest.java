@@ -0,0 +1,275 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.RagChunk;
+import com.example.chatbotmc.entity.RagChunkAlias;
+import com.example.chatbotmc.observability.ChatMetrics;
+import com.example.chatbotmc.repository.RagChunkAliasRepository;
+import com.example.chatbotmc.repository.RagChunkRepository;
+import com.example.chatbotmc.retrieval.ChunkFilterIndex;
+import com.example.chatbotmc.retrieval.EmbeddingDimensionMigration;
+import com.example.chatbotmc.retrieval.RagFilter;
+import com.example.chatbotmc.retrieval.TextChunker;
+import com.example.chatbotmc.retrieval.VectorIndexManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Which search a metadata filter is routed to, depending on how many chunks it leaves,
+ * and how sub-chunk hits are expanded into passages of their document
+ */
+class RagServiceTest {
+
+    private static final String MODEL = "test-model";
+    private static final String VECTOR = "[1,0]";
+
+    private final RagChunkRepository repository = mock(RagChunkRepository.class);
+    private final RagChunkAliasRepository aliasRepository = mock(RagChunkAliasRepository.class);
+    private final EmbeddingService embeddingService = mock(EmbeddingService.class);
+    private final ChunkFilterIndex chunkFilterIndex = mock(ChunkFilterIndex.class);
+    private final VectorIndexManager vectorIndexManager = mock(VectorIndexManager.class);
+    private final EmbeddingDimensionMigration embeddingDimensionMigration = mock(EmbeddingDimensionMigration.class);
+    private RagService ragService;
+
+    @BeforeEach
+    void setUp() {
+        when(embeddingService.generateEmbedding(anyString())).thenReturn(List.of(1.0, 0.0));
+        when(embeddingService.embeddingToVectorString(any())).thenReturn(VECTOR);
+        when(embeddingService.getModelName()).thenReturn(MODEL);
+        when(vectorIndexManager.withSearchSettings(anyInt(), anyBoolean(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(2).get());
+
+        RagReadiness readiness = new RagReadiness();
+        readiness.ready(1000);
+        ragService = new RagService(repository, aliasRepository, embeddingService,
+            new ChatMetrics(new SimpleMeterRegistry(), null), readiness, chunkFilterIndex, vectorIndexManager,
+            embeddingDimensionMigration);
+        ReflectionTestUtils.setField(ragService, "ragEnabled", true);
+        ReflectionTestUtils.setField(ragService, "defaultTopK", 5);
+        ReflectionTestUtils.setField(ragService, "exactMaxCandidates", 100);
+    }
+
+    @Test
+    void unfilteredSearchUsesTheVectorIndex() {
+        ragService.retrieveRelevantChunks("query", RagOptions.DEFAULT);
+
+        verify(repository).findSimilarByEmbedding(VECTOR, MODEL, 5);
+    }
+
+    @Test
+    void smallCandidateSetIsRankedExactly() {
+        when(chunkFilterIndex.candidates(any())).thenReturn(RoaringBitmap.bitmapOf(1, 2, 3));
+
+        ragService.retrieveRelevantChunks("query", new RagOptions(true, 3, RagFilter.modpack("small"), null));
+
+        verify(repository).findSimilarByEmbeddingAmongIds(VECTOR, MODEL, "{1,2,3}", 3);
+    }
+
+    @Test
+    void largeCandidateSetFiltersTheIndexedSearch() {
+        RoaringBitmap candidates = new RoaringBitmap();
+        IntStream.rangeClosed(1, 500).forEach(candidates::add);
+        when(chunkFilterIndex.candidates(any())).thenReturn(candidates);
+
+        ragService.retrieveRelevantChunks("query", new RagOptions(true, null, RagFilter.modpack("big"), null));
+
+        verify(repository).findSimilarByEmbeddingFilteredByIds(eq(VECTOR), eq(MODEL), startsWith("{1,2,"), eq(5));
+    }
+
+    @Test
+    void filterWithoutMatchesSkipsEmbeddingAndSearch() {
+        when(chunkFilterIndex.candidates(any())).thenReturn(new RoaringBitmap());
+
+        ragService.retrieveRelevantChunks("query", new RagOptions(true, null, RagFilter.modpack("none"), null));
+
+        verify(embeddingService, never()).generateEmbedding(anyString());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void hitMatchedThroughAnAliasIsShownWithTheAliasMetadata() {
+        RagChunk canonical = new RagChunk("golems", "Iron golems spawn in villages.");
+        canonical.setId(1L);
+        canonical.setModpack("BetterMC");
+        RagChunk direct = new RagChunk("creepers", "Creepers explode.");
+        direct.setId(2L);
+        direct.setModpack("OtherPack");
+        direct.setCategory("Mobs");
+        RagChunkAlias otherCategory = alias(canonical, "golems-wiki", "OtherPack", "Wiki");
+        RagChunkAlias matching = alias(canonical, "golems-copy#3", "OtherPack", "Mobs");
+        when(chunkFilterIndex.candidates(any())).thenReturn(RoaringBitmap.bitmapOf(1, 2));
+        when(repository.findSimilarByEmbeddingAmongIds(VECTOR, MODEL, "{1,2}", 5)).thenReturn(List.of(canonical, direct));
+        when(aliasRepository.findByCanonicalIdIn(Set.of(1L)))
+            .thenReturn(List.of(otherCategory, matching));
+
+        List<RagChunk> chunks = ragService.retrieveRelevantChunks("query",
+            new RagOptions(true, null, new RagFilter("otherpack", null, "mobs", null, null), null));
+
+        assertEquals(List.of("golems-copy#3", "creepers"), chunks.stream().map(RagChunk::getChunkId).toList());
+        assertEquals("OtherPack", chunks.get(0).getModpack());
+        assertEquals("Iron golems spawn in villages.", chunks.get(0).getText());
+        assertEquals(3, chunks.get(0).getChunkIndex());
+        assertSame(direct, chunks.get(1));
+        assertEquals("BetterMC", canonical.getModpack());
+        assertTrue(ragService.buildContextString(chunks).startsWith("--- Document 1 ---\nModpack: OtherPack\n"));
+    }
+
+    @Test
+    void hitsMatchingByTheirOwnMetadataAreNotLookedUp() {
+        RagChunk hit = new RagChunk("golems", "Iron golems spawn in villages.");
+        hit.setId(1L);
+        hit.setModpack("BetterMC");
+        when(chunkFilterIndex.candidates(any())).thenReturn(RoaringBitmap.bitmapOf(1));
+        when(repository.findSimilarByEmbeddingAmongIds(VECTOR, MODEL, "{1}", 5)).thenReturn(List.of(hit));
+
+        assertEquals(List.of(hit), ragService.retrieveRelevantChunks("query",
+            new RagOptions(true, null, RagFilter.modpack("bettermc"), null)));
+        verify(aliasRepository, never()).findByCanonicalIdIn(anyCollection());
+    }
+
+    @Test
+    void searchIsRepeatedOnceAfterTheColumnChangedDimension() {
+        RagChunk hit = new RagChunk("hit", "text");
+        when(repository.findSimilarByEmbedding(VECTOR, MODEL, 5))
+            .thenThrow(new DataIntegrityViolationException("query failed",
+                new SQLException("ERROR: different vector dimensions 1024 and 768")))
+            .thenReturn(List.of(hit));
+        when(embeddingDimensionMigration.refresh()).thenReturn(true);
+
+        assertEquals(List.of(hit), ragService.retrieveRelevantChunks("query", RagOptions.DEFAULT));
+        verify(embeddingService, times(2)).generateEmbedding("query");
+    }
+
+    @Test
+    void dimensionMismatchIsNotRetriedWhenTheColumnIsUnchanged() {
+        when(repository.findSimilarByEmbedding(VECTOR, MODEL, 5))
+            .thenThrow(new DataIntegrityViolationException("different vector dimensions 1024 and 768"));
+
+        assertEquals(List.of(), ragService.retrieveRelevantChunks("query", RagOptions.DEFAULT));
+        verify(embeddingDimensionMigration).refresh();
+        verify(repository, times(1)).findSimilarByEmbedding(VECTOR, MODEL, 5);
+    }
+
+    @Test
+    void hitsOfOneDocumentAreMergedIntoOnePassageWithOneQuery() {
+        List<RagChunk> document = document("d", "A one. A two.", "A two. A three.", "A three. A four.", "A four. A five.");
+        when(repository.findByParentChunkIdIn(anyCollection())).thenReturn(document);
+        RagChunk whole = new RagChunk("whole", "A document that was not split.");
+
+        List<RagChunk> passages = ragService.expandNeighbours(List.of(document.get(1), whole, document.get(2)), 1);
+
+        assertEquals(2, passages.size());
+        assertEquals("d#0-3", passages.get(0).getChunkId());
+        assertEquals("A one. A two. A three. A four. A five.", passages.get(0).getText());
+        assertEquals("BetterMC", passages.get(0).getModpack());
+        assertSame(whole, passages.get(1));
+        assertEquals("A two. A three.", document.get(1).getText());
+        verify(repository, times(1)).findByParentChunkIdIn(anyCollection());
+        verify(aliasRepository, times(1)).findByParentChunkIdInWithCanonical(anyCollection());
+    }
+
+    @Test
+    void hitsFurtherApartThanTheWindowGiveSeparatePassages() {
+        List<RagChunk> document = document("d", "P0.", "P1.", "P2.", "P3.", "P4.", "P5.", "P6.");
+        when(repository.findByParentChunkIdIn(anyCollection())).thenReturn(document);
+
+        List<RagChunk> passages = ragService.expandNeighbours(List.of(document.get(0), document.get(6)), 1);
+
+        assertEquals(List.of("d#0-1", "d#5-6"), passages.stream().map(RagChunk::getChunkId).toList());
+    }
+
+    @Test
+    void subChunkCollapsedIntoDuplicateIsFilledFromItsCanonical() {
+        List<RagChunk> document = document("d", "A one.", "A two.", "A three.");
+        RagChunk canonical = new RagChunk("other#4", "A two.");
+        RagChunkAlias alias = new RagChunkAlias();
+        alias.setChunkId("d#1");
+        alias.setParentChunkId("d");
+        alias.setCanonical(canonical);
+        // Only sub-chunks 0 and 2 have rows; 1 was stored as an alias of another document's text
+        when(repository.findByParentChunkIdIn(anyCollection())).thenReturn(List.of(document.get(0), document.get(2)));
+        when(aliasRepository.findByParentChunkIdInWithCanonical(anyCollection())).thenReturn(List.of(alias));
+
+        List<RagChunk> passages = ragService.expandNeighbours(List.of(document.get(0)), 2);
+
+        assertEquals(1, passages.size());
+        assertEquals("d#0-2", passages.get(0).getChunkId());
+        assertEquals("A one.\n\nA two.\n\nA three.", passages.get(0).getText());
+    }
+
+    @Test
+    void chunkerOutputJoinsBackIntoTheDocument() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 40; i++) {
+            text.append("The digital miner needs ").append(i).append(" blocks of power to start. ");
+            if (i % 10 == 0) {
+                text.append("\n\n");
+            }
+        }
+
+        List<String> parts = new TextChunker(32, 8).split(text.toString());
+        String joined = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            joined = RagService.joinOverlapping(joined, parts.get(i));
+        }
+
+        assertEquals(text.toString().strip().replaceAll("\\s+", " "), joined.replaceAll("\\s+", " "));
+    }
+
+    @Test
+    void joinOverlappingDropsOnlyTheRepeatedSentences() {
+        assertEquals("One. Two. Three.", RagService.joinOverlapping("One. Two.", "Two. Three."));
+        assertEquals("One.\n\nThree.", RagService.joinOverlapping("One.", "Three."));
+        // The overlap must end at a word boundary of the next text
+        assertEquals("A Two.\n\nTwo.x", RagService.joinOverlapping("A Two.", "Two.x"));
+    }
+
+    private static RagChunkAlias alias(RagChunk canonical, String chunkId, String modpack, String category) {
+        RagChunkAlias alias = new RagChunkAlias();
+        alias.setCanonical(canonical);
+        alias.setChunkId(chunkId);
+        alias.setParentChunkId(chunkId.contains("#") ? chunkId.substring(0, chunkId.indexOf('#')) : null);
+        alias.setModpack(modpack);
+        alias.setCategory(category);
+        return alias;
+    }
+
+    private static List<RagChunk> document(String id, String... texts) {
+        List<RagChunk> parts = new ArrayList<>();
+        for (int i = 0; i < texts.length; i++) {
+            RagChunk part = new RagChunk(id + "#" + i, texts[i]);
+            part.setParentChunkId(id);
+            part.setChunkIndex(i);
+            part.setModpack("BetterMC");
+            parts.add(part);
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.chatbotmc.service;
+
+import com.example.chatbotmc.entity.User;
+import com.example.chatbotmc.repository.UserRepository;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Quota accounting against an in-memory users table, with a limit of three queries for USER
+ */
+class UserServiceTest {
+
+    private static final Long USER_ID = 1L;
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final Cache entityCache = mock(Cache.class);
+    // query_count per user id
+    private final Map<Long, Integer> counts = new HashMap<>();
+
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.getCache()).thenReturn(entityCache);
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty("quota.limit.user", "3")
+            .withProperty("quota.limit.admin", "-1");
+        userService = new UserService(userRepository, jdbcTemplate, entityManagerFactory, environment, 100, 10);
+
+        counts.put(USER_ID, 0);
+        when(userRepository.findById(USER_ID)).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(USER_ID);
+            user.setQueryCount(counts.get(USER_ID));
+            return Optional.of(user);
+        });
+        // UPDATE ... WHERE id = ? AND query_count < ? RETURNING query_count
+        when(jdbcTemplate.query(contains("RETURNING query_count"), any(ResultSetExtractor.class), any(Object[].class)))
+            .thenAnswer(invocation -> {
+                Object[] args = (Object[]) invocation.getRawArguments()[2];
+                Long userId = (Long) args[0];
+                Integer count = counts.get(userId);
+                if (count == null || count >= (Integer) args[1]) {
+                    return null;
+                }
+                counts.put(userId, count + 1);
+                return count + 1;
+            });
+    }
+
+    @Test
+    void queriesAreCountedUpToTheLimit() {
+        for (int i = 0; i < 3; i++) {
+            userService.incrementQueryCount(USER_ID, "USER");
+        }
+
+        assertThrows(RuntimeException.class, () -> userService.incrementQueryCount(USER_ID, "USER"));
+        assertEquals(3, counts.get(USER_ID));
+        assertTrue(userService.hasReachedQueryLimit(USER_ID, "USER"));
+        // The fourth query was turned away by the in-memory count
+        verify(jdbcTemplate, times(3)).query(anyString(), any(ResultSetExtractor.class), any(Object[].class));
+        verify(entityCache, times(3)).evict(User.class, USER_ID);
+    }
+
+    @Test
+    void limitReachedElsewhereIsLearnedFromTheDatabase() {
+        assertEquals(3, userService.getRemainingQueries(USER_ID, "USER"));
+        // Another instance used up the quota
+        counts.put(USER_ID, 3);
+
+        assertThrows(RuntimeException.class, () -> userService.incrementQueryCount(USER_ID, "USER"));
+        assertEquals(0, userService.getRemainingQueries(USER_ID, "USER"));
+    }
+
+    @Test
+    void remainingQueriesAreReadOnce() {
+        userService.incrementQueryCount(USER_ID, "USER");
+
+        assertEquals(2, userService.getRemainingQueries(USER_ID, "USER"));
+        assertEquals(2, userService.getRemainingQueries(USER_ID, "USER"));
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void unlimitedRoleIsNeverCounted() {
+        userService.incrementQueryCount(USER_ID, "ADMIN");
+
+        assertEquals(-1, userService.getRemainingQueries(USER_ID, "ADMIN"));
+        assertFalse(userService.hasReachedQueryLimit(USER_ID, "ADMIN"));
+        verify(jdbcTemplate, never()).query(anyString(), any(ResultSetExtractor.class), any(Object[].class));
+    }
+
+    @Test
+    void unknownOrMissingRoleGetsTheUserLimit() {
+        userService.incrementQueryCount(USER_ID, "MODERATOR");
+        userService.incrementQueryCount(USER_ID, null);
+
+        assertEquals(1, userService.getRemainingQueries(USER_ID, "MODERATOR"));
+        assertEquals(1, userService.getRemainingQueries(USER_ID, "admin"));
+    }
+
+    @Test
+    void missingUserIsReported() {
+        RuntimeException error = assertThrows(RuntimeException.class,
+            () -> userService.incrementQueryCount(2L, "USER"));
+
+        assertEquals("User not found", error.getMessage());
+    }
+}